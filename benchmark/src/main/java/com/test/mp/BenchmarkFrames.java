@@ -0,0 +1,62 @@
+package com.test.mp;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/** Frames and parameters shared by the benchmarks. */
+final class BenchmarkFrames {
+  private BenchmarkFrames() {}
+
+  /** Parses a "<width>x<height>" parameter. */
+  static int[] parseResolution(String resolution) {
+    final int separator = resolution.indexOf('x');
+    return new int[] {Integer.parseInt(resolution.substring(0, separator)),
+        Integer.parseInt(resolution.substring(separator + 1))};
+  }
+
+  /**
+   * Returns a |width| x |height| frame of random content. Like the frames read back by
+   * YuvConverter, all planes have the width rounded up to a multiple of 8 as stride.
+   */
+  static JavaI420Buffer createFrame(int width, int height) {
+    final int stride = ((width + 7) / 8) * 8;
+    final int chromaHeight = (height + 1) / 2;
+    final Random random = new Random(width * 31L + height);
+    return JavaI420Buffer.wrap(width, height, createPlane(stride * height, random), stride,
+        createPlane(stride * chromaHeight, random), stride,
+        createPlane(stride * chromaHeight, random), stride, /* releaseCallback= */ null);
+  }
+
+  /**
+   * Returns a tightly packed |width| x |height| frame of screen content: a flat background with a
+   * band of sparse black-on-white "text" that is scrolled up by |scrollRows|, like a scrolling
+   * document.
+   */
+  static JavaI420Buffer createScrollingFrame(int width, int height, int scrollRows) {
+    final JavaI420Buffer frame = JavaI420Buffer.allocate(width, height);
+    final ByteBuffer dataY = frame.getDataY();
+    for (int y = 0; y < height; ++y) {
+      final boolean inText = y >= height / 4 && y < 3 * height / 4;
+      final Random line = new Random(y + scrollRows);
+      for (int x = 0; x < width; ++x) {
+        final boolean ink = inText && (y + scrollRows) % 24 < 16 && line.nextInt(8) == 0;
+        dataY.put(y * width + x, (byte) (ink ? 16 : inText ? 235 : 60));
+      }
+    }
+    for (ByteBuffer plane : new ByteBuffer[] {frame.getDataU(), frame.getDataV()}) {
+      while (plane.hasRemaining()) {
+        plane.put((byte) 128);
+      }
+    }
+    return frame;
+  }
+
+  private static ByteBuffer createPlane(int size, Random random) {
+    final byte[] bytes = new byte[size];
+    random.nextBytes(bytes);
+    final ByteBuffer plane = ByteBuffer.allocateDirect(size);
+    plane.put(bytes);
+    plane.clear();
+    return plane;
+  }
+}
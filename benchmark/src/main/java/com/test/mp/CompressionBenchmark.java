@@ -0,0 +1,82 @@
+package com.test.mp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compressed recording of scrolling screen content with ParallelCompressedFrameWriter, to see how
+ * the frame rate scales with the number of compressor threads. writeFrame() blocks while the
+ * window of frames in flight is full, so in steady state its rate is the compression rate. The
+ * file is started over every iteration.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class CompressionBenchmark {
+  // Distinct frames, written round robin. Each one differs from its predecessor.
+  private static final int DISTINCT_FRAMES = 8;
+
+  @Param({"1080x2400"})
+  public String resolution;
+
+  @Param({"1", "2", "4", "8"})
+  public int threads;
+
+  private final List<JavaI420Buffer> frames = new ArrayList<>();
+  private File file;
+  private ParallelCompressedFrameWriter writer;
+  private int frameIndex;
+
+  @Setup
+  public void setUp() throws IOException {
+    final int[] size = BenchmarkFrames.parseResolution(resolution);
+    for (int i = 0; i < DISTINCT_FRAMES; ++i) {
+      frames.add(
+          BenchmarkFrames.createScrollingFrame(size[0], size[1], /* scrollRows= */ 24 * i));
+    }
+    file = File.createTempFile("CompressionBenchmark", ".yuvz");
+  }
+
+  @TearDown
+  public void tearDown() {
+    file.delete();
+  }
+
+  @Setup(Level.Iteration)
+  public void openWriter() throws IOException {
+    writer = new ParallelCompressedFrameWriter(file, /* usePreviousFrame= */ true, threads);
+    frameIndex = 0;
+  }
+
+  @TearDown(Level.Iteration)
+  public void closeWriter() throws IOException {
+    writer.close();
+  }
+
+  @Benchmark
+  public void writeFrame() throws IOException {
+    writer.writeFrame(frames.get(frameIndex % DISTINCT_FRAMES), /* rotation= */ 0,
+        /* timestampNs= */ frameIndex * 16_666_667L);
+    ++frameIndex;
+  }
+}
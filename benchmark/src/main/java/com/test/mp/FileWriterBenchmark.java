@@ -0,0 +1,84 @@
+package com.test.mp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writing converted frames to a file with the gather-writing YuvFileWriter and the memory-mapped
+ * MappedYuvFileWriter. Measures the time until the writer returns, the page cache decides when
+ * the data reaches the disk. The file is started over every MAX_FILE_BYTES so that a run does not
+ * fill the disk.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FileWriterBenchmark {
+  private static final long MAX_FILE_BYTES = 512L * 1024 * 1024;
+
+  @Param({"720x1280", "1080x1920", "1080x2400"})
+  public String resolution;
+
+  @Param({"channel", "mapped"})
+  public String writer;
+
+  @Param({"I420", "NV12"})
+  public ScreenCapturer.OutputFormat format;
+
+  private JavaI420Buffer frame;
+  private File file;
+  private FrameWriter frameWriter;
+  private long fileBytes;
+
+  @Setup
+  public void setUp() throws IOException {
+    final int[] size = BenchmarkFrames.parseResolution(resolution);
+    frame = BenchmarkFrames.createFrame(size[0], size[1]);
+    file = File.createTempFile("FileWriterBenchmark", ".yuv");
+    openWriter();
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    frameWriter.close();
+    file.delete();
+  }
+
+  // Starts over at the beginning of the file, once per iteration and whenever it gets too large.
+  @Setup(Level.Iteration)
+  public void openWriter() throws IOException {
+    if (frameWriter != null) {
+      frameWriter.close();
+    }
+    frameWriter = writer.equals("mapped")
+        ? new MappedYuvFileWriter(file, format)
+        : new YuvFileWriter(file, format);
+    fileBytes = 0;
+  }
+
+  @Benchmark
+  public void writeFrame() throws IOException {
+    if (fileBytes >= MAX_FILE_BYTES) {
+      openWriter();
+    }
+    frameWriter.writeFrame(frame, /* rotation= */ 0, /* timestampNs= */ 0);
+    fileBytes += YuvHelper.getPackedI420Size(frame.getWidth(), frame.getHeight());
+  }
+}
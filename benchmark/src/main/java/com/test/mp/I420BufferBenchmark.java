@@ -0,0 +1,83 @@
+package com.test.mp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of getting a JavaI420Buffer for a frame: a fresh direct allocation, an allocation from a
+ * DirectBufferPool, and wrapping existing memory. Each buffer is released right away.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class I420BufferBenchmark {
+  @Param({"720x1280", "1080x1920", "1080x2400"})
+  public String resolution;
+
+  private int width;
+  private int height;
+  private DirectBufferPool bufferPool;
+  private ByteBuffer memory;
+
+  @Setup
+  public void setUp() {
+    final int[] size = BenchmarkFrames.parseResolution(resolution);
+    width = size[0];
+    height = size[1];
+    bufferPool = new DirectBufferPool(/* maxPooledBytes= */ 64 * 1024 * 1024);
+    memory = ByteBuffer.allocateDirect(YuvHelper.getPackedI420Size(width, height));
+  }
+
+  @TearDown
+  public void tearDown() {
+    bufferPool.clear();
+  }
+
+  @Benchmark
+  public JavaI420Buffer allocate() {
+    final JavaI420Buffer buffer = JavaI420Buffer.allocate(width, height);
+    buffer.release();
+    return buffer;
+  }
+
+  @Benchmark
+  public JavaI420Buffer allocatePooled() {
+    final JavaI420Buffer buffer = JavaI420Buffer.allocate(width, height, bufferPool);
+    buffer.release();
+    return buffer;
+  }
+
+  @Benchmark
+  public JavaI420Buffer wrap() {
+    final int sizeY = width * height;
+    final int sizeUV = ((width + 1) / 2) * ((height + 1) / 2);
+    final JavaI420Buffer buffer = JavaI420Buffer.wrap(width, height, slice(0, sizeY), width,
+        slice(sizeY, sizeUV), (width + 1) / 2, slice(sizeY + sizeUV, sizeUV), (width + 1) / 2,
+        /* releaseCallback= */ null);
+    buffer.release();
+    return buffer;
+  }
+
+  private ByteBuffer slice(int offset, int length) {
+    final ByteBuffer duplicate = memory.duplicate();
+    duplicate.position(offset);
+    duplicate.limit(offset + length);
+    return duplicate.slice();
+  }
+}
@@ -0,0 +1,50 @@
+package com.test.mp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Repacking of a converted frame into the tightly packed output layout, which ScreenCapturer does
+ * for every frame it records in a non-I420 format or to a compressed or mapped file.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PackFrameBenchmark {
+  @Param({"720x1280", "1080x1920", "1080x2400"})
+  public String resolution;
+
+  @Param({"I420", "NV12", "NV21"})
+  public ScreenCapturer.OutputFormat format;
+
+  private JavaI420Buffer frame;
+  private ByteBuffer packed;
+
+  @Setup
+  public void setUp() {
+    final int[] size = BenchmarkFrames.parseResolution(resolution);
+    frame = BenchmarkFrames.createFrame(size[0], size[1]);
+    packed = ByteBuffer.allocateDirect(YuvHelper.getPackedI420Size(size[0], size[1]));
+  }
+
+  @Benchmark
+  public ByteBuffer packFrame() {
+    YuvFileWriter.packFrame(frame, format, packed);
+    return packed;
+  }
+}
@@ -0,0 +1,72 @@
+package com.test.mp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Copies of a padded frame into a packed buffer, one plane at a time on the calling thread and as
+ * a whole frame on the shared PlaneProcessor.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PlaneCopyBenchmark {
+  @Param({"720x1280", "1080x1920", "1080x2400"})
+  public String resolution;
+
+  private JavaI420Buffer frame;
+  private ByteBuffer packed;
+  private PlaneProcessor sequential;
+
+  @Setup
+  public void setUp() {
+    final int[] size = BenchmarkFrames.parseResolution(resolution);
+    frame = BenchmarkFrames.createFrame(size[0], size[1]);
+    packed = ByteBuffer.allocateDirect(YuvHelper.getPackedI420Size(size[0], size[1]));
+    sequential = new PlaneProcessor(/* parallelism= */ 1, /* minParallelBytes= */ 0);
+  }
+
+  @TearDown
+  public void tearDown() {
+    sequential.dispose();
+  }
+
+  @Benchmark
+  public ByteBuffer copyLumaPlane() {
+    YuvHelper.copyPlane(frame.getDataY(), frame.getStrideY(), packed, frame.getWidth(),
+        frame.getWidth(), frame.getHeight(), sequential);
+    return packed;
+  }
+
+  @Benchmark
+  public ByteBuffer copyFrame() {
+    YuvHelper.I420Copy(frame.getDataY(), frame.getStrideY(), frame.getDataU(), frame.getStrideU(),
+        frame.getDataV(), frame.getStrideV(), packed, frame.getWidth(), frame.getHeight(),
+        sequential);
+    return packed;
+  }
+
+  @Benchmark
+  public ByteBuffer copyFrameStriped() {
+    YuvHelper.I420Copy(frame.getDataY(), frame.getStrideY(), frame.getDataU(), frame.getStrideU(),
+        frame.getDataV(), frame.getStrideV(), packed, frame.getWidth(), frame.getHeight(),
+        PlaneProcessor.getDefault());
+    return packed;
+  }
+}
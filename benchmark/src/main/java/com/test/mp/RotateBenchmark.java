@@ -0,0 +1,56 @@
+package com.test.mp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JavaI420Buffer.rotateI420() of a whole frame into a pooled buffer, as ScreenCapturer does when it
+ * applies the rotation before writing.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RotateBenchmark {
+  @Param({"720x1280", "1080x1920", "1080x2400"})
+  public String resolution;
+
+  @Param({"90", "180", "270"})
+  public int rotation;
+
+  private JavaI420Buffer frame;
+  private DirectBufferPool bufferPool;
+
+  @Setup
+  public void setUp() {
+    final int[] size = BenchmarkFrames.parseResolution(resolution);
+    frame = BenchmarkFrames.createFrame(size[0], size[1]);
+    bufferPool = new DirectBufferPool(/* maxPooledBytes= */ 64 * 1024 * 1024);
+  }
+
+  @TearDown
+  public void tearDown() {
+    bufferPool.clear();
+  }
+
+  @Benchmark
+  public VideoFrame.I420Buffer rotate() {
+    final VideoFrame.I420Buffer rotated = JavaI420Buffer.rotateI420(frame, rotation, bufferPool);
+    rotated.release();
+    return rotated;
+  }
+}
@@ -0,0 +1,111 @@
+package com.test.mp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The tiled rotate kernel of YuvHelper on a luma plane, striped over a number of threads, against
+ * a naive per-pixel rotation as the baseline.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RotatePlaneBenchmark {
+  @State(Scope.Thread)
+  public static class Plane {
+    @Param({"720x1280", "1080x1920", "1080x2400"})
+    public String resolution;
+
+    @Param({"90", "180", "270"})
+    public int rotation;
+
+    int width;
+    int height;
+    int srcStride;
+    int dstStride;
+    ByteBuffer src;
+    ByteBuffer dst;
+
+    @Setup
+    public void setUp() {
+      final int[] size = BenchmarkFrames.parseResolution(resolution);
+      width = size[0];
+      height = size[1];
+      dstStride = rotation == 180 ? width : height;
+      final JavaI420Buffer frame = BenchmarkFrames.createFrame(width, height);
+      srcStride = frame.getStrideY();
+      src = frame.getDataY();
+      dst = ByteBuffer.allocateDirect(width * height);
+    }
+  }
+
+  @State(Scope.Benchmark)
+  public static class Processor {
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    PlaneProcessor processor;
+
+    @Setup
+    public void setUp() {
+      processor = new PlaneProcessor(threads, /* minParallelBytes= */ 0);
+    }
+
+    @TearDown
+    public void tearDown() {
+      processor.dispose();
+    }
+  }
+
+  @Benchmark
+  public ByteBuffer naive(Plane plane) {
+    rotatePlaneNaive(plane.src, plane.srcStride, plane.dst, plane.dstStride, plane.width,
+        plane.height, plane.rotation);
+    return plane.dst;
+  }
+
+  @Benchmark
+  public ByteBuffer tiled(Plane plane, Processor processor) {
+    YuvHelper.rotatePlane(plane.src, plane.srcStride, plane.dst, plane.dstStride, plane.width,
+        plane.height, plane.rotation, processor.processor);
+    return plane.dst;
+  }
+
+  // One pixel at a time.
+  private static void rotatePlaneNaive(ByteBuffer src, int srcStride, ByteBuffer dst,
+      int dstStride, int width, int height, int rotation) {
+    for (int y = 0; y < height; ++y) {
+      for (int x = 0; x < width; ++x) {
+        final byte value = src.get(y * srcStride + x);
+        switch (rotation) {
+          case 90:
+            dst.put(x * dstStride + (height - 1 - y), value);
+            break;
+          case 180:
+            dst.put((height - 1 - y) * dstStride + (width - 1 - x), value);
+            break;
+          case 270:
+            dst.put((width - 1 - x) * dstStride + y, value);
+            break;
+          default:
+            throw new IllegalArgumentException("Unsupported rotation: " + rotation);
+        }
+      }
+    }
+  }
+}
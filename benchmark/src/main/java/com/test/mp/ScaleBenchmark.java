@@ -0,0 +1,67 @@
+package com.test.mp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JavaI420Buffer.cropAndScaleI420() from the full frame to a fraction of its size: 1/2 takes the
+ * 2:1 box path, 2/3 the general box filter and 5/4 the bilinear filter.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ScaleBenchmark {
+  @Param({"720x1280", "1080x1920", "1080x2400"})
+  public String resolution;
+
+  @Param({"1/2", "2/3", "5/4"})
+  public String scale;
+
+  private JavaI420Buffer frame;
+  private int scaleWidth;
+  private int scaleHeight;
+  private PlaneScaler.Filter filter;
+  private DirectBufferPool bufferPool;
+
+  @Setup
+  public void setUp() {
+    final int[] size = BenchmarkFrames.parseResolution(resolution);
+    frame = BenchmarkFrames.createFrame(size[0], size[1]);
+    final int separator = scale.indexOf('/');
+    final int numerator = Integer.parseInt(scale.substring(0, separator));
+    final int denominator = Integer.parseInt(scale.substring(separator + 1));
+    // Even sizes, like the encoder resolutions the frames are scaled to.
+    scaleWidth = size[0] * numerator / denominator & ~1;
+    scaleHeight = size[1] * numerator / denominator & ~1;
+    filter = PlaneScaler.chooseFilter(size[0], size[1], scaleWidth, scaleHeight);
+    bufferPool = new DirectBufferPool(/* maxPooledBytes= */ 64 * 1024 * 1024);
+  }
+
+  @TearDown
+  public void tearDown() {
+    bufferPool.clear();
+  }
+
+  @Benchmark
+  public VideoFrame.Buffer cropAndScale() {
+    final VideoFrame.Buffer scaled = JavaI420Buffer.cropAndScaleI420(frame, 0, 0,
+        frame.getWidth(), frame.getHeight(), scaleWidth, scaleHeight, filter, bufferPool);
+    scaled.release();
+    return scaled;
+  }
+}
@@ -0,0 +1,432 @@
+package com.test.mp;
+
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Write-behind stage in front of another FrameWriter. writeFrame() retains the buffer and queues
+ * it, a dedicated thread writes the queued frames to the wrapped writer. Storage stalls, e.g. an
+ * fsync or flash garbage collection, then only delay the writer thread and not the thread that
+ * produces the frames.
+ *
+ * <p>The queue is bounded, what happens when it is full is decided by the OverflowPolicy. The
+ * writer thread takes all queued frames at once, writes them and then flushes the wrapped writer,
+ * at most once per |flushIntervalMs|. An IOException or RuntimeException of the wrapped writer
+ * stops the writer thread and is thrown, as the cause of an IOException, from the next writeFrame()
+ * or close().
+ *
+ * <p>If a PipelineLatency is given, the time spent in the wrapped writer is recorded for every
+ * frame as the WRITE stage, and the time from the frame timestamp until it was written as
+ * END_TO_END.
+ */
+public class AsyncFrameWriter implements FrameWriter {
+  /** What writeFrame() does when the queue is full. */
+  public enum OverflowPolicy {
+    /** Wait until the writer thread has taken a frame. Backpressure on the frame producer. */
+    BLOCK,
+    /** Drop the oldest queued frame to make room for the new one. */
+    DROP_OLDEST,
+    /** Drop the new frame. */
+    DROP_NEWEST
+  }
+
+  private static final long DEFAULT_FLUSH_INTERVAL_MS = 1000;
+  private static final long DEFAULT_CLOSE_TIMEOUT_MS = 2000;
+
+  private static class PendingFrame {
+    final VideoFrame.I420Buffer buffer;
+    final int rotation;
+    final long timestampNs;
+
+    PendingFrame(VideoFrame.I420Buffer buffer, int rotation, long timestampNs) {
+      this.buffer = buffer;
+      this.rotation = rotation;
+      this.timestampNs = timestampNs;
+    }
+  }
+
+  private final FrameWriter writer;
+  private final int capacity;
+  private final OverflowPolicy overflowPolicy;
+  private final long flushIntervalMs;
+  private final @Nullable PipelineLatency latency;
+  private final Thread thread;
+
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition notEmpty = lock.newCondition();
+  private final Condition notFull = lock.newCondition();
+  // All fields below are guarded by |lock|.
+  private final ArrayDeque<PendingFrame> queue;
+  private boolean closing;
+  // Set when close() gave up waiting, the writer thread stops after the frame it is writing.
+  private boolean abandoned;
+  private boolean flushRequested;
+  private @Nullable Exception writeException;
+  private long writtenFrames;
+  private long writtenBytes;
+  private long droppedFrames;
+  private int maxQueueDepth;
+
+  public AsyncFrameWriter(FrameWriter writer, int capacity, OverflowPolicy overflowPolicy) {
+    this(writer, capacity, overflowPolicy, DEFAULT_FLUSH_INTERVAL_MS);
+  }
+
+  /**
+   * Creates a writer that queues up to |capacity| frames for |writer| and flushes it at most once
+   * every |flushIntervalMs|. The writer thread is started right away.
+   */
+  public AsyncFrameWriter(
+      FrameWriter writer, int capacity, OverflowPolicy overflowPolicy, long flushIntervalMs) {
+    this(writer, capacity, overflowPolicy, flushIntervalMs, /* latency= */ null);
+  }
+
+  /** Same as above, recording the write latencies of the frames to |latency| if given. */
+  public AsyncFrameWriter(FrameWriter writer, int capacity, OverflowPolicy overflowPolicy,
+      long flushIntervalMs, @Nullable PipelineLatency latency) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("capacity must be positive: " + capacity);
+    }
+    this.writer = writer;
+    this.capacity = capacity;
+    this.overflowPolicy = overflowPolicy;
+    this.flushIntervalMs = flushIntervalMs;
+    this.latency = latency;
+    this.queue = new ArrayDeque<>(capacity);
+    this.thread = new Thread(this::runWriter, "AsyncFrameWriter");
+    thread.start();
+  }
+
+  /**
+   * Queues |buffer| to be written. The buffer is retained until it has been written or dropped, so
+   * the caller may release it right after this call.
+   */
+  @Override
+  public void writeFrame(VideoFrame.I420Buffer buffer, int rotation, long timestampNs)
+      throws IOException {
+    @Nullable PendingFrame dropped = null;
+    lock.lock();
+    try {
+      throwIfFailed();
+      if (closing) {
+        throw new IllegalStateException("writeFrame() called after close()");
+      }
+      if (queue.size() >= capacity) {
+        switch (overflowPolicy) {
+          case BLOCK:
+            awaitNotFull();
+            throwIfFailed();
+            if (closing) {
+              // close() was called while waiting, the frame would never be written.
+              ++droppedFrames;
+              return;
+            }
+            break;
+          case DROP_OLDEST:
+            dropped = queue.pollFirst();
+            ++droppedFrames;
+            break;
+          case DROP_NEWEST:
+            ++droppedFrames;
+            return;
+        }
+      }
+      buffer.retain();
+      queue.addLast(new PendingFrame(buffer, rotation, timestampNs));
+      maxQueueDepth = Math.max(maxQueueDepth, queue.size());
+      notEmpty.signal();
+    } finally {
+      lock.unlock();
+    }
+    if (dropped != null) {
+      dropped.buffer.release();
+    }
+  }
+
+  /** Returns the number of frames waiting to be written. */
+  public int getQueueDepth() {
+    lock.lock();
+    try {
+      return queue.size();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** Returns the largest number of frames that have been waiting at the same time. */
+  public int getMaxQueueDepth() {
+    lock.lock();
+    try {
+      return maxQueueDepth;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** Returns the number of frames handed to the wrapped writer. */
+  public long getWrittenFrames() {
+    lock.lock();
+    try {
+      return writtenFrames;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Returns the size of the frames handed to the wrapped writer, as packed I420 frames. This is
+   * the amount of frame data written before any compression, headers not included.
+   */
+  public long getWrittenBytes() {
+    lock.lock();
+    try {
+      return writtenBytes;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Returns the number of frames that were not written, because the queue was full or close() ran
+   * out of time.
+   */
+  public long getDroppedFrames() {
+    lock.lock();
+    try {
+      return droppedFrames;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Makes the writer thread flush the wrapped writer once the frames queued so far have been
+   * written, regardless of the flush interval. Does not wait for the flush.
+   */
+  @Override
+  public void flush() throws IOException {
+    lock.lock();
+    try {
+      throwIfFailed();
+      flushRequested = true;
+      notEmpty.signal();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** Same as close(long) with a default timeout. */
+  @Override
+  public void close() throws IOException {
+    close(DEFAULT_CLOSE_TIMEOUT_MS);
+  }
+
+  /**
+   * Writes the queued frames and closes the wrapped writer. Waits at most |timeoutMs| for the queue
+   * to drain; frames still queued after that are dropped. Returns true if all frames were written.
+   * If the wrapped writer is still busy with a frame when the time is up, it is closed by the
+   * writer thread once that frame is done.
+   */
+  public boolean close(long timeoutMs) throws IOException {
+    final List<PendingFrame> dropped = new ArrayList<>();
+    final boolean drained;
+    lock.lock();
+    try {
+      closing = true;
+      notEmpty.signalAll();
+      notFull.signalAll();
+    } finally {
+      lock.unlock();
+    }
+
+    try {
+      thread.join(Math.max(1, timeoutMs));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    lock.lock();
+    try {
+      drained = !thread.isAlive();
+      if (!drained) {
+        abandoned = true;
+        dropped.addAll(queue);
+        queue.clear();
+        droppedFrames += dropped.size();
+      }
+      throwIfFailed();
+    } finally {
+      lock.unlock();
+      for (PendingFrame frame : dropped) {
+        frame.buffer.release();
+      }
+    }
+    return drained;
+  }
+
+  /**
+   * Waits until the writer thread has closed the wrapped writer. After close() gave up waiting, the
+   * thread may still be writing a frame; call this before opening the same file again.
+   */
+  public void awaitTermination() throws InterruptedException {
+    thread.join();
+  }
+
+  // Must be called with |lock| held.
+  private void awaitNotFull() {
+    boolean interrupted = false;
+    while (queue.size() >= capacity && !closing && writeException == null) {
+      try {
+        notFull.await();
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  // Must be called with |lock| held.
+  private void throwIfFailed() throws IOException {
+    if (writeException != null) {
+      throw new IOException("Writing a queued frame failed", writeException);
+    }
+  }
+
+  private void runWriter() {
+    final List<PendingFrame> batch = new ArrayList<>(capacity);
+    long lastFlushMs = System.currentTimeMillis();
+    boolean unflushed = false;
+    try {
+      while (true) {
+        final boolean forceFlush;
+        lock.lock();
+        try {
+          while (queue.isEmpty() && !closing && !flushRequested) {
+            notEmpty.awaitUninterruptibly();
+          }
+          if ((queue.isEmpty() && !flushRequested) || abandoned) {
+            break;
+          }
+          forceFlush = flushRequested;
+          flushRequested = false;
+          batch.addAll(queue);
+          queue.clear();
+          notFull.signalAll();
+        } finally {
+          lock.unlock();
+        }
+
+        if (!batch.isEmpty()) {
+          writeBatch(batch);
+          unflushed = true;
+        }
+        final long nowMs = System.currentTimeMillis();
+        if (unflushed && (forceFlush || nowMs - lastFlushMs >= flushIntervalMs)) {
+          writer.flush();
+          lastFlushMs = nowMs;
+          unflushed = false;
+        }
+      }
+      if (unflushed) {
+        writer.flush();
+      }
+    } catch (IOException | RuntimeException e) {
+      onWriteFailed(e, batch);
+    } finally {
+      try {
+        writer.close();
+      } catch (IOException | RuntimeException e) {
+        onWriteFailed(e, batch);
+      }
+    }
+  }
+
+  // Writes the frames of |batch| and releases them. Stops early if close() gave up waiting.
+  private void writeBatch(List<PendingFrame> batch) throws IOException {
+    for (int i = 0; i < batch.size(); ++i) {
+      final PendingFrame frame = batch.get(i);
+      if (isAbandoned()) {
+        break;
+      }
+      final long startNs = System.nanoTime();
+      final int frameBytes =
+          YuvHelper.getPackedI420Size(frame.buffer.getWidth(), frame.buffer.getHeight());
+      try {
+        writer.writeFrame(frame.buffer, frame.rotation, frame.timestampNs);
+      } finally {
+        frame.buffer.release();
+        batch.set(i, null);
+      }
+      if (latency != null) {
+        final long endNs = System.nanoTime();
+        latency.record(PipelineLatency.Stage.WRITE, endNs - startNs);
+        latency.recordSinceCapture(PipelineLatency.Stage.END_TO_END, frame.timestampNs, endNs);
+      }
+      lock.lock();
+      try {
+        ++writtenFrames;
+        writtenBytes += frameBytes;
+      } finally {
+        lock.unlock();
+      }
+    }
+    releaseUnwritten(batch);
+  }
+
+  private boolean isAbandoned() {
+    lock.lock();
+    try {
+      return abandoned;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  // Releases the frames of |batch| that have not been written, counting them as dropped.
+  private void releaseUnwritten(List<PendingFrame> batch) {
+    int count = 0;
+    for (PendingFrame frame : batch) {
+      if (frame != null) {
+        frame.buffer.release();
+        ++count;
+      }
+    }
+    batch.clear();
+    lock.lock();
+    try {
+      droppedFrames += count;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  // Stops accepting frames and releases the unwritten ones, the writer thread is about to end.
+  private void onWriteFailed(Exception e, List<PendingFrame> batch) {
+    releaseUnwritten(batch);
+    final List<PendingFrame> dropped;
+    lock.lock();
+    try {
+      if (writeException == null) {
+        writeException = e;
+      }
+      dropped = new ArrayList<>(queue);
+      queue.clear();
+      droppedFrames += dropped.size();
+      // The writer thread is gone, later frames would never be taken.
+      closing = true;
+      notFull.signalAll();
+    } finally {
+      lock.unlock();
+    }
+    for (PendingFrame frame : dropped) {
+      frame.buffer.release();
+    }
+  }
+}
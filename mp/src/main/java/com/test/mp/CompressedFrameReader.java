@@ -0,0 +1,108 @@
+package com.test.mp;
+
+import androidx.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+
+/**
+ * Decodes the recordings of CompressedFrameWriter, frame by frame from the start. Not thread safe.
+ */
+public class CompressedFrameReader implements Closeable {
+  private final DataInputStream input;
+  private final DeflateFrameCodec.Decoder decoder = new DeflateFrameCodec.Decoder();
+  private byte[] record = new byte[0];
+  // Decoded frame, and the previous one for delta frames.
+  private byte[] frame = new byte[0];
+  private byte[] previousFrame = new byte[0];
+  private int previousWidth;
+  private int previousHeight;
+  private boolean hasPreviousFrame;
+
+  public CompressedFrameReader(File file) throws IOException {
+    input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+    try {
+      if (input.readInt() != DeflateFrameCodec.FILE_MAGIC
+          || input.readInt() != DeflateFrameCodec.FILE_VERSION) {
+        throw new IOException(
+            "Not a version " + DeflateFrameCodec.FILE_VERSION + " compressed recording: " + file);
+      }
+    } catch (IOException e) {
+      input.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Decodes the next frame into a new JavaI420Buffer, which the caller has to release. Returns
+   * null at the end of the recording.
+   */
+  public @Nullable VideoFrame readFrame() throws IOException {
+    final int recordLength;
+    try {
+      recordLength = input.readInt();
+    } catch (EOFException e) {
+      return null;
+    }
+    if (recordLength < DeflateFrameCodec.RECORD_HEADER_SIZE) {
+      throw new IOException("Invalid frame record length " + recordLength);
+    }
+    if (record.length < recordLength) {
+      record = new byte[recordLength];
+    }
+    input.readFully(record, 0, recordLength);
+
+    final ByteBuffer header = ByteBuffer.wrap(record, 0, DeflateFrameCodec.RECORD_HEADER_SIZE);
+    final int width = header.getInt();
+    final int height = header.getInt();
+    final int rotation = header.getInt();
+    final long timestampNs = header.getLong();
+    final boolean delta = (header.get() & DeflateFrameCodec.FLAG_DELTA) != 0;
+    final int blockCount = header.getInt();
+    if (delta && (!hasPreviousFrame || width != previousWidth || height != previousHeight)) {
+      throw new IOException("Delta frame without a matching previous frame");
+    }
+
+    final int frameSize = YuvHelper.getPackedI420Size(width, height);
+    if (frame.length != frameSize) {
+      frame = new byte[frameSize];
+    }
+    try {
+      decoder.decodeBlocks(record, DeflateFrameCodec.RECORD_HEADER_SIZE, blockCount, frame,
+          frameSize, delta ? previousFrame : null);
+    } catch (DataFormatException e) {
+      throw new IOException("Corrupt frame record", e);
+    }
+
+    final JavaI420Buffer buffer = JavaI420Buffer.allocate(width, height);
+    final int sizeY = width * height;
+    final int sizeUV = (frameSize - sizeY) / 2;
+    buffer.getDataY().put(frame, 0, sizeY);
+    buffer.getDataU().put(frame, sizeY, sizeUV);
+    buffer.getDataV().put(frame, sizeY + sizeUV, sizeUV);
+
+    final byte[] swap = previousFrame;
+    previousFrame = frame;
+    frame = swap;
+    previousWidth = width;
+    previousHeight = height;
+    hasPreviousFrame = true;
+    return new VideoFrame(buffer, rotation, timestampNs);
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      input.close();
+    } finally {
+      decoder.release();
+    }
+  }
+}
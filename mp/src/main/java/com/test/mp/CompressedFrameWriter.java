@@ -0,0 +1,124 @@
+package com.test.mp;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.Deflater;
+
+/**
+ * Writes frames losslessly compressed with java.util.zip, see DeflateFrameCodec for the frame
+ * records. Screen content is mostly flat areas and static between frames, which deflate and the
+ * previous-frame dictionary shrink to a small fraction of the raw I420 size.
+ *
+ * <p>The file starts with the magic "YUVZ" and a version int, followed by one record per frame,
+ * each preceded by its length as an int. With |usePreviousFrame| set, a frame is a delta frame
+ * unless it is the first one, every KEY_FRAME_INTERVAL-th one or changes the frame size, so a
+ * reader can start decoding at any key frame. CompressedFrameReader decodes the file.
+ *
+ * <p>Compression runs on the calling thread, so in the capture pipeline the writer sits behind an
+ * AsyncFrameWriter and compresses on its writer thread rather than the conversion thread. Not
+ * thread safe, all calls must come from the same thread.
+ */
+public class CompressedFrameWriter implements FrameWriter {
+  static final int KEY_FRAME_INTERVAL = 60;
+  // Output buffer of the record stream, large enough for most delta frames of screen content.
+  private static final int OUTPUT_BUFFER_SIZE = 256 * 1024;
+
+  private final FileOutputStream fileStream;
+  private final DataOutputStream output;
+  private final boolean usePreviousFrame;
+  private final DeflateFrameCodec.Encoder encoder;
+  // Packed frame being written, and the previous one as dictionary.
+  private byte[] frame = new byte[0];
+  private byte[] previousFrame = new byte[0];
+  private int previousWidth;
+  private int previousHeight;
+  private long framesWritten;
+  private long framesSinceKeyFrame;
+  private long rawBytes;
+  private long compressedBytes;
+
+  /** Creates |file|, or truncates it if it exists, with the fastest compression level. */
+  public CompressedFrameWriter(File file, boolean usePreviousFrame) throws IOException {
+    this(file, usePreviousFrame, Deflater.BEST_SPEED);
+  }
+
+  /**
+   * Creates |file|, or truncates it if it exists, and compresses frames with |compressionLevel|,
+   * delta coding them against the previous frame if |usePreviousFrame| is set.
+   */
+  public CompressedFrameWriter(File file, boolean usePreviousFrame, int compressionLevel)
+      throws IOException {
+    this.fileStream = new FileOutputStream(file);
+    this.output = new DataOutputStream(new BufferedOutputStream(fileStream, OUTPUT_BUFFER_SIZE));
+    this.usePreviousFrame = usePreviousFrame;
+    this.encoder = new DeflateFrameCodec.Encoder(compressionLevel);
+    output.writeInt(DeflateFrameCodec.FILE_MAGIC);
+    output.writeInt(DeflateFrameCodec.FILE_VERSION);
+  }
+
+  @Override
+  public void writeFrame(VideoFrame.I420Buffer buffer, int rotation, long timestampNs)
+      throws IOException {
+    final int width = buffer.getWidth();
+    final int height = buffer.getHeight();
+    final int frameSize = YuvHelper.getPackedI420Size(width, height);
+    if (frame.length != frameSize) {
+      frame = new byte[frameSize];
+    }
+    YuvHelper.I420Copy(buffer.getDataY(), buffer.getStrideY(), buffer.getDataU(),
+        buffer.getStrideU(), buffer.getDataV(), buffer.getStrideV(), ByteBuffer.wrap(frame), width,
+        height);
+
+    final boolean delta = usePreviousFrame && framesWritten > 0 && width == previousWidth
+        && height == previousHeight && framesSinceKeyFrame < KEY_FRAME_INTERVAL - 1;
+    encoder.encode(frame, frameSize, delta ? previousFrame : null, width, height, rotation,
+        timestampNs);
+    output.writeInt(encoder.getRecordLength());
+    output.write(encoder.getRecord(), 0, encoder.getRecordLength());
+
+    framesSinceKeyFrame = delta ? framesSinceKeyFrame + 1 : 0;
+    ++framesWritten;
+    rawBytes += frameSize;
+    compressedBytes += 4 + encoder.getRecordLength();
+    if (usePreviousFrame) {
+      final byte[] swap = previousFrame;
+      previousFrame = frame;
+      frame = swap;
+      previousWidth = width;
+      previousHeight = height;
+    }
+  }
+
+  public long getFramesWritten() {
+    return framesWritten;
+  }
+
+  /** Returns the packed I420 size of the written frames. */
+  public long getRawBytes() {
+    return rawBytes;
+  }
+
+  /** Returns the size of the written frame records. */
+  public long getCompressedBytes() {
+    return compressedBytes;
+  }
+
+  @Override
+  public void flush() throws IOException {
+    output.flush();
+    fileStream.getFD().sync();
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      output.close();
+    } finally {
+      encoder.release();
+    }
+  }
+}
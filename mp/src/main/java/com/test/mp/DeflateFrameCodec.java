@@ -0,0 +1,182 @@
+package com.test.mp;
+
+import androidx.annotation.Nullable;
+
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Lossless frame compression of the compressed recording format, see CompressedFrameWriter.
+ *
+ * <p>A packed I420 frame is split into blocks of BLOCK_SIZE bytes that are compressed separately
+ * with raw deflate. In a delta frame every block is compressed with the co-located block of the
+ * previous frame as preset dictionary, so content that did not move compresses to almost nothing;
+ * a block that did not change at all is stored with a length of 0. The block size keeps the whole
+ * dictionary within reach of the 32 KB deflate window.
+ *
+ * <p>The encoded frame is a big-endian record:
+ *
+ * <pre>
+ *   int width, int height, int rotation, long timestampNs, byte flags, int blockCount,
+ *   blockCount * (int compressedLength, compressedLength bytes)
+ * </pre>
+ */
+class DeflateFrameCodec {
+  static final int FILE_MAGIC = 0x5955565a; // "YUVZ"
+  static final int FILE_VERSION = 1;
+  static final int BLOCK_SIZE = 16 * 1024;
+  static final int RECORD_HEADER_SIZE = 4 + 4 + 4 + 8 + 1 + 4;
+  // The blocks are compressed with the previous frame as dictionary.
+  static final int FLAG_DELTA = 1;
+
+  private DeflateFrameCodec() {}
+
+  /** Returns the number of blocks of a packed frame of |frameSize| bytes. */
+  static int getBlockCount(int frameSize) {
+    return (frameSize + BLOCK_SIZE - 1) / BLOCK_SIZE;
+  }
+
+  /** Encodes frames into records. Not thread safe. */
+  static class Encoder {
+    private final Deflater deflater;
+    private byte[] record = new byte[RECORD_HEADER_SIZE];
+    private int recordLength;
+
+    Encoder(int compressionLevel) {
+      deflater = new Deflater(compressionLevel, /* nowrap= */ true);
+    }
+
+    /**
+     * Encodes the packed frame in the first |frameSize| bytes of |frame|, as a delta against
+     * |previous| if given. The record is available from getRecord() until the next call.
+     */
+    void encode(byte[] frame, int frameSize, @Nullable byte[] previous, int width, int height,
+        int rotation, long timestampNs) {
+      final int blockCount = getBlockCount(frameSize);
+      recordLength = 0;
+      ensureCapacity(RECORD_HEADER_SIZE + 4 * blockCount);
+      final ByteBuffer header = ByteBuffer.wrap(record);
+      header.putInt(width).putInt(height).putInt(rotation).putLong(timestampNs);
+      header.put((byte) (previous != null ? FLAG_DELTA : 0));
+      header.putInt(blockCount);
+      recordLength = header.position();
+
+      for (int block = 0; block < blockCount; ++block) {
+        final int offset = block * BLOCK_SIZE;
+        final int length = Math.min(BLOCK_SIZE, frameSize - offset);
+        final int lengthPosition = recordLength;
+        recordLength += 4;
+        if (previous == null || !rangeEquals(frame, previous, offset, length)) {
+          deflateBlock(frame, offset, length, previous);
+        }
+        putInt(record, lengthPosition, recordLength - lengthPosition - 4);
+      }
+    }
+
+    byte[] getRecord() {
+      return record;
+    }
+
+    int getRecordLength() {
+      return recordLength;
+    }
+
+    void release() {
+      deflater.end();
+    }
+
+    private void deflateBlock(byte[] frame, int offset, int length, @Nullable byte[] previous) {
+      deflater.reset();
+      if (previous != null) {
+        deflater.setDictionary(previous, offset, length);
+      }
+      deflater.setInput(frame, offset, length);
+      deflater.finish();
+      while (!deflater.finished()) {
+        // Incompressible data grows by a few bytes per 16 KB, leave room for that.
+        ensureCapacity(recordLength + length / 2 + 64);
+        recordLength += deflater.deflate(record, recordLength, record.length - recordLength);
+      }
+    }
+
+    private void ensureCapacity(int capacity) {
+      if (record.length < capacity) {
+        final byte[] grown = new byte[Math.max(capacity, record.length + record.length / 2)];
+        System.arraycopy(record, 0, grown, 0, recordLength);
+        record = grown;
+      }
+    }
+  }
+
+  /** Decodes the blocks of records. Not thread safe. */
+  static class Decoder {
+    private final Inflater inflater = new Inflater(/* nowrap= */ true);
+
+    /**
+     * Decodes the |blockCount| blocks starting at |position| in |record| into the first
+     * |frameSize| bytes of |frame|. |previous| holds the previous frame of a delta record and is
+     * null otherwise.
+     */
+    void decodeBlocks(byte[] record, int position, int blockCount, byte[] frame, int frameSize,
+        @Nullable byte[] previous) throws DataFormatException {
+      if (blockCount != getBlockCount(frameSize)) {
+        throw new DataFormatException("Expected " + getBlockCount(frameSize) + " blocks, was "
+            + blockCount);
+      }
+      for (int block = 0; block < blockCount; ++block) {
+        final int offset = block * BLOCK_SIZE;
+        final int length = Math.min(BLOCK_SIZE, frameSize - offset);
+        final int compressedLength = getInt(record, position);
+        position += 4;
+        if (compressedLength == 0) {
+          if (previous == null) {
+            throw new DataFormatException("Unchanged block " + block + " in a key frame");
+          }
+          System.arraycopy(previous, offset, frame, offset, length);
+          continue;
+        }
+        inflater.reset();
+        if (previous != null) {
+          inflater.setDictionary(previous, offset, length);
+        }
+        inflater.setInput(record, position, compressedLength);
+        int inflated = 0;
+        while (inflated < length) {
+          final int count = inflater.inflate(frame, offset + inflated, length - inflated);
+          if (count == 0 && (inflater.finished() || inflater.needsInput())) {
+            throw new DataFormatException("Block " + block + " is truncated");
+          }
+          inflated += count;
+        }
+        position += compressedLength;
+      }
+    }
+
+    void release() {
+      inflater.end();
+    }
+  }
+
+  private static boolean rangeEquals(byte[] a, byte[] b, int offset, int length) {
+    for (int i = offset; i < offset + length; ++i) {
+      if (a[i] != b[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  static int getInt(byte[] bytes, int position) {
+    return ((bytes[position] & 0xff) << 24) | ((bytes[position + 1] & 0xff) << 16)
+        | ((bytes[position + 2] & 0xff) << 8) | (bytes[position + 3] & 0xff);
+  }
+
+  private static void putInt(byte[] bytes, int position, int value) {
+    bytes[position] = (byte) (value >>> 24);
+    bytes[position + 1] = (byte) (value >>> 16);
+    bytes[position + 2] = (byte) (value >>> 8);
+    bytes[position + 3] = (byte) value;
+  }
+}
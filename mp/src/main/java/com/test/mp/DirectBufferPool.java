@@ -0,0 +1,170 @@
+package com.test.mp;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Pool of direct ByteBuffers keyed by their exact capacity. Direct allocations are slow and their
+ * memory is only reclaimed through finalization, so frame buffers are recycled through this pool
+ * instead. The pool holds at most |maxPooledBytes| of idle buffers; when a released buffer does not
+ * fit, idle buffers of the least recently used size classes are evicted first.
+ *
+ * <p>This class is thread safe. Buffers are typically acquired on the GL thread and released on
+ * whichever thread drops the last reference to the frame.
+ */
+public class DirectBufferPool {
+  private final long maxPooledBytes;
+  // Idle buffers per capacity, in least recently used order.
+  private final LinkedHashMap<Integer, ArrayDeque<ByteBuffer>> sizeClasses =
+      new LinkedHashMap<>(/* initialCapacity= */ 4, /* loadFactor= */ 0.75f,
+          /* accessOrder= */ true);
+  private long pooledBytes;
+  private long hitCount;
+  private long missCount;
+  private long evictionCount;
+
+  public DirectBufferPool(long maxPooledBytes) {
+    if (maxPooledBytes < 0) {
+      throw new IllegalArgumentException("maxPooledBytes must be non-negative: " + maxPooledBytes);
+    }
+    this.maxPooledBytes = maxPooledBytes;
+  }
+
+  /**
+   * Returns a cleared direct buffer with a capacity of exactly |size| bytes. The buffer should be
+   * handed back with release() once it is no longer used.
+   */
+  public ByteBuffer acquire(int size) {
+    synchronized (sizeClasses) {
+      final ArrayDeque<ByteBuffer> buffers = sizeClasses.get(size);
+      final ByteBuffer buffer = buffers != null ? buffers.poll() : null;
+      if (buffer != null) {
+        ++hitCount;
+        pooledBytes -= size;
+        buffer.clear();
+        return buffer;
+      }
+      ++missCount;
+    }
+    return ByteBuffer.allocateDirect(size);
+  }
+
+  /** Returns |buffer| to the pool. The buffer must not be used by the caller afterwards. */
+  public void release(ByteBuffer buffer) {
+    if (!buffer.isDirect()) {
+      throw new IllegalArgumentException("Only direct buffers can be pooled.");
+    }
+    final int size = buffer.capacity();
+    synchronized (sizeClasses) {
+      if (!makeRoom(size)) {
+        ++evictionCount;
+        return;
+      }
+      ArrayDeque<ByteBuffer> buffers = sizeClasses.get(size);
+      if (buffers == null) {
+        buffers = new ArrayDeque<>();
+        sizeClasses.put(size, buffers);
+      }
+      buffers.offer(buffer);
+      pooledBytes += size;
+    }
+  }
+
+  /**
+   * Makes sure at least |count| idle buffers of |size| bytes are pooled, so that the first frames
+   * do not pay for direct allocations. Never grows the pool beyond its byte limit.
+   */
+  public void warmUp(int size, int count) {
+    synchronized (sizeClasses) {
+      final ArrayDeque<ByteBuffer> buffers = sizeClasses.get(size);
+      int missing = count - (buffers != null ? buffers.size() : 0);
+      while (missing-- > 0 && pooledBytes + size <= maxPooledBytes) {
+        release(ByteBuffer.allocateDirect(size));
+      }
+    }
+  }
+
+  /**
+   * Drops all idle buffers that do not have a capacity of |size| bytes. Used when the capture
+   * resolution changes and the old size classes will not be requested anymore.
+   */
+  public void evictAllExcept(int size) {
+    synchronized (sizeClasses) {
+      final Iterator<Map.Entry<Integer, ArrayDeque<ByteBuffer>>> it =
+          sizeClasses.entrySet().iterator();
+      while (it.hasNext()) {
+        final Map.Entry<Integer, ArrayDeque<ByteBuffer>> entry = it.next();
+        if (entry.getKey() != size) {
+          evict(entry.getKey(), entry.getValue());
+          it.remove();
+        }
+      }
+    }
+  }
+
+  /** Drops all idle buffers. */
+  public void clear() {
+    synchronized (sizeClasses) {
+      for (Map.Entry<Integer, ArrayDeque<ByteBuffer>> entry : sizeClasses.entrySet()) {
+        evict(entry.getKey(), entry.getValue());
+      }
+      sizeClasses.clear();
+    }
+  }
+
+  /** Number of acquire() calls served from the pool. */
+  public long getHitCount() {
+    synchronized (sizeClasses) {
+      return hitCount;
+    }
+  }
+
+  /** Number of acquire() calls that had to allocate a new direct buffer. */
+  public long getMissCount() {
+    synchronized (sizeClasses) {
+      return missCount;
+    }
+  }
+
+  /** Number of buffers dropped from, or refused by, the pool. */
+  public long getEvictionCount() {
+    synchronized (sizeClasses) {
+      return evictionCount;
+    }
+  }
+
+  /** Total capacity of the idle buffers currently held by the pool. */
+  public long getPooledBytes() {
+    synchronized (sizeClasses) {
+      return pooledBytes;
+    }
+  }
+
+  // Evicts idle buffers of other size classes, least recently used first, until |size| more bytes
+  // fit within the limit. Returns false if the buffer can not be pooled.
+  private boolean makeRoom(int size) {
+    if (size > maxPooledBytes) {
+      return false;
+    }
+    final Iterator<Map.Entry<Integer, ArrayDeque<ByteBuffer>>> it =
+        sizeClasses.entrySet().iterator();
+    while (pooledBytes + size > maxPooledBytes && it.hasNext()) {
+      final Map.Entry<Integer, ArrayDeque<ByteBuffer>> entry = it.next();
+      if (entry.getKey() == size) {
+        continue;
+      }
+      evict(entry.getKey(), entry.getValue());
+      it.remove();
+    }
+    return pooledBytes + size <= maxPooledBytes;
+  }
+
+  private void evict(int size, ArrayDeque<ByteBuffer> buffers) {
+    evictionCount += buffers.size();
+    pooledBytes -= (long) size * buffers.size();
+    buffers.clear();
+  }
+}
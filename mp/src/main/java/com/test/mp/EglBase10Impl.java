@@ -250,6 +250,8 @@ class EglBase10Impl implements EglBase10 {
             "eglMakeCurrent failed: 0x" + Integer.toHexString(egl.eglGetError()));
       }
     }
+    // The GL state cache of this thread belongs to the previous context.
+    GlStateCache.getDefault().invalidate();
   }
 
   // Detach the current EGL context, so that it can be made current on another thread.
@@ -262,6 +264,7 @@ class EglBase10Impl implements EglBase10 {
             "eglDetachCurrent failed: 0x" + Integer.toHexString(egl.eglGetError()));
       }
     }
+    GlStateCache.getDefault().invalidate();
   }
 
   @Override
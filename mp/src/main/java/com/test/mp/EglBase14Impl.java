@@ -194,6 +194,8 @@ class EglBase14Impl implements EglBase14 {
             "eglMakeCurrent failed: 0x" + Integer.toHexString(EGL14.eglGetError()));
       }
     }
+    // The GL state cache of this thread belongs to the previous context.
+    GlStateCache.getDefault().invalidate();
   }
 
   // Detach the current EGL context, so that it can be made current on another thread.
@@ -206,6 +208,7 @@ class EglBase14Impl implements EglBase14 {
             "eglDetachCurrent failed: 0x" + Integer.toHexString(EGL14.eglGetError()));
       }
     }
+    GlStateCache.getDefault().invalidate();
   }
 
   @Override
@@ -0,0 +1,218 @@
+package com.test.mp;
+
+import android.content.Context;
+
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * VideoCapturer that replays a recording instead of capturing the screen, for reproducing captures
+ * and benchmarking the pipeline without a device or MediaProjection grant. Runs on the JVM, the
+ * SurfaceTextureHelper and Context passed to initialize() are not used and may be null.
+ *
+ * <p>Frames are read with a MappedRecordingReader and delivered as I420 buffers wrapping the
+ * mapped file, from a thread of the capturer. In REAL_TIME mode they are paced like they were
+ * recorded: by the recorded timestamps, or by the frame rate passed to startCapture() for raw
+ * recordings without timestamps, and stamped with the time they are due on the System.nanoTime()
+ * clock. In AS_FAST_AS_POSSIBLE mode the next frame is delivered as soon as the observer returns,
+ * stamped with the time of delivery. Rotations are replayed as recorded.
+ *
+ * <p>At the end of the recording the capturer starts over if looping, otherwise it stops and
+ * notifies onCapturerStopped().
+ */
+public class FileVideoCapturer implements VideoCapturer {
+  private static final String TAG = "FileVideoCapturer";
+
+  /** How frames are paced. */
+  public enum Mode {
+    /** As recorded. */
+    REAL_TIME,
+    /** As fast as the observer takes them. */
+    AS_FAST_AS_POSSIBLE
+  }
+
+  private final MappedRecordingReader reader;
+  private final Mode mode;
+  private final boolean loop;
+  // Notified when the replay is stopped, to wake up a replay thread waiting for a frame to be due.
+  private final Object pacingLock = new Object();
+  @Nullable private CapturerObserver capturerObserver;
+  @Nullable private Thread thread;
+  private volatile boolean running;
+  private volatile int framerate;
+  private volatile long deliveredFrames;
+  private boolean isDisposed;
+
+  /**
+   * Replays the frames of |reader| in |mode|, from the start again after the last frame if |loop|
+   * is set. The reader is closed by dispose().
+   */
+  public FileVideoCapturer(MappedRecordingReader reader, Mode mode, boolean loop) {
+    this.reader = reader;
+    this.mode = mode;
+    this.loop = loop;
+  }
+
+  @Override
+  public synchronized void initialize(@Nullable SurfaceTextureHelper surfaceTextureHelper,
+      @Nullable Context applicationContext, CapturerObserver capturerObserver) {
+    checkNotDisposed();
+    if (capturerObserver == null) {
+      throw new RuntimeException("capturerObserver not set.");
+    }
+    this.capturerObserver = capturerObserver;
+  }
+
+  /** Starts the replay. |width| and |height| are ignored, frames have the recorded size. */
+  @Override
+  public synchronized void startCapture(int width, int height, int framerate) {
+    checkNotDisposed();
+    if (capturerObserver == null) {
+      throw new RuntimeException("capturer not initialized.");
+    }
+    if (thread != null) {
+      return;
+    }
+    this.framerate = framerate;
+    final boolean success = reader.getFrameCount() > 0;
+    capturerObserver.onCapturerStarted(success);
+    if (!success) {
+      return;
+    }
+    running = true;
+    thread = new Thread(this::replay, "FileVideoCapturer");
+    thread.start();
+  }
+
+  /** Stops the replay and waits until the current frame has been delivered. */
+  @Override
+  public void stopCapture() throws InterruptedException {
+    final Thread replayThread;
+    synchronized (this) {
+      checkNotDisposed();
+      replayThread = thread;
+      thread = null;
+    }
+    if (replayThread == null) {
+      return;
+    }
+    // Not interrupted, an interrupt would close the FileChannels the observer might be writing.
+    synchronized (pacingLock) {
+      running = false;
+      pacingLock.notifyAll();
+    }
+    replayThread.join();
+  }
+
+  /** Changes the frame rate of raw recordings, recordings with timestamps keep their pacing. */
+  @Override
+  public void changeCaptureFormat(int width, int height, int framerate) {
+    this.framerate = framerate;
+  }
+
+  @Override
+  public void dispose() {
+    try {
+      stopCapture();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    synchronized (this) {
+      if (isDisposed) {
+        return;
+      }
+      isDisposed = true;
+    }
+    try {
+      reader.close();
+    } catch (IOException e) {
+      // Nothing to do, the frames are no longer read.
+    }
+  }
+
+  /** Replays screen recordings. */
+  @Override
+  public boolean isScreencast() {
+    return true;
+  }
+
+  /** Returns the number of frames delivered since the capturer was created. */
+  public long getDeliveredFrames() {
+    return deliveredFrames;
+  }
+
+  private synchronized void checkNotDisposed() {
+    if (isDisposed) {
+      throw new RuntimeException("capturer is disposed.");
+    }
+  }
+
+  private void replay() {
+    final CapturerObserver observer = capturerObserver;
+    try {
+      do {
+        replayOnce(observer);
+      } while (loop && running);
+    } catch (IOException e) {
+      Logging.e(TAG, "Replay failed", e);
+    }
+    synchronized (this) {
+      // Ended by itself, so startCapture() can replay again. After stopCapture(), the thread may
+      // already belong to the next replay.
+      if (thread == Thread.currentThread()) {
+        thread = null;
+        running = false;
+      }
+    }
+    observer.onCapturerStopped();
+  }
+
+  private void replayOnce(CapturerObserver observer) throws IOException {
+    final long startNs = System.nanoTime();
+    long firstRecordedNs = 0;
+    // Due time of the previous frame, for pacing raw recordings by the frame rate.
+    long dueNs = startNs;
+    for (int i = 0; i < reader.getFrameCount() && running; ++i) {
+      final VideoFrame recorded = reader.getFrame(i);
+      final long timestampNs;
+      if (mode == Mode.AS_FAST_AS_POSSIBLE) {
+        timestampNs = System.nanoTime();
+      } else {
+        if (reader.hasTimestamps()) {
+          if (i == 0) {
+            firstRecordedNs = recorded.getTimestampNs();
+          }
+          dueNs = startNs + recorded.getTimestampNs() - firstRecordedNs;
+        } else if (i > 0) {
+          dueNs += TimeUnit.SECONDS.toNanos(1) / Math.max(1, framerate);
+        }
+        if (!waitUntil(dueNs)) {
+          return;
+        }
+        timestampNs = dueNs;
+      }
+      final VideoFrame frame =
+          new VideoFrame(recorded.getBuffer(), recorded.getRotation(), timestampNs);
+      observer.onFrameCaptured(frame);
+      frame.release();
+      ++deliveredFrames;
+    }
+  }
+
+  // Waits until System.nanoTime() reaches |dueNs|. Returns false if the replay was stopped first.
+  private boolean waitUntil(long dueNs) {
+    synchronized (pacingLock) {
+      long remainingNs;
+      while (running && (remainingNs = dueNs - System.nanoTime()) > 0) {
+        try {
+          TimeUnit.NANOSECONDS.timedWait(pacingLock, remainingNs);
+        } catch (InterruptedException e) {
+          // Only stopCapture() ends the replay.
+        }
+      }
+      return running;
+    }
+  }
+}
@@ -0,0 +1,114 @@
+package com.test.mp;
+
+import androidx.annotation.Nullable;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Lock-free hand-off of the latest frames from a capture thread to a processing thread. Holds at
+ * most |capacity| frames; when a frame is offered to a full mailbox, the oldest frame is dropped
+ * and released right away, so a consumer that falls behind sees the newest frames and the capturer
+ * gets its buffers, e.g. the texture of a SurfaceTextureHelper, back without waiting for it.
+ *
+ * <p>The mailbox owns one reference to every frame it holds. offer() takes over the reference of
+ * the caller, poll() hands it to the caller.
+ *
+ * <p>There must be a single producer thread calling offer(). poll() and clear() may be called from
+ * any thread. Frames are polled in the order they were offered.
+ */
+public class FrameMailbox {
+  private final int capacity;
+  private final AtomicReferenceArray<VideoFrame> slots;
+  // Sequence number of the next frame to offer. Only advanced by the producer.
+  private final AtomicLong head = new AtomicLong();
+  // Sequence number of the oldest frame held. Advanced by the consumer when it takes a frame, and
+  // by the producer when it drops one.
+  private final AtomicLong tail = new AtomicLong();
+  private final AtomicLong droppedFrames = new AtomicLong();
+
+  public FrameMailbox(int capacity) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("capacity must be positive: " + capacity);
+    }
+    this.capacity = capacity;
+    this.slots = new AtomicReferenceArray<>(capacity);
+  }
+
+  public int getCapacity() {
+    return capacity;
+  }
+
+  /**
+   * Adds |frame|, dropping the oldest frame if the mailbox is full. Returns false if a frame was
+   * dropped. Must only be called from the producer thread.
+   */
+  public boolean offer(VideoFrame frame) {
+    final long sequence = head.get();
+    boolean dropped = false;
+    while (true) {
+      final long oldest = tail.get();
+      if (sequence - oldest < capacity) {
+        break;
+      }
+      // Full. Claim the oldest frame, unless the consumer takes it first.
+      if (tail.compareAndSet(oldest, oldest + 1)) {
+        final VideoFrame superseded = slots.getAndSet(getSlot(oldest), null);
+        if (superseded != null) {
+          superseded.release();
+        }
+        droppedFrames.incrementAndGet();
+        dropped = true;
+        break;
+      }
+    }
+    slots.set(getSlot(sequence), frame);
+    head.set(sequence + 1);
+    return !dropped;
+  }
+
+  /** Returns the oldest frame held, or null if the mailbox is empty. */
+  public @Nullable VideoFrame poll() {
+    while (true) {
+      final long oldest = tail.get();
+      if (oldest == head.get()) {
+        return null;
+      }
+      // Read before claiming: once |tail| has moved on, the producer may reuse the slot.
+      final VideoFrame frame = slots.get(getSlot(oldest));
+      if (tail.compareAndSet(oldest, oldest + 1)) {
+        // Clear the slot, unless the producer already put a newer frame in it.
+        slots.compareAndSet(getSlot(oldest), frame, null);
+        return frame;
+      }
+      // The producer dropped the frame in the meantime, try the next one.
+    }
+  }
+
+  /** Returns the number of frames held. */
+  public int size() {
+    return (int) Math.max(0, head.get() - tail.get());
+  }
+
+  public boolean isEmpty() {
+    return size() == 0;
+  }
+
+  /** Returns the number of frames dropped because newer frames superseded them. */
+  public long getDroppedFrames() {
+    return droppedFrames.get();
+  }
+
+  /** Releases all frames held, counting them as dropped. */
+  public void clear() {
+    VideoFrame frame;
+    while ((frame = poll()) != null) {
+      frame.release();
+      droppedFrames.incrementAndGet();
+    }
+  }
+
+  private int getSlot(long sequence) {
+    return (int) (sequence % capacity);
+  }
+}
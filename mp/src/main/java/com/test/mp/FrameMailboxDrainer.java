@@ -0,0 +1,53 @@
+package com.test.mp;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Processes the frames of a FrameMailbox on an executor. schedule() is called after each offer,
+ * and queues a task unless one is already queued or running.
+ *
+ * <p>A task processes at most the frames held when it starts, then queues the next task if more
+ * frames arrived. When frames arrive faster than they are processed, other tasks of the executor
+ * still get their turn between two drain tasks instead of waiting for the capture to stop.
+ */
+public class FrameMailboxDrainer {
+  /** Processes a frame on the executor. Takes over the reference of the caller. */
+  public interface FrameProcessor {
+    void processFrame(VideoFrame frame);
+  }
+
+  private final FrameMailbox mailbox;
+  private final Executor executor;
+  private final FrameProcessor processor;
+  // Set while a drain task is queued or running on |executor|.
+  private final AtomicBoolean scheduled = new AtomicBoolean();
+
+  public FrameMailboxDrainer(FrameMailbox mailbox, Executor executor, FrameProcessor processor) {
+    this.mailbox = mailbox;
+    this.executor = executor;
+    this.processor = processor;
+  }
+
+  /** Queues a drain task unless one is queued or running. May be called from any thread. */
+  public void schedule() {
+    if (scheduled.compareAndSet(false, true)) {
+      executor.execute(this::drain);
+    }
+  }
+
+  private void drain() {
+    for (int remaining = mailbox.size(); remaining > 0; --remaining) {
+      final VideoFrame frame = mailbox.poll();
+      if (frame == null) {
+        break;
+      }
+      processor.processFrame(frame);
+    }
+    scheduled.set(false);
+    // A frame offered while this task ran did not queue one, queue it behind the tasks waiting.
+    if (!mailbox.isEmpty()) {
+      schedule();
+    }
+  }
+}
@@ -0,0 +1,57 @@
+package com.test.mp;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides from the capture timestamps which frames to keep to get down to a maximum frame rate.
+ * Kept frames are placed on a grid of 1/|maxFramerate| second intervals, so that the average rate
+ * is exact even when the source rate is not a multiple of the target rate, and a frame arriving
+ * slightly early because of timestamp jitter is not dropped.
+ *
+ * <p>Not thread safe, SurfaceTextureHelper only uses it on its handler thread.
+ */
+public class FrameRateLimiter {
+  // A frame this fraction of an interval early is still kept, to absorb timestamp jitter.
+  private static final int JITTER_TOLERANCE_DIVISOR = 4;
+
+  private long intervalNs;
+  // Time the next frame is due. Only valid if |hasFrame|.
+  private long nextFrameNs;
+  private boolean hasFrame;
+
+  /** Creates a limiter that keeps all frames until setMaxFramerate() is called. */
+  public FrameRateLimiter() {}
+
+  /**
+   * Limits the frames to |maxFramerate| per second, or keeps all frames if |maxFramerate| is 0 or
+   * less. The next frame is kept regardless of its timestamp.
+   */
+  public void setMaxFramerate(int maxFramerate) {
+    intervalNs = maxFramerate > 0 ? TimeUnit.SECONDS.toNanos(1) / maxFramerate : 0;
+    hasFrame = false;
+  }
+
+  /** Returns true if the frame captured at |timestampNs| should be dropped. */
+  public boolean shouldDropFrame(long timestampNs) {
+    if (intervalNs == 0) {
+      return false;
+    }
+    // Kept frames are due at most about an interval apart, a frame more than two intervals before
+    // the next due time means the timestamps jumped back.
+    if (hasFrame && timestampNs >= nextFrameNs - 2 * intervalNs) {
+      if (timestampNs < nextFrameNs - intervalNs / JITTER_TOLERANCE_DIVISOR) {
+        return true;
+      }
+      if (timestampNs < nextFrameNs + intervalNs) {
+        // On time, stay on the grid.
+        nextFrameNs += intervalNs;
+        return false;
+      }
+    }
+    // The first frame, the source paused for more than an interval or the timestamps jumped:
+    // start a new grid.
+    nextFrameNs = timestampNs + intervalNs;
+    hasFrame = true;
+    return false;
+  }
+}
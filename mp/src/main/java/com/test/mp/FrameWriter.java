@@ -0,0 +1,24 @@
+package com.test.mp;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Sink for recorded frames. The caller may release the buffer right after writeFrame() returns,
+ * implementations that hold on to it retain it.
+ */
+public interface FrameWriter extends Closeable {
+  /**
+   * Writes |buffer|. |rotation| and |timestampNs| are those of the captured frame, writers that
+   * have no place for them ignore them.
+   */
+  void writeFrame(VideoFrame.I420Buffer buffer, int rotation, long timestampNs)
+      throws IOException;
+
+  /** Forces the frames written so far to storage. */
+  void flush() throws IOException;
+
+  /** Closes the output. Frames are not necessarily forced to storage, call flush() for that. */
+  @Override
+  void close() throws IOException;
+}
@@ -0,0 +1,87 @@
+package com.test.mp;
+
+import java.nio.Buffer;
+
+/**
+ * The OpenGL ES 2.0 calls of the GL helper classes, with the signatures of the static methods of
+ * android.opengl.GLES20 they map to. Injecting an implementation lets those classes run against
+ * GlStateCache, which skips redundant state changes, or against a fake in JVM tests. Gles20Api
+ * calls GLES20 directly.
+ */
+public interface GlApi {
+  void glActiveTexture(int texture);
+
+  void glAttachShader(int program, int shader);
+
+  void glBindFramebuffer(int target, int framebuffer);
+
+  void glBindTexture(int target, int texture);
+
+  int glCheckFramebufferStatus(int target);
+
+  void glCompileShader(int shader);
+
+  int glCreateProgram();
+
+  int glCreateShader(int type);
+
+  void glDeleteFramebuffers(int n, int[] framebuffers, int offset);
+
+  void glDeleteProgram(int program);
+
+  void glDeleteShader(int shader);
+
+  void glDeleteTextures(int n, int[] textures, int offset);
+
+  void glDrawArrays(int mode, int first, int count);
+
+  void glEnableVertexAttribArray(int index);
+
+  void glFramebufferTexture2D(int target, int attachment, int textarget, int texture, int level);
+
+  void glGenFramebuffers(int n, int[] framebuffers, int offset);
+
+  void glGenTextures(int n, int[] textures, int offset);
+
+  int glGetAttribLocation(int program, String name);
+
+  int glGetError();
+
+  void glGetProgramiv(int program, int pname, int[] params, int offset);
+
+  String glGetProgramInfoLog(int program);
+
+  void glGetShaderiv(int shader, int pname, int[] params, int offset);
+
+  String glGetShaderInfoLog(int shader);
+
+  String glGetString(int name);
+
+  int glGetUniformLocation(int program, String name);
+
+  void glLinkProgram(int program);
+
+  void glReadPixels(int x, int y, int width, int height, int format, int type, Buffer pixels);
+
+  void glShaderSource(int shader, String string);
+
+  void glTexImage2D(int target, int level, int internalformat, int width, int height, int border,
+      int format, int type, Buffer pixels);
+
+  void glTexParameterf(int target, int pname, float param);
+
+  void glUniform1i(int location, int x);
+
+  void glUniform2f(int location, float x, float y);
+
+  void glUniform4fv(int location, int count, float[] v, int offset);
+
+  void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value, int offset);
+
+  void glUseProgram(int program);
+
+  void glVertexAttribPointer(
+      int indx, int size, int type, boolean normalized, int stride, Buffer ptr);
+
+  void glViewport(int x, int y, int width, int height);
+}
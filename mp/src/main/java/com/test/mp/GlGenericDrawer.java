@@ -122,6 +122,7 @@ class GlGenericDrawer implements RendererCommon.GlDrawer {
     return stringBuilder.toString();
   }
 
+  private final GlApi gl;
   private final String genericFragmentSource;
   private final String vertexShader;
   private final ShaderCallbacks shaderCallbacks;
@@ -137,8 +138,21 @@ class GlGenericDrawer implements RendererCommon.GlDrawer {
     this(DEFAULT_VERTEX_SHADER_STRING, genericFragmentSource, shaderCallbacks);
   }
 
+  /** Same as above, making the GL calls through |gl|. */
+  public GlGenericDrawer(
+      GlApi gl, String genericFragmentSource, ShaderCallbacks shaderCallbacks) {
+    this(gl, DEFAULT_VERTEX_SHADER_STRING, genericFragmentSource, shaderCallbacks);
+  }
+
   public GlGenericDrawer(
           String vertexShader, String genericFragmentSource, ShaderCallbacks shaderCallbacks) {
+    this(GlStateCache.getDefault(), vertexShader, genericFragmentSource, shaderCallbacks);
+  }
+
+  /** Same as above, making the GL calls through |gl|. */
+  public GlGenericDrawer(GlApi gl, String vertexShader, String genericFragmentSource,
+      ShaderCallbacks shaderCallbacks) {
+    this.gl = gl;
     this.vertexShader = vertexShader;
     this.genericFragmentSource = genericFragmentSource;
     this.shaderCallbacks = shaderCallbacks;
@@ -147,7 +161,7 @@ class GlGenericDrawer implements RendererCommon.GlDrawer {
   // Visible for testing.
   GlShader createShader(ShaderType shaderType) {
     return new GlShader(
-        vertexShader, createFragmentShaderString(genericFragmentSource, shaderType));
+        gl, vertexShader, createFragmentShaderString(genericFragmentSource, shaderType));
   }
 
   /**
@@ -160,13 +174,13 @@ class GlGenericDrawer implements RendererCommon.GlDrawer {
     prepareShader(
         ShaderType.OES, texMatrix, frameWidth, frameHeight, viewportWidth, viewportHeight);
     // Bind the texture.
-    GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
-    GLES20.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, oesTextureId);
+    gl.glActiveTexture(GLES20.GL_TEXTURE0);
+    gl.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, oesTextureId);
     // Draw the texture.
-    GLES20.glViewport(viewportX, viewportY, viewportWidth, viewportHeight);
-    GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
+    gl.glViewport(viewportX, viewportY, viewportWidth, viewportHeight);
+    gl.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
     // Unbind the texture as a precaution.
-    GLES20.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, 0);
+    gl.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, 0);
   }
 
   /**
@@ -179,13 +193,13 @@ class GlGenericDrawer implements RendererCommon.GlDrawer {
     prepareShader(
         ShaderType.RGB, texMatrix, frameWidth, frameHeight, viewportWidth, viewportHeight);
     // Bind the texture.
-    GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
-    GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureId);
+    gl.glActiveTexture(GLES20.GL_TEXTURE0);
+    gl.glBindTexture(GLES20.GL_TEXTURE_2D, textureId);
     // Draw the texture.
-    GLES20.glViewport(viewportX, viewportY, viewportWidth, viewportHeight);
-    GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
+    gl.glViewport(viewportX, viewportY, viewportWidth, viewportHeight);
+    gl.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
     // Unbind the texture as a precaution.
-    GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
+    gl.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
   }
 
   /**
@@ -199,16 +213,16 @@ class GlGenericDrawer implements RendererCommon.GlDrawer {
         ShaderType.YUV, texMatrix, frameWidth, frameHeight, viewportWidth, viewportHeight);
     // Bind the textures.
     for (int i = 0; i < 3; ++i) {
-      GLES20.glActiveTexture(GLES20.GL_TEXTURE0 + i);
-      GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, yuvTextures[i]);
+      gl.glActiveTexture(GLES20.GL_TEXTURE0 + i);
+      gl.glBindTexture(GLES20.GL_TEXTURE_2D, yuvTextures[i]);
     }
     // Draw the textures.
-    GLES20.glViewport(viewportX, viewportY, viewportWidth, viewportHeight);
-    GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
+    gl.glViewport(viewportX, viewportY, viewportWidth, viewportHeight);
+    gl.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
     // Unbind the textures as a precaution.
     for (int i = 0; i < 3; ++i) {
-      GLES20.glActiveTexture(GLES20.GL_TEXTURE0 + i);
-      GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
+      gl.glActiveTexture(GLES20.GL_TEXTURE0 + i);
+      gl.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
     }
   }
 
@@ -230,14 +244,14 @@ class GlGenericDrawer implements RendererCommon.GlDrawer {
       shader.useProgram();
       // Set input texture units.
       if (shaderType == ShaderType.YUV) {
-        GLES20.glUniform1i(shader.getUniformLocation("y_tex"), 0);
-        GLES20.glUniform1i(shader.getUniformLocation("u_tex"), 1);
-        GLES20.glUniform1i(shader.getUniformLocation("v_tex"), 2);
+        gl.glUniform1i(shader.getUniformLocation("y_tex"), 0);
+        gl.glUniform1i(shader.getUniformLocation("u_tex"), 1);
+        gl.glUniform1i(shader.getUniformLocation("v_tex"), 2);
       } else {
-        GLES20.glUniform1i(shader.getUniformLocation("tex"), 0);
+        gl.glUniform1i(shader.getUniformLocation("tex"), 0);
       }
 
-      GlUtil.checkNoGLES2Error("Create shader");
+      GlUtil.checkNoGLES2Error(gl, "Create shader");
       shaderCallbacks.onNewShader(shader);
       texMatrixLocation = shader.getUniformLocation(TEXTURE_MATRIX_NAME);
       inPosLocation = shader.getAttribLocation(INPUT_VERTEX_COORDINATE_NAME);
@@ -247,25 +261,25 @@ class GlGenericDrawer implements RendererCommon.GlDrawer {
     shader.useProgram();
 
     // Upload the vertex coordinates.
-    GLES20.glEnableVertexAttribArray(inPosLocation);
-    GLES20.glVertexAttribPointer(inPosLocation, /* size= */ 2,
+    gl.glEnableVertexAttribArray(inPosLocation);
+    gl.glVertexAttribPointer(inPosLocation, /* size= */ 2,
         /* type= */ GLES20.GL_FLOAT, /* normalized= */ false, /* stride= */ 0,
         FULL_RECTANGLE_BUFFER);
 
     // Upload the texture coordinates.
-    GLES20.glEnableVertexAttribArray(inTcLocation);
-    GLES20.glVertexAttribPointer(inTcLocation, /* size= */ 2,
+    gl.glEnableVertexAttribArray(inTcLocation);
+    gl.glVertexAttribPointer(inTcLocation, /* size= */ 2,
         /* type= */ GLES20.GL_FLOAT, /* normalized= */ false, /* stride= */ 0,
         FULL_RECTANGLE_TEXTURE_BUFFER);
 
     // Upload the texture transformation matrix.
-    GLES20.glUniformMatrix4fv(
+    gl.glUniformMatrix4fv(
         texMatrixLocation, 1 /* count= */, false /* transpose= */, texMatrix, 0 /* offset= */);
 
     // Do custom per-frame shader preparation.
     shaderCallbacks.onPrepareShader(
         shader, texMatrix, frameWidth, frameHeight, viewportWidth, viewportHeight);
-    GlUtil.checkNoGLES2Error("Prepare shader");
+    GlUtil.checkNoGLES2Error(gl, "Prepare shader");
   }
 
   /**
@@ -18,41 +18,48 @@ import java.nio.FloatBuffer;
 public class GlShader {
   private static final String TAG = "GlShader";
 
-  private static int compileShader(int shaderType, String source) {
-    final int shader = GLES20.glCreateShader(shaderType);
+  private static int compileShader(GlApi gl, int shaderType, String source) {
+    final int shader = gl.glCreateShader(shaderType);
     if (shader == 0) {
-      throw new RuntimeException("glCreateShader() failed. GLES20 error: " + GLES20.glGetError());
+      throw new RuntimeException("glCreateShader() failed. GLES20 error: " + gl.glGetError());
     }
-    GLES20.glShaderSource(shader, source);
-    GLES20.glCompileShader(shader);
+    gl.glShaderSource(shader, source);
+    gl.glCompileShader(shader);
     int[] compileStatus = new int[] {GLES20.GL_FALSE};
-    GLES20.glGetShaderiv(shader, GLES20.GL_COMPILE_STATUS, compileStatus, 0);
+    gl.glGetShaderiv(shader, GLES20.GL_COMPILE_STATUS, compileStatus, 0);
     if (compileStatus[0] != GLES20.GL_TRUE) {
       Logging.e(
-          TAG, "Compile error " + GLES20.glGetShaderInfoLog(shader) + " in shader:\n" + source);
-      throw new RuntimeException(GLES20.glGetShaderInfoLog(shader));
+          TAG, "Compile error " + gl.glGetShaderInfoLog(shader) + " in shader:\n" + source);
+      throw new RuntimeException(gl.glGetShaderInfoLog(shader));
     }
-    GlUtil.checkNoGLES2Error("compileShader");
+    GlUtil.checkNoGLES2Error(gl, "compileShader");
     return shader;
   }
 
+  private final GlApi gl;
   private int program;
 
   public GlShader(String vertexSource, String fragmentSource) {
-    final int vertexShader = compileShader(GLES20.GL_VERTEX_SHADER, vertexSource);
-    final int fragmentShader = compileShader(GLES20.GL_FRAGMENT_SHADER, fragmentSource);
-    program = GLES20.glCreateProgram();
+    this(GlStateCache.getDefault(), vertexSource, fragmentSource);
+  }
+
+  /** Same as above, making the GL calls through |gl|. */
+  public GlShader(GlApi gl, String vertexSource, String fragmentSource) {
+    this.gl = gl;
+    final int vertexShader = compileShader(gl, GLES20.GL_VERTEX_SHADER, vertexSource);
+    final int fragmentShader = compileShader(gl, GLES20.GL_FRAGMENT_SHADER, fragmentSource);
+    program = gl.glCreateProgram();
     if (program == 0) {
-      throw new RuntimeException("glCreateProgram() failed. GLES20 error: " + GLES20.glGetError());
+      throw new RuntimeException("glCreateProgram() failed. GLES20 error: " + gl.glGetError());
     }
-    GLES20.glAttachShader(program, vertexShader);
-    GLES20.glAttachShader(program, fragmentShader);
-    GLES20.glLinkProgram(program);
+    gl.glAttachShader(program, vertexShader);
+    gl.glAttachShader(program, fragmentShader);
+    gl.glLinkProgram(program);
     int[] linkStatus = new int[] {GLES20.GL_FALSE};
-    GLES20.glGetProgramiv(program, GLES20.GL_LINK_STATUS, linkStatus, 0);
+    gl.glGetProgramiv(program, GLES20.GL_LINK_STATUS, linkStatus, 0);
     if (linkStatus[0] != GLES20.GL_TRUE) {
-      Logging.e(TAG, "Could not link program: " + GLES20.glGetProgramInfoLog(program));
-      throw new RuntimeException(GLES20.glGetProgramInfoLog(program));
+      Logging.e(TAG, "Could not link program: " + gl.glGetProgramInfoLog(program));
+      throw new RuntimeException(gl.glGetProgramInfoLog(program));
     }
     // According to the documentation of glLinkProgram():
     // "After the link operation, applications are free to modify attached shader objects, compile
@@ -61,16 +68,16 @@ public class GlShader {
     // part of the program object."
     // But in practice, detaching shaders from the program seems to break some devices. Deleting the
     // shaders are fine however - it will delete them when they are no longer attached to a program.
-    GLES20.glDeleteShader(vertexShader);
-    GLES20.glDeleteShader(fragmentShader);
-    GlUtil.checkNoGLES2Error("Creating GlShader");
+    gl.glDeleteShader(vertexShader);
+    gl.glDeleteShader(fragmentShader);
+    GlUtil.checkNoGLES2Error(gl, "Creating GlShader");
   }
 
   public int getAttribLocation(String label) {
     if (program == -1) {
       throw new RuntimeException("The program has been released");
     }
-    int location = GLES20.glGetAttribLocation(program, label);
+    int location = gl.glGetAttribLocation(program, label);
     if (location < 0) {
       throw new RuntimeException("Could not locate '" + label + "' in program");
     }
@@ -94,37 +101,39 @@ public class GlShader {
       throw new RuntimeException("The program has been released");
     }
     int location = getAttribLocation(label);
-    GLES20.glEnableVertexAttribArray(location);
-    GLES20.glVertexAttribPointer(location, dimension, GLES20.GL_FLOAT, false, stride, buffer);
-    GlUtil.checkNoGLES2Error("setVertexAttribArray");
+    gl.glEnableVertexAttribArray(location);
+    gl.glVertexAttribPointer(location, dimension, GLES20.GL_FLOAT, false, stride, buffer);
+    GlUtil.checkNoGLES2Error(gl, "setVertexAttribArray");
   }
 
   public int getUniformLocation(String label) {
     if (program == -1) {
       throw new RuntimeException("The program has been released");
     }
-    int location = GLES20.glGetUniformLocation(program, label);
+    int location = gl.glGetUniformLocation(program, label);
     if (location < 0) {
       throw new RuntimeException("Could not locate uniform '" + label + "' in program");
     }
     return location;
   }
 
+  /**
+   * Makes this the current program. With a GlStateCache, which the default GlApi is, nothing is
+   * done if it already is.
+   */
   public void useProgram() {
     if (program == -1) {
       throw new RuntimeException("The program has been released");
     }
-    synchronized (EglBase.lock) {
-      GLES20.glUseProgram(program);
-    }
-    GlUtil.checkNoGLES2Error("glUseProgram");
+    // Gles20Api checks for errors, so only when the program actually changes.
+    gl.glUseProgram(program);
   }
 
   public void release() {
     Logging.d(TAG, "Deleting shader.");
     // Delete program, automatically detaching any shaders from it.
     if (program != -1) {
-      GLES20.glDeleteProgram(program);
+      gl.glDeleteProgram(program);
       program = -1;
     }
   }
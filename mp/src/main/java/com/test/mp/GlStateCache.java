@@ -0,0 +1,347 @@
+package com.test.mp;
+
+import android.opengl.GLES11Ext;
+import android.opengl.GLES20;
+
+import androidx.annotation.Nullable;
+
+import java.nio.Buffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * GlApi that keeps a shadow copy of the current program, the framebuffer binding and the texture
+ * bindings of every texture unit, and skips glUseProgram(), glBindFramebuffer() and
+ * glBindTexture() calls that would not change them. All other calls go straight to the wrapped
+ * GlApi.
+ *
+ * <p>The shadow state is kept per thread, as a thread has at most one context current. It must be
+ * invalidated when the current context changes, which EglBase.makeCurrent() does for the default
+ * cache, and when the state is changed other than through this class, e.g. by
+ * SurfaceTexture.updateTexImage().
+ */
+public class GlStateCache implements GlApi {
+  private static final GlStateCache defaultCache = new GlStateCache(new Gles20Api());
+
+  // Shadow value of state that may have been changed behind the cache, the next call goes through.
+  private static final int UNKNOWN = -1;
+  // Texture units tracked, the minimum GLES 2.0 guarantees for the fragment shader is 8.
+  private static final int MAX_TEXTURE_UNITS = 32;
+
+  private static class State {
+    int program = UNKNOWN;
+    int framebuffer = UNKNOWN;
+    // Index of the active texture unit, from GL_TEXTURE0.
+    int activeTextureUnit = UNKNOWN;
+    final int[] textures2d = new int[MAX_TEXTURE_UNITS];
+    final int[] texturesOes = new int[MAX_TEXTURE_UNITS];
+
+    State() {
+      invalidate();
+    }
+
+    void invalidate() {
+      program = UNKNOWN;
+      framebuffer = UNKNOWN;
+      activeTextureUnit = UNKNOWN;
+      Arrays.fill(textures2d, UNKNOWN);
+      Arrays.fill(texturesOes, UNKNOWN);
+    }
+
+    // Returns the bindings of |target| per texture unit, or null if |target| is not tracked.
+    @Nullable
+    int[] getTextureBindings(int target) {
+      switch (target) {
+        case GLES20.GL_TEXTURE_2D:
+          return textures2d;
+        case GLES11Ext.GL_TEXTURE_EXTERNAL_OES:
+          return texturesOes;
+        default:
+          return null;
+      }
+    }
+
+    // GL unbinds a deleted texture from all units, do not rely on it.
+    void forgetTexture(int texture) {
+      for (int unit = 0; unit < MAX_TEXTURE_UNITS; ++unit) {
+        if (textures2d[unit] == texture) {
+          textures2d[unit] = UNKNOWN;
+        }
+        if (texturesOes[unit] == texture) {
+          texturesOes[unit] = UNKNOWN;
+        }
+      }
+    }
+  }
+
+  private final GlApi gl;
+  private final ThreadLocal<State> state = new ThreadLocal<State>() {
+    @Override
+    protected State initialValue() {
+      return new State();
+    }
+  };
+  private final AtomicLong skippedCalls = new AtomicLong();
+
+  /**
+   * Returns the cache over GLES20 that the GL helper classes use unless another GlApi is injected.
+   */
+  public static GlStateCache getDefault() {
+    return defaultCache;
+  }
+
+  public GlStateCache(GlApi gl) {
+    this.gl = gl;
+  }
+
+  /**
+   * Forgets the shadow state of the calling thread, so that the next calls go through. Call this
+   * after changing the current context or changing its state other than through this class.
+   */
+  public void invalidate() {
+    getState().invalidate();
+  }
+
+  /** Returns the number of calls skipped because they would not have changed the state. */
+  public long getSkippedCallCount() {
+    return skippedCalls.get();
+  }
+
+  private State getState() {
+    return state.get();
+  }
+
+  @Override
+  public void glActiveTexture(int texture) {
+    final int unit = texture - GLES20.GL_TEXTURE0;
+    getState().activeTextureUnit = unit >= 0 && unit < MAX_TEXTURE_UNITS ? unit : UNKNOWN;
+    gl.glActiveTexture(texture);
+  }
+
+  @Override
+  public void glAttachShader(int program, int shader) {
+    gl.glAttachShader(program, shader);
+  }
+
+  @Override
+  public void glBindFramebuffer(int target, int framebuffer) {
+    final State state = getState();
+    if (target != GLES20.GL_FRAMEBUFFER) {
+      state.framebuffer = UNKNOWN;
+    } else if (state.framebuffer == framebuffer) {
+      skippedCalls.incrementAndGet();
+      return;
+    } else {
+      state.framebuffer = framebuffer;
+    }
+    gl.glBindFramebuffer(target, framebuffer);
+  }
+
+  @Override
+  public void glBindTexture(int target, int texture) {
+    final State state = getState();
+    final int[] bindings = state.getTextureBindings(target);
+    final int unit = state.activeTextureUnit;
+    if (bindings != null && unit != UNKNOWN) {
+      if (bindings[unit] == texture) {
+        skippedCalls.incrementAndGet();
+        return;
+      }
+      bindings[unit] = texture;
+    }
+    gl.glBindTexture(target, texture);
+  }
+
+  @Override
+  public int glCheckFramebufferStatus(int target) {
+    return gl.glCheckFramebufferStatus(target);
+  }
+
+  @Override
+  public void glCompileShader(int shader) {
+    gl.glCompileShader(shader);
+  }
+
+  @Override
+  public int glCreateProgram() {
+    return gl.glCreateProgram();
+  }
+
+  @Override
+  public int glCreateShader(int type) {
+    return gl.glCreateShader(type);
+  }
+
+  @Override
+  public void glDeleteFramebuffers(int n, int[] framebuffers, int offset) {
+    final State state = getState();
+    for (int i = offset; i < offset + n; ++i) {
+      if (framebuffers[i] != 0 && framebuffers[i] == state.framebuffer) {
+        // GL falls back to the default framebuffer, do not rely on it.
+        state.framebuffer = UNKNOWN;
+      }
+    }
+    gl.glDeleteFramebuffers(n, framebuffers, offset);
+  }
+
+  @Override
+  public void glDeleteProgram(int program) {
+    final State state = getState();
+    if (program != 0 && program == state.program) {
+      state.program = UNKNOWN;
+    }
+    gl.glDeleteProgram(program);
+  }
+
+  @Override
+  public void glDeleteShader(int shader) {
+    gl.glDeleteShader(shader);
+  }
+
+  @Override
+  public void glDeleteTextures(int n, int[] textures, int offset) {
+    final State state = getState();
+    for (int i = offset; i < offset + n; ++i) {
+      if (textures[i] != 0) {
+        state.forgetTexture(textures[i]);
+      }
+    }
+    gl.glDeleteTextures(n, textures, offset);
+  }
+
+  @Override
+  public void glDrawArrays(int mode, int first, int count) {
+    gl.glDrawArrays(mode, first, count);
+  }
+
+  @Override
+  public void glEnableVertexAttribArray(int index) {
+    gl.glEnableVertexAttribArray(index);
+  }
+
+  @Override
+  public void glFramebufferTexture2D(
+      int target, int attachment, int textarget, int texture, int level) {
+    gl.glFramebufferTexture2D(target, attachment, textarget, texture, level);
+  }
+
+  @Override
+  public void glGenFramebuffers(int n, int[] framebuffers, int offset) {
+    gl.glGenFramebuffers(n, framebuffers, offset);
+  }
+
+  @Override
+  public void glGenTextures(int n, int[] textures, int offset) {
+    gl.glGenTextures(n, textures, offset);
+  }
+
+  @Override
+  public int glGetAttribLocation(int program, String name) {
+    return gl.glGetAttribLocation(program, name);
+  }
+
+  @Override
+  public int glGetError() {
+    return gl.glGetError();
+  }
+
+  @Override
+  public void glGetProgramiv(int program, int pname, int[] params, int offset) {
+    gl.glGetProgramiv(program, pname, params, offset);
+  }
+
+  @Override
+  public String glGetProgramInfoLog(int program) {
+    return gl.glGetProgramInfoLog(program);
+  }
+
+  @Override
+  public void glGetShaderiv(int shader, int pname, int[] params, int offset) {
+    gl.glGetShaderiv(shader, pname, params, offset);
+  }
+
+  @Override
+  public String glGetShaderInfoLog(int shader) {
+    return gl.glGetShaderInfoLog(shader);
+  }
+
+  @Override
+  public String glGetString(int name) {
+    return gl.glGetString(name);
+  }
+
+  @Override
+  public int glGetUniformLocation(int program, String name) {
+    return gl.glGetUniformLocation(program, name);
+  }
+
+  @Override
+  public void glLinkProgram(int program) {
+    gl.glLinkProgram(program);
+  }
+
+  @Override
+  public void glReadPixels(
+      int x, int y, int width, int height, int format, int type, Buffer pixels) {
+    gl.glReadPixels(x, y, width, height, format, type, pixels);
+  }
+
+  @Override
+  public void glShaderSource(int shader, String string) {
+    gl.glShaderSource(shader, string);
+  }
+
+  @Override
+  public void glTexImage2D(int target, int level, int internalformat, int width, int height,
+      int border, int format, int type, Buffer pixels) {
+    gl.glTexImage2D(target, level, internalformat, width, height, border, format, type, pixels);
+  }
+
+  @Override
+  public void glTexParameterf(int target, int pname, float param) {
+    gl.glTexParameterf(target, pname, param);
+  }
+
+  @Override
+  public void glUniform1i(int location, int x) {
+    gl.glUniform1i(location, x);
+  }
+
+  @Override
+  public void glUniform2f(int location, float x, float y) {
+    gl.glUniform2f(location, x, y);
+  }
+
+  @Override
+  public void glUniform4fv(int location, int count, float[] v, int offset) {
+    gl.glUniform4fv(location, count, v, offset);
+  }
+
+  @Override
+  public void glUniformMatrix4fv(
+      int location, int count, boolean transpose, float[] value, int offset) {
+    gl.glUniformMatrix4fv(location, count, transpose, value, offset);
+  }
+
+  @Override
+  public void glUseProgram(int program) {
+    final State state = getState();
+    if (state.program == program) {
+      skippedCalls.incrementAndGet();
+      return;
+    }
+    state.program = program;
+    gl.glUseProgram(program);
+  }
+
+  @Override
+  public void glVertexAttribPointer(
+      int indx, int size, int type, boolean normalized, int stride, Buffer ptr) {
+    gl.glVertexAttribPointer(indx, size, type, normalized, stride, ptr);
+  }
+
+  @Override
+  public void glViewport(int x, int y, int width, int height) {
+    gl.glViewport(x, y, width, height);
+  }
+}
@@ -19,6 +19,7 @@ import android.opengl.GLES20;
  */
 // TODO(magjed): Add unittests for this class.
 public class GlTextureFrameBuffer {
+  private final GlApi gl;
   private final int pixelFormat;
   private int frameBufferId;
   private int textureId;
@@ -30,6 +31,12 @@ public class GlTextureFrameBuffer {
    * when calling this function. The framebuffer is not complete until setSize() is called.
    */
   public GlTextureFrameBuffer(int pixelFormat) {
+    this(GlStateCache.getDefault(), pixelFormat);
+  }
+
+  /** Same as above, making the GL calls through |gl|. */
+  public GlTextureFrameBuffer(GlApi gl, int pixelFormat) {
+    this.gl = gl;
     switch (pixelFormat) {
       case GLES20.GL_LUMINANCE:
       case GLES20.GL_RGB:
@@ -59,34 +66,34 @@ public class GlTextureFrameBuffer {
     this.height = height;
     // Lazy allocation the first time setSize() is called.
     if (textureId == 0) {
-      textureId = GlUtil.generateTexture(GLES20.GL_TEXTURE_2D);
+      textureId = GlUtil.generateTexture(gl, GLES20.GL_TEXTURE_2D);
     }
     if (frameBufferId == 0) {
       final int frameBuffers[] = new int[1];
-      GLES20.glGenFramebuffers(1, frameBuffers, 0);
+      gl.glGenFramebuffers(1, frameBuffers, 0);
       frameBufferId = frameBuffers[0];
     }
 
     // Allocate texture.
-    GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
-    GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureId);
-    GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, pixelFormat, width, height, 0, pixelFormat,
+    gl.glActiveTexture(GLES20.GL_TEXTURE0);
+    gl.glBindTexture(GLES20.GL_TEXTURE_2D, textureId);
+    gl.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, pixelFormat, width, height, 0, pixelFormat,
         GLES20.GL_UNSIGNED_BYTE, null);
-    GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
-    GlUtil.checkNoGLES2Error("GlTextureFrameBuffer setSize");
+    gl.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
+    GlUtil.checkNoGLES2Error(gl, "GlTextureFrameBuffer setSize");
 
     // Attach the texture to the framebuffer as color attachment.
-    GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, frameBufferId);
-    GLES20.glFramebufferTexture2D(
+    gl.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, frameBufferId);
+    gl.glFramebufferTexture2D(
         GLES20.GL_FRAMEBUFFER, GLES20.GL_COLOR_ATTACHMENT0, GLES20.GL_TEXTURE_2D, textureId, 0);
 
     // Check that the framebuffer is in a good state.
-    final int status = GLES20.glCheckFramebufferStatus(GLES20.GL_FRAMEBUFFER);
+    final int status = gl.glCheckFramebufferStatus(GLES20.GL_FRAMEBUFFER);
     if (status != GLES20.GL_FRAMEBUFFER_COMPLETE) {
       throw new IllegalStateException("Framebuffer not complete, status: " + status);
     }
 
-    GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+    gl.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
   }
 
   public int getWidth() {
@@ -112,9 +119,9 @@ public class GlTextureFrameBuffer {
    * this function. This object should not be used after this call.
    */
   public void release() {
-    GLES20.glDeleteTextures(1, new int[] {textureId}, 0);
+    gl.glDeleteTextures(1, new int[] {textureId}, 0);
     textureId = 0;
-    GLES20.glDeleteFramebuffers(1, new int[] {frameBufferId}, 0);
+    gl.glDeleteFramebuffers(1, new int[] {frameBufferId}, 0);
     frameBufferId = 0;
     width = 0;
     height = 0;
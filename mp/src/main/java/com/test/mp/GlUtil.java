@@ -30,7 +30,12 @@ public class GlUtil {
 
   // Assert that no OpenGL ES 2.0 error has been raised.
   public static void checkNoGLES2Error(String msg) {
-    int error = GLES20.glGetError();
+    checkNoGLES2Error(GlStateCache.getDefault(), msg);
+  }
+
+  // Same as above, querying the error through |gl|.
+  public static void checkNoGLES2Error(GlApi gl, String msg) {
+    int error = gl.glGetError();
     if (error != GLES20.GL_NO_ERROR) {
       throw error == GLES20.GL_OUT_OF_MEMORY
           ? new GlOutOfMemoryException(msg)
@@ -52,15 +57,22 @@ public class GlUtil {
    * Generate texture with standard parameters.
    */
   public static int generateTexture(int target) {
+    return generateTexture(GlStateCache.getDefault(), target);
+  }
+
+  /**
+   * Same as above, through |gl|.
+   */
+  public static int generateTexture(GlApi gl, int target) {
     final int textureArray[] = new int[1];
-    GLES20.glGenTextures(1, textureArray, 0);
+    gl.glGenTextures(1, textureArray, 0);
     final int textureId = textureArray[0];
-    GLES20.glBindTexture(target, textureId);
-    GLES20.glTexParameterf(target, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
-    GLES20.glTexParameterf(target, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
-    GLES20.glTexParameterf(target, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
-    GLES20.glTexParameterf(target, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
-    checkNoGLES2Error("generateTexture");
+    gl.glBindTexture(target, textureId);
+    gl.glTexParameterf(target, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+    gl.glTexParameterf(target, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+    gl.glTexParameterf(target, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+    gl.glTexParameterf(target, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+    checkNoGLES2Error(gl, "generateTexture");
     return textureId;
   }
 }
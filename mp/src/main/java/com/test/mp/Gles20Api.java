@@ -0,0 +1,207 @@
+package com.test.mp;
+
+import android.opengl.GLES20;
+
+import java.nio.Buffer;
+
+/**
+ * GlApi calling the GLES20 methods of the context current on the calling thread. glUseProgram()
+ * also checks for GL errors.
+ */
+public class Gles20Api implements GlApi {
+  @Override
+  public void glActiveTexture(int texture) {
+    GLES20.glActiveTexture(texture);
+  }
+
+  @Override
+  public void glAttachShader(int program, int shader) {
+    GLES20.glAttachShader(program, shader);
+  }
+
+  @Override
+  public void glBindFramebuffer(int target, int framebuffer) {
+    GLES20.glBindFramebuffer(target, framebuffer);
+  }
+
+  @Override
+  public void glBindTexture(int target, int texture) {
+    GLES20.glBindTexture(target, texture);
+  }
+
+  @Override
+  public int glCheckFramebufferStatus(int target) {
+    return GLES20.glCheckFramebufferStatus(target);
+  }
+
+  @Override
+  public void glCompileShader(int shader) {
+    GLES20.glCompileShader(shader);
+  }
+
+  @Override
+  public int glCreateProgram() {
+    return GLES20.glCreateProgram();
+  }
+
+  @Override
+  public int glCreateShader(int type) {
+    return GLES20.glCreateShader(type);
+  }
+
+  @Override
+  public void glDeleteFramebuffers(int n, int[] framebuffers, int offset) {
+    GLES20.glDeleteFramebuffers(n, framebuffers, offset);
+  }
+
+  @Override
+  public void glDeleteProgram(int program) {
+    GLES20.glDeleteProgram(program);
+  }
+
+  @Override
+  public void glDeleteShader(int shader) {
+    GLES20.glDeleteShader(shader);
+  }
+
+  @Override
+  public void glDeleteTextures(int n, int[] textures, int offset) {
+    GLES20.glDeleteTextures(n, textures, offset);
+  }
+
+  @Override
+  public void glDrawArrays(int mode, int first, int count) {
+    GLES20.glDrawArrays(mode, first, count);
+  }
+
+  @Override
+  public void glEnableVertexAttribArray(int index) {
+    GLES20.glEnableVertexAttribArray(index);
+  }
+
+  @Override
+  public void glFramebufferTexture2D(
+      int target, int attachment, int textarget, int texture, int level) {
+    GLES20.glFramebufferTexture2D(target, attachment, textarget, texture, level);
+  }
+
+  @Override
+  public void glGenFramebuffers(int n, int[] framebuffers, int offset) {
+    GLES20.glGenFramebuffers(n, framebuffers, offset);
+  }
+
+  @Override
+  public void glGenTextures(int n, int[] textures, int offset) {
+    GLES20.glGenTextures(n, textures, offset);
+  }
+
+  @Override
+  public int glGetAttribLocation(int program, String name) {
+    return GLES20.glGetAttribLocation(program, name);
+  }
+
+  @Override
+  public int glGetError() {
+    return GLES20.glGetError();
+  }
+
+  @Override
+  public void glGetProgramiv(int program, int pname, int[] params, int offset) {
+    GLES20.glGetProgramiv(program, pname, params, offset);
+  }
+
+  @Override
+  public String glGetProgramInfoLog(int program) {
+    return GLES20.glGetProgramInfoLog(program);
+  }
+
+  @Override
+  public void glGetShaderiv(int shader, int pname, int[] params, int offset) {
+    GLES20.glGetShaderiv(shader, pname, params, offset);
+  }
+
+  @Override
+  public String glGetShaderInfoLog(int shader) {
+    return GLES20.glGetShaderInfoLog(shader);
+  }
+
+  @Override
+  public String glGetString(int name) {
+    return GLES20.glGetString(name);
+  }
+
+  @Override
+  public int glGetUniformLocation(int program, String name) {
+    return GLES20.glGetUniformLocation(program, name);
+  }
+
+  @Override
+  public void glLinkProgram(int program) {
+    GLES20.glLinkProgram(program);
+  }
+
+  @Override
+  public void glReadPixels(
+      int x, int y, int width, int height, int format, int type, Buffer pixels) {
+    GLES20.glReadPixels(x, y, width, height, format, type, pixels);
+  }
+
+  @Override
+  public void glShaderSource(int shader, String string) {
+    GLES20.glShaderSource(shader, string);
+  }
+
+  @Override
+  public void glTexImage2D(int target, int level, int internalformat, int width, int height,
+      int border, int format, int type, Buffer pixels) {
+    GLES20.glTexImage2D(target, level, internalformat, width, height, border, format, type, pixels);
+  }
+
+  @Override
+  public void glTexParameterf(int target, int pname, float param) {
+    GLES20.glTexParameterf(target, pname, param);
+  }
+
+  @Override
+  public void glUniform1i(int location, int x) {
+    GLES20.glUniform1i(location, x);
+  }
+
+  @Override
+  public void glUniform2f(int location, float x, float y) {
+    GLES20.glUniform2f(location, x, y);
+  }
+
+  @Override
+  public void glUniform4fv(int location, int count, float[] v, int offset) {
+    GLES20.glUniform4fv(location, count, v, offset);
+  }
+
+  @Override
+  public void glUniformMatrix4fv(
+      int location, int count, boolean transpose, float[] value, int offset) {
+    GLES20.glUniformMatrix4fv(location, count, transpose, value, offset);
+  }
+
+  @Override
+  public void glUseProgram(int program) {
+    // See EglBase.lock.
+    synchronized (EglBase.lock) {
+      GLES20.glUseProgram(program);
+    }
+    // Checked here rather than by GlShader, so that the calls GlStateCache skips need no
+    // glGetError() round trip either.
+    GlUtil.checkNoGLES2Error(this, "glUseProgram");
+  }
+
+  @Override
+  public void glVertexAttribPointer(
+      int indx, int size, int type, boolean normalized, int stride, Buffer ptr) {
+    GLES20.glVertexAttribPointer(indx, size, type, normalized, stride, ptr);
+  }
+
+  @Override
+  public void glViewport(int x, int y, int width, int height) {
+    GLES20.glViewport(x, y, width, height);
+  }
+}
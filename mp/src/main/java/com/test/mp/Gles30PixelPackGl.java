@@ -0,0 +1,104 @@
+package com.test.mp;
+
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+
+import androidx.annotation.Nullable;
+
+import java.nio.ByteBuffer;
+
+/**
+ * PixelPackGl on the OpenGL ES 3.0 context current on the calling thread. The context is created
+ * for OpenGL ES 2.0, which Android drivers usually satisfy with a 3.x context; check isSupported()
+ * before using this class.
+ */
+class Gles30PixelPackGl implements PixelPackGl {
+  /** Returns true if the context current on the calling thread supports OpenGL ES 3.0. */
+  static boolean isSupported() {
+    return isGles3Version(GLES20.glGetString(GLES20.GL_VERSION));
+  }
+
+  // Visible for testing. |version| is a GL_VERSION string, e.g. "OpenGL ES 3.2 V@415.0".
+  static boolean isGles3Version(@Nullable String version) {
+    final String prefix = "OpenGL ES ";
+    if (version == null || !version.startsWith(prefix) || version.length() <= prefix.length()) {
+      return false;
+    }
+    final char major = version.charAt(prefix.length());
+    return major >= '3' && major <= '9';
+  }
+
+  @Override
+  public int createBuffer(int sizeBytes) {
+    final int[] buffers = new int[1];
+    GLES30.glGenBuffers(1, buffers, 0);
+    resizeBuffer(buffers[0], sizeBytes);
+    return buffers[0];
+  }
+
+  @Override
+  public void resizeBuffer(int buffer, int sizeBytes) {
+    GLES30.glBindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, buffer);
+    GLES30.glBufferData(GLES30.GL_PIXEL_PACK_BUFFER, sizeBytes, null, GLES30.GL_STREAM_READ);
+    GLES30.glBindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, 0);
+    GlUtil.checkNoGLES2Error("Gles30PixelPackGl.resizeBuffer");
+  }
+
+  @Override
+  public void deleteBuffer(int buffer) {
+    GLES30.glDeleteBuffers(1, new int[] {buffer}, 0);
+  }
+
+  @Override
+  public void readPixels(int buffer, int width, int height) {
+    GLES30.glBindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, buffer);
+    // With a pixel pack buffer bound, the last argument is an offset into it.
+    GLES30.glReadPixels(
+        0, 0, width, height, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, /* offset= */ 0);
+    GLES30.glBindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, 0);
+    GlUtil.checkNoGLES2Error("Gles30PixelPackGl.readPixels");
+  }
+
+  @Override
+  public long fenceSync() {
+    final long sync = GLES30.glFenceSync(GLES30.GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+    if (sync == 0) {
+      throw new RuntimeException("glFenceSync failed: " + GLES20.glGetError());
+    }
+    return sync;
+  }
+
+  @Override
+  public boolean clientWaitSync(long sync, long timeoutNs) {
+    final int result =
+        GLES30.glClientWaitSync(sync, GLES30.GL_SYNC_FLUSH_COMMANDS_BIT, timeoutNs);
+    if (result == GLES30.GL_WAIT_FAILED) {
+      throw new RuntimeException("glClientWaitSync failed: " + GLES20.glGetError());
+    }
+    return result == GLES30.GL_ALREADY_SIGNALED || result == GLES30.GL_CONDITION_SATISFIED;
+  }
+
+  @Override
+  public void deleteSync(long sync) {
+    GLES30.glDeleteSync(sync);
+  }
+
+  @Override
+  public ByteBuffer mapBuffer(int buffer, int sizeBytes) {
+    GLES30.glBindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, buffer);
+    final ByteBuffer mapped = (ByteBuffer) GLES30.glMapBufferRange(
+        GLES30.GL_PIXEL_PACK_BUFFER, 0, sizeBytes, GLES30.GL_MAP_READ_BIT);
+    if (mapped == null) {
+      GLES30.glBindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, 0);
+      throw new RuntimeException("glMapBufferRange failed: " + GLES20.glGetError());
+    }
+    return mapped;
+  }
+
+  @Override
+  public void unmapBuffer(int buffer) {
+    GLES30.glBindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, buffer);
+    GLES30.glUnmapBuffer(GLES30.GL_PIXEL_PACK_BUFFER);
+    GLES30.glBindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, 0);
+  }
+}
@@ -10,12 +10,20 @@
 
 package com.test.mp;
 
+import androidx.annotation.Nullable;
+
 import com.test.mp.VideoFrame.I420Buffer;
 
 import java.nio.ByteBuffer;
 
 /** Implementation of VideoFrame.I420Buffer backed by Java direct byte buffers. */
 public class JavaI420Buffer implements VideoFrame.I420Buffer {
+  // Idle memory kept for the destination buffers of cropAndScale(), about four half resolution
+  // 1080x2400 frames.
+  private static final long SCALE_BUFFER_POOL_SIZE_BYTES = 4 * 1024 * 1024;
+  private static final DirectBufferPool scaleBufferPool =
+      new DirectBufferPool(SCALE_BUFFER_POOL_SIZE_BYTES);
+
   private final int width;
   private final int height;
   private final ByteBuffer dataY;
@@ -24,9 +32,11 @@ public class JavaI420Buffer implements VideoFrame.I420Buffer {
   private final int strideY;
   private final int strideU;
   private final int strideV;
+  private final RefCountDelegate refCountDelegate;
 
   private JavaI420Buffer(int width, int height, ByteBuffer dataY, int strideY, ByteBuffer dataU,
-                         int strideU, ByteBuffer dataV, int strideV) {
+                         int strideU, ByteBuffer dataV, int strideV,
+                         @Nullable Runnable releaseCallback) {
     this.width = width;
     this.height = height;
     this.dataY = dataY;
@@ -35,6 +45,7 @@ public class JavaI420Buffer implements VideoFrame.I420Buffer {
     this.strideY = strideY;
     this.strideU = strideU;
     this.strideV = strideV;
+    this.refCountDelegate = new RefCountDelegate(releaseCallback);
   }
 
   private static void checkCapacity(ByteBuffer data, int width, int height, int stride) {
@@ -46,9 +57,14 @@ public class JavaI420Buffer implements VideoFrame.I420Buffer {
     }
   }
 
-  /** Wraps existing ByteBuffers into JavaI420Buffer object without copying the contents. */
+  /**
+   * Wraps existing ByteBuffers into JavaI420Buffer object without copying the contents. The
+   * |releaseCallback| is run once the ref count of the returned buffer reaches zero, and is the
+   * place to hand the backing memory back to its owner, e.g. a buffer pool.
+   */
   public static JavaI420Buffer wrap(int width, int height, ByteBuffer dataY, int strideY,
-                                    ByteBuffer dataU, int strideU, ByteBuffer dataV, int strideV) {
+                                    ByteBuffer dataU, int strideU, ByteBuffer dataV, int strideV,
+                                    @Nullable Runnable releaseCallback) {
     if (dataY == null || dataU == null || dataV == null) {
       throw new IllegalArgumentException("Data buffers cannot be null.");
     }
@@ -69,19 +85,40 @@ public class JavaI420Buffer implements VideoFrame.I420Buffer {
     checkCapacity(dataV, chromaWidth, chromaHeight, strideV);
 
     return new JavaI420Buffer(
-        width, height, dataY, strideY, dataU, strideU, dataV, strideV);
+        width, height, dataY, strideY, dataU, strideU, dataV, strideV, releaseCallback);
+  }
+
+  /**
+   * Same as above without a release callback. The memory of the wrapped buffers is left to the
+   * garbage collector.
+   */
+  public static JavaI420Buffer wrap(int width, int height, ByteBuffer dataY, int strideY,
+                                    ByteBuffer dataU, int strideU, ByteBuffer dataV, int strideV) {
+    return wrap(width, height, dataY, strideY, dataU, strideU, dataV, strideV,
+        /* releaseCallback= */ null);
   }
 
   /** Allocates an empty I420Buffer suitable for an image of the given dimensions. */
   public static JavaI420Buffer allocate(int width, int height) {
+    return allocate(width, height, /* bufferPool= */ null);
+  }
+
+  /**
+   * Same as above, but draws the memory from |bufferPool| if given. The memory is returned to the
+   * pool once the buffer is released.
+   */
+  public static JavaI420Buffer allocate(int width, int height,
+                                        @Nullable DirectBufferPool bufferPool) {
     int chromaHeight = (height + 1) / 2;
     int strideUV = (width + 1) / 2;
     int yPos = 0;
     int uPos = yPos + width * height;
     int vPos = uPos + strideUV * chromaHeight;
 
-    ByteBuffer buffer =
-            ByteBuffer.allocateDirect(width * height + 2 * strideUV * chromaHeight);
+    final int size = width * height + 2 * strideUV * chromaHeight;
+    final ByteBuffer buffer = bufferPool != null
+        ? bufferPool.acquire(size)
+        : ByteBuffer.allocateDirect(size);
 
     buffer.position(yPos);
     buffer.limit(uPos);
@@ -95,7 +132,8 @@ public class JavaI420Buffer implements VideoFrame.I420Buffer {
     buffer.limit(vPos + strideUV * chromaHeight);
     ByteBuffer dataV = buffer.slice();
 
-    return new JavaI420Buffer(width, height, dataY, width, dataU, strideUV, dataV, strideUV);
+    return new JavaI420Buffer(width, height, dataY, width, dataU, strideUV, dataV, strideUV,
+        bufferPool != null ? () -> bufferPool.release(buffer) : null);
   }
 
   @Override
@@ -143,11 +181,94 @@ public class JavaI420Buffer implements VideoFrame.I420Buffer {
 
   @Override
   public I420Buffer toI420() {
+    retain();
     return this;
   }
 
+  @Override
+  public void retain() {
+    refCountDelegate.retain();
+  }
+
+  @Override
+  public void release() {
+    refCountDelegate.release();
+  }
+
   @Override
   public VideoFrame.Buffer cropAndScale(int cropX, int cropY, int cropWidth, int cropHeight, int scaleWidth, int scaleHeight) {
-    return this;
+    return cropAndScaleI420(this, cropX, cropY, cropWidth, cropHeight, scaleWidth, scaleHeight,
+        PlaneScaler.chooseFilter(cropWidth, cropHeight, scaleWidth, scaleHeight), scaleBufferPool);
+  }
+
+  /**
+   * Crops |buffer| to the region defined by |cropX|, |cropY|, |cropWidth| and |cropHeight| and
+   * scales it to |scaleWidth| x |scaleHeight| using |filter|. Crop offsets are rounded down to even
+   * values so that the chroma planes stay aligned. A crop without scaling shares the memory of
+   * |buffer| and keeps a reference to it. Otherwise the result is written to a new buffer drawn from
+   * |bufferPool|, if given.
+   */
+  public static VideoFrame.Buffer cropAndScaleI420(final I420Buffer buffer, int cropX, int cropY,
+      int cropWidth, int cropHeight, int scaleWidth, int scaleHeight, PlaneScaler.Filter filter,
+      @Nullable DirectBufferPool bufferPool) {
+    if (cropX < 0 || cropY < 0 || cropWidth <= 0 || cropHeight <= 0
+        || cropX + cropWidth > buffer.getWidth() || cropY + cropHeight > buffer.getHeight()) {
+      throw new IllegalArgumentException("Invalid crop rectangle " + cropWidth + "x" + cropHeight
+          + " at " + cropX + "," + cropY + " for " + buffer.getWidth() + "x" + buffer.getHeight());
+    }
+    cropX &= ~1;
+    cropY &= ~1;
+    final int chromaCropX = cropX / 2;
+    final int chromaCropY = cropY / 2;
+
+    final ByteBuffer dataY = buffer.getDataY();
+    final ByteBuffer dataU = buffer.getDataU();
+    final ByteBuffer dataV = buffer.getDataV();
+    dataY.position(cropX + cropY * buffer.getStrideY());
+    dataU.position(chromaCropX + chromaCropY * buffer.getStrideU());
+    dataV.position(chromaCropX + chromaCropY * buffer.getStrideV());
+
+    if (cropWidth == scaleWidth && cropHeight == scaleHeight) {
+      // No scaling.
+      buffer.retain();
+      return JavaI420Buffer.wrap(scaleWidth, scaleHeight, dataY.slice(), buffer.getStrideY(),
+          dataU.slice(), buffer.getStrideU(), dataV.slice(), buffer.getStrideV(), buffer::release);
+    }
+
+    final JavaI420Buffer newBuffer = allocate(scaleWidth, scaleHeight, bufferPool);
+    PlaneScaler.scalePlane(dataY.slice(), buffer.getStrideY(), cropWidth, cropHeight,
+        newBuffer.dataY, newBuffer.strideY, scaleWidth, scaleHeight, filter);
+    final int chromaCropWidth = (cropWidth + 1) / 2;
+    final int chromaCropHeight = (cropHeight + 1) / 2;
+    final int chromaScaleWidth = (scaleWidth + 1) / 2;
+    final int chromaScaleHeight = (scaleHeight + 1) / 2;
+    PlaneScaler.scalePlane(dataU.slice(), buffer.getStrideU(), chromaCropWidth, chromaCropHeight,
+        newBuffer.dataU, newBuffer.strideU, chromaScaleWidth, chromaScaleHeight, filter);
+    PlaneScaler.scalePlane(dataV.slice(), buffer.getStrideV(), chromaCropWidth, chromaCropHeight,
+        newBuffer.dataV, newBuffer.strideV, chromaScaleWidth, chromaScaleHeight, filter);
+    return newBuffer;
+  }
+
+  /**
+   * Rotates |buffer| clockwise by |rotation| degrees. The result is written to a new buffer drawn
+   * from |bufferPool|, if given. A rotation of zero returns |buffer| itself with an additional
+   * reference. Either way the returned buffer is owned by the caller.
+   */
+  public static I420Buffer rotateI420(I420Buffer buffer, int rotation,
+                                      @Nullable DirectBufferPool bufferPool) {
+    rotation = ((rotation % 360) + 360) % 360;
+    if (rotation == 0) {
+      buffer.retain();
+      return buffer;
+    }
+    final boolean swapSides = rotation % 180 != 0;
+    final int rotatedWidth = swapSides ? buffer.getHeight() : buffer.getWidth();
+    final int rotatedHeight = swapSides ? buffer.getWidth() : buffer.getHeight();
+    final JavaI420Buffer newBuffer = allocate(rotatedWidth, rotatedHeight, bufferPool);
+    YuvHelper.I420Rotate(buffer.getDataY(), buffer.getStrideY(), buffer.getDataU(),
+        buffer.getStrideU(), buffer.getDataV(), buffer.getStrideV(), newBuffer.dataY,
+        newBuffer.strideY, newBuffer.dataU, newBuffer.strideU, newBuffer.dataV, newBuffer.strideV,
+        buffer.getWidth(), buffer.getHeight(), rotation);
+    return newBuffer;
   }
 }
@@ -0,0 +1,161 @@
+package com.test.mp;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of latencies with a fixed memory footprint, cheap enough to record every frame. All
+ * buckets are allocated up front; record() is a few atomic increments and never allocates, locks
+ * or logs.
+ *
+ * <p>Buckets are log-linear: every power of two of microseconds is split into SUB_BUCKET_COUNT
+ * equally wide buckets, so a recorded value is known to within 1/SUB_BUCKET_COUNT of itself, over
+ * the whole range from a microsecond to hours. Percentiles are read from a Snapshot, which can be
+ * taken from any thread while values are being recorded.
+ */
+public class LatencyHistogram {
+  // Values are recorded in units of 2^10 ns, about a microsecond.
+  private static final int UNIT_SHIFT = 10;
+  private static final int SUB_BUCKET_BITS = 4;
+  private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+  // Linear buckets for values below SUB_BUCKET_COUNT, then SUB_BUCKET_COUNT buckets for every
+  // power of two up to the largest long, which has 63 - UNIT_SHIFT significant bits in units.
+  private static final int BUCKET_COUNT =
+      SUB_BUCKET_COUNT + (63 - UNIT_SHIFT - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+  private final AtomicLong totalCount = new AtomicLong();
+  private final AtomicLong sumNs = new AtomicLong();
+  private final AtomicLong minNs = new AtomicLong(Long.MAX_VALUE);
+  private final AtomicLong maxNs = new AtomicLong(Long.MIN_VALUE);
+
+  /** Point in time copy of a LatencyHistogram. */
+  public static class Snapshot {
+    private final long[] counts;
+    private final long count;
+    private final long sumNs;
+    private final long minNs;
+    private final long maxNs;
+
+    private Snapshot(long[] counts, long count, long sumNs, long minNs, long maxNs) {
+      this.counts = counts;
+      this.count = count;
+      this.sumNs = sumNs;
+      this.minNs = minNs;
+      this.maxNs = maxNs;
+    }
+
+    public long getCount() {
+      return count;
+    }
+
+    /** Returns the smallest recorded value, or 0 if nothing was recorded. */
+    public long getMinNs() {
+      return count > 0 ? minNs : 0;
+    }
+
+    /** Returns the largest recorded value, or 0 if nothing was recorded. */
+    public long getMaxNs() {
+      return count > 0 ? maxNs : 0;
+    }
+
+    /** Returns the mean of the recorded values, or 0 if nothing was recorded. */
+    public long getMeanNs() {
+      return count > 0 ? sumNs / count : 0;
+    }
+
+    /**
+     * Returns the value below which |percentile| percent of the recorded values fall, e.g. 99 for
+     * the 99th percentile. The result is the upper bound of the bucket the value fell into,
+     * limited to the largest recorded value. Returns 0 if nothing was recorded.
+     */
+    public long getPercentileNs(double percentile) {
+      if (percentile < 0 || percentile > 100) {
+        throw new IllegalArgumentException("Percentile out of range: " + percentile);
+      }
+      long total = 0;
+      for (long bucketCount : counts) {
+        total += bucketCount;
+      }
+      if (total == 0) {
+        return 0;
+      }
+      // Rank of the value, 1-based: the 50th percentile of 4 values is the second one.
+      final long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+      long seen = 0;
+      for (int i = 0; i < counts.length; ++i) {
+        seen += counts[i];
+        if (seen >= rank) {
+          return Math.min(getBucketUpperBoundNs(i), maxNs);
+        }
+      }
+      return maxNs;
+    }
+  }
+
+  /** Adds |latencyNs| to the histogram. Negative values are recorded as 0. */
+  public void record(long latencyNs) {
+    final long valueNs = Math.max(0, latencyNs);
+    counts.incrementAndGet(getBucketIndex(valueNs));
+    totalCount.incrementAndGet();
+    sumNs.addAndGet(valueNs);
+    long current;
+    while (valueNs < (current = minNs.get()) && !minNs.compareAndSet(current, valueNs)) {}
+    while (valueNs > (current = maxNs.get()) && !maxNs.compareAndSet(current, valueNs)) {}
+  }
+
+  /**
+   * Returns a copy of the current state. Values recorded while the copy is taken may be missing
+   * from some of its statistics.
+   */
+  public Snapshot getSnapshot() {
+    final long[] countsCopy = new long[BUCKET_COUNT];
+    for (int i = 0; i < BUCKET_COUNT; ++i) {
+      countsCopy[i] = counts.get(i);
+    }
+    return new Snapshot(countsCopy, totalCount.get(), sumNs.get(), minNs.get(), maxNs.get());
+  }
+
+  /** Forgets all recorded values. Not atomic with respect to concurrent record() calls. */
+  public void reset() {
+    for (int i = 0; i < BUCKET_COUNT; ++i) {
+      counts.set(i, 0);
+    }
+    totalCount.set(0);
+    sumNs.set(0);
+    minNs.set(Long.MAX_VALUE);
+    maxNs.set(Long.MIN_VALUE);
+  }
+
+  // Returns the bucket of the non-negative |valueNs|.
+  static int getBucketIndex(long valueNs) {
+    final long units = valueNs >>> UNIT_SHIFT;
+    if (units < SUB_BUCKET_COUNT) {
+      return (int) units;
+    }
+    // Above the linear range, the bits below the highest set bit select the sub-bucket.
+    final int shift = 63 - Long.numberOfLeadingZeros(units) - SUB_BUCKET_BITS;
+    final int subBucket = (int) (units >>> shift) & (SUB_BUCKET_COUNT - 1);
+    return SUB_BUCKET_COUNT + shift * SUB_BUCKET_COUNT + subBucket;
+  }
+
+  // Returns the largest value that falls into bucket |index|.
+  static long getBucketUpperBoundNs(int index) {
+    final long firstUnit;
+    final long unitsPerBucket;
+    if (index < SUB_BUCKET_COUNT) {
+      firstUnit = index;
+      unitsPerBucket = 1;
+    } else {
+      final int shift = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_COUNT;
+      final int subBucket = (index - SUB_BUCKET_COUNT) % SUB_BUCKET_COUNT;
+      firstUnit = (long) (SUB_BUCKET_COUNT + subBucket) << shift;
+      unitsPerBucket = 1L << shift;
+    }
+    final long lastUnit = firstUnit + unitsPerBucket - 1;
+    if (lastUnit >= Long.MAX_VALUE >>> UNIT_SHIFT) {
+      return Long.MAX_VALUE;
+    }
+    return ((lastUnit + 1) << UNIT_SHIFT) - 1;
+  }
+}
@@ -0,0 +1,310 @@
+package com.test.mp;
+
+import androidx.annotation.Nullable;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Reads I420 recordings, raw (YuvFileWriter) or Y4M (Y4mFileWriter), through memory mappings of
+ * the file. Frames are returned as JavaI420Buffers wrapping slices of the mapping, so reading a
+ * frame copies nothing; the pages are only read from storage when the planes are accessed.
+ *
+ * <p>Frames can be read in any order. The file is mapped in windows of a few hundred MB, so
+ * recordings larger than a single mapping can be read. When frames are read one after the other,
+ * the following frames are prefetched with MappedByteBuffer.load() on a background thread, so the
+ * next read does not wait for storage.
+ *
+ * <p>The returned buffers stay valid as long as they are referenced, also after close(); their
+ * release() is a no-op. Not thread safe, all calls must come from the same thread.
+ */
+public class MappedRecordingReader implements Closeable {
+  private static final Charset US_ASCII = Charset.forName("US-ASCII");
+  // Size of the mapped windows. Large enough to hold many frames, small enough to always find
+  // address space for, also in 32-bit processes.
+  private static final long WINDOW_SIZE_BYTES = 256 * 1024 * 1024;
+  // The Y4M stream header is a single line, much shorter than this.
+  private static final int MAX_Y4M_HEADER_SIZE = 1024;
+  private static final int DEFAULT_PREFETCH_FRAMES = 4;
+
+  private final RandomAccessFile file;
+  private final FileChannel channel;
+  private final int width;
+  private final int height;
+  private final int frameSize;
+  // Offset of the data of every frame.
+  private final long[] frameOffsets;
+  // Capture timestamps and rotations from a Y4M index, null without one.
+  private final @Nullable long[] timestampsNs;
+  private final @Nullable int[] rotations;
+  private final long frameIntervalNs;
+  private final ExecutorService prefetcher;
+
+  private @Nullable MappedByteBuffer window;
+  private long windowOffset;
+  private int prefetchFrames = DEFAULT_PREFETCH_FRAMES;
+  private int lastFrameIndex = -1;
+  // Frames before this index have been prefetched, or do not need to be.
+  private int prefetchedUntil;
+
+  /** Opens a raw recording of |width| x |height| I420 frames. */
+  public static MappedRecordingReader openRaw(File file, int width, int height)
+      throws IOException {
+    final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+    try {
+      final int frameSize = YuvHelper.getPackedI420Size(width, height);
+      final long[] offsets = new long[(int) (randomAccessFile.length() / frameSize)];
+      for (int i = 0; i < offsets.length; ++i) {
+        offsets[i] = (long) i * frameSize;
+      }
+      return new MappedRecordingReader(randomAccessFile, width, height, offsets,
+          /* timestampsNs= */ null, /* rotations= */ null, /* frameIntervalNs= */ 0);
+    } catch (IOException | RuntimeException e) {
+      randomAccessFile.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Opens a Y4M recording. The frames are located with the Y4mIndex of the recording if there is
+   * one, otherwise by reading the FRAME header of every frame once.
+   */
+  public static MappedRecordingReader openY4m(File file) throws IOException {
+    final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+    try {
+      final FileChannel channel = randomAccessFile.getChannel();
+      final ByteBuffer headerBytes =
+          ByteBuffer.allocate((int) Math.min(MAX_Y4M_HEADER_SIZE, channel.size()));
+      channel.read(headerBytes, 0);
+      final String header = readLine(headerBytes, 0);
+      if (header == null || !header.startsWith("YUV4MPEG2 ")) {
+        throw new IOException("Not a Y4M file: " + file);
+      }
+      int width = 0;
+      int height = 0;
+      long frameIntervalNs = 0;
+      for (String token : header.split(" ")) {
+        if (token.startsWith("W")) {
+          width = Integer.parseInt(token.substring(1));
+        } else if (token.startsWith("H")) {
+          height = Integer.parseInt(token.substring(1));
+        } else if (token.startsWith("F")) {
+          final String[] rate = token.substring(1).split(":");
+          final long numerator = Long.parseLong(rate[0]);
+          if (numerator > 0) {
+            frameIntervalNs = 1_000_000_000L * Long.parseLong(rate[1]) / numerator;
+          }
+        } else if (token.startsWith("C") && !token.startsWith("C420")) {
+          throw new IOException("Unsupported Y4M color space " + token + ": " + file);
+        }
+      }
+      if (width <= 0 || height <= 0) {
+        throw new IOException("Y4M header without a frame size: " + header);
+      }
+
+      final int frameSize = YuvHelper.getPackedI420Size(width, height);
+      long[] offsets = null;
+      long[] timestampsNs = null;
+      int[] rotations = null;
+      if (Y4mIndex.getIndexFile(file).exists()) {
+        try (Y4mIndex index = Y4mIndex.open(file)) {
+          offsets = new long[index.getFrameCount()];
+          timestampsNs = new long[offsets.length];
+          rotations = new int[offsets.length];
+          for (int i = 0; i < offsets.length; ++i) {
+            offsets[i] = index.getFrameOffset(i);
+            timestampsNs[i] = index.getTimestampNs(i);
+            rotations[i] = index.getRotation(i);
+          }
+        }
+      } else {
+        offsets = scanY4mFrames(channel, header.length() + 1, frameSize);
+      }
+      // Drop frames cut short, e.g. by a crash of the writer.
+      int frameCount = offsets.length;
+      while (frameCount > 0 && offsets[frameCount - 1] + frameSize > channel.size()) {
+        --frameCount;
+      }
+      if (frameCount < offsets.length) {
+        offsets = Arrays.copyOf(offsets, frameCount);
+      }
+      return new MappedRecordingReader(randomAccessFile, width, height, offsets, timestampsNs,
+          rotations, frameIntervalNs);
+    } catch (IOException | RuntimeException e) {
+      randomAccessFile.close();
+      throw e;
+    }
+  }
+
+  private MappedRecordingReader(RandomAccessFile file, int width, int height, long[] frameOffsets,
+      @Nullable long[] timestampsNs, @Nullable int[] rotations, long frameIntervalNs) {
+    this.file = file;
+    this.channel = file.getChannel();
+    this.width = width;
+    this.height = height;
+    this.frameSize = YuvHelper.getPackedI420Size(width, height);
+    this.frameOffsets = frameOffsets;
+    this.timestampsNs = timestampsNs;
+    this.rotations = rotations;
+    this.frameIntervalNs = frameIntervalNs;
+    this.prefetcher = Executors.newSingleThreadExecutor(
+        runnable -> new Thread(runnable, "RecordingPrefetcher"));
+  }
+
+  public int getWidth() {
+    return width;
+  }
+
+  public int getHeight() {
+    return height;
+  }
+
+  public int getFrameCount() {
+    return frameOffsets.length;
+  }
+
+  /**
+   * Returns true if the frames have capture timestamps, from a Y4M index or frame rate, and false
+   * for raw recordings, whose frames all have timestamp 0.
+   */
+  public boolean hasTimestamps() {
+    return timestampsNs != null || frameIntervalNs > 0;
+  }
+
+  /** Sets how many frames ahead are prefetched when reading sequentially, 0 disables it. */
+  public void setPrefetchFrames(int prefetchFrames) {
+    this.prefetchFrames = prefetchFrames;
+  }
+
+  /**
+   * Returns frame |index|. The timestamp and rotation come from the Y4M index; without an index
+   * the timestamp is derived from the frame rate in the Y4M header, and is 0 for raw recordings.
+   */
+  public VideoFrame getFrame(int index) throws IOException {
+    if (index < 0 || index >= frameOffsets.length) {
+      throw new IndexOutOfBoundsException("Frame " + index + " of " + frameOffsets.length);
+    }
+    final long offset = frameOffsets[index];
+    final ByteBuffer frame = mapFrame(offset);
+    final int sizeY = width * height;
+    final int chromaWidth = (width + 1) / 2;
+    final int sizeUV = chromaWidth * ((height + 1) / 2);
+    final JavaI420Buffer buffer = JavaI420Buffer.wrap(width, height, slice(frame, 0, sizeY),
+        width, slice(frame, sizeY, sizeUV), chromaWidth, slice(frame, sizeY + sizeUV, sizeUV),
+        chromaWidth, /* releaseCallback= */ null);
+
+    if (index == lastFrameIndex + 1) {
+      prefetchAfter(index);
+    } else {
+      // Random access, restart the prefetch window at the next sequential read.
+      prefetchedUntil = index + 1;
+    }
+    lastFrameIndex = index;
+
+    final long timestampNs =
+        timestampsNs != null ? timestampsNs[index] : (long) index * frameIntervalNs;
+    return new VideoFrame(buffer, rotations != null ? rotations[index] : 0, timestampNs);
+  }
+
+  @Override
+  public void close() throws IOException {
+    prefetcher.shutdownNow();
+    window = null;
+    file.close();
+  }
+
+  // Returns a buffer of |frameSize| bytes at |offset| of the file, from the current window if it
+  // holds the whole frame, otherwise from a new window starting at the frame.
+  private ByteBuffer mapFrame(long offset) throws IOException {
+    if (window == null || offset < windowOffset
+        || offset + frameSize > windowOffset + window.capacity()) {
+      final long size =
+          Math.min(Math.max(WINDOW_SIZE_BYTES, frameSize), channel.size() - offset);
+      window = channel.map(FileChannel.MapMode.READ_ONLY, offset, size);
+      windowOffset = offset;
+    }
+    return slice(window, (int) (offset - windowOffset), frameSize);
+  }
+
+  // Loads the frames after |index| that have not been prefetched yet, up to |prefetchFrames|
+  // ahead, on the prefetch thread.
+  private void prefetchAfter(int index) {
+    final int end = Math.min(frameOffsets.length, index + 1 + prefetchFrames);
+    final int start = Math.max(prefetchedUntil, index + 1);
+    if (start >= end) {
+      return;
+    }
+    prefetchedUntil = end;
+    final long offset = frameOffsets[start];
+    final long size = frameOffsets[end - 1] + frameSize - offset;
+    try {
+      prefetcher.execute(() -> {
+        try {
+          // A separate mapping of the range, the pages it loads land in the shared page cache.
+          channel.map(FileChannel.MapMode.READ_ONLY, offset, size).load();
+        } catch (IOException e) {
+          // Only a hint, the frames are read when accessed.
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      // Closed.
+    }
+  }
+
+  private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+    final ByteBuffer duplicate = buffer.duplicate();
+    duplicate.clear();
+    duplicate.position(offset);
+    duplicate.limit(offset + length);
+    return duplicate.slice();
+  }
+
+  // Returns the line starting at |offset| in |bytes|, without the newline, or null if there is no
+  // newline.
+  private static @Nullable String readLine(ByteBuffer bytes, int offset) {
+    for (int i = offset; i < bytes.position(); ++i) {
+      if (bytes.get(i) == '\n') {
+        final byte[] line = new byte[i - offset];
+        for (int j = 0; j < line.length; ++j) {
+          line[j] = bytes.get(offset + j);
+        }
+        return new String(line, US_ASCII);
+      }
+    }
+    return null;
+  }
+
+  // Returns the data offsets of the frames after the stream header, by reading each FRAME header.
+  private static long[] scanY4mFrames(FileChannel channel, long position, int frameSize)
+      throws IOException {
+    final long fileSize = channel.size();
+    final ByteBuffer line = ByteBuffer.allocate(MAX_Y4M_HEADER_SIZE);
+    long[] offsets = new long[64];
+    int count = 0;
+    while (position < fileSize) {
+      line.clear();
+      channel.read(line, position);
+      final String frameHeader = readLine(line, 0);
+      if (frameHeader == null || !frameHeader.startsWith("FRAME")) {
+        throw new IOException("Expected a FRAME header at " + position);
+      }
+      final long dataOffset = position + frameHeader.length() + 1;
+      if (count == offsets.length) {
+        offsets = Arrays.copyOf(offsets, 2 * count);
+      }
+      offsets[count++] = dataOffset;
+      position = dataOffset + frameSize;
+    }
+    return Arrays.copyOf(offsets, count);
+  }
+}
@@ -0,0 +1,110 @@
+package com.test.mp;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Writes frames like YuvFileWriter, but through memory mappings of the recording file instead of
+ * write calls. The file is mapped in large segments, which grow the file ahead of the frames;
+ * each frame is then a copy into the page cache without a system call. close() truncates the file
+ * to the length of the written frames.
+ *
+ * <p>A segment is only replaced when the next frame does not fit, so a frame never straddles two
+ * mappings. Old segments are unmapped by the garbage collector. Not thread safe, all calls must
+ * come from the same thread.
+ */
+public class MappedYuvFileWriter implements FrameWriter {
+  // About eleven 1080x2400 I420 frames per mapping.
+  private static final int DEFAULT_SEGMENT_SIZE_BYTES = 64 * 1024 * 1024;
+
+  private final RandomAccessFile file;
+  private final FileChannel channel;
+  private final ScreenCapturer.OutputFormat format;
+  private final int segmentSizeBytes;
+  private MappedByteBuffer segment;
+  // File offset of the first byte of |segment|.
+  private long segmentOffset;
+  private long framesWritten;
+  private long bytesWritten;
+
+  public MappedYuvFileWriter(File file, ScreenCapturer.OutputFormat format) throws IOException {
+    this(file, format, DEFAULT_SEGMENT_SIZE_BYTES);
+  }
+
+  /**
+   * Creates |file|, or truncates it if it exists, and writes frames to it in |format| through
+   * mappings of |segmentSizeBytes|, or of one frame if that is larger.
+   */
+  public MappedYuvFileWriter(File file, ScreenCapturer.OutputFormat format, int segmentSizeBytes)
+      throws IOException {
+    if (segmentSizeBytes <= 0) {
+      throw new IllegalArgumentException("segmentSizeBytes must be positive: " + segmentSizeBytes);
+    }
+    this.file = new RandomAccessFile(file, "rw");
+    this.channel = this.file.getChannel();
+    this.format = format;
+    this.segmentSizeBytes = segmentSizeBytes;
+    channel.truncate(0);
+  }
+
+  @Override
+  public void writeFrame(VideoFrame.I420Buffer buffer, int rotation, long timestampNs)
+      throws IOException {
+    final int size = YuvHelper.getPackedI420Size(buffer.getWidth(), buffer.getHeight());
+    final ByteBuffer dst = reserve(size);
+    YuvFileWriter.packFrame(buffer, format, dst);
+    bytesWritten += size;
+    ++framesWritten;
+  }
+
+  public long getFramesWritten() {
+    return framesWritten;
+  }
+
+  public long getBytesWritten() {
+    return bytesWritten;
+  }
+
+  @Override
+  public void flush() throws IOException {
+    if (segment != null) {
+      segment.force();
+    }
+    // Covers the pages of earlier segments that have not been written back yet.
+    channel.force(/* metaData= */ false);
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      flush();
+      segment = null;
+      // Drop the unused tail of the last segment.
+      channel.truncate(bytesWritten);
+    } finally {
+      file.close();
+    }
+  }
+
+  // Returns a buffer of |size| bytes at the end of the written frames, mapping a new segment if
+  // the current one is too small.
+  private ByteBuffer reserve(int size) throws IOException {
+    final long end = bytesWritten + size;
+    if (segment == null || end > segmentOffset + segment.capacity()) {
+      segment = null;
+      segmentOffset = bytesWritten;
+      // Mapping past the end of the file grows it to the end of the mapping.
+      segment = channel.map(
+          FileChannel.MapMode.READ_WRITE, segmentOffset, Math.max(segmentSizeBytes, size));
+    }
+    final ByteBuffer dst = segment.duplicate();
+    dst.clear();
+    dst.position((int) (bytesWritten - segmentOffset));
+    dst.limit(dst.position() + size);
+    return dst.slice();
+  }
+}
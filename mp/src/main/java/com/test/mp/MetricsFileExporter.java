@@ -0,0 +1,117 @@
+package com.test.mp;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * MetricsRegistry.Listener that appends every snapshot to a local file as one JSON object per
+ * line, e.g.
+ *
+ * <pre>
+ * {"timestampMs":1700000000000,"counters":{"frames.captured":300},
+ *  "rates":{"frames.captured":29.97},"gauges":{"writeQueue.depth":1}}
+ * </pre>
+ *
+ * (on a single line). Every line is flushed as it is written, so the file can be read while the
+ * capture is running and ends with the last complete report if the process dies.
+ */
+public class MetricsFileExporter implements MetricsRegistry.Listener, Closeable {
+  private static final String TAG = "MetricsFileExporter";
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  private final File file;
+  private final Writer writer;
+  private final StringBuilder line = new StringBuilder();
+  private boolean failed;
+
+  /** Appends to |file|, creating it if needed. */
+  public MetricsFileExporter(File file) throws IOException {
+    this.file = file;
+    this.writer = new OutputStreamWriter(new FileOutputStream(file, /* append= */ true), UTF_8);
+  }
+
+  public File getFile() {
+    return file;
+  }
+
+  @Override
+  public synchronized void onMetrics(MetricsRegistry.Snapshot snapshot) {
+    if (failed) {
+      return;
+    }
+    line.setLength(0);
+    appendJson(line, snapshot);
+    line.append('\n');
+    try {
+      writer.append(line);
+      writer.flush();
+    } catch (IOException e) {
+      // Metrics are not worth failing the capture for, stop exporting.
+      failed = true;
+      Logging.e(TAG, "Failed to write metrics to " + file, e);
+    }
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    writer.close();
+  }
+
+  /** Appends |snapshot| to |json| as a JSON object. */
+  static void appendJson(StringBuilder json, MetricsRegistry.Snapshot snapshot) {
+    json.append("{\"timestampMs\":").append(snapshot.getTimestampMs());
+    json.append(",\"counters\":");
+    appendObject(json, snapshot.getCounters());
+    json.append(",\"rates\":");
+    appendObject(json, snapshot.getRates());
+    json.append(",\"gauges\":");
+    appendObject(json, snapshot.getGauges());
+    json.append('}');
+  }
+
+  private static void appendObject(StringBuilder json, Map<String, ? extends Number> values) {
+    json.append('{');
+    boolean first = true;
+    for (Map.Entry<String, ? extends Number> entry : values.entrySet()) {
+      if (!first) {
+        json.append(',');
+      }
+      first = false;
+      appendString(json, entry.getKey());
+      json.append(':');
+      final Number value = entry.getValue();
+      if (value instanceof Double) {
+        final double number = value.doubleValue();
+        // JSON has no NaN or infinity.
+        json.append(Double.isNaN(number) || Double.isInfinite(number)
+            ? "null"
+            : String.format(Locale.US, "%.3f", number));
+      } else {
+        json.append(value.longValue());
+      }
+    }
+    json.append('}');
+  }
+
+  private static void appendString(StringBuilder json, String value) {
+    json.append('"');
+    for (int i = 0; i < value.length(); ++i) {
+      final char c = value.charAt(i);
+      if (c == '"' || c == '\\') {
+        json.append('\\').append(c);
+      } else if (c < 0x20) {
+        json.append(String.format(Locale.US, "\\u%04x", (int) c));
+      } else {
+        json.append(c);
+      }
+    }
+    json.append('"');
+  }
+}
@@ -0,0 +1,269 @@
+package com.test.mp;
+
+import androidx.annotation.Nullable;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Named counters and gauges of the capture pipeline. Counters only go up and are either owned by
+ * the registry, see counter(), or read from a monotonic value kept elsewhere, see
+ * registerCounter(). Gauges are read when a snapshot is taken.
+ *
+ * <p>A Snapshot holds the values of all metrics at one point in time, and the rate per second of
+ * every counter since the previous snapshot, e.g. the effective frame rate. Rates are measured with
+ * System.nanoTime(), so that changes of the wall clock do not skew them. startReporting() takes
+ * snapshots periodically on a thread of the registry and hands them to the registered listeners.
+ *
+ * <p>This class is thread safe. Counter increments are a single atomic add.
+ */
+public class MetricsRegistry {
+  private static final String TAG = "MetricsRegistry";
+
+  /** Value read when a snapshot is taken. */
+  public interface Source {
+    long getValue();
+  }
+
+  /** Receives the periodic snapshots, on the reporting thread of the registry. */
+  public interface Listener {
+    void onMetrics(Snapshot snapshot);
+  }
+
+  /** Monotonic count owned by the registry. */
+  public static class Counter implements Source {
+    private final AtomicLong value = new AtomicLong();
+
+    public void increment() {
+      value.incrementAndGet();
+    }
+
+    public void add(long delta) {
+      value.addAndGet(delta);
+    }
+
+    @Override
+    public long getValue() {
+      return value.get();
+    }
+  }
+
+  /** Values of all metrics at one point in time. The maps are sorted by name. */
+  public static class Snapshot {
+    private final long timestampMs;
+    private final long timeNs;
+    private final Map<String, Long> counters;
+    private final Map<String, Double> rates;
+    private final Map<String, Long> gauges;
+
+    Snapshot(long timestampMs, long timeNs, Map<String, Long> counters, Map<String, Double> rates,
+        Map<String, Long> gauges) {
+      this.timestampMs = timestampMs;
+      this.timeNs = timeNs;
+      this.counters = Collections.unmodifiableMap(counters);
+      this.rates = Collections.unmodifiableMap(rates);
+      this.gauges = Collections.unmodifiableMap(gauges);
+    }
+
+    /**
+     * Returns the System.currentTimeMillis() time the snapshot was taken at, for display only. Use
+     * getTimeNs() for intervals between snapshots.
+     */
+    public long getTimestampMs() {
+      return timestampMs;
+    }
+
+    /** Returns the System.nanoTime() time the snapshot was taken at. */
+    public long getTimeNs() {
+      return timeNs;
+    }
+
+    public Map<String, Long> getCounters() {
+      return counters;
+    }
+
+    /**
+     * Returns the increase per second of the counters since the previous snapshot. Empty if the
+     * snapshot was taken without a previous one.
+     */
+    public Map<String, Double> getRates() {
+      return rates;
+    }
+
+    public Map<String, Long> getGauges() {
+      return gauges;
+    }
+
+    /** Returns the value of counter |name|, or 0 if there is none. */
+    public long getCounter(String name) {
+      final Long value = counters.get(name);
+      return value != null ? value : 0;
+    }
+
+    /** Returns the rate of counter |name|, or 0 if it is not known. */
+    public double getRate(String name) {
+      final Double rate = rates.get(name);
+      return rate != null ? rate : 0;
+    }
+
+    /** Returns the value of gauge |name|, or 0 if there is none. */
+    public long getGauge(String name) {
+      final Long value = gauges.get(name);
+      return value != null ? value : 0;
+    }
+  }
+
+  private final Object lock = new Object();
+  // Guarded by |lock|.
+  private final Map<String, Source> counters = new TreeMap<>();
+  private final Map<String, Source> gauges = new TreeMap<>();
+  private @Nullable ScheduledExecutorService reportingExecutor;
+  private @Nullable Snapshot lastReport;
+
+  private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+
+  /** Returns the counter |name|, creating it the first time. */
+  public Counter counter(String name) {
+    synchronized (lock) {
+      final Source existing = counters.get(name);
+      if (existing instanceof Counter) {
+        return (Counter) existing;
+      }
+      if (existing != null) {
+        throw new IllegalArgumentException("Counter " + name + " is registered with a source");
+      }
+      final Counter counter = new Counter();
+      counters.put(name, counter);
+      return counter;
+    }
+  }
+
+  /**
+   * Registers |source| as counter |name|, replacing a previous registration. The values of
+   * |source| must not decrease.
+   */
+  public void registerCounter(String name, Source source) {
+    synchronized (lock) {
+      counters.put(name, source);
+    }
+  }
+
+  /** Registers |source| as gauge |name|, replacing a previous registration. */
+  public void registerGauge(String name, Source source) {
+    synchronized (lock) {
+      gauges.put(name, source);
+    }
+  }
+
+  /** Removes the counter or gauge |name|, e.g. when the object it reads is gone. */
+  public void unregister(String name) {
+    synchronized (lock) {
+      counters.remove(name);
+      gauges.remove(name);
+    }
+  }
+
+  public Snapshot getSnapshot() {
+    return getSnapshot(/* previous= */ null);
+  }
+
+  /** Returns the current values, with the rates of the counters since |previous| if given. */
+  public Snapshot getSnapshot(@Nullable Snapshot previous) {
+    final Map<String, Long> counterValues = new TreeMap<>();
+    final Map<String, Long> gaugeValues = new TreeMap<>();
+    final long timestampMs;
+    final long timeNs;
+    synchronized (lock) {
+      timestampMs = System.currentTimeMillis();
+      timeNs = System.nanoTime();
+      for (Map.Entry<String, Source> entry : counters.entrySet()) {
+        counterValues.put(entry.getKey(), entry.getValue().getValue());
+      }
+      for (Map.Entry<String, Source> entry : gauges.entrySet()) {
+        gaugeValues.put(entry.getKey(), entry.getValue().getValue());
+      }
+    }
+    final Map<String, Double> rates = new TreeMap<>();
+    if (previous != null && timeNs - previous.timeNs > 0) {
+      final double seconds = (timeNs - previous.timeNs) / 1e9;
+      for (Map.Entry<String, Long> entry : counterValues.entrySet()) {
+        final Long previousValue = previous.counters.get(entry.getKey());
+        // A counter that went down was re-registered for a new recording, count from zero.
+        final long delta = previousValue != null && previousValue <= entry.getValue()
+            ? entry.getValue() - previousValue
+            : entry.getValue();
+        rates.put(entry.getKey(), delta / seconds);
+      }
+    }
+    return new Snapshot(timestampMs, timeNs, counterValues, rates, gaugeValues);
+  }
+
+  public void addListener(Listener listener) {
+    listeners.add(listener);
+  }
+
+  public void removeListener(Listener listener) {
+    listeners.remove(listener);
+  }
+
+  /**
+   * Hands a snapshot to the listeners every |periodMs|, on a thread of the registry, until
+   * stopReporting() is called. Does nothing if already reporting.
+   */
+  public void startReporting(long periodMs) {
+    synchronized (lock) {
+      if (reportingExecutor != null) {
+        return;
+      }
+      lastReport = getSnapshot();
+      reportingExecutor = Executors.newSingleThreadScheduledExecutor(
+          runnable -> new Thread(runnable, "MetricsReporter"));
+      reportingExecutor.scheduleAtFixedRate(
+          this::report, periodMs, periodMs, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * Stops the periodic reports, after handing a last snapshot to the listeners so that nothing
+   * since the previous report is lost. Waits for the reporting thread to finish.
+   */
+  public void stopReporting() {
+    final ScheduledExecutorService executor;
+    synchronized (lock) {
+      executor = reportingExecutor;
+      reportingExecutor = null;
+    }
+    if (executor == null) {
+      return;
+    }
+    executor.shutdown();
+    try {
+      executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    report();
+  }
+
+  private void report() {
+    final Snapshot snapshot;
+    synchronized (lock) {
+      snapshot = getSnapshot(lastReport);
+      lastReport = snapshot;
+    }
+    for (Listener listener : listeners) {
+      try {
+        listener.onMetrics(snapshot);
+      } catch (RuntimeException e) {
+        // An exception would cancel the periodic task, keep reporting to the other listeners.
+        Logging.e(TAG, "Metrics listener failed", e);
+      }
+    }
+  }
+}
@@ -0,0 +1,310 @@
+package com.test.mp;
+
+import androidx.annotation.Nullable;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+
+/**
+ * Writes the same files as CompressedFrameWriter, compressing several frames at once on a pool of
+ * worker threads.
+ *
+ * <p>writeFrame() packs the frame and hands it to a worker. The workers compress frames out of
+ * order; finished records wait in a reorder buffer until all earlier frames have been written, so
+ * the file holds the frames strictly in the order, and thus the timestamp order, they were
+ * written. At most |window| frames are in flight between writeFrame() and the file, writeFrame()
+ * blocks while the window is full. A delta frame only needs the raw previous frame, which is kept
+ * until its successor has been compressed, so delta coding does not serialize the workers.
+ *
+ * <p>writeFrame(), flush() and close() must be called from the same thread.
+ */
+public class ParallelCompressedFrameWriter implements FrameWriter {
+  // Output buffer of the record stream, large enough for most delta frames of screen content.
+  private static final int OUTPUT_BUFFER_SIZE = 256 * 1024;
+  // Stands in for the record of a frame that could not be compressed.
+  private static final byte[] FAILED_RECORD = new byte[0];
+
+  // A packed frame, shared by its own compression job and the job of the next frame.
+  private class PackedFrame {
+    final AtomicInteger refCount = new AtomicInteger();
+    byte[] data = new byte[0];
+    int size;
+
+    void release() {
+      if (refCount.decrementAndGet() == 0) {
+        synchronized (freeFrames) {
+          freeFrames.addLast(this);
+        }
+      }
+    }
+  }
+
+  private final FileOutputStream fileStream;
+  private final DataOutputStream output;
+  private final boolean usePreviousFrame;
+  private final int compressionLevel;
+  private final int window;
+  private final ExecutorService workers;
+  private final Semaphore windowPermits;
+  private final ArrayDeque<DeflateFrameCodec.Encoder> encoders = new ArrayDeque<>();
+  private final ArrayDeque<PackedFrame> freeFrames = new ArrayDeque<>();
+  // Compressed records by sequence number, waiting for their predecessors.
+  private final Map<Long, byte[]> reorderBuffer = new HashMap<>();
+  // Held while records are written to |output|.
+  private final Object outputLock = new Object();
+
+  // Only accessed on the writing thread.
+  private @Nullable PackedFrame previousFrame;
+  private int previousWidth;
+  private int previousHeight;
+  private long framesSinceKeyFrame;
+  private long nextSequence;
+
+  // Guarded by |reorderBuffer|.
+  private long nextSequenceToWrite;
+  private @Nullable IOException writeException;
+  private long framesWritten;
+  private long rawBytes;
+  private long compressedBytes;
+
+  /** Compresses on |threads| workers with the fastest compression level and 2 frames per thread. */
+  public ParallelCompressedFrameWriter(File file, boolean usePreviousFrame, int threads)
+      throws IOException {
+    this(file, usePreviousFrame, Deflater.BEST_SPEED, threads, 2 * threads);
+  }
+
+  /**
+   * Creates |file|, or truncates it if it exists, and compresses frames with |compressionLevel| on
+   * |threads| workers, with at most |window| frames in flight.
+   */
+  public ParallelCompressedFrameWriter(File file, boolean usePreviousFrame, int compressionLevel,
+      int threads, int window) throws IOException {
+    if (threads < 1 || window < 1) {
+      throw new IllegalArgumentException("threads and window must be positive: " + threads + ", "
+          + window);
+    }
+    this.fileStream = new FileOutputStream(file);
+    this.output = new DataOutputStream(new BufferedOutputStream(fileStream, OUTPUT_BUFFER_SIZE));
+    this.usePreviousFrame = usePreviousFrame;
+    this.compressionLevel = compressionLevel;
+    this.window = window;
+    this.windowPermits = new Semaphore(window);
+    final AtomicInteger threadCount = new AtomicInteger();
+    this.workers = Executors.newFixedThreadPool(threads,
+        runnable -> new Thread(runnable, "FrameCompressor-" + threadCount.getAndIncrement()));
+    output.writeInt(DeflateFrameCodec.FILE_MAGIC);
+    output.writeInt(DeflateFrameCodec.FILE_VERSION);
+  }
+
+  /**
+   * Packs |buffer| and queues it for compression. Blocks while |window| frames are in flight.
+   * Throws the error of an earlier frame, if writing it failed.
+   */
+  @Override
+  public void writeFrame(VideoFrame.I420Buffer buffer, int rotation, long timestampNs)
+      throws IOException {
+    throwIfFailed();
+    windowPermits.acquireUninterruptibly();
+
+    final int width = buffer.getWidth();
+    final int height = buffer.getHeight();
+    final PackedFrame frame = acquireFrame(YuvHelper.getPackedI420Size(width, height));
+    YuvHelper.I420Copy(buffer.getDataY(), buffer.getStrideY(), buffer.getDataU(),
+        buffer.getStrideU(), buffer.getDataV(), buffer.getStrideV(),
+        ByteBuffer.wrap(frame.data), width, height);
+
+    final boolean delta = usePreviousFrame && previousFrame != null && width == previousWidth
+        && height == previousHeight
+        && framesSinceKeyFrame < CompressedFrameWriter.KEY_FRAME_INTERVAL - 1;
+    final PackedFrame reference = delta ? previousFrame : null;
+    framesSinceKeyFrame = delta ? framesSinceKeyFrame + 1 : 0;
+    // One reference for the job of this frame, one for the job of the next frame.
+    frame.refCount.set(usePreviousFrame ? 2 : 1);
+    if (previousFrame != null && reference == null) {
+      // No job will use the previous frame anymore.
+      previousFrame.release();
+    }
+    previousFrame = usePreviousFrame ? frame : null;
+    previousWidth = width;
+    previousHeight = height;
+
+    final long sequence = nextSequence++;
+    workers.execute(() -> compress(sequence, frame, reference, width, height, rotation,
+        timestampNs));
+  }
+
+  public long getFramesWritten() {
+    synchronized (reorderBuffer) {
+      return framesWritten;
+    }
+  }
+
+  /** Returns the packed I420 size of the written frames. */
+  public long getRawBytes() {
+    synchronized (reorderBuffer) {
+      return rawBytes;
+    }
+  }
+
+  /** Returns the size of the written frame records. */
+  public long getCompressedBytes() {
+    synchronized (reorderBuffer) {
+      return compressedBytes;
+    }
+  }
+
+  /**
+   * Forces the records written so far to storage. Frames still in flight are not waited for, they
+   * are forced by a later flush(), so that flushing does not drain the window.
+   */
+  @Override
+  public void flush() throws IOException {
+    throwIfFailed();
+    synchronized (outputLock) {
+      output.flush();
+      fileStream.getFD().sync();
+    }
+  }
+
+  /** Waits until all frames in flight are written and closes the file. */
+  @Override
+  public void close() throws IOException {
+    try {
+      awaitInFlightFrames();
+    } finally {
+      workers.shutdown();
+      if (previousFrame != null) {
+        previousFrame.release();
+        previousFrame = null;
+      }
+      synchronized (encoders) {
+        for (DeflateFrameCodec.Encoder encoder : encoders) {
+          encoder.release();
+        }
+        encoders.clear();
+      }
+      synchronized (outputLock) {
+        output.close();
+      }
+    }
+    throwIfFailed();
+  }
+
+  private void awaitInFlightFrames() {
+    windowPermits.acquireUninterruptibly(window);
+    windowPermits.release(window);
+  }
+
+  private void throwIfFailed() throws IOException {
+    synchronized (reorderBuffer) {
+      if (writeException != null) {
+        throw new IOException("Writing a compressed frame failed", writeException);
+      }
+    }
+  }
+
+  private PackedFrame acquireFrame(int size) {
+    PackedFrame frame;
+    synchronized (freeFrames) {
+      frame = freeFrames.pollFirst();
+    }
+    if (frame == null) {
+      frame = new PackedFrame();
+    }
+    if (frame.data.length != size) {
+      frame.data = new byte[size];
+    }
+    frame.size = size;
+    return frame;
+  }
+
+  // Runs on a worker thread.
+  private void compress(long sequence, PackedFrame frame, @Nullable PackedFrame reference,
+      int width, int height, int rotation, long timestampNs) {
+    DeflateFrameCodec.Encoder encoder;
+    synchronized (encoders) {
+      encoder = encoders.pollFirst();
+    }
+    if (encoder == null) {
+      encoder = new DeflateFrameCodec.Encoder(compressionLevel);
+    }
+    // |frame| may be reused for another frame once released.
+    final int rawSize = frame.size;
+    byte[] record;
+    try {
+      encoder.encode(frame.data, frame.size, reference != null ? reference.data : null, width,
+          height, rotation, timestampNs);
+      record = Arrays.copyOf(encoder.getRecord(), encoder.getRecordLength());
+    } catch (RuntimeException e) {
+      // Keep the reorder buffer moving, the failure is reported to the writing thread.
+      record = FAILED_RECORD;
+      synchronized (reorderBuffer) {
+        if (writeException == null) {
+          writeException = new IOException("Compressing frame " + sequence + " failed", e);
+        }
+      }
+    } finally {
+      synchronized (encoders) {
+        encoders.addLast(encoder);
+      }
+      if (reference != null) {
+        reference.release();
+      }
+      frame.release();
+    }
+
+    synchronized (reorderBuffer) {
+      reorderBuffer.put(sequence, record);
+      rawBytes += rawSize;
+    }
+    writeReadyRecords();
+  }
+
+  // Writes the records that are next in order. Runs on a worker thread.
+  private void writeReadyRecords() {
+    synchronized (outputLock) {
+      while (true) {
+        final byte[] record;
+        final boolean failed;
+        synchronized (reorderBuffer) {
+          record = reorderBuffer.remove(nextSequenceToWrite);
+          if (record == null) {
+            return;
+          }
+          ++nextSequenceToWrite;
+          failed = writeException != null;
+        }
+        try {
+          if (!failed && record != FAILED_RECORD) {
+            output.writeInt(record.length);
+            output.write(record);
+          }
+        } catch (IOException e) {
+          synchronized (reorderBuffer) {
+            writeException = e;
+          }
+        }
+        synchronized (reorderBuffer) {
+          if (writeException == null && record != FAILED_RECORD) {
+            ++framesWritten;
+            compressedBytes += 4 + record.length;
+          }
+        }
+        windowPermits.release();
+      }
+    }
+  }
+}
@@ -0,0 +1,78 @@
+package com.test.mp;
+
+import java.util.Locale;
+
+/**
+ * Latency histograms of the stages a captured frame goes through on its way to the recording.
+ * The latencies measured from the capture are computed against VideoFrame.getTimestampNs(), which
+ * for frames of a SurfaceTextureHelper is in the System.nanoTime() time base.
+ *
+ * <p>Recording is lock free and does not allocate, so it can be done for every frame on the
+ * capture, executor and writer threads. Snapshots can be taken at any time from any thread.
+ */
+public class PipelineLatency {
+  /** Stages of the recording pipeline. */
+  public enum Stage {
+    /** From the capture timestamp until the executor starts processing the frame. */
+    CAPTURE_TO_DISPATCH,
+    /** Conversion of the texture frame to an I420 buffer, including the GPU readback. */
+    TO_I420,
+    /**
+     * From the converted frame to its hand-off to the write queue: rotation, if it is applied,
+     * and waiting for room in the queue.
+     */
+    REPACK,
+    /** Writing a dequeued frame, including packing it into the output format. */
+    WRITE,
+    /** From the capture timestamp until the frame has been written. */
+    END_TO_END
+  }
+
+  private final LatencyHistogram[] histograms = new LatencyHistogram[Stage.values().length];
+
+  public PipelineLatency() {
+    for (int i = 0; i < histograms.length; ++i) {
+      histograms[i] = new LatencyHistogram();
+    }
+  }
+
+  /** Records that |stage| took |latencyNs| for one frame. */
+  public void record(Stage stage, long latencyNs) {
+    histograms[stage.ordinal()].record(latencyNs);
+  }
+
+  /**
+   * Records the time from the capture of the frame stamped |timestampNs| until |nowNs| for
+   * |stage|.
+   */
+  public void recordSinceCapture(Stage stage, long timestampNs, long nowNs) {
+    histograms[stage.ordinal()].record(nowNs - timestampNs);
+  }
+
+  public LatencyHistogram.Snapshot getSnapshot(Stage stage) {
+    return histograms[stage.ordinal()].getSnapshot();
+  }
+
+  /** Forgets the latencies recorded so far, e.g. at the start of a recording. */
+  public void reset() {
+    for (LatencyHistogram histogram : histograms) {
+      histogram.reset();
+    }
+  }
+
+  /** Returns a one line per stage summary of the percentiles in milliseconds, for logging. */
+  public String getSummary() {
+    final StringBuilder summary = new StringBuilder();
+    for (Stage stage : Stage.values()) {
+      final LatencyHistogram.Snapshot snapshot = getSnapshot(stage);
+      if (summary.length() > 0) {
+        summary.append('\n');
+      }
+      summary.append(String.format(Locale.US,
+          "%s: count %d p50 %.2fms p90 %.2fms p99 %.2fms max %.2fms", stage, snapshot.getCount(),
+          snapshot.getPercentileNs(50) / 1e6, snapshot.getPercentileNs(90) / 1e6,
+          snapshot.getPercentileNs(99) / 1e6, snapshot.getMaxNs() / 1e6));
+    }
+    return summary.toString();
+  }
+}
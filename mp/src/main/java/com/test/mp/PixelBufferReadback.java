@@ -0,0 +1,139 @@
+package com.test.mp;
+
+import androidx.annotation.Nullable;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * Reads the bound framebuffer back without waiting for the GPU. Every read goes into one of
+ * |bufferCount| pixel pack buffers, with a fence behind it, and the pixels are handed to its
+ * callback once a later read finds the fence signaled. Results are therefore delivered a frame
+ * late, or more while the GPU is behind, in the order they were read. When all buffers are
+ * pending, the next read waits for the oldest.
+ *
+ * <p>Not thread safe, must be used on the thread with the GL context of |gl|.
+ */
+class PixelBufferReadback {
+  /** Receives the pixels of a read. */
+  interface Callback {
+    /**
+     * Called with the RGBA pixels of the read, taken from the buffer pool. The callee owns the
+     * buffer and should return it to the pool when done.
+     */
+    void onPixelsRead(ByteBuffer pixels);
+  }
+
+  // Upper bound of the wait for a fence before mapping anyway, which then blocks until the GPU is
+  // done. Only reached if the GPU is stuck.
+  private static final long MAX_FENCE_WAIT_NS = 100_000_000L;
+
+  private static class Read {
+    int buffer;
+    int bufferSizeBytes;
+    int sizeBytes;
+    long sync;
+    @Nullable Callback callback;
+  }
+
+  private final PixelPackGl gl;
+  private final DirectBufferPool bufferPool;
+  private final ArrayDeque<Read> freeReads = new ArrayDeque<>();
+  // Oldest first.
+  private final ArrayDeque<Read> pendingReads = new ArrayDeque<>();
+
+  PixelBufferReadback(PixelPackGl gl, DirectBufferPool bufferPool, int bufferCount) {
+    if (bufferCount < 2) {
+      throw new IllegalArgumentException("At least two buffers are needed: " + bufferCount);
+    }
+    this.gl = gl;
+    this.bufferPool = bufferPool;
+    // The GL buffers are created on first use, on the GL thread.
+    for (int i = 0; i < bufferCount; ++i) {
+      freeReads.add(new Read());
+    }
+  }
+
+  /**
+   * Starts reading the RGBA pixels of the |width| x |height| area at the origin of the bound
+   * framebuffer. The callbacks of earlier reads that have completed in the meantime are called
+   * before this returns, |callback| is called by a later call.
+   */
+  void readPixels(int width, int height, Callback callback) {
+    if (freeReads.isEmpty()) {
+      complete(pendingReads.poll(), /* wait= */ true);
+    }
+    final Read read = freeReads.poll();
+    final int sizeBytes = width * height * 4;
+    if (read.buffer == 0) {
+      read.buffer = gl.createBuffer(sizeBytes);
+      read.bufferSizeBytes = sizeBytes;
+    } else if (read.bufferSizeBytes != sizeBytes) {
+      gl.resizeBuffer(read.buffer, sizeBytes);
+      read.bufferSizeBytes = sizeBytes;
+    }
+    gl.readPixels(read.buffer, width, height);
+    read.sync = gl.fenceSync();
+    read.sizeBytes = sizeBytes;
+    read.callback = callback;
+    pendingReads.add(read);
+
+    // Hand out the earlier reads the GPU has finished, while it works on this one.
+    while (pendingReads.size() > 1 && gl.clientWaitSync(pendingReads.peek().sync, 0)) {
+      complete(pendingReads.poll(), /* wait= */ false);
+    }
+  }
+
+  /** Returns the number of reads whose callbacks have not been called yet. */
+  int getPendingCount() {
+    return pendingReads.size();
+  }
+
+  /**
+   * Waits for all pending reads and calls their callbacks, e.g. when no more frames are coming to
+   * push them out.
+   */
+  void flush() {
+    Read read;
+    while ((read = pendingReads.poll()) != null) {
+      complete(read, /* wait= */ true);
+    }
+  }
+
+  /** Deletes the GL objects. The callbacks of pending reads are not called. */
+  void release() {
+    Read read;
+    while ((read = pendingReads.poll()) != null) {
+      gl.deleteSync(read.sync);
+      read.callback = null;
+      freeReads.add(read);
+    }
+    for (Read freeRead : freeReads) {
+      if (freeRead.buffer != 0) {
+        gl.deleteBuffer(freeRead.buffer);
+        freeRead.buffer = 0;
+        freeRead.bufferSizeBytes = 0;
+      }
+    }
+  }
+
+  private void complete(Read read, boolean wait) {
+    if (wait) {
+      gl.clientWaitSync(read.sync, MAX_FENCE_WAIT_NS);
+    }
+    gl.deleteSync(read.sync);
+    read.sync = 0;
+    final ByteBuffer pixels = bufferPool.acquire(read.sizeBytes);
+    final ByteBuffer mapped = gl.mapBuffer(read.buffer, read.sizeBytes);
+    try {
+      pixels.put(mapped);
+    } finally {
+      gl.unmapBuffer(read.buffer);
+    }
+    pixels.flip();
+    final Callback callback = read.callback;
+    read.callback = null;
+    freeReads.add(read);
+    callback.onPixelsRead(pixels);
+  }
+}
@@ -0,0 +1,43 @@
+package com.test.mp;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The OpenGL ES 3.0 calls PixelBufferReadback reads pixels back with: pixel pack buffers and fence
+ * syncs. Implemented on the GL thread by Gles30PixelPackGl, and by fakes in tests that run without
+ * a GPU.
+ */
+interface PixelPackGl {
+  /** Creates a pixel pack buffer of |sizeBytes| and returns its id. */
+  int createBuffer(int sizeBytes);
+
+  /** Reallocates |buffer| to |sizeBytes|, dropping its contents. */
+  void resizeBuffer(int buffer, int sizeBytes);
+
+  void deleteBuffer(int buffer);
+
+  /**
+   * Starts reading the RGBA pixels of the |width| x |height| area at the origin of the bound
+   * framebuffer into |buffer|. Returns without waiting for the GPU.
+   */
+  void readPixels(int buffer, int width, int height);
+
+  /** Inserts a fence after the commands issued so far, and returns it. */
+  long fenceSync();
+
+  /**
+   * Waits up to |timeoutNs| for |sync| to be signaled, flushing the commands before it. Returns
+   * true if it is signaled. A timeout of 0 only checks.
+   */
+  boolean clientWaitSync(long sync, long timeoutNs);
+
+  void deleteSync(long sync);
+
+  /**
+   * Maps the first |sizeBytes| of |buffer| for reading. The returned buffer is only valid until
+   * unmapBuffer() is called.
+   */
+  ByteBuffer mapBuffer(int buffer, int sizeBytes);
+
+  void unmapBuffer(int buffer);
+}
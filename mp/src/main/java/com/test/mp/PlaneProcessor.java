@@ -0,0 +1,135 @@
+package com.test.mp;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs per-row image work on all cores. The rows of a plane are split into horizontal stripes
+ * that are processed concurrently on a ForkJoinPool, one stripe per worker. Planes smaller than
+ * |minParallelBytes| are processed on the calling thread, since handing them to the pool costs
+ * more than it saves.
+ *
+ * <p>Tasks must only touch the rows they are given, and may not share mutable state other than the
+ * destination rows. Every call blocks until all stripes have been processed.
+ */
+public class PlaneProcessor {
+  /** Work on a range of rows of a plane. */
+  public interface RowTask {
+    /** Processes rows [|rowStart|, |rowEnd|). */
+    void processRows(int rowStart, int rowEnd);
+  }
+
+  // Planes below this size are processed sequentially. About a 360p luma plane.
+  private static final int DEFAULT_MIN_PARALLEL_BYTES = 256 * 1024;
+  // Minimum number of rows per stripe, so that each worker gets a meaningful chunk.
+  private static final int MIN_STRIPE_ROWS = 16;
+
+  private static final Object defaultLock = new Object();
+  private static PlaneProcessor defaultInstance;
+
+  private final int parallelism;
+  private final int minParallelBytes;
+  private final ForkJoinPool pool;
+
+  /** Returns a processor shared by the whole process, with one worker per core. */
+  public static PlaneProcessor getDefault() {
+    synchronized (defaultLock) {
+      if (defaultInstance == null) {
+        defaultInstance = new PlaneProcessor(
+            Runtime.getRuntime().availableProcessors(), DEFAULT_MIN_PARALLEL_BYTES);
+      }
+      return defaultInstance;
+    }
+  }
+
+  /**
+   * Creates a processor with |parallelism| workers. A parallelism of one processes everything on
+   * the calling thread.
+   */
+  public PlaneProcessor(int parallelism, int minParallelBytes) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+    }
+    this.parallelism = parallelism;
+    this.minParallelBytes = minParallelBytes;
+    this.pool = parallelism > 1
+        ? new ForkJoinPool(parallelism, new WorkerThreadFactory(), /* handler= */ null,
+            /* asyncMode= */ false)
+        : null;
+  }
+
+  public int getParallelism() {
+    return parallelism;
+  }
+
+  /**
+   * Runs |task| over rows [0, |rows|) of a plane with |bytesPerRow| bytes of work per row, in
+   * stripes if the plane is large enough.
+   */
+  public void processRows(int rows, int bytesPerRow, RowTask task) {
+    final int stripeRows = getStripeRows(rows, bytesPerRow);
+    if (stripeRows >= rows || pool.isShutdown()) {
+      task.processRows(0, rows);
+      return;
+    }
+    pool.invoke(new StripeAction(task, 0, rows, stripeRows));
+  }
+
+  /** Stops the workers. Following calls process their rows on the calling thread. */
+  public void dispose() {
+    if (pool != null) {
+      pool.shutdown();
+    }
+  }
+
+  // Returns the number of rows per stripe, or |rows| if the plane should not be split.
+  private int getStripeRows(int rows, int bytesPerRow) {
+    if (pool == null || (long) rows * bytesPerRow < minParallelBytes
+        || rows < 2 * MIN_STRIPE_ROWS) {
+      return rows;
+    }
+    return Math.max(MIN_STRIPE_ROWS, (rows + parallelism - 1) / parallelism);
+  }
+
+  private static class StripeAction extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final RowTask task;
+    private final int rowStart;
+    private final int rowEnd;
+    private final int stripeRows;
+
+    StripeAction(RowTask task, int rowStart, int rowEnd, int stripeRows) {
+      this.task = task;
+      this.rowStart = rowStart;
+      this.rowEnd = rowEnd;
+      this.stripeRows = stripeRows;
+    }
+
+    @Override
+    protected void compute() {
+      final int rows = rowEnd - rowStart;
+      if (rows <= stripeRows) {
+        task.processRows(rowStart, rowEnd);
+        return;
+      }
+      // Split on a stripe boundary so that every leaf has exactly |stripeRows| rows, except the
+      // last one.
+      final int stripes = (rows + stripeRows - 1) / stripeRows;
+      final int mid = rowStart + (stripes / 2) * stripeRows;
+      invokeAll(new StripeAction(task, rowStart, mid, stripeRows),
+          new StripeAction(task, mid, rowEnd, stripeRows));
+    }
+  }
+
+  private static class WorkerThreadFactory implements ForkJoinPool.ForkJoinWorkerThreadFactory {
+    @Override
+    public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+      final ForkJoinWorkerThread thread =
+          ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+      thread.setName("PlaneProcessor-" + thread.getPoolIndex());
+      return thread;
+    }
+  }
+}
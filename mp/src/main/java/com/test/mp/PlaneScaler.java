@@ -0,0 +1,214 @@
+package com.test.mp;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * CPU scaling of single 8-bit image planes stored in direct ByteBuffers with arbitrary strides.
+ * Rows are copied into per-thread scratch arrays, filtered there and written back in bulk, so no
+ * memory proportional to the frame size is allocated per call. Large planes are scaled in stripes
+ * on all cores through PlaneProcessor.
+ */
+public class PlaneScaler {
+  /** Filter used when the scale factor is not an exact 2:1 downscale. */
+  public enum Filter {
+    /** Averages all source pixels covered by a destination pixel. Best for downscaling. */
+    BOX,
+    /** Interpolates between the four nearest source pixels. Best for upscaling. */
+    BILINEAR
+  }
+
+  // Per-thread row buffers, grown on demand and reused for every following call.
+  private static class Scratch {
+    byte[] row0 = new byte[0];
+    byte[] row1 = new byte[0];
+    byte[] out = new byte[0];
+    int[] sums = new int[0];
+
+    void ensureCapacity(int srcWidth, int dstWidth) {
+      if (row0.length < srcWidth) {
+        row0 = new byte[srcWidth];
+        row1 = new byte[srcWidth];
+        sums = new int[srcWidth];
+      }
+      if (out.length < dstWidth) {
+        out = new byte[dstWidth];
+      }
+    }
+  }
+
+  private static final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>() {
+    @Override
+    protected Scratch initialValue() {
+      return new Scratch();
+    }
+  };
+
+  private PlaneScaler() {}
+
+  /**
+   * Picks the filter for scaling |srcWidth| x |srcHeight| to |dstWidth| x |dstHeight|: box when
+   * downscaling, bilinear otherwise.
+   */
+  public static Filter chooseFilter(int srcWidth, int srcHeight, int dstWidth, int dstHeight) {
+    return (dstWidth <= srcWidth && dstHeight <= srcHeight) ? Filter.BOX : Filter.BILINEAR;
+  }
+
+  /**
+   * Scales the |srcWidth| x |srcHeight| plane in |src| to the |dstWidth| x |dstHeight| plane in
+   * |dst|. Both buffers start at their position 0 and their positions and limits are not modified.
+   */
+  public static void scalePlane(ByteBuffer src, int srcStride, int srcWidth, int srcHeight,
+      ByteBuffer dst, int dstStride, int dstWidth, int dstHeight, Filter filter) {
+    scalePlane(src, srcStride, srcWidth, srcHeight, dst, dstStride, dstWidth, dstHeight, filter,
+        PlaneProcessor.getDefault());
+  }
+
+  /** Same as above, splitting the destination rows into stripes on |processor|. */
+  public static void scalePlane(final ByteBuffer src, final int srcStride, final int srcWidth,
+      final int srcHeight, final ByteBuffer dst, final int dstStride, final int dstWidth,
+      final int dstHeight, final Filter filter, PlaneProcessor processor) {
+    // Bytes read per destination row, which is what dominates the cost.
+    final int bytesPerRow = (int) ((long) srcWidth * Math.max(1, srcHeight / dstHeight));
+    processor.processRows(dstHeight, bytesPerRow,
+        (rowStart, rowEnd)
+            -> scaleRows(src, srcStride, srcWidth, srcHeight, dst, dstStride, dstWidth, dstHeight,
+                filter, rowStart, rowEnd));
+  }
+
+  /**
+   * Same as scalePlane(), but only produces destination rows [|dstRowStart|, |dstRowEnd|). Rows are
+   * independent of each other, so disjoint row ranges may be scaled concurrently.
+   */
+  static void scaleRows(ByteBuffer src, int srcStride, int srcWidth, int srcHeight, ByteBuffer dst,
+      int dstStride, int dstWidth, int dstHeight, Filter filter, int dstRowStart, int dstRowEnd) {
+    if (srcWidth <= 0 || srcHeight <= 0 || dstWidth <= 0 || dstHeight <= 0) {
+      throw new IllegalArgumentException("Invalid plane size: " + srcWidth + "x" + srcHeight
+          + " -> " + dstWidth + "x" + dstHeight);
+    }
+    // Work on duplicates so that concurrent callers do not race on the buffer positions.
+    src = (ByteBuffer) src.duplicate().clear();
+    dst = (ByteBuffer) dst.duplicate().clear();
+    final Scratch rows = scratch.get();
+    rows.ensureCapacity(srcWidth, dstWidth);
+
+    if (srcWidth == dstWidth && srcHeight == dstHeight) {
+      for (int y = dstRowStart; y < dstRowEnd; ++y) {
+        readRow(src, y * srcStride, rows.out, dstWidth);
+        writeRow(dst, y * dstStride, rows.out, dstWidth);
+      }
+    } else if (srcWidth == dstWidth * 2 && srcHeight == dstHeight * 2) {
+      // Exact 2:1. Both filters reduce to averaging 2x2 blocks.
+      halveRows(src, srcStride, dst, dstStride, dstWidth, rows, dstRowStart, dstRowEnd);
+    } else if (filter == Filter.BOX) {
+      boxRows(src, srcStride, srcWidth, srcHeight, dst, dstStride, dstWidth, dstHeight, rows,
+          dstRowStart, dstRowEnd);
+    } else {
+      bilinearRows(src, srcStride, srcWidth, srcHeight, dst, dstStride, dstWidth, dstHeight, rows,
+          dstRowStart, dstRowEnd);
+    }
+  }
+
+  private static void halveRows(ByteBuffer src, int srcStride, ByteBuffer dst, int dstStride,
+      int dstWidth, Scratch rows, int dstRowStart, int dstRowEnd) {
+    final byte[] top = rows.row0;
+    final byte[] bottom = rows.row1;
+    final byte[] out = rows.out;
+    final int srcWidth = dstWidth * 2;
+    for (int y = dstRowStart; y < dstRowEnd; ++y) {
+      readRow(src, 2 * y * srcStride, top, srcWidth);
+      readRow(src, (2 * y + 1) * srcStride, bottom, srcWidth);
+      for (int x = 0, sx = 0; x < dstWidth; ++x, sx += 2) {
+        out[x] = (byte) (((top[sx] & 0xFF) + (top[sx + 1] & 0xFF) + (bottom[sx] & 0xFF)
+            + (bottom[sx + 1] & 0xFF) + 2) >> 2);
+      }
+      writeRow(dst, y * dstStride, out, dstWidth);
+    }
+  }
+
+  private static void boxRows(ByteBuffer src, int srcStride, int srcWidth, int srcHeight,
+      ByteBuffer dst, int dstStride, int dstWidth, int dstHeight, Scratch rows, int dstRowStart,
+      int dstRowEnd) {
+    final byte[] row = rows.row0;
+    final int[] sums = rows.sums;
+    final byte[] out = rows.out;
+    for (int y = dstRowStart; y < dstRowEnd; ++y) {
+      // Source rows [sy0, sy1) map onto this destination row. When upscaling the box degenerates
+      // to a single row.
+      final int sy0 = (int) ((long) y * srcHeight / dstHeight);
+      final int sy1 = Math.max(sy0 + 1, (int) ((long) (y + 1) * srcHeight / dstHeight));
+      Arrays.fill(sums, 0, srcWidth, 0);
+      for (int sy = sy0; sy < sy1; ++sy) {
+        readRow(src, sy * srcStride, row, srcWidth);
+        for (int x = 0; x < srcWidth; ++x) {
+          sums[x] += row[x] & 0xFF;
+        }
+      }
+      final int boxHeight = sy1 - sy0;
+      for (int x = 0; x < dstWidth; ++x) {
+        final int sx0 = (int) ((long) x * srcWidth / dstWidth);
+        final int sx1 = Math.max(sx0 + 1, (int) ((long) (x + 1) * srcWidth / dstWidth));
+        int sum = 0;
+        for (int sx = sx0; sx < sx1; ++sx) {
+          sum += sums[sx];
+        }
+        final int area = (sx1 - sx0) * boxHeight;
+        out[x] = (byte) ((sum + area / 2) / area);
+      }
+      writeRow(dst, y * dstStride, out, dstWidth);
+    }
+  }
+
+  private static void bilinearRows(ByteBuffer src, int srcStride, int srcWidth, int srcHeight,
+      ByteBuffer dst, int dstStride, int dstWidth, int dstHeight, Scratch rows, int dstRowStart,
+      int dstRowEnd) {
+    final byte[] top = rows.row0;
+    final byte[] bottom = rows.row1;
+    final byte[] out = rows.out;
+    // Source positions in 16.16 fixed point, sampling at pixel centers.
+    final long stepX = ((long) srcWidth << 16) / dstWidth;
+    final long stepY = ((long) srcHeight << 16) / dstHeight;
+    final long maxX = (long) (srcWidth - 1) << 16;
+    final long maxY = (long) (srcHeight - 1) << 16;
+    int topRow = -1;
+    int bottomRow = -1;
+    for (int y = dstRowStart; y < dstRowEnd; ++y) {
+      final long fy = clamp(y * stepY + (stepY >> 1) - 0x8000, maxY);
+      final int y0 = (int) (fy >> 16);
+      final int y1 = Math.min(y0 + 1, srcHeight - 1);
+      final int wy = (int) ((fy >> 8) & 0xFF);
+      if (y0 != topRow) {
+        readRow(src, y0 * srcStride, top, srcWidth);
+        topRow = y0;
+      }
+      if (y1 != bottomRow) {
+        readRow(src, y1 * srcStride, bottom, srcWidth);
+        bottomRow = y1;
+      }
+      for (int x = 0; x < dstWidth; ++x) {
+        final long fx = clamp(x * stepX + (stepX >> 1) - 0x8000, maxX);
+        final int x0 = (int) (fx >> 16);
+        final int x1 = Math.min(x0 + 1, srcWidth - 1);
+        final int wx = (int) ((fx >> 8) & 0xFF);
+        final int upper = (top[x0] & 0xFF) * (256 - wx) + (top[x1] & 0xFF) * wx;
+        final int lower = (bottom[x0] & 0xFF) * (256 - wx) + (bottom[x1] & 0xFF) * wx;
+        out[x] = (byte) ((upper * (256 - wy) + lower * wy + 0x8000) >> 16);
+      }
+      writeRow(dst, y * dstStride, out, dstWidth);
+    }
+  }
+
+  private static long clamp(long value, long max) {
+    return value < 0 ? 0 : (value > max ? max : value);
+  }
+
+  private static void readRow(ByteBuffer src, int offset, byte[] row, int width) {
+    src.position(offset);
+    src.get(row, 0, width);
+  }
+
+  private static void writeRow(ByteBuffer dst, int offset, byte[] row, int width) {
+    dst.position(offset);
+    dst.put(row, 0, width);
+  }
+}
@@ -12,18 +12,32 @@ import android.view.WindowManager;
 
 import androidx.annotation.Nullable;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.nio.ByteBuffer;
+import java.util.Locale;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 public class ScreenCapturer implements CapturerObserver {
     private static final String TAG = "ScreenCapturer";
 
+    /**
+     * Names of the metrics in getMetrics(), next to ScreenCapturerAndroid.METRIC_CAPTURED_FRAMES.
+     */
+    public static final String METRIC_DELIVERED_FRAMES = "frames.delivered";
+    public static final String METRIC_CONVERTED_FRAMES = "frames.converted";
+    public static final String METRIC_WRITTEN_FRAMES = "frames.written";
+    public static final String METRIC_DROPPED_FRAMES = "frames.dropped";
+    public static final String METRIC_WRITTEN_BYTES = "bytes.written";
+    public static final String METRIC_PENDING_FRAMES = "mailbox.pendingFrames";
+    public static final String METRIC_SUPERSEDED_FRAMES = "frames.superseded";
+    public static final String METRIC_RATE_LIMITED_FRAMES = "frames.rateLimited";
+    public static final String METRIC_WRITE_QUEUE_DEPTH = "writeQueue.depth";
+    public static final String METRIC_WRITE_QUEUE_MAX_DEPTH = "writeQueue.maxDepth";
+    public static final String METRIC_READBACK_POOL_HIT_RATE = "readbackPool.hitRatePercent";
+    public static final String METRIC_PROCESSING_POOL_HIT_RATE = "processingPool.hitRatePercent";
+
     public interface Events {
         /**
          * Notify if the capturer have been started successfully or not.
@@ -36,6 +50,33 @@ public class ScreenCapturer implements CapturerObserver {
         void onCapturerStopped();
     }
 
+    /**
+     * Pixel layout of the saved frames.
+     */
+    public enum OutputFormat {
+        /** Y plane followed by the U and V planes. */
+        I420,
+        /** Y plane followed by a plane of interleaved U and V samples, U first. */
+        NV12,
+        /** Y plane followed by a plane of interleaved V and U samples, V first. */
+        NV21
+    }
+
+    /**
+     * File format of the recording.
+     */
+    public enum OutputContainer {
+        /** Headerless frames back to back in the OutputFormat, screen_record.yuv. */
+        RAW,
+        /** YUV4MPEG2 stream of I420 frames with a frame index, screen_record.y4m. */
+        Y4M,
+        /**
+         * Losslessly deflated I420 frames, delta coded against the previous frame,
+         * screen_record.yuvz. Decoded with CompressedFrameReader.
+         */
+        COMPRESSED
+    }
+
     private final Events dummyEvents = new Events() {
         @Override
         public void onCapturerStarted(boolean success) {
@@ -50,6 +91,27 @@ public class ScreenCapturer implements CapturerObserver {
 
     private static final ScreenCapturer ourInstance = new ScreenCapturer();
 
+    // Idle I420 readback memory kept for reuse, about four 1080x2400 frames.
+    private static final long BUFFER_POOL_SIZE_BYTES = 16 * 1024 * 1024;
+    // Number of readback buffers allocated up front when capture starts.
+    private static final int BUFFER_POOL_WARM_UP_COUNT = 3;
+    // Idle memory kept for frames produced on the CPU, e.g. by rotation, about two 1080x2400 frames.
+    private static final long PROCESSING_BUFFER_POOL_SIZE_BYTES = 8 * 1024 * 1024;
+
+    // Frames waiting for the disk, about 23 MB of readback buffers at 1080x2400.
+    private static final int WRITE_QUEUE_CAPACITY = 4;
+    // How long stopCapture() lets the queued frames drain before dropping them.
+    private static final long WRITE_DRAIN_TIMEOUT_MS = 2000;
+    // How often written frames are forced to storage.
+    private static final long WRITE_FLUSH_INTERVAL_MS = 1000;
+    // Captured frames waiting to be converted. A newer frame replaces the oldest one, so a slow
+    // conversion or write phase does not build up latency or hold on to capture buffers.
+    private static final int FRAME_MAILBOX_CAPACITY = 1;
+    // How often the metrics are logged and exported.
+    private static final long METRICS_REPORT_PERIOD_MS = 1000;
+    // Frames taking longer than this from capture to the write queue are logged.
+    private static final long SLOW_FRAME_THRESHOLD_NS = TimeUnit.MILLISECONDS.toNanos(50);
+
     // Executor thread is started once in private ctor and is used for all
     // peer connection API calls to ensure new peer connection factory is
     // created on the same thread as previously destroyed factory.
@@ -58,23 +120,119 @@ public class ScreenCapturer implements CapturerObserver {
     private Intent mediaProjectionPermissionResultData;
     private MediaProjection.Callback mediaProjectionCallback;
     private VideoCapturer videoCapturer = null;
-    private SurfaceTextureHelper surfaceTextureHelper = null;
+    // Also read by the metrics reporter.
+    private volatile SurfaceTextureHelper surfaceTextureHelper = null;
     private EglBase rootEglBase = null;
     private Events events = null;
     private int captureWidth = 720;
     private int captureHeight = 1280;
+    // Maximum rate of the captured frames.
     private int framerate = 10;
     private boolean isSaveFile = true;
-    private FileOutputStream outputStream = null;
+    private File outputDirectory = null;
+    // Set on the executor thread. Cleared there when stopping, or on the thread writing the frame,
+    // the executor or the capture thread with async readback, when a write fails.
+    private volatile AsyncFrameWriter frameWriter = null;
+    // The last closed writer. Its thread may still be writing to the recording after close() gave
+    // up waiting, the next recording waits for it before opening the same file.
+    private volatile AsyncFrameWriter closedFrameWriter = null;
+    // Counts of the writers closed so far, so that the counters of the registry do not fall back
+    // when a writer is dropped. Guarded by |writerCountsLock|, which is also held while
+    // |frameWriter| is cleared.
+    private final Object writerCountsLock = new Object();
+    private long closedWritersFrames = 0;
+    private long closedWritersDroppedFrames = 0;
+    private long closedWritersBytes = 0;
     private boolean isInitialized = false;
     private boolean isCaptureStarted = false;
+    private final DirectBufferPool bufferPool = new DirectBufferPool(BUFFER_POOL_SIZE_BYTES);
+    private final DirectBufferPool processingBufferPool =
+            new DirectBufferPool(PROCESSING_BUFFER_POOL_SIZE_BYTES);
+    private final PipelineLatency latency = new PipelineLatency();
+    private final MetricsRegistry metrics = new MetricsRegistry();
+    private final MetricsRegistry.Counter deliveredFrames =
+            metrics.counter(METRIC_DELIVERED_FRAMES);
+    private final MetricsRegistry.Counter convertedFrames =
+            metrics.counter(METRIC_CONVERTED_FRAMES);
+    // Captured frames waiting for the executor. Only the newest are kept if it falls behind.
+    private final FrameMailbox frameMailbox = new FrameMailbox(FRAME_MAILBOX_CAPACITY);
+    // Processes the frames of |frameMailbox| on the executor, a few at a time so that stopping and
+    // format changes are not held up while frames keep arriving.
+    private final FrameMailboxDrainer frameDrainer =
+            new FrameMailboxDrainer(frameMailbox, executor, this::processFrame);
+    private volatile boolean exportMetrics = false;
+    // Only accessed on the executor thread.
+    private MetricsFileExporter metricsExporter = null;
+    private volatile boolean applyRotation = false;
+    private volatile OutputFormat outputFormat = OutputFormat.I420;
+    private volatile OutputContainer outputContainer = OutputContainer.RAW;
+    private volatile boolean useMappedOutput = false;
+    private volatile int compressionThreads =
+            Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    private volatile long maxSegmentBytes = 0;
+    private volatile long maxSegmentDurationMs = 0;
+    private volatile int textureCopyCount = 0;
+    private volatile boolean asyncReadback = false;
+    // |asyncReadback| of the current recording. Only accessed on the executor thread.
+    private boolean useAsyncReadback = false;
+    // Only accessed on the executor thread.
+    private YuvConverter yuvConverter = null;
+    private volatile AsyncFrameWriter.OverflowPolicy writeOverflowPolicy =
+            AsyncFrameWriter.OverflowPolicy.DROP_OLDEST;
 
     public static ScreenCapturer instance() {
         return ourInstance;
     }
 
     private ScreenCapturer() {
+        metrics.registerCounter(METRIC_WRITTEN_FRAMES, () -> {
+            synchronized (writerCountsLock) {
+                AsyncFrameWriter writer = frameWriter;
+                return closedWritersFrames + (writer != null ? writer.getWrittenFrames() : 0);
+            }
+        });
+        metrics.registerCounter(METRIC_DROPPED_FRAMES, () -> {
+            synchronized (writerCountsLock) {
+                AsyncFrameWriter writer = frameWriter;
+                return closedWritersDroppedFrames
+                        + (writer != null ? writer.getDroppedFrames() : 0);
+            }
+        });
+        metrics.registerCounter(METRIC_WRITTEN_BYTES, () -> {
+            synchronized (writerCountsLock) {
+                AsyncFrameWriter writer = frameWriter;
+                return closedWritersBytes + (writer != null ? writer.getWrittenBytes() : 0);
+            }
+        });
+        metrics.registerGauge(METRIC_PENDING_FRAMES, frameMailbox::size);
+        metrics.registerCounter(METRIC_SUPERSEDED_FRAMES, frameMailbox::getDroppedFrames);
+        metrics.registerCounter(METRIC_RATE_LIMITED_FRAMES, () -> {
+            SurfaceTextureHelper helper = surfaceTextureHelper;
+            return helper != null ? helper.getRateLimitedFrameCount() : 0;
+        });
+        metrics.registerGauge(METRIC_WRITE_QUEUE_DEPTH, this::getWriteQueueDepth);
+        metrics.registerGauge(METRIC_WRITE_QUEUE_MAX_DEPTH, () -> {
+            AsyncFrameWriter writer = frameWriter;
+            return writer != null ? writer.getMaxQueueDepth() : 0;
+        });
+        metrics.registerGauge(METRIC_READBACK_POOL_HIT_RATE, () -> getHitRatePercent(bufferPool));
+        metrics.registerGauge(
+                METRIC_PROCESSING_POOL_HIT_RATE, () -> getHitRatePercent(processingBufferPool));
+        // Replaces the per second frame count log of ScreenCapturerAndroid.
+        metrics.addListener(snapshot -> Logging.d(TAG, String.format(Locale.US,
+                "Captured %.1f fps, written %.1f fps, superseded %d, dropped %d,"
+                        + " write queue depth %d",
+                snapshot.getRate(ScreenCapturerAndroid.METRIC_CAPTURED_FRAMES),
+                snapshot.getRate(METRIC_WRITTEN_FRAMES),
+                snapshot.getCounter(METRIC_SUPERSEDED_FRAMES),
+                snapshot.getCounter(METRIC_DROPPED_FRAMES),
+                snapshot.getGauge(METRIC_WRITE_QUEUE_DEPTH))));
+    }
 
+    private static long getHitRatePercent(DirectBufferPool pool) {
+        long hits = pool.getHitCount();
+        long requests = hits + pool.getMissCount();
+        return requests > 0 ? hits * 100 / requests : 0;
     }
 
     private boolean checkInitialize() {
@@ -115,18 +273,14 @@ public class ScreenCapturer implements CapturerObserver {
 
         executor.execute(()-> {
             rootEglBase = EglBase.create();
+            yuvConverter = new YuvConverter(bufferPool);
             surfaceTextureHelper =
-                    SurfaceTextureHelper.create("CaptureThread", rootEglBase.getEglBaseContext());
+                    SurfaceTextureHelper.create("CaptureThread", rootEglBase.getEglBaseContext(),
+                            /* alignTimestamps= */ true, yuvConverter);
             videoCapturer.initialize(surfaceTextureHelper, applicationContext, this);
 
             if (isSaveFile) {
-                File file = new File(applicationContext.getExternalFilesDir(Environment.DIRECTORY_DOCUMENTS).getAbsolutePath(),
-                        "screen_record.yuv");
-                try {
-                    outputStream = new FileOutputStream(file);
-                } catch (FileNotFoundException e) {
-                    e.printStackTrace();
-                }
+                outputDirectory = applicationContext.getExternalFilesDir(Environment.DIRECTORY_DOCUMENTS);
             }
         });
 
@@ -151,12 +305,71 @@ public class ScreenCapturer implements CapturerObserver {
         captureWidth = width;
         captureHeight = height;
         executor.execute(() -> {
+            bufferPool.warmUp(YuvConverter.getReadbackBufferSize(captureWidth, captureHeight),
+                    BUFFER_POOL_WARM_UP_COUNT);
+            latency.reset();
+            surfaceTextureHelper.setTextureCopyCount(textureCopyCount);
+            useAsyncReadback = asyncReadback;
+            if (exportMetrics && outputDirectory != null) {
+                File file = new File(outputDirectory, "screen_record_metrics.json");
+                try {
+                    metricsExporter = new MetricsFileExporter(file);
+                    metrics.addListener(metricsExporter);
+                } catch (IOException e) {
+                    Logging.e(TAG, "Failed to open " + file, e);
+                }
+            }
+            metrics.startReporting(METRICS_REPORT_PERIOD_MS);
+            if (isSaveFile && outputDirectory != null) {
+                awaitClosedFrameWriter();
+                try {
+                    frameWriter = new AsyncFrameWriter(createFileWriter(), WRITE_QUEUE_CAPACITY,
+                            writeOverflowPolicy, WRITE_FLUSH_INTERVAL_MS, latency);
+                } catch (IOException e) {
+                    Logging.e(TAG, "Failed to open the recording in " + outputDirectory, e);
+                }
+            }
             videoCapturer.startCapture(captureWidth, captureHeight, framerate);
         });
 
         return true;
     }
 
+    public boolean changeCaptureFormat(int width, int height) {
+        return changeCaptureFormat(width, height, framerate);
+    }
+
+    /**
+     * Change the capture size and the maximum frame rate. Frames above the rate are dropped by
+     * the capturer before they are read back, 0 or less captures every frame of the screen.
+     */
+    public boolean changeCaptureFormat(int width, int height, int framerate) {
+        Logging.d(TAG, "ScreenCapturer.changeCaptureFormat() width: " + width + " height: " + height
+                + " framerate: " + framerate);
+        if (!checkInitialize()) {
+            Logging.w(TAG, "ScreenCapturer.changeCaptureFormat() not initialized.");
+            return false;
+        }
+
+        if (videoCapturer == null) {
+            return false;
+        }
+
+        captureWidth = width;
+        captureHeight = height;
+        this.framerate = framerate;
+        executor.execute(() -> {
+            videoCapturer.changeCaptureFormat(captureWidth, captureHeight, framerate);
+            // Readback buffers of the previous resolution will not be requested anymore.
+            final int bufferSize = YuvConverter.getReadbackBufferSize(captureWidth, captureHeight);
+            bufferPool.evictAllExcept(bufferSize);
+            bufferPool.warmUp(bufferSize, BUFFER_POOL_WARM_UP_COUNT);
+            processingBufferPool.clear();
+        });
+
+        return true;
+    }
+
     public boolean stopCapture() {
         Logging.d(TAG, "ScreenCapturer.stopCapture().");
         if (!checkInitialize()) {
@@ -169,13 +382,32 @@ public class ScreenCapturer implements CapturerObserver {
         }
 
         executor.execute(() -> {
-            if (isSaveFile) {
+            flushConversions();
+            if (frameWriter != null) {
+                closedFrameWriter = frameWriter;
+                try {
+                    if (!frameWriter.close(WRITE_DRAIN_TIMEOUT_MS)) {
+                        Logging.w(TAG, "Write queue not drained in " + WRITE_DRAIN_TIMEOUT_MS + "ms");
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+                Logging.d(TAG, "Frames written: " + frameWriter.getWrittenFrames()
+                        + " dropped: " + frameWriter.getDroppedFrames()
+                        + " max queue depth: " + frameWriter.getMaxQueueDepth());
+                Logging.d(TAG, "Latencies:\n" + latency.getSummary());
+                dropFrameWriter(frameWriter);
+            }
+            // The last report sees the totals, including the closed writer.
+            metrics.stopReporting();
+            if (metricsExporter != null) {
+                metrics.removeListener(metricsExporter);
                 try {
-                    outputStream.close();
-                    outputStream = null;
+                    metricsExporter.close();
                 } catch (IOException e) {
                     e.printStackTrace();
                 }
+                metricsExporter = null;
             }
 
             try {
@@ -183,6 +415,8 @@ public class ScreenCapturer implements CapturerObserver {
             } catch (InterruptedException | RuntimeException e) {
                 Logging.e(TAG, "ScreenCapturer.stopCapture() exception: ", e);
             }
+            // Frames captured while stopping are not recorded anymore.
+            frameMailbox.clear();
         });
 
         return true;
@@ -205,17 +439,203 @@ public class ScreenCapturer implements CapturerObserver {
             if (surfaceTextureHelper != null) {
                 surfaceTextureHelper.dispose();
                 surfaceTextureHelper = null;
+                yuvConverter = null;
             }
+
+            bufferPool.clear();
+            processingBufferPool.clear();
+            Logging.d(TAG, "Buffer pool hits: " + bufferPool.getHitCount()
+                    + " misses: " + bufferPool.getMissCount()
+                    + " evictions: " + bufferPool.getEvictionCount());
         });
     }
 
+    public DirectBufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    /**
+     * Apply the rotation of the captured frames before they are saved, so that the saved frames are
+     * upright. Otherwise the frames are saved as captured and the rotation is lost.
+     */
+    public void setApplyRotation(boolean applyRotation) {
+        this.applyRotation = applyRotation;
+    }
+
+    /**
+     * Set the pixel layout of the saved frames, taking effect on the next startCapture(). I420
+     * frames are written straight from the converted planes, NV12 and NV21 frames take one repack.
+     */
+    public void setOutputFormat(OutputFormat outputFormat) {
+        this.outputFormat = outputFormat;
+    }
+
+    /**
+     * Set the file format of the recording, taking effect on the next startCapture(). Y4M and
+     * compressed recordings are always I420, and are never written through memory mappings. Frames
+     * are compressed on a pool of worker threads, not on the thread that converts them.
+     */
+    public void setOutputContainer(OutputContainer outputContainer) {
+        this.outputContainer = outputContainer;
+    }
+
+    /**
+     * Set the number of threads compressing frames of compressed recordings, taking effect on the
+     * next startCapture(). Defaults to one less than the number of cores, leaving a core to the
+     * conversion and repacking of the frames.
+     */
+    public void setCompressionThreads(int compressionThreads) {
+        if (compressionThreads < 1) {
+            throw new IllegalArgumentException(
+                    "compressionThreads must be positive: " + compressionThreads);
+        }
+        this.compressionThreads = compressionThreads;
+    }
+
+    /**
+     * Write the recording through memory mappings of the file instead of write calls, taking
+     * effect on the next startCapture(). Both produce the same file.
+     */
+    public void setUseMappedOutput(boolean useMappedOutput) {
+        this.useMappedOutput = useMappedOutput;
+    }
+
+    /**
+     * Split raw recordings into segment files of at most |maxSegmentBytes| and
+     * |maxSegmentDurationMs| of capture time, taking effect on the next startCapture(). A limit of 0
+     * disables it, with both disabled the recording is a single file. Does not apply to
+     * memory-mapped and Y4M output.
+     */
+    public void setSegmentLimits(long maxSegmentBytes, long maxSegmentDurationMs) {
+        this.maxSegmentBytes = maxSegmentBytes;
+        this.maxSegmentDurationMs = maxSegmentDurationMs;
+    }
+
+    /**
+     * Copy captured frames into |textureCopyCount| pooled textures, taking effect on the next
+     * startCapture(). The screen can then be captured while earlier frames are still being
+     * converted, instead of waiting for each frame to be released. 0, the default, disables it.
+     */
+    public void setTextureCopyCount(int textureCopyCount) {
+        this.textureCopyCount = textureCopyCount;
+    }
+
+    /**
+     * Read captured frames back from the GPU without waiting for it, taking effect on the next
+     * startCapture(). A frame is then converted while the next one is captured, and written a frame
+     * later. Needs OpenGL ES 3.0, otherwise frames are converted as before.
+     */
+    public void setAsyncReadback(boolean asyncReadback) {
+        this.asyncReadback = asyncReadback;
+    }
+
+    /**
+     * Set what happens to a converted frame when the disk falls behind and the write queue is
+     * full, taking effect on the next startCapture().
+     */
+    public void setWriteOverflowPolicy(AsyncFrameWriter.OverflowPolicy writeOverflowPolicy) {
+        this.writeOverflowPolicy = writeOverflowPolicy;
+    }
+
+    /**
+     * Returns the number of converted frames waiting to be written, 0 when not recording.
+     */
+    public int getWriteQueueDepth() {
+        AsyncFrameWriter writer = frameWriter;
+        return writer != null ? writer.getQueueDepth() : 0;
+    }
+
+    /**
+     * Returns the number of frames of the current recording dropped because the disk fell behind.
+     */
+    public long getDroppedFrameCount() {
+        AsyncFrameWriter writer = frameWriter;
+        return writer != null ? writer.getDroppedFrames() : 0;
+    }
+
+    /**
+     * Returns the registry of the frame counters, rates and queue and pool gauges. Snapshots are
+     * logged every second while capturing, and can be taken at any time.
+     */
+    public MetricsRegistry getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Append the metrics snapshots of the recordings to screen_record_metrics.json next to the
+     * recording, one JSON object per line, taking effect on the next startCapture().
+     */
+    public void setExportMetrics(boolean exportMetrics) {
+        this.exportMetrics = exportMetrics;
+    }
+
+    /**
+     * Returns the per stage latency histograms of the frames of the current or last recording.
+     * Snapshots of them can be taken at any time, e.g. to display percentiles while recording.
+     */
+    public PipelineLatency getLatency() {
+        return latency;
+    }
+
     @TargetApi(Build.VERSION_CODES.LOLLIPOP)
     private @Nullable VideoCapturer createScreenCapturer() {
         if (mediaProjectionPermissionResultData == null) {
             return null;
         }
 
-        return new ScreenCapturerAndroid(mediaProjectionPermissionResultData, mediaProjectionCallback);
+        return new ScreenCapturerAndroid(
+                mediaProjectionPermissionResultData, mediaProjectionCallback, metrics);
+    }
+
+    private FrameWriter createFileWriter() throws IOException {
+        if (outputContainer != OutputContainer.RAW && outputFormat != OutputFormat.I420) {
+            Logging.w(TAG, outputContainer + " recordings are I420, ignoring output format "
+                    + outputFormat);
+        }
+        if (outputContainer == OutputContainer.Y4M) {
+            return new Y4mFileWriter(new File(outputDirectory, "screen_record.y4m"), framerate);
+        }
+        if (outputContainer == OutputContainer.COMPRESSED) {
+            return new ParallelCompressedFrameWriter(
+                    new File(outputDirectory, "screen_record.yuvz"), /* usePreviousFrame= */ true,
+                    compressionThreads);
+        }
+        File file = new File(outputDirectory, "screen_record.yuv");
+        if (!useMappedOutput && (maxSegmentBytes > 0 || maxSegmentDurationMs > 0)) {
+            return new SegmentedYuvFileWriter(file, outputFormat, maxSegmentBytes,
+                    TimeUnit.MILLISECONDS.toNanos(maxSegmentDurationMs));
+        }
+        return useMappedOutput
+                ? new MappedYuvFileWriter(file, outputFormat)
+                : new YuvFileWriter(file, outputFormat);
+    }
+
+    // Stops using the closed |writer|, keeping its counts in the totals of the registry.
+    private void dropFrameWriter(AsyncFrameWriter writer) {
+        synchronized (writerCountsLock) {
+            if (frameWriter != writer) {
+                return;
+            }
+            closedWritersFrames += writer.getWrittenFrames();
+            closedWritersDroppedFrames += writer.getDroppedFrames();
+            closedWritersBytes += writer.getWrittenBytes();
+            frameWriter = null;
+        }
+    }
+
+    // Waits until the thread of the last closed writer is done with the recording. Called on the
+    // executor.
+    private void awaitClosedFrameWriter() {
+        AsyncFrameWriter writer = closedFrameWriter;
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.awaitTermination();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        closedFrameWriter = null;
     }
 
     private DisplayMetrics getDisplayMetrics() {
@@ -260,81 +680,101 @@ public class ScreenCapturer implements CapturerObserver {
             return;
         }
 
-        executor.execute(() -> {
-            long start = System.currentTimeMillis();
-
-            VideoFrame.I420Buffer buffer = frame.getBuffer().toI420();
-            Logging.d(TAG, "process frame to i420 took " + (System.currentTimeMillis() - start) + "ms");
-
-            // We draw into a buffer laid out like
-            //
-            //    +---------+
-            //    |         |
-            //    |  Y      |
-            //    |         |
-            //    |         |
-            //    +----+----+
-            //    |    U    |
-            //    +---------|
-            //    |    V    |
-            //    +----+----+
-            //
-            int width = buffer.getWidth();
-            int height = buffer.getHeight();
-            int stride = buffer.getStrideY();
-            int size = width * height * 3 / 2;
-            int ySize = buffer.getStrideV() * buffer.getHeight();
-            int uvStride = buffer.getStrideU() / 2;
-            int uvHeight = buffer.getHeight() / 2;
-            int uvSize = stride * uvHeight;
-            ByteArrayOutputStream os = new ByteArrayOutputStream(size);
-
-            // Read Y
-            long start1 = System.currentTimeMillis();
-            os.write(buffer.getDataY().array(), buffer.getDataY().position(), buffer.getDataY().limit());
-            Logging.d(TAG, "read Y took " + (System.currentTimeMillis() - start1) + "ms");
-
-            start1 = System.currentTimeMillis();
-            ByteBuffer uvbuf = ByteBuffer.allocate(uvSize);
-            byte[] uv = new byte[uvSize];
-            byte[] u = new byte[uvSize/2];
-            byte[] v = new byte[uvSize/2];
-
-            // Read UV from direct buffer
-            System.arraycopy(buffer.getDataU().array(), ySize, uv, 0, uvSize);
-            uvbuf.put(uv);
-            uvbuf.flip();
-            for (int row = 0; row < uvHeight; row++) {
-//                uvbuf.position(row * width);
-//                Log.i(TAG, "U position: " + uvbuf.position() + " row: " + row);
-                // Read U
-                uvbuf.get(u, row * uvStride, uvStride);
-                // Read V
-                uvbuf.get(v, row * uvStride, uvStride);
-            }
-            os.write(u, 0, u.length);
-            os.write(v, 0, v.length);
-            Logging.d(TAG, "read UV took " + (System.currentTimeMillis() - start1) + "ms");
+        // The frame is processed asynchronously, keep it alive until it has been converted. If
+        // the executor has not taken the previous frame yet, that frame is dropped and its
+        // texture returned to the capturer.
+        frame.retain();
+        deliveredFrames.increment();
+        frameMailbox.offer(frame);
+        frameDrainer.schedule();
+    }
+
+    /**
+     * Returns the number of captured frames dropped before conversion because newer frames
+     * superseded them.
+     */
+    public long getSupersededFrameCount() {
+        return frameMailbox.getDroppedFrames();
+    }
+
+    // Converts, rotates and queues |frame| for writing, and releases it.
+    private void processFrame(VideoFrame frame) {
+        final long timestampNs = frame.getTimestampNs();
+        final long dispatchNs = System.nanoTime();
+        latency.recordSinceCapture(
+                PipelineLatency.Stage.CAPTURE_TO_DISPATCH, timestampNs, dispatchNs);
+        final int rotation = frame.getRotation();
+
+        if (useAsyncReadback && frame.getBuffer() instanceof TextureBufferImpl) {
+            // The readback is only started here, the converted frame arrives on the capture
+            // thread with the next frame. The texture is not needed anymore either way. The
+            // executor waits for the capture thread meanwhile, so the frame is written right away,
+            // in capture order and before a stop closes the writer.
+            ((TextureBufferImpl) frame.getBuffer()).toI420Async(
+                    buffer -> writeFrame(buffer, rotation, timestampNs, dispatchNs));
+            frame.release();
+            return;
+        }
+
+        VideoFrame.I420Buffer buffer = frame.getBuffer().toI420();
+        // The texture is no longer needed once it has been read back, hand it back to the
+        // SurfaceTextureHelper so the next frame can be captured while this one is written.
+        frame.release();
+        writeFrame(buffer, rotation, timestampNs, dispatchNs);
+    }
+
+    // Writes the frames whose asynchronous readback is still pending. Called on the executor.
+    private void flushConversions() {
+        if (surfaceTextureHelper == null || yuvConverter == null) {
+            return;
+        }
+        // The executor waits for the capture thread, which writes the frames in its place.
+        ThreadUtils.invokeAtFrontUninterruptibly(
+                surfaceTextureHelper.getHandler(), yuvConverter::flush);
+    }
+
+    // Rotates and queues the converted |buffer| for writing, and releases it. |dispatchNs| is when
+    // the conversion of the frame started.
+    private void writeFrame(
+            VideoFrame.I420Buffer buffer, int rotation, long timestampNs, long dispatchNs) {
+        final long convertedNs = System.nanoTime();
+        latency.record(PipelineLatency.Stage.TO_I420, convertedNs - dispatchNs);
+        convertedFrames.increment();
+
+        if (applyRotation && rotation % 360 != 0) {
+            // Rotate once here, everything downstream gets an upright frame.
+            VideoFrame.I420Buffer rotatedBuffer =
+                    JavaI420Buffer.rotateI420(buffer, rotation, processingBufferPool);
+            buffer.release();
+            buffer = rotatedBuffer;
+            rotation = 0;
+        }
 
-            if (isSaveFile && outputStream != null) {
-                start1 = System.currentTimeMillis();
+        final AsyncFrameWriter writer = frameWriter;
+        if (writer != null) {
+            try {
+                // Written without the row padding of the converted frame, on the writer
+                // thread. The writer retains the buffer while it is queued.
+                writer.writeFrame(buffer, rotation, timestampNs);
+            } catch (IOException e) {
+                // Every following frame would fail the same way, stop recording instead.
+                Logging.e(TAG, "Writing the recording failed, recording stopped", e);
+                closedFrameWriter = writer;
                 try {
-                    // Write to file
-                    outputStream.write(os.toByteArray());
-                    Logging.d(TAG, "write file took " + (System.currentTimeMillis() - start1) + "ms");
-                } catch (IOException e) {
-                    e.printStackTrace();
+                    writer.close(WRITE_DRAIN_TIMEOUT_MS);
+                } catch (IOException closeException) {
+                    // The write error logged above.
                 }
+                dropFrameWriter(writer);
             }
+        }
+        buffer.release();
+        final long queuedNs = System.nanoTime();
+        latency.record(PipelineLatency.Stage.REPACK, queuedNs - convertedNs);
 
-            if (surfaceTextureHelper != null) {
-                surfaceTextureHelper.returnTextureFrame();
-            }
-
-            long diff = System.currentTimeMillis() - start;
-            if (diff >= 50) {
-                Logging.d(TAG, "process frame total took too long " + diff + "ms");
-            }
-        });
+        if (queuedNs - timestampNs >= SLOW_FRAME_THRESHOLD_NS) {
+            Logging.d(TAG, "process frame total took too long "
+                    + TimeUnit.NANOSECONDS.toMillis(queuedNs - timestampNs) + "ms");
+        }
     }
 }
@@ -43,8 +43,8 @@ public class ScreenCapturerAndroid implements VideoCapturer, VideoSink {
       DisplayManager.VIRTUAL_DISPLAY_FLAG_PUBLIC | DisplayManager.VIRTUAL_DISPLAY_FLAG_PRESENTATION;
   // DPI for VirtualDisplay, does not seem to matter for us.
   private static final int VIRTUAL_DISPLAY_DPI = 400;
-  // Statistic frame rate per second
-  private static final int FRAME_STAT_PERIOD_MS = 1 * 1000; // 1s
+  // Name of the counter of the frames received from the virtual display.
+  public static final String METRIC_CAPTURED_FRAMES = "frames.captured";
 
   private final Intent mediaProjectionPermissionResultData;
   private final MediaProjection.Callback mediaProjectionCallback;
@@ -54,8 +54,8 @@ public class ScreenCapturerAndroid implements VideoCapturer, VideoSink {
   @Nullable private VirtualDisplay virtualDisplay;
   @Nullable private SurfaceTextureHelper surfaceTextureHelper;
   @Nullable private CapturerObserver capturerObserver;
+  private final MetricsRegistry.Counter capturedFrames;
   private long numCapturedFrames;
-  private long preNumCapturedFrames;
   @Nullable private MediaProjection mediaProjection;
   private boolean isDisposed = false;
   @Nullable private MediaProjectionManager mediaProjectionManager;
@@ -71,8 +71,19 @@ public class ScreenCapturerAndroid implements VideoCapturer, VideoSink {
   **/
   public ScreenCapturerAndroid(Intent mediaProjectionPermissionResultData,
                                MediaProjection.Callback mediaProjectionCallback) {
+    this(mediaProjectionPermissionResultData, mediaProjectionCallback, new MetricsRegistry());
+  }
+
+  /**
+   * Same as above, counting the captured frames in the METRIC_CAPTURED_FRAMES counter of
+   * |metrics|.
+   */
+  public ScreenCapturerAndroid(Intent mediaProjectionPermissionResultData,
+                               MediaProjection.Callback mediaProjectionCallback,
+                               MetricsRegistry metrics) {
     this.mediaProjectionPermissionResultData = mediaProjectionPermissionResultData;
     this.mediaProjectionCallback = mediaProjectionCallback;
+    this.capturedFrames = metrics.counter(METRIC_CAPTURED_FRAMES);
   }
 
   private void checkNotDisposed() {
@@ -106,14 +117,13 @@ public class ScreenCapturerAndroid implements VideoCapturer, VideoSink {
   // TODO(bugs.webrtc.org/8491): Remove NoSynchronizedMethodCheck suppression.
   @SuppressWarnings("NoSynchronizedMethodCheck")
   public synchronized void startCapture(
-      final int width, final int height, final int ignoredFramerate) {
+      final int width, final int height, final int framerate) {
     checkNotDisposed();
 
     this.width = width;
     this.height = height;
 
     numCapturedFrames = 0;
-    preNumCapturedFrames = 0;
     try {
       mediaProjection = mediaProjectionManager.getMediaProjection(
           Activity.RESULT_OK, mediaProjectionPermissionResultData);
@@ -137,9 +147,10 @@ public class ScreenCapturerAndroid implements VideoCapturer, VideoSink {
         capturerObserver.onCapturerStarted(true);
       }
     }
+    // The virtual display renders at the refresh rate of the screen, frames above |framerate|
+    // are dropped before they are read back.
+    surfaceTextureHelper.setMaxFramerate(framerate);
     surfaceTextureHelper.startListening(ScreenCapturerAndroid.this);
-    // Statistic frame rate
-    surfaceTextureHelper.getHandler().postDelayed(frameStatRun, FRAME_STAT_PERIOD_MS);
   }
 
   @Override
@@ -150,7 +161,6 @@ public class ScreenCapturerAndroid implements VideoCapturer, VideoSink {
     ThreadUtils.invokeAtFrontUninterruptibly(surfaceTextureHelper.getHandler(), new Runnable() {
       @Override
       public void run() {
-        surfaceTextureHelper.getHandler().removeCallbacks(frameStatRun);
         surfaceTextureHelper.stopListening();
         capturerObserver.onCapturerStopped();
 
@@ -181,17 +191,18 @@ public class ScreenCapturerAndroid implements VideoCapturer, VideoSink {
    *
    * @param width new output video width
    * @param height new output video height
-   * @param ignoredFramerate ignored
+   * @param framerate new maximum frame rate, 0 or less for the rate of the screen
    */
   @Override
   // TODO(bugs.webrtc.org/8491): Remove NoSynchronizedMethodCheck suppression.
   @SuppressWarnings("NoSynchronizedMethodCheck")
   public synchronized void changeCaptureFormat(
-      final int width, final int height, final int ignoredFramerate) {
+      final int width, final int height, final int framerate) {
     checkNotDisposed();
 
     this.width = width;
     this.height = height;
+    surfaceTextureHelper.setMaxFramerate(framerate);
 
     if (virtualDisplay == null) {
       // Capturer is stopped, the virtual display will be created in startCaptuer().
@@ -221,6 +232,7 @@ public class ScreenCapturerAndroid implements VideoCapturer, VideoSink {
   @Override
   public void onFrame(VideoFrame frame) {
     numCapturedFrames++;
+    capturedFrames.increment();
     capturerObserver.onFrameCaptured(frame);
   }
 
@@ -232,13 +244,4 @@ public class ScreenCapturerAndroid implements VideoCapturer, VideoSink {
   public long getNumCapturedFrames() {
     return numCapturedFrames;
   }
-
-  private Runnable frameStatRun = new Runnable() {
-    @Override
-    public void run() {
-      Logging.d(TAG, "Screen capture frames num " + (numCapturedFrames - preNumCapturedFrames));
-      preNumCapturedFrames = numCapturedFrames;
-      surfaceTextureHelper.getHandler().postDelayed(this, FRAME_STAT_PERIOD_MS);
-    }
-  };
 }
@@ -0,0 +1,285 @@
+package com.test.mp;
+
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Writes raw frames like YuvFileWriter, split into numbered segment files of bounded size and
+ * duration: screen_record_0000.yuv, screen_record_0001.yuv and so on. A frame never spans two
+ * segments, so the segments can be replayed one after the other or concatenated into a single
+ * recording with cat.
+ *
+ * <p>The file of the next segment is created and preallocated with RandomAccessFile.setLength on a
+ * background thread while the current segment is written, so switching segments only has to open
+ * a file that already exists. Without a size limit, the next segment is preallocated once the
+ * current one is halfway through its duration, to the size the current one is heading for. A
+ * finished segment is truncated to its frames. Every finished
+ * segment is appended to a manifest next to the segments, e.g. screen_record.segments, with one
+ * line per segment:
+ *
+ * <pre>
+ *   index file-name frames bytes first-timestampNs last-timestampNs
+ * </pre>
+ *
+ * <p>Not thread safe, all calls must come from the same thread.
+ */
+public class SegmentedYuvFileWriter implements FrameWriter {
+  /** A finished segment. */
+  public static class Segment {
+    public final int index;
+    public final File file;
+    public final int frames;
+    public final long bytes;
+    public final long firstTimestampNs;
+    public final long lastTimestampNs;
+
+    Segment(int index, File file, int frames, long bytes, long firstTimestampNs,
+        long lastTimestampNs) {
+      this.index = index;
+      this.file = file;
+      this.frames = frames;
+      this.bytes = bytes;
+      this.firstTimestampNs = firstTimestampNs;
+      this.lastTimestampNs = lastTimestampNs;
+    }
+  }
+
+  private static final Charset US_ASCII = Charset.forName("US-ASCII");
+
+  private final File directory;
+  private final String baseName;
+  private final String extension;
+  private final ScreenCapturer.OutputFormat format;
+  private final long maxSegmentBytes;
+  private final long maxSegmentDurationNs;
+  private final ExecutorService preallocator;
+  private final Writer manifest;
+  private final List<Segment> segments = new ArrayList<>();
+
+  // File of the next segment, being preallocated. Null until the preallocation is scheduled.
+  private @Nullable Future<RandomAccessFile> nextSegmentFile;
+  private int nextSegmentIndex;
+  // Size the next segment file is preallocated to.
+  private long preallocateBytes;
+
+  // The segment being written, null if none has been started.
+  private @Nullable YuvFileWriter segmentWriter;
+  private RandomAccessFile segmentFile;
+  private int segmentIndex;
+  private int segmentFrames;
+  private long segmentFirstTimestampNs;
+  private long segmentLastTimestampNs;
+
+  /**
+   * Writes segments named after |file|, e.g. screen_record_0000.yuv for screen_record.yuv, in
+   * |format|. A segment is finished before it would exceed |maxSegmentBytes|, or once it covers
+   * |maxSegmentDurationNs| of capture time. A limit of 0 or less disables it, but at least one
+   * limit should be set.
+   */
+  public SegmentedYuvFileWriter(File file, ScreenCapturer.OutputFormat format,
+      long maxSegmentBytes, long maxSegmentDurationNs) throws IOException {
+    final String name = file.getName();
+    final int dot = name.lastIndexOf('.');
+    this.directory = file.getAbsoluteFile().getParentFile();
+    this.baseName = dot > 0 ? name.substring(0, dot) : name;
+    this.extension = dot > 0 ? name.substring(dot) : "";
+    this.format = format;
+    this.maxSegmentBytes = maxSegmentBytes;
+    this.maxSegmentDurationNs = maxSegmentDurationNs;
+    this.preallocateBytes = Math.max(0, maxSegmentBytes);
+    this.manifest = new OutputStreamWriter(
+        new FileOutputStream(getManifestFile(file)), US_ASCII);
+    this.preallocator = Executors.newSingleThreadExecutor(
+        runnable -> new Thread(runnable, "SegmentPreallocator"));
+    preallocateNextSegment();
+  }
+
+  /** Returns the manifest file listing the segments of the recording |file|. */
+  public static File getManifestFile(File file) {
+    final String name = file.getName();
+    final int dot = name.lastIndexOf('.');
+    return new File(file.getAbsoluteFile().getParentFile(),
+        (dot > 0 ? name.substring(0, dot) : name) + ".segments");
+  }
+
+  @Override
+  public void writeFrame(VideoFrame.I420Buffer buffer, int rotation, long timestampNs)
+      throws IOException {
+    final int frameSize = YuvHelper.getPackedI420Size(buffer.getWidth(), buffer.getHeight());
+    if (segmentWriter != null && segmentFrames > 0) {
+      final boolean full = maxSegmentBytes > 0
+          && segmentWriter.getBytesWritten() + frameSize > maxSegmentBytes;
+      final boolean expired = maxSegmentDurationNs > 0
+          && timestampNs - segmentFirstTimestampNs >= maxSegmentDurationNs;
+      if (full || expired) {
+        finishSegment();
+      }
+    }
+    if (segmentWriter == null) {
+      startSegment();
+      segmentFirstTimestampNs = timestampNs;
+    }
+    segmentWriter.writeFrame(buffer, rotation, timestampNs);
+    segmentLastTimestampNs = timestampNs;
+    ++segmentFrames;
+
+    final long elapsedNs = timestampNs - segmentFirstTimestampNs;
+    if (nextSegmentFile == null && maxSegmentDurationNs > 0 && elapsedNs > 0
+        && elapsedNs >= maxSegmentDurationNs / 2) {
+      // Expect the segment to grow at the rate so far until its duration is up.
+      preallocateBytes = (long) ((double) segmentWriter.getBytesWritten() * maxSegmentDurationNs
+          / elapsedNs);
+      preallocateNextSegment();
+    }
+  }
+
+  /** Returns the finished segments, in order. */
+  public List<Segment> getSegments() {
+    return Collections.unmodifiableList(segments);
+  }
+
+  @Override
+  public void flush() throws IOException {
+    if (segmentWriter != null) {
+      segmentWriter.flush();
+    }
+    manifest.flush();
+  }
+
+  /**
+   * Finishes the current segment and closes the manifest. If several steps fail, the first error is
+   * thrown with the others suppressed.
+   */
+  @Override
+  public void close() throws IOException {
+    IOException exception = null;
+    try {
+      finishSegment();
+    } catch (IOException e) {
+      exception = e;
+    }
+    preallocator.shutdown();
+    try {
+      // The preallocated file of the segment that never started is not part of the recording.
+      if (nextSegmentFile != null) {
+        awaitNextSegmentFile().close();
+        getSegmentFile(nextSegmentIndex).delete();
+      }
+    } catch (IOException e) {
+      exception = addSuppressed(exception, e);
+    }
+    try {
+      manifest.close();
+    } catch (IOException e) {
+      exception = addSuppressed(exception, e);
+    }
+    if (exception != null) {
+      throw exception;
+    }
+  }
+
+  // Returns |first|, with |next| suppressed by it, or |next| if there is no |first|.
+  private static IOException addSuppressed(@Nullable IOException first, IOException next) {
+    if (first == null) {
+      return next;
+    }
+    first.addSuppressed(next);
+    return first;
+  }
+
+  /** Returns the file of segment |index|. */
+  public File getSegmentFile(int index) {
+    return new File(directory,
+        String.format(Locale.US, "%s_%04d%s", baseName, index, extension));
+  }
+
+  private void preallocateNextSegment() {
+    final File file = getSegmentFile(nextSegmentIndex);
+    final long length = preallocateBytes;
+    nextSegmentFile = preallocator.submit(() -> {
+      final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+      try {
+        // Drops the content of a previous recording and reserves the space of the segment.
+        randomAccessFile.setLength(0);
+        randomAccessFile.setLength(length);
+      } catch (IOException e) {
+        randomAccessFile.close();
+        throw e;
+      }
+      return randomAccessFile;
+    });
+  }
+
+  private RandomAccessFile awaitNextSegmentFile() throws IOException {
+    boolean interrupted = false;
+    try {
+      while (true) {
+        try {
+          return nextSegmentFile.get();
+        } catch (InterruptedException e) {
+          interrupted = true;
+        } catch (ExecutionException e) {
+          throw new IOException("Preallocating " + getSegmentFile(nextSegmentIndex) + " failed",
+              e.getCause());
+        }
+      }
+    } finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  private void startSegment() throws IOException {
+    // Normally done long ago, only the very first segment may have to wait.
+    segmentFile = awaitNextSegmentFile();
+    segmentIndex = nextSegmentIndex++;
+    segmentWriter = new YuvFileWriter(segmentFile.getChannel(), format);
+    segmentFrames = 0;
+    nextSegmentFile = null;
+    if (maxSegmentBytes > 0) {
+      preallocateNextSegment();
+    }
+    // Otherwise writeFrame() preallocates the next segment once this one can be estimated.
+  }
+
+  private void finishSegment() throws IOException {
+    if (segmentWriter == null) {
+      return;
+    }
+    final long bytes = segmentWriter.getBytesWritten();
+    try {
+      segmentFile.setLength(bytes);
+    } finally {
+      segmentWriter.close();
+      segmentWriter = null;
+    }
+    final Segment segment = new Segment(segmentIndex, getSegmentFile(segmentIndex), segmentFrames,
+        bytes, segmentFirstTimestampNs, segmentLastTimestampNs);
+    segments.add(segment);
+    manifest.write(String.format(Locale.US, "%d %s %d %d %d %d\n", segment.index,
+        segment.file.getName(), segment.frames, segment.bytes, segment.firstTimestampNs,
+        segment.lastTimestampNs));
+    manifest.flush();
+    if (nextSegmentFile == null) {
+      // Finished before it was halfway through, expect the next segment to be as large.
+      preallocateBytes = bytes;
+      preallocateNextSegment();
+    }
+  }
+}
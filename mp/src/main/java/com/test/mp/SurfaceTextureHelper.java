@@ -11,9 +11,9 @@
 package com.test.mp;
 
 import android.annotation.TargetApi;
+import android.graphics.Matrix;
 import android.graphics.SurfaceTexture;
 import android.opengl.GLES11Ext;
-import android.opengl.GLES20;
 import android.os.Build;
 import android.os.Handler;
 import android.os.HandlerThread;
@@ -29,8 +29,10 @@ import java.util.concurrent.Callable;
  * Helper class for using a SurfaceTexture to create WebRTC VideoFrames. In order to create WebRTC
  * VideoFrames, render onto the SurfaceTexture. The frames will be delivered to the listener. Only
  * one texture frame can be in flight at once, so the frame must be released in order to receive a
- * new frame. Call stopListening() to stop receiveing new frames. Call dispose to release all
- * resources once the texture frame is released.
+ * new frame, unless frames are copied, see setTextureCopyCount(). Listeners that hold on to a
+ * frame after onFrame() returns must retain() it and release() it when done. Call stopListening()
+ * to stop receiveing new frames. Call dispose to release all resources once the texture frame is
+ * released.
  */
 public class SurfaceTextureHelper {
   private static final String TAG = "SurfaceTextureHelper";
@@ -38,10 +40,8 @@ public class SurfaceTextureHelper {
    * Construct a new SurfaceTextureHelper sharing OpenGL resources with |sharedContext|. A dedicated
    * thread and handler is created for handling the SurfaceTexture. May return null if EGL fails to
    * initialize a pixel buffer surface and make it current. If alignTimestamps is true, the frame
-   * timestamps will be aligned to rtc::TimeNanos(). If frame timestamps are aligned to
-   * rtc::TimeNanos() there is no need for aligning timestamps again in
-   * PeerConnectionFactory.createVideoSource(). This makes the timestamps more accurate and
-   * closer to actual creation time.
+   * timestamps will be aligned to TimestampAligner.getRtcTimeNanos(), filtering out jitter and
+   * keeping them increasing when the producer's clock jumps, see TimestampAligner.
    */
   public static SurfaceTextureHelper create(final String threadName,
                                             final EglBase.Context sharedContext,
@@ -95,7 +95,7 @@ public class SurfaceTextureHelper {
   private final SurfaceTexture surfaceTexture;
   private final int oesTextureId;
   private final YuvConverter yuvConverter;
-//  @Nullable private final TimestampAligner timestampAligner;
+  @Nullable private final TimestampAligner timestampAligner;
 
   // These variables are only accessed from the |handler| thread.
   @Nullable private VideoSink listener;
@@ -106,6 +106,11 @@ public class SurfaceTextureHelper {
   private int frameRotation;
   private int textureWidth;
   private int textureHeight;
+  private final FrameRateLimiter frameRateLimiter = new FrameRateLimiter();
+  private volatile long rateLimitedFrames;
+  // Set once setTextureCopyCount() was called with a positive count. Kept with a capacity of 0
+  // when copying is turned off again, until the copies in flight have been returned.
+  @Nullable private TextureCopyRing textureCopyRing;
   // |pendingListener| is set in setListener() and the runnable is posted to the handler thread.
   // setListener() is not allowed to be called again before stopListening(), so this is thread safe.
   @Nullable private VideoSink pendingListener;
@@ -131,6 +136,7 @@ public class SurfaceTextureHelper {
     }
     this.handler = handler;
     this.yuvConverter = yuvConverter;
+    this.timestampAligner = alignTimestamps ? new TimestampAligner() : null;
 
     eglBase = EglBase.create(sharedContext, EglBase.CONFIG_PIXEL_BUFFER);
     try {
@@ -211,6 +217,42 @@ public class SurfaceTextureHelper {
     });
   }
 
+  /**
+   * Delivers at most |maxFramerate| frames per second, going by the SurfaceTexture timestamps. The
+   * other frames are consumed with updateTexImage() and dropped before a VideoFrame is created, so
+   * they are never read back or converted. A rate of 0 or less delivers all frames, which is the
+   * default. May be called at any time, e.g. to change the rate while capturing.
+   */
+  public void setMaxFramerate(int maxFramerate) {
+    handler.post(() -> frameRateLimiter.setMaxFramerate(maxFramerate));
+  }
+
+  /**
+   * Copies every frame into one of |textureCount| pooled RGB textures and delivers the copy, so the
+   * SurfaceTexture is free to take the next frame right away instead of when the listener releases
+   * the frame. Up to |textureCount| frames can then be in flight at once, at the cost of one draw
+   * per frame and |textureCount| frames of texture memory. A count of 0, the default, delivers the
+   * OES texture itself. May be called at any time.
+   */
+  public void setTextureCopyCount(int textureCount) {
+    if (textureCount < 0) {
+      throw new IllegalArgumentException("Texture count must not be negative: " + textureCount);
+    }
+    handler.post(() -> {
+      if (textureCopyRing != null) {
+        textureCopyRing.setCapacity(textureCount);
+      } else if (textureCount > 0) {
+        textureCopyRing = new TextureCopyRing(GlStateCache.getDefault(), textureCount);
+      }
+      tryDeliverTextureFrame();
+    });
+  }
+
+  /** Returns the number of frames dropped to stay below the rate set with setMaxFramerate(). */
+  public long getRateLimitedFrameCount() {
+    return rateLimitedFrames;
+  }
+
   /** Set the rotation of the delivered frames. */
   public void setFrameRotation(int rotation) {
     handler.post(() -> this.frameRotation = rotation);
@@ -231,13 +273,27 @@ public class SurfaceTextureHelper {
 
   /**
    * This function is called when the texture frame is released. Only one texture frame can be in
-   * flight at once, so this function must be called before a new frame is delivered.
+   * flight at once, so this function must be called before a new frame is delivered. It is run
+   * automatically as the release callback of the delivered texture buffer, so listeners should
+   * call VideoFrame.release() rather than calling this directly.
    */
-  public void returnTextureFrame() {
+  private void returnTextureFrame() {
     handler.post(() -> {
       isTextureInUse = false;
       if (isQuitting) {
-        release();
+        releaseIfUnused();
+      } else {
+        tryDeliverTextureFrame();
+      }
+    });
+  }
+
+  // Release callback of frames delivered as a copy in |texture|.
+  private void returnTextureCopy(GlTextureFrameBuffer texture) {
+    handler.post(() -> {
+      textureCopyRing.returnTexture(texture);
+      if (isQuitting) {
+        releaseIfUnused();
       } else {
         tryDeliverTextureFrame();
       }
@@ -257,9 +313,7 @@ public class SurfaceTextureHelper {
     Logging.d(TAG, "dispose()");
     ThreadUtils.invokeAtFrontUninterruptibly(handler, () -> {
       isQuitting = true;
-      if (!isTextureInUse) {
-        release();
-      }
+      releaseIfUnused();
     });
   }
 
@@ -280,6 +334,8 @@ public class SurfaceTextureHelper {
     synchronized (EglBase.lock) {
       surfaceTexture.updateTexImage();
     }
+    // updateTexImage() binds the OES texture behind the back of the GL state cache.
+    GlStateCache.getDefault().invalidate();
   }
 
   private void tryDeliverTextureFrame() {
@@ -289,29 +345,64 @@ public class SurfaceTextureHelper {
     if (isQuitting || !hasPendingTexture || isTextureInUse || listener == null) {
       return;
     }
+    final boolean copyTexture = textureCopyRing != null && textureCopyRing.getCapacity() > 0;
+    if (copyTexture && !textureCopyRing.hasFreeTexture()) {
+      // Wait for a copy to be returned, leaving the frame in the SurfaceTexture.
+      return;
+    }
     if (textureWidth == 0 || textureHeight == 0) {
       // Information about the resolution needs to be provided by a call to setTextureSize() before
       // frames are produced.
       Logging.w(TAG, "Texture size has not been set.");
       return;
     }
-    isTextureInUse = true;
     hasPendingTexture = false;
 
     // 调用 updateTexImage() 将数据更新到 OpenGL ES 纹理对象
+    // Also needed for dropped frames, the producer only queues a new frame once this one has been
+    // consumed.
     updateTexImage();
+    long timestampNs = surfaceTexture.getTimestamp();
+    if (timestampAligner != null) {
+      // Also for frames that are dropped below, they are part of the offset estimate.
+      timestampNs = timestampAligner.translateTimestamp(timestampNs);
+    }
+    if (frameRateLimiter.shouldDropFrame(timestampNs)) {
+      rateLimitedFrames++;
+      return;
+    }
 
     // 调用 getTransformMatrix() 转换纹理坐标
     final float[] transformMatrix = new float[16];
     surfaceTexture.getTransformMatrix(transformMatrix);
-    long timestampNs = surfaceTexture.getTimestamp();
-    final VideoFrame.TextureBuffer buffer =
-        new TextureBufferImpl(textureWidth, textureHeight, TextureBuffer.Type.OES, oesTextureId,
-            RendererCommon.convertMatrixToAndroidGraphicsMatrix(transformMatrix), handler,
-            yuvConverter);
+    final VideoFrame.TextureBuffer buffer;
+    if (copyTexture) {
+      // The copy has the transform applied. The SurfaceTexture is not used after this, so the
+      // producer can queue the next frame right away.
+      final GlTextureFrameBuffer copy =
+          textureCopyRing.copy(oesTextureId, transformMatrix, textureWidth, textureHeight);
+      buffer = new TextureBufferImpl(textureWidth, textureHeight, TextureBuffer.Type.RGB,
+          copy.getTextureId(), new Matrix(), handler, yuvConverter,
+          () -> returnTextureCopy(copy));
+    } else {
+      isTextureInUse = true;
+      buffer = new TextureBufferImpl(textureWidth, textureHeight, TextureBuffer.Type.OES,
+          oesTextureId, RendererCommon.convertMatrixToAndroidGraphicsMatrix(transformMatrix),
+          handler, yuvConverter, this::returnTextureFrame);
+    }
 
     final VideoFrame frame = new VideoFrame(buffer, frameRotation, timestampNs);
     listener.onFrame(frame);
+    // Listeners that keep the frame beyond onFrame() have retained it, so the texture is returned
+    // once the last of them releases it.
+    frame.release();
+  }
+
+  // Releases everything once dispose() was called and no frame is in flight any more.
+  private void releaseIfUnused() {
+    if (!isTextureInUse && (textureCopyRing == null || !textureCopyRing.hasTexturesInUse())) {
+      release();
+    }
   }
 
   private void release() {
@@ -321,8 +412,11 @@ public class SurfaceTextureHelper {
     if (isTextureInUse || !isQuitting) {
       throw new IllegalStateException("Unexpected release.");
     }
+    if (textureCopyRing != null) {
+      textureCopyRing.release();
+    }
     yuvConverter.release();
-    GLES20.glDeleteTextures(1, new int[] {oesTextureId}, 0);
+    GlStateCache.getDefault().glDeleteTextures(1, new int[] {oesTextureId}, 0);
     surfaceTexture.release();
     eglBase.release();
     handler.getLooper().quit();
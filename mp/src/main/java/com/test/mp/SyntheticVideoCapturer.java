@@ -0,0 +1,339 @@
+package com.test.mp;
+
+import android.content.Context;
+
+import androidx.annotation.Nullable;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * VideoCapturer that generates I420 frames of any size and frame rate, for load testing the
+ * conversion, writing and compression stages with screen-like content. Runs on the JVM, the
+ * SurfaceTextureHelper and Context passed to initialize() are not used and may be null.
+ *
+ * <p>The content of every Pattern is rendered once per frame size into templates; a frame is then
+ * assembled from plane copies of the templates into a buffer from a DirectBufferPool, so
+ * generating a frame costs about as much as a memcpy of it and allocates nothing.
+ *
+ * <p>Frames are delivered from a thread of the capturer at the requested frame rate, stamped with
+ * the System.nanoTime() time they are due. A frame rate of 0 or less delivers frames as fast as
+ * the observer takes them. If the observer falls behind by more than a frame, the late frames are
+ * skipped rather than delivered in a burst.
+ */
+public class SyntheticVideoCapturer implements VideoCapturer {
+  /** Content of the generated frames. */
+  public enum Pattern {
+    /** The same desktop-like frame over and over. */
+    STATIC,
+    /** A page of text scrolling up by a few lines per second. */
+    SCROLLING_TEXT,
+    /** Different noise in every frame, the worst case for compression. */
+    NOISE,
+    /** A static frame with small regions that change in every frame, like a clock or cursor. */
+    PARTIAL_UPDATES
+  }
+
+  // Idle frame memory kept for reuse, enough for a few 1080x2400 frames in flight.
+  private static final long BUFFER_POOL_SIZE_BYTES = 16 * 1024 * 1024;
+  private static final int TEXT_LINE_HEIGHT = 24;
+  private static final int GLYPH_WIDTH = 12;
+  private static final int GLYPH_HEIGHT = 16;
+  private static final int GLYPH_COUNT = 64;
+  private static final int SCROLL_ROWS_PER_FRAME = 4;
+  // Size of the regions changing in PARTIAL_UPDATES frames.
+  private static final int UPDATE_REGION_SIZE = 64;
+  private static final int UPDATE_REGION_COUNT = 3;
+
+  private final Pattern pattern;
+  private final DirectBufferPool bufferPool = new DirectBufferPool(BUFFER_POOL_SIZE_BYTES);
+  // Notified when the generator is stopped, to wake up a thread waiting for a frame to be due.
+  private final Object pacingLock = new Object();
+  @Nullable private CapturerObserver capturerObserver;
+  @Nullable private Thread thread;
+  private volatile boolean running;
+  private volatile int width;
+  private volatile int height;
+  private volatile int framerate;
+  private volatile long deliveredFrames;
+  private volatile long skippedFrames;
+
+  // Only accessed on the generator thread.
+  @Nullable private Templates templates;
+  private long frameNumber;
+
+  // Planes rendered once per frame size, the frames are copied together from these.
+  private static class Templates {
+    final int width;
+    final int height;
+    final int chromaWidth;
+    final int chromaHeight;
+    // Desktop-like frame, packed I420.
+    final ByteBuffer background;
+    // Luma of a text page twice the frame height, frames show a window of it.
+    final ByteBuffer textY;
+    // Noise larger than a frame, frames start at different offsets of it.
+    final ByteBuffer noise;
+    final int noiseSize;
+
+    Templates(int width, int height) {
+      this.width = width;
+      this.height = height;
+      chromaWidth = (width + 1) / 2;
+      chromaHeight = (height + 1) / 2;
+      final Random random = new Random(width * 31L + height);
+
+      background = ByteBuffer.allocateDirect(YuvHelper.getPackedI420Size(width, height));
+      final int sizeY = width * height;
+      final int sizeUV = chromaWidth * chromaHeight;
+      for (int y = 0; y < height; ++y) {
+        // A title bar, a sidebar and a content area with a few flat widgets.
+        final boolean titleBar = y < height / 16;
+        for (int x = 0; x < width; ++x) {
+          final boolean sidebar = !titleBar && x < width / 5;
+          final boolean widget = !titleBar && !sidebar && (y / 96) % 3 == 1 && (x / 128) % 2 == 0;
+          background.put(y * width + x,
+              (byte) (titleBar ? 40 : sidebar ? 90 : widget ? 170 : 235));
+        }
+      }
+      for (int i = 0; i < sizeUV; ++i) {
+        final int y = i / chromaWidth;
+        final boolean titleBar = y < chromaHeight / 16;
+        background.put(sizeY + i, (byte) (titleBar ? 150 : 128));
+        background.put(sizeY + sizeUV + i, (byte) (titleBar ? 110 : 128));
+      }
+
+      final byte[][] glyphs = new byte[GLYPH_COUNT][GLYPH_WIDTH * GLYPH_HEIGHT];
+      for (byte[] glyph : glyphs) {
+        for (int i = 0; i < glyph.length; ++i) {
+          glyph[i] = (byte) (random.nextInt(4) == 0 ? 16 : 235);
+        }
+      }
+      textY = ByteBuffer.allocateDirect(2 * sizeY);
+      final int[] glyphRow = new int[width / GLYPH_WIDTH + 1];
+      for (int y = 0; y < 2 * height; ++y) {
+        final int lineRow = y % TEXT_LINE_HEIGHT;
+        if (lineRow == 0) {
+          // A new line of text, with a ragged right margin.
+          final int lineLength = glyphRow.length / 2 + random.nextInt(glyphRow.length / 2 + 1);
+          for (int i = 0; i < glyphRow.length; ++i) {
+            final boolean space = i >= lineLength || random.nextInt(6) == 0;
+            glyphRow[i] = space ? -1 : random.nextInt(GLYPH_COUNT);
+          }
+        }
+        for (int x = 0; x < width; ++x) {
+          final int glyph = glyphRow[x / GLYPH_WIDTH];
+          final boolean ink = lineRow < GLYPH_HEIGHT && glyph >= 0
+              && glyphs[glyph][lineRow * GLYPH_WIDTH + x % GLYPH_WIDTH] == 16;
+          textY.put(y * width + x, (byte) (ink ? 16 : 235));
+        }
+      }
+
+      // An odd amount larger than a frame, so that the offsets of consecutive frames do not
+      // line up with rows.
+      noiseSize = YuvHelper.getPackedI420Size(width, height) + 65537;
+      final byte[] noiseBytes = new byte[2 * noiseSize];
+      random.nextBytes(noiseBytes);
+      System.arraycopy(noiseBytes, 0, noiseBytes, noiseSize, noiseSize);
+      noise = ByteBuffer.allocateDirect(noiseBytes.length);
+      noise.put(noiseBytes);
+    }
+  }
+
+  public SyntheticVideoCapturer(Pattern pattern) {
+    this.pattern = pattern;
+  }
+
+  @Override
+  public synchronized void initialize(@Nullable SurfaceTextureHelper surfaceTextureHelper,
+      @Nullable Context applicationContext, CapturerObserver capturerObserver) {
+    if (capturerObserver == null) {
+      throw new RuntimeException("capturerObserver not set.");
+    }
+    this.capturerObserver = capturerObserver;
+  }
+
+  @Override
+  public synchronized void startCapture(int width, int height, int framerate) {
+    if (capturerObserver == null) {
+      throw new RuntimeException("capturer not initialized.");
+    }
+    if (thread != null) {
+      return;
+    }
+    this.width = width;
+    this.height = height;
+    this.framerate = framerate;
+    capturerObserver.onCapturerStarted(true);
+    running = true;
+    thread = new Thread(this::generate, "SyntheticVideoCapturer");
+    thread.start();
+  }
+
+  @Override
+  public void stopCapture() throws InterruptedException {
+    final Thread generatorThread;
+    synchronized (this) {
+      generatorThread = thread;
+      thread = null;
+    }
+    if (generatorThread == null) {
+      return;
+    }
+    synchronized (pacingLock) {
+      running = false;
+      pacingLock.notifyAll();
+    }
+    generatorThread.join();
+  }
+
+  /** Changes the size and frame rate of the following frames. */
+  @Override
+  public void changeCaptureFormat(int width, int height, int framerate) {
+    this.width = width;
+    this.height = height;
+    this.framerate = framerate;
+  }
+
+  @Override
+  public void dispose() {
+    try {
+      stopCapture();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    bufferPool.clear();
+  }
+
+  @Override
+  public boolean isScreencast() {
+    return true;
+  }
+
+  public long getDeliveredFrames() {
+    return deliveredFrames;
+  }
+
+  /** Returns the number of frames skipped because the observer fell behind the frame rate. */
+  public long getSkippedFrames() {
+    return skippedFrames;
+  }
+
+  /** Returns the pool the frames are allocated from. */
+  public DirectBufferPool getBufferPool() {
+    return bufferPool;
+  }
+
+  // Returns the next frame of the pattern at |width| x |height|, allocated from the pool. Renders
+  // new templates when the size changed.
+  private JavaI420Buffer createFrame(int width, int height) {
+    if (templates == null || templates.width != width || templates.height != height) {
+      templates = new Templates(width, height);
+      bufferPool.evictAllExcept(YuvHelper.getPackedI420Size(width, height));
+    }
+    final Templates t = templates;
+    final int sizeY = width * height;
+    final int sizeUV = t.chromaWidth * t.chromaHeight;
+    final ByteBuffer packed = bufferPool.acquire(sizeY + 2 * sizeUV);
+    switch (pattern) {
+      case STATIC:
+        copy(t.background, packed, 0, sizeY + 2 * sizeUV);
+        break;
+      case SCROLLING_TEXT: {
+        final int scrollRow = (int) (frameNumber * SCROLL_ROWS_PER_FRAME % height);
+        copy(slice(t.textY, scrollRow * width, sizeY), packed, 0, sizeY);
+        copy(slice(t.background, sizeY, 2 * sizeUV), packed, sizeY, 2 * sizeUV);
+        break;
+      }
+      case NOISE: {
+        final int offset = (int) (frameNumber * 7919 % t.noiseSize);
+        copy(slice(t.noise, offset, sizeY + 2 * sizeUV), packed, 0, sizeY + 2 * sizeUV);
+        break;
+      }
+      case PARTIAL_UPDATES:
+        copy(t.background, packed, 0, sizeY + 2 * sizeUV);
+        updateRegions(packed, t);
+        break;
+    }
+    ++frameNumber;
+    return JavaI420Buffer.wrap(width, height, slice(packed, 0, sizeY), width,
+        slice(packed, sizeY, sizeUV), t.chromaWidth, slice(packed, sizeY + sizeUV, sizeUV),
+        t.chromaWidth, () -> bufferPool.release(packed));
+  }
+
+  // Overwrites a few small luma regions of the packed frame |dst| with noise that changes every
+  // frame.
+  private void updateRegions(ByteBuffer dst, Templates t) {
+    final int regionWidth = Math.min(UPDATE_REGION_SIZE, t.width);
+    final int regionHeight = Math.min(UPDATE_REGION_SIZE, t.height);
+    for (int region = 0; region < UPDATE_REGION_COUNT; ++region) {
+      final int x = (t.width - regionWidth) * (region + 1) / (UPDATE_REGION_COUNT + 1);
+      final int y = (t.height - regionHeight) * (region + 1) / (UPDATE_REGION_COUNT + 1);
+      final int offset = (int) ((frameNumber * 104729 + region * 7919) % t.noiseSize);
+      YuvHelper.copyPlane(slice(t.noise, offset, regionWidth * regionHeight), regionWidth,
+          slice(dst, y * t.width + x, (regionHeight - 1) * t.width + regionWidth), t.width,
+          regionWidth, regionHeight, PlaneProcessor.getDefault());
+    }
+  }
+
+  // Copies the first |length| bytes of |src| to |dst| at |offset|.
+  private static void copy(ByteBuffer src, ByteBuffer dst, int offset, int length) {
+    slice(dst, offset, length).put(slice(src, 0, length));
+  }
+
+  private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+    final ByteBuffer duplicate = buffer.duplicate();
+    duplicate.clear();
+    duplicate.position(offset);
+    duplicate.limit(offset + length);
+    return duplicate.slice();
+  }
+
+  private void generate() {
+    final CapturerObserver observer = capturerObserver;
+    long dueNs = System.nanoTime();
+    while (running) {
+      final int rate = framerate;
+      if (rate > 0) {
+        if (!waitUntil(dueNs)) {
+          break;
+        }
+      }
+      final long timestampNs = rate > 0 ? dueNs : System.nanoTime();
+      final VideoFrame frame =
+          new VideoFrame(createFrame(width, height), /* rotation= */ 0, timestampNs);
+      observer.onFrameCaptured(frame);
+      frame.release();
+      ++deliveredFrames;
+
+      if (rate > 0) {
+        final long intervalNs = TimeUnit.SECONDS.toNanos(1) / rate;
+        dueNs += intervalNs;
+        final long lateNs = System.nanoTime() - dueNs;
+        if (lateNs > intervalNs) {
+          final long skipped = lateNs / intervalNs;
+          skippedFrames += skipped;
+          dueNs += skipped * intervalNs;
+        }
+      }
+    }
+    observer.onCapturerStopped();
+  }
+
+  // Waits until System.nanoTime() reaches |dueNs|. Returns false if the generator was stopped
+  // first.
+  private boolean waitUntil(long dueNs) {
+    synchronized (pacingLock) {
+      long remainingNs;
+      while (running && (remainingNs = dueNs - System.nanoTime()) > 0) {
+        try {
+          TimeUnit.NANOSECONDS.timedWait(pacingLock, remainingNs);
+        } catch (InterruptedException e) {
+          // Only stopCapture() ends the generator.
+        }
+      }
+      return running;
+    }
+  }
+}
@@ -13,6 +13,8 @@ package com.test.mp;
 import android.graphics.Matrix;
 import android.os.Handler;
 
+import androidx.annotation.Nullable;
+
 /**
  * Android texture buffer that glues together the necessary information together with a generic
  * release callback. ToI420() is implemented by providing a Handler and a YuvConverter.
@@ -32,14 +34,18 @@ public class TextureBufferImpl implements VideoFrame.TextureBuffer {
   private final Matrix transformMatrix;
   private final Handler toI420Handler;
   private final YuvConverter yuvConverter;
+  private final RefCountDelegate refCountDelegate;
 
   TextureBufferImpl(int width, int height, Type type, int id, Matrix transformMatrix,
-                    Handler toI420Handler, YuvConverter yuvConverter) {
-    this(width, height, width, height, type, id, transformMatrix, toI420Handler, yuvConverter);
+                    Handler toI420Handler, YuvConverter yuvConverter,
+                    @Nullable Runnable releaseCallback) {
+    this(width, height, width, height, type, id, transformMatrix, toI420Handler, yuvConverter,
+        releaseCallback);
   }
 
   private TextureBufferImpl(int unscaledWidth, int unscaledHeight, int width, int height, Type type,
-                            int id, Matrix transformMatrix, Handler toI420Handler, YuvConverter yuvConverter) {
+                            int id, Matrix transformMatrix, Handler toI420Handler, YuvConverter yuvConverter,
+                            @Nullable Runnable releaseCallback) {
     this.unscaledWidth = unscaledWidth;
     this.unscaledHeight = unscaledHeight;
     this.width = width;
@@ -49,6 +55,7 @@ public class TextureBufferImpl implements VideoFrame.TextureBuffer {
     this.transformMatrix = transformMatrix;
     this.toI420Handler = toI420Handler;
     this.yuvConverter = yuvConverter;
+    this.refCountDelegate = new RefCountDelegate(releaseCallback);
   }
 
   @Override
@@ -82,6 +89,26 @@ public class TextureBufferImpl implements VideoFrame.TextureBuffer {
         toI420Handler, () -> yuvConverter.convert(this));
   }
 
+  /**
+   * Converts to I420 with YuvConverter.convertAsync() on the toI420 handler. Returns once the
+   * texture has been read, so the buffer can be released right away. |callback| is called on the
+   * handler when the result is ready, see YuvConverter.convertAsync().
+   */
+  public void toI420Async(YuvConverter.Callback callback) {
+    ThreadUtils.invokeAtFrontUninterruptibly(
+        toI420Handler, () -> yuvConverter.convertAsync(this, callback));
+  }
+
+  @Override
+  public void retain() {
+    refCountDelegate.retain();
+  }
+
+  @Override
+  public void release() {
+    refCountDelegate.release();
+  }
+
   @Override
   public VideoFrame.Buffer cropAndScale(
       int cropX, int cropY, int cropWidth, int cropHeight, int scaleWidth, int scaleHeight) {
@@ -124,7 +151,8 @@ public class TextureBufferImpl implements VideoFrame.TextureBuffer {
   /**
    * Create a new TextureBufferImpl with an applied transform matrix and a new size. The
    * existing buffer is unchanged. The given transform matrix is applied first when texture
-   * coordinates are still in the unmodified [0, 1] range.
+   * coordinates are still in the unmodified [0, 1] range. The new buffer holds a reference to this
+   * buffer, so the texture is not returned until both have been released.
    */
   public TextureBufferImpl applyTransformMatrix(
           Matrix transformMatrix, int newWidth, int newHeight) {
@@ -137,7 +165,8 @@ public class TextureBufferImpl implements VideoFrame.TextureBuffer {
                                                  int unscaledHeight, int scaledWidth, int scaledHeight) {
     final Matrix newMatrix = new Matrix(this.transformMatrix);
     newMatrix.preConcat(transformMatrix);
+    retain();
     return new TextureBufferImpl(unscaledWidth, unscaledHeight, scaledWidth, scaledHeight, type, id,
-        newMatrix, toI420Handler, yuvConverter);
+        newMatrix, toI420Handler, yuvConverter, this::release);
   }
 }
@@ -0,0 +1,119 @@
+package com.test.mp;
+
+import android.opengl.GLES20;
+
+import androidx.annotation.Nullable;
+
+import java.util.ArrayDeque;
+
+/**
+ * Pool of up to |capacity| RGBA textures that OES frames are copied into, so that the
+ * SurfaceTexture can take the next frame while the copies are still being converted. Textures are
+ * allocated when first needed and reallocated when the frame size changes.
+ *
+ * <p>Not thread safe, must be used on a thread with an active EGL context, the handler thread of
+ * SurfaceTextureHelper.
+ */
+class TextureCopyRing {
+  private static final String FRAGMENT_SHADER = "void main() {\n"
+      + "  gl_FragColor = sample(tc);\n"
+      + "}\n";
+
+  private final GlApi gl;
+  private final ArrayDeque<GlTextureFrameBuffer> freeTextures = new ArrayDeque<>();
+  private final GlGenericDrawer drawer;
+  private int capacity;
+  // Number of textures allocated, free or in use.
+  private int textureCount;
+
+  TextureCopyRing(GlApi gl, int capacity) {
+    this.gl = gl;
+    this.drawer = new GlGenericDrawer(gl, FRAGMENT_SHADER, new GlGenericDrawer.ShaderCallbacks() {
+      @Override
+      public void onNewShader(GlShader shader) {}
+
+      @Override
+      public void onPrepareShader(GlShader shader, float[] texMatrix, int frameWidth,
+          int frameHeight, int viewportWidth, int viewportHeight) {}
+    });
+    setCapacity(capacity);
+  }
+
+  /**
+   * Changes the number of textures. Textures above the new capacity are released right away if
+   * free, or when they are returned.
+   */
+  void setCapacity(int capacity) {
+    if (capacity < 0) {
+      throw new IllegalArgumentException("capacity must not be negative: " + capacity);
+    }
+    this.capacity = capacity;
+    while (textureCount > capacity && !freeTextures.isEmpty()) {
+      freeTextures.pop().release();
+      --textureCount;
+    }
+  }
+
+  int getCapacity() {
+    return capacity;
+  }
+
+  /** Returns true if copy() would not return null. */
+  boolean hasFreeTexture() {
+    return !freeTextures.isEmpty() || textureCount < capacity;
+  }
+
+  /** Returns true if textures returned by copy() have not been returned yet. */
+  boolean hasTexturesInUse() {
+    return textureCount > freeTextures.size();
+  }
+
+  /**
+   * Draws |oesTextureId| transformed by |texMatrix| into a free |width| x |height| texture, and
+   * returns it. The copy is upright in OpenGL convention, i.e. needs no transform matrix. Returns
+   * null if all textures are in use. The texture must be handed back with returnTexture().
+   */
+  @Nullable
+  GlTextureFrameBuffer copy(int oesTextureId, float[] texMatrix, int width, int height) {
+    final GlTextureFrameBuffer texture;
+    if (!freeTextures.isEmpty()) {
+      texture = freeTextures.pop();
+    } else if (textureCount < capacity) {
+      // RGBA rather than RGB, rendering to RGB textures is not supported by all GLES2 devices.
+      texture = new GlTextureFrameBuffer(gl, GLES20.GL_RGBA);
+      ++textureCount;
+    } else {
+      return null;
+    }
+    texture.setSize(width, height);
+    gl.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, texture.getFrameBufferId());
+    drawer.drawOes(oesTextureId, texMatrix, width, height, /* viewportX= */ 0,
+        /* viewportY= */ 0, width, height);
+    gl.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+    GlUtil.checkNoGLES2Error(gl, "TextureCopyRing.copy");
+    return texture;
+  }
+
+  /** Makes |texture|, returned by copy(), available to the next copy. */
+  void returnTexture(GlTextureFrameBuffer texture) {
+    if (textureCount > capacity) {
+      texture.release();
+      --textureCount;
+    } else {
+      freeTextures.push(texture);
+    }
+  }
+
+  /** Releases the free textures and the shader. Textures in use must have been returned first. */
+  void release() {
+    if (hasTexturesInUse()) {
+      throw new IllegalStateException("Textures still in use.");
+    }
+    for (GlTextureFrameBuffer texture : freeTextures) {
+      texture.release();
+    }
+    freeTextures.clear();
+    textureCount = 0;
+    drawer.release();
+  }
+}
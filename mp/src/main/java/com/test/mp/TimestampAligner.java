@@ -0,0 +1,122 @@
+package com.test.mp;
+
+/**
+ * Translates capture timestamps, e.g. of a SurfaceTexture, to the System.nanoTime() time base, the
+ * same as WebRTC's rtc::TimestampAligner but in Java.
+ *
+ * <p>The offset between the two clocks is estimated by averaging the difference between the
+ * capture timestamp and the time the frame is seen over the last frames, so that delivery jitter is
+ * filtered out while a slow drift between the clocks is followed. A frame that is much further off
+ * than the recent frames, e.g. because the delivering thread was descheduled, is not used for the
+ * estimate. If several frames in a row are off, the capture clock jumped, e.g. because the
+ * VirtualDisplay was re-created, and the estimate starts over.
+ *
+ * <p>The translated timestamps are strictly increasing, also across such jumps, and not later than
+ * the time the frame is seen unless frames are seen less than a millisecond apart.
+ *
+ * <p>Not thread safe, SurfaceTextureHelper only uses it on its handler thread.
+ */
+public class TimestampAligner {
+  // Number of frames the offset is averaged over once the estimate has settled.
+  private static final int WINDOW_SIZE = 100;
+  // An error this large always means the capture clock jumped, start over right away.
+  private static final long RESET_THRESHOLD_NS = 300_000_000L;
+  // Errors are only tested against the jitter once the estimate is based on this many frames.
+  private static final int MIN_FRAMES_FOR_OUTLIERS = 10;
+  // A frame is an outlier if its error is this many times the mean error of the recent frames...
+  private static final int OUTLIER_JITTER_FACTOR = 4;
+  // ...and at least this large.
+  private static final long MIN_OUTLIER_THRESHOLD_NS = 10_000_000L;
+  // This many outliers in a row mean the offset changed, start over.
+  private static final int MAX_CONSECUTIVE_OUTLIERS = 5;
+  // Translated timestamps are at least this far apart.
+  private static final long MIN_FRAME_INTERVAL_NS = 1_000_000L;
+
+  // Estimated System.nanoTime() minus capture time.
+  private long offsetNs;
+  // Mean absolute error of the frames used for |offsetNs|.
+  private long jitterNs;
+  // Number of frames |offsetNs| is based on, up to WINDOW_SIZE.
+  private int framesSeen;
+  private int consecutiveOutliers;
+  private long outlierFrames;
+  // How much the translated timestamps were moved back to keep them from being in the future.
+  private long clipBiasNs;
+  private long prevTranslatedNs = Long.MIN_VALUE;
+
+  /** Returns the current time in the time base of the translated timestamps. */
+  public static long getRtcTimeNanos() {
+    return System.nanoTime();
+  }
+
+  /** Translates |captureTimeNs| of a frame that is seen now. */
+  public long translateTimestamp(long captureTimeNs) {
+    return translateTimestamp(captureTimeNs, getRtcTimeNanos());
+  }
+
+  /**
+   * Translates |captureTimeNs| of a frame that was seen at |systemTimeNs|, in the
+   * getRtcTimeNanos() time base. Frames must be passed in the order they are seen.
+   */
+  public long translateTimestamp(long captureTimeNs, long systemTimeNs) {
+    updateOffset(captureTimeNs, systemTimeNs);
+    return clipTimestamp(captureTimeNs + offsetNs, systemTimeNs);
+  }
+
+  /** Returns the number of frames left out of the offset estimate as outliers. */
+  public long getOutlierFrameCount() {
+    return outlierFrames;
+  }
+
+  private void updateOffset(long captureTimeNs, long systemTimeNs) {
+    final long diffNs = systemTimeNs - captureTimeNs;
+    long absErrorNs = Math.abs(diffNs - offsetNs);
+    if (framesSeen > 0 && absErrorNs > RESET_THRESHOLD_NS) {
+      reset();
+    } else if (framesSeen >= MIN_FRAMES_FOR_OUTLIERS
+        && absErrorNs > Math.max(MIN_OUTLIER_THRESHOLD_NS, OUTLIER_JITTER_FACTOR * jitterNs)) {
+      ++outlierFrames;
+      if (++consecutiveOutliers < MAX_CONSECUTIVE_OUTLIERS) {
+        return;
+      }
+      reset();
+    }
+    consecutiveOutliers = 0;
+    if (framesSeen == 0) {
+      // The error against the old offset says nothing about the jitter.
+      absErrorNs = 0;
+    }
+    if (framesSeen < WINDOW_SIZE) {
+      ++framesSeen;
+    }
+    // Running average over the last |framesSeen| frames. The first frame after a reset sets the
+    // offset to its own difference.
+    offsetNs += (diffNs - offsetNs) / framesSeen;
+    jitterNs += (absErrorNs - jitterNs) / framesSeen;
+  }
+
+  private void reset() {
+    framesSeen = 0;
+    consecutiveOutliers = 0;
+    jitterNs = 0;
+    clipBiasNs = 0;
+  }
+
+  private long clipTimestamp(long filteredTimeNs, long systemTimeNs) {
+    long timeNs = filteredTimeNs - clipBiasNs;
+    if (timeNs > systemTimeNs) {
+      // A frame cannot be captured after it is seen. Keep the correction for the next frames, so
+      // that the following timestamps do not bunch up behind this one.
+      clipBiasNs += timeNs - systemTimeNs;
+      timeNs = systemTimeNs;
+    }
+    if (prevTranslatedNs != Long.MIN_VALUE && timeNs < prevTranslatedNs + MIN_FRAME_INTERVAL_NS) {
+      // Keep the timestamps increasing. This may put the frame slightly after the time it was seen
+      // if frames are seen less than MIN_FRAME_INTERVAL_NS apart, which is preferred over two
+      // frames with the same time.
+      timeNs = prevTranslatedNs + MIN_FRAME_INTERVAL_NS;
+    }
+    prevTranslatedNs = timeNs;
+    return timeNs;
+  }
+}
@@ -26,7 +26,7 @@ import java.nio.ByteBuffer;
  * format and serves as a fallback for video sinks that can only handle I420, e.g. the internal
  * WebRTC software encoders.
  */
-public class VideoFrame {
+public class VideoFrame implements RefCounted {
   /**
    * Implements image storage medium. Might be for example an OpenGL texture or a memory region
    * containing I420-data.
@@ -34,7 +34,7 @@ public class VideoFrame {
    * <p>Reference counting is needed since a video buffer can be shared between multiple VideoSinks,
    * and the buffer needs to be returned to the VideoSource as soon as all references are gone.
    */
-  public interface Buffer {
+  public interface Buffer extends RefCounted {
     /**
      * Resolution of the buffer in pixels.
      */
@@ -44,13 +44,18 @@ public class VideoFrame {
     /**
      * Returns a memory-backed frame in I420 format. If the pixel data is in another format, a
      * conversion will take place. All implementations must provide a fallback to I420 for
-     * compatibility with e.g. the internal WebRTC software encoders.
+     * compatibility with e.g. the internal WebRTC software encoders. The returned buffer is owned
+     * by the caller and must be released once it is no longer needed.
      */
     I420Buffer toI420();
 
+    @Override void retain();
+    @Override void release();
+
     /**
      * Crops a region defined by |cropx|, |cropY|, |cropWidth| and |cropHeight|. Scales it to size
-     * |scaleWidth| x |scaleHeight|.
+     * |scaleWidth| x |scaleHeight|. The returned buffer is owned by the caller and must be
+     * released once it is no longer needed.
      */
     Buffer cropAndScale(
         int cropX, int cropY, int cropWidth, int cropHeight, int scaleWidth, int scaleHeight);
@@ -169,4 +174,14 @@ public class VideoFrame {
     }
     return buffer.getWidth();
   }
+
+  @Override
+  public void retain() {
+    buffer.retain();
+  }
+
+  @Override
+  public void release() {
+    buffer.release();
+  }
 }
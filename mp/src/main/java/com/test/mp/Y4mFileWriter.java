@@ -0,0 +1,143 @@
+package com.test.mp;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Writes frames as a YUV4MPEG2 (.y4m) stream, which ffmpeg and most players open without being
+ * told the frame size, plus a sidecar Y4mIndex with the offset, capture timestamp and rotation of
+ * every frame.
+ *
+ * <p>The stream header is written when the first frame arrives. A Y4M stream has a single frame
+ * size, so a frame of another size finishes the current file and starts a new stream in a file with
+ * a numeric suffix, e.g. screen_record_1.y4m, with its own index. Frames are written like I420
+ * frames of YuvFileWriter, with the FRAME header in the same gather write.
+ *
+ * <p>Not thread safe, all calls must come from the same thread.
+ */
+public class Y4mFileWriter implements FrameWriter {
+  private static final Charset US_ASCII = Charset.forName("US-ASCII");
+  private static final byte[] FRAME_HEADER = "FRAME\n".getBytes(US_ASCII);
+  // Header rate of recordings without a frame rate limit. Y4M readers reject rates of 0 or less.
+  private static final int NOMINAL_FRAMERATE = 30;
+
+  private final File file;
+  private final int framerate;
+  private final List<File> files = new ArrayList<>();
+  private final ByteBuffer frameHeader = ByteBuffer.wrap(FRAME_HEADER);
+  // The stream being written, null before the first frame.
+  private YuvFileWriter streamWriter;
+  private DataOutputStream indexStream;
+  private int streamWidth;
+  private int streamHeight;
+  private int streamHeaderSize;
+  private long framesWritten;
+
+  /**
+   * Writes the recording to |file|, which is created or truncated with the first frame.
+   * |framerate| is only stored in the header, the index has the real capture times. A
+   * |framerate| of 0 or less, i.e. every captured frame, stores a nominal rate of 30.
+   */
+  public Y4mFileWriter(File file, int framerate) {
+    this.file = file;
+    this.framerate = framerate > 0 ? framerate : NOMINAL_FRAMERATE;
+  }
+
+  @Override
+  public void writeFrame(VideoFrame.I420Buffer buffer, int rotation, long timestampNs)
+      throws IOException {
+    if (streamWriter == null || buffer.getWidth() != streamWidth
+        || buffer.getHeight() != streamHeight) {
+      startStream(buffer.getWidth(), buffer.getHeight());
+    }
+    final long frameOffset =
+        streamHeaderSize + streamWriter.getBytesWritten() + FRAME_HEADER.length;
+    frameHeader.clear();
+    streamWriter.writeFrame(frameHeader, buffer);
+    indexStream.writeLong(frameOffset);
+    indexStream.writeLong(timestampNs);
+    indexStream.writeInt(rotation);
+    ++framesWritten;
+  }
+
+  /** Returns the files written so far, one per frame size, in order. */
+  public List<File> getFiles() {
+    return Collections.unmodifiableList(files);
+  }
+
+  public long getFramesWritten() {
+    return framesWritten;
+  }
+
+  @Override
+  public void flush() throws IOException {
+    if (streamWriter != null) {
+      streamWriter.flush();
+      indexStream.flush();
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    finishStream();
+  }
+
+  private void startStream(int width, int height) throws IOException {
+    finishStream();
+    final File streamFile = files.isEmpty() ? file : getNumberedFile(file, files.size());
+    final FileChannel channel = new FileOutputStream(streamFile).getChannel();
+    // C420jpeg: I420 with the chroma sited between the luma samples, as YuvConverter samples it.
+    final String header = "YUV4MPEG2 W" + width + " H" + height + " F" + framerate + ":1 Ip A1:1"
+        + " C420jpeg\n";
+    final ByteBuffer headerBuffer = ByteBuffer.wrap(header.getBytes(US_ASCII));
+    try {
+      while (headerBuffer.hasRemaining()) {
+        channel.write(headerBuffer);
+      }
+      indexStream = new DataOutputStream(new BufferedOutputStream(
+          new FileOutputStream(Y4mIndex.getIndexFile(streamFile))));
+      indexStream.writeInt(Y4mIndex.MAGIC);
+      indexStream.writeInt(Y4mIndex.VERSION);
+    } catch (IOException e) {
+      channel.close();
+      throw e;
+    }
+    streamWriter = new YuvFileWriter(channel, ScreenCapturer.OutputFormat.I420);
+    streamWidth = width;
+    streamHeight = height;
+    streamHeaderSize = headerBuffer.capacity();
+    files.add(streamFile);
+  }
+
+  private void finishStream() throws IOException {
+    if (streamWriter == null) {
+      return;
+    }
+    try {
+      indexStream.close();
+    } finally {
+      streamWriter.close();
+      streamWriter = null;
+      indexStream = null;
+    }
+  }
+
+  // Returns |file| with |number| appended to the name, before the extension.
+  static File getNumberedFile(File file, int number) {
+    final String name = file.getName();
+    final int dot = name.lastIndexOf('.');
+    final String numbered = dot > 0
+        ? name.substring(0, dot) + "_" + number + name.substring(dot)
+        : name + "_" + number;
+    return new File(file.getParentFile(), numbered);
+  }
+}
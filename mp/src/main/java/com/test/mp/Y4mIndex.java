@@ -0,0 +1,115 @@
+package com.test.mp;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads the sidecar index that Y4mFileWriter writes next to each recording, so that a frame can be
+ * located without scanning the recording.
+ *
+ * <p>The index is a big-endian binary file: the magic "Y4MI" and a version int, followed by one
+ * fixed-size record per frame holding the file offset of the frame data (after the FRAME header),
+ * the capture timestamp in nanoseconds and the rotation in degrees. Record |i| is at a fixed
+ * offset, so looking up a frame is a single positional read.
+ */
+public class Y4mIndex implements Closeable {
+  static final int MAGIC = 0x59344d49; // "Y4MI"
+  static final int VERSION = 1;
+  static final int HEADER_SIZE = 8;
+  static final int RECORD_SIZE = 20;
+
+  private final RandomAccessFile file;
+  private final FileChannel channel;
+  private final int frameCount;
+  private final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+
+  /** Returns the index file belonging to |recording|. */
+  public static File getIndexFile(File recording) {
+    return new File(recording.getPath() + ".idx");
+  }
+
+  /** Opens the index of |recording|. */
+  public static Y4mIndex open(File recording) throws IOException {
+    return new Y4mIndex(getIndexFile(recording));
+  }
+
+  private Y4mIndex(File indexFile) throws IOException {
+    file = new RandomAccessFile(indexFile, "r");
+    channel = file.getChannel();
+    try {
+      final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+      readFully(header, 0);
+      if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+        throw new IOException("Not a version " + VERSION + " Y4M index: " + indexFile);
+      }
+      // A record cut short by a crash of the writer is ignored.
+      final long frames = (channel.size() - HEADER_SIZE) / RECORD_SIZE;
+      frameCount = (int) Math.min(frames, Integer.MAX_VALUE);
+    } catch (IOException e) {
+      file.close();
+      throw e;
+    }
+  }
+
+  public int getFrameCount() {
+    return frameCount;
+  }
+
+  /** Returns the offset of the data of frame |index| in the recording, after its FRAME header. */
+  public long getFrameOffset(int index) throws IOException {
+    return readRecord(index).getLong(0);
+  }
+
+  public long getTimestampNs(int index) throws IOException {
+    return readRecord(index).getLong(8);
+  }
+
+  public int getRotation(int index) throws IOException {
+    return readRecord(index).getInt(16);
+  }
+
+  /**
+   * Returns the index of the last frame captured at or before |timestampNs|, or -1 if all frames
+   * are later. Assumes increasing timestamps, as written by the capture pipeline.
+   */
+  public int findFrame(long timestampNs) throws IOException {
+    int low = 0;
+    int high = frameCount - 1;
+    while (low <= high) {
+      final int mid = (low + high) >>> 1;
+      if (getTimestampNs(mid) <= timestampNs) {
+        low = mid + 1;
+      } else {
+        high = mid - 1;
+      }
+    }
+    return high;
+  }
+
+  @Override
+  public void close() throws IOException {
+    file.close();
+  }
+
+  private ByteBuffer readRecord(int index) throws IOException {
+    if (index < 0 || index >= frameCount) {
+      throw new IndexOutOfBoundsException("Frame " + index + " of " + frameCount);
+    }
+    readFully(record, HEADER_SIZE + (long) index * RECORD_SIZE);
+    return record;
+  }
+
+  private void readFully(ByteBuffer dst, long position) throws IOException {
+    dst.clear();
+    while (dst.hasRemaining()) {
+      if (channel.read(dst, position + dst.position()) < 0) {
+        throw new EOFException("Index ends at " + (position + dst.position()));
+      }
+    }
+  }
+}
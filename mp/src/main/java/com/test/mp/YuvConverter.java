@@ -13,6 +13,8 @@ package com.test.mp;
 import android.graphics.Matrix;
 import android.opengl.GLES20;
 
+import androidx.annotation.Nullable;
+
 import com.test.mp.VideoFrame.I420Buffer;
 import com.test.mp.VideoFrame.TextureBuffer;
 
@@ -49,6 +51,12 @@ public class YuvConverter {
       + "      sample(tc + 1.5 * xUnit).rgb);\n"
       + "}\n";
 
+  /** Receives the result of convertAsync(). */
+  public interface Callback {
+    /** Called with the converted frame, which the callee must release. */
+    void onConverted(I420Buffer buffer);
+  }
+
   private static class ShaderCallbacks implements GlGenericDrawer.ShaderCallbacks {
     // Y'UV444 to RGB888, see https://en.wikipedia.org/wiki/YUV#Y%E2%80%B2UV444_to_RGB888_conversion
     // We use the ITU-R BT.601 coefficients for Y, U and V.
@@ -69,12 +77,17 @@ public class YuvConverter {
     private static final float[] vCoeffs =
         new float[] {0.439216f, -0.367788f, -0.0714274f, 0.501961f};
 
+    private final GlApi gl;
     private int xUnitLoc;
     private int coeffsLoc;
 
     private float[] coeffs;
     private float stepSize;
 
+    ShaderCallbacks(GlApi gl) {
+      this.gl = gl;
+    }
+
     public void setPlaneY() {
       coeffs = yCoeffs;
       stepSize = 1.0f;
@@ -99,28 +112,69 @@ public class YuvConverter {
     @Override
     public void onPrepareShader(GlShader shader, float[] texMatrix, int frameWidth, int frameHeight,
                                 int viewportWidth, int viewportHeight) {
-      GLES20.glUniform4fv(coeffsLoc, /* count= */ 1, coeffs, /* offset= */ 0);
+      gl.glUniform4fv(coeffsLoc, /* count= */ 1, coeffs, /* offset= */ 0);
       // Matrix * (1;0;0;0) / (width / stepSize). Note that OpenGL uses column major order.
-      GLES20.glUniform2f(
+      gl.glUniform2f(
           xUnitLoc, stepSize * texMatrix[0] / frameWidth, stepSize * texMatrix[1] / frameWidth);
     }
   }
 
+  // Idle readback memory kept by the default buffer pool. Enough for a few full HD+ frames: one
+  // buffer is being written by the GL thread while the previous ones are still being consumed by
+  // the frame sinks.
+  private static final long DEFAULT_POOL_SIZE_BYTES = 16 * 1024 * 1024;
+  // Pixel pack buffers of convertAsync(). Three let the GPU fall behind by a frame before a
+  // conversion has to wait.
+  private static final int ASYNC_READBACK_BUFFER_COUNT = 3;
+
   private final ThreadUtils.ThreadChecker threadChecker = new ThreadUtils.ThreadChecker();
-  private final GlTextureFrameBuffer i420TextureFrameBuffer =
-      new GlTextureFrameBuffer(GLES20.GL_RGBA);
-  private final ShaderCallbacks shaderCallbacks = new ShaderCallbacks();
-  private final GlGenericDrawer drawer = new GlGenericDrawer(FRAGMENT_SHADER, shaderCallbacks);
+  // Readback buffers are returned here by the release callback of converted frames.
+  private final DirectBufferPool bufferPool;
+  private final GlApi gl;
+  private final GlTextureFrameBuffer i420TextureFrameBuffer;
+  private final ShaderCallbacks shaderCallbacks;
+  private final GlGenericDrawer drawer;
 //  private final VideoFrameDrawer videoFrameDrawer;
+  // Created by the first convertAsync() call if the context supports OpenGL ES 3.0.
+  @Nullable private PixelBufferReadback pixelBufferReadback;
+  private boolean checkedAsyncReadback;
 
   /**
    * This class should be constructed on a thread that has an active EGL context.
    */
   public YuvConverter() {
 //    this(new VideoFrameDrawer());
+    this(new DirectBufferPool(DEFAULT_POOL_SIZE_BYTES));
+  }
+
+  /**
+   * Same as above, drawing the readback buffers from |bufferPool|. The pool can be shared with the
+   * owner of the capture session to warm it up or trim it on resolution changes.
+   */
+  public YuvConverter(DirectBufferPool bufferPool) {
+    this(GlStateCache.getDefault(), bufferPool);
+  }
+
+  /** Same as above, making the GL calls through |gl|. */
+  public YuvConverter(GlApi gl, DirectBufferPool bufferPool) {
+    this.bufferPool = bufferPool;
+    this.gl = gl;
+    this.i420TextureFrameBuffer = new GlTextureFrameBuffer(gl, GLES20.GL_RGBA);
+    this.shaderCallbacks = new ShaderCallbacks(gl);
+    this.drawer = new GlGenericDrawer(gl, FRAGMENT_SHADER, shaderCallbacks);
     threadChecker.detachThread();
   }
 
+  /**
+   * Returns the size in bytes of the buffer convert() reads a |width| x |height| frame back into.
+   * This is the size class to warm up in the buffer pool.
+   */
+  public static int getReadbackBufferSize(int width, int height) {
+    final int stride = ((width + 7) / 8) * 8;
+    final int uvHeight = (height + 1) / 2;
+    return stride * (height + uvHeight);
+  }
+
 //  public YuvConverter(VideoFrameDrawer videoFrameDrawer) {
 //    this.videoFrameDrawer = videoFrameDrawer;
 //    threadChecker.detachThread();
@@ -134,6 +188,75 @@ public class YuvConverter {
 //        inputTextureBuffer, inputTextureBuffer.getWidth(), inputTextureBuffer.getHeight());
     TextureBuffer preparedBuffer = inputTextureBuffer;
 
+    final int frameWidth = preparedBuffer.getWidth();
+    final int frameHeight = preparedBuffer.getHeight();
+    final int stride = ((frameWidth + 7) / 8) * 8;
+    final ByteBuffer i420ByteBuffer =
+        bufferPool.acquire(getReadbackBufferSize(frameWidth, frameHeight));
+
+    drawI420(preparedBuffer);
+    gl.glReadPixels(0, 0, i420TextureFrameBuffer.getWidth(), i420TextureFrameBuffer.getHeight(),
+        GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, i420ByteBuffer);
+
+    GlUtil.checkNoGLES2Error(gl, "YuvConverter.convert");
+
+    // Restore normal framebuffer.
+    gl.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+
+    return wrapI420(i420ByteBuffer, frameWidth, frameHeight, stride);
+  }
+
+  /**
+   * Converts the texture buffer to I420 like convert(), without waiting for the GPU to finish. On
+   * OpenGL ES 3.0 contexts, the result is read back through pixel pack buffers and |callback| is
+   * called by a later convertAsync() or flush() call, usually the next one, once the GPU is done.
+   * The texture buffer is no longer needed when this returns. Without OpenGL ES 3.0, |callback| is
+   * called with the result of convert() before this returns.
+   *
+   * <p>Callbacks are called in the order of the conversions, on the thread of this converter.
+   */
+  public void convertAsync(TextureBuffer inputTextureBuffer, Callback callback) {
+    threadChecker.checkIsOnValidThread();
+    if (!checkedAsyncReadback) {
+      checkedAsyncReadback = true;
+      if (Gles30PixelPackGl.isSupported()) {
+        pixelBufferReadback = new PixelBufferReadback(
+            new Gles30PixelPackGl(), bufferPool, ASYNC_READBACK_BUFFER_COUNT);
+      } else {
+        Logging.w(TAG, "OpenGL ES 3.0 not available, converting synchronously.");
+      }
+    }
+    if (pixelBufferReadback == null) {
+      callback.onConverted(convert(inputTextureBuffer));
+      return;
+    }
+
+    final int frameWidth = inputTextureBuffer.getWidth();
+    final int frameHeight = inputTextureBuffer.getHeight();
+    final int stride = ((frameWidth + 7) / 8) * 8;
+    drawI420(inputTextureBuffer);
+    pixelBufferReadback.readPixels(i420TextureFrameBuffer.getWidth(),
+        i420TextureFrameBuffer.getHeight(),
+        pixels -> callback.onConverted(wrapI420(pixels, frameWidth, frameHeight, stride)));
+    GlUtil.checkNoGLES2Error(gl, "YuvConverter.convertAsync");
+
+    // Restore normal framebuffer.
+    gl.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+  }
+
+  /**
+   * Waits for the conversions started by convertAsync() and calls their callbacks. Call this when
+   * no more frames are coming, e.g. when capture stops, so that the last frames are delivered.
+   */
+  public void flush() {
+    threadChecker.checkIsOnValidThread();
+    if (pixelBufferReadback != null) {
+      pixelBufferReadback.flush();
+    }
+  }
+
+  // Draws |preparedBuffer| into |i420TextureFrameBuffer|, leaving it bound.
+  private void drawI420(TextureBuffer preparedBuffer) {
     // We draw into a buffer laid out like
     //
     //    +---------+
@@ -168,7 +291,6 @@ public class YuvConverter {
     final int uvHeight = (frameHeight + 1) / 2;
     // Total height of the combined memory layout.
     final int totalHeight = frameHeight + uvHeight;
-    final ByteBuffer i420ByteBuffer = ByteBuffer.allocateDirect(stride * totalHeight);
     // Viewport width is divided by four since we are squeezing in four color bytes in each RGBA
     // pixel.
     final int viewportWidth = stride / 4;
@@ -182,8 +304,8 @@ public class YuvConverter {
     i420TextureFrameBuffer.setSize(viewportWidth, totalHeight);
 
     // Bind our framebuffer.
-    GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, i420TextureFrameBuffer.getFrameBufferId());
-    GlUtil.checkNoGLES2Error("glBindFramebuffer");
+    gl.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, i420TextureFrameBuffer.getFrameBufferId());
+    GlUtil.checkNoGLES2Error(gl, "glBindFramebuffer");
 
     // Draw Y.
     shaderCallbacks.setPlaneY();
@@ -202,14 +324,13 @@ public class YuvConverter {
     drawTexture(drawer, preparedBuffer, renderMatrix, frameWidth, frameHeight,
         /* viewportX= */ viewportWidth / 2, /* viewportY= */ frameHeight, viewportWidth / 2,
         /* viewportHeight= */ uvHeight);
+  }
 
-    GLES20.glReadPixels(0, 0, i420TextureFrameBuffer.getWidth(), i420TextureFrameBuffer.getHeight(),
-        GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, i420ByteBuffer);
-
-    GlUtil.checkNoGLES2Error("YuvConverter.convert");
-
-    // Restore normal framebuffer.
-    GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+  // Wraps the planes read back into |i420ByteBuffer| in an I420 buffer that returns it to the pool
+  // when released.
+  private I420Buffer wrapI420(
+      ByteBuffer i420ByteBuffer, int frameWidth, int frameHeight, int stride) {
+    final int uvHeight = (frameHeight + 1) / 2;
 
     // Prepare Y, U, and V ByteBuffer slices.
     final int yPos = 0;
@@ -240,7 +361,8 @@ public class YuvConverter {
 //            " size: " + (stride * totalHeight) + " " + i420ByteBuffer.array().length);
 
 
-    return JavaI420Buffer.wrap(frameWidth, frameHeight, dataY, stride, dataU, stride, dataV, stride);
+    return JavaI420Buffer.wrap(frameWidth, frameHeight, dataY, stride, dataU, stride, dataV, stride,
+        () -> bufferPool.release(i420ByteBuffer));
   }
 
   /**
@@ -271,6 +393,12 @@ public class YuvConverter {
 
   public void release() {
     threadChecker.checkIsOnValidThread();
+    if (pixelBufferReadback != null) {
+      // Conversions still pending are dropped.
+      pixelBufferReadback.release();
+      pixelBufferReadback = null;
+    }
+    checkedAsyncReadback = false;
     drawer.release();
     i420TextureFrameBuffer.release();
 //    videoFrameDrawer.release();
@@ -0,0 +1,184 @@
+package com.test.mp;
+
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Writes frames back to back as raw, tightly packed YUV, the layout expected by tools such as
+ * ffmpeg with -f rawvideo.
+ *
+ * <p>I420 frames are written straight from the plane buffers with one gather write per frame:
+ * each plane whose stride equals its width is handed to the channel as a single buffer, other
+ * planes as one buffer per row, so the row padding is skipped without copying the frame. NV12 and
+ * NV21 frames need the chroma planes interleaved and are repacked once into a reusable buffer.
+ *
+ * <p>Not thread safe, all calls must come from the same thread.
+ */
+public class YuvFileWriter implements FrameWriter {
+  private final FileChannel channel;
+  private final ScreenCapturer.OutputFormat format;
+  // Views of the rows of the frame being written, reused between frames.
+  private ByteBuffer[] rowViews = new ByteBuffer[0];
+  // Destination of the NV12 and NV21 repack.
+  private ByteBuffer packedFrameBuffer;
+  private long framesWritten;
+  private long bytesWritten;
+
+  /** Creates |file|, or truncates it if it exists, and writes frames to it in |format|. */
+  public YuvFileWriter(File file, ScreenCapturer.OutputFormat format) throws IOException {
+    this(new FileOutputStream(file).getChannel(), format);
+  }
+
+  /** Writes frames to |channel| in |format|. The channel is closed when the writer is closed. */
+  public YuvFileWriter(FileChannel channel, ScreenCapturer.OutputFormat format) {
+    this.channel = channel;
+    this.format = format;
+  }
+
+  @Override
+  public void writeFrame(VideoFrame.I420Buffer buffer, int rotation, long timestampNs)
+      throws IOException {
+    writeFrame(/* header= */ null, buffer);
+  }
+
+  /**
+   * Writes the remaining bytes of |header|, if any, immediately followed by |buffer|, in the same
+   * gather write. Used by container writers for their per-frame headers.
+   */
+  void writeFrame(@Nullable ByteBuffer header, VideoFrame.I420Buffer buffer) throws IOException {
+    if (format == ScreenCapturer.OutputFormat.I420) {
+      writeI420(header, buffer);
+    } else {
+      writePacked(header, buffer);
+    }
+    ++framesWritten;
+  }
+
+  public long getFramesWritten() {
+    return framesWritten;
+  }
+
+  public long getBytesWritten() {
+    return bytesWritten;
+  }
+
+  @Override
+  public void flush() throws IOException {
+    channel.force(/* metaData= */ false);
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+  private void writeI420(@Nullable ByteBuffer header, VideoFrame.I420Buffer buffer)
+      throws IOException {
+    final int width = buffer.getWidth();
+    final int height = buffer.getHeight();
+    final int chromaWidth = (width + 1) / 2;
+    final int chromaHeight = (height + 1) / 2;
+    // The worst case is the header and one view per row of every plane.
+    final int maxViews = 1 + height + 2 * chromaHeight;
+    if (rowViews.length < maxViews) {
+      rowViews = new ByteBuffer[maxViews];
+    }
+
+    int count = 0;
+    if (header != null) {
+      rowViews[count++] = header;
+    }
+    count = addRowViews(buffer.getDataY(), buffer.getStrideY(), width, height, count);
+    count = addRowViews(buffer.getDataU(), buffer.getStrideU(), chromaWidth, chromaHeight, count);
+    count = addRowViews(buffer.getDataV(), buffer.getStrideV(), chromaWidth, chromaHeight, count);
+    gatherWrite(count);
+  }
+
+  // Adds views of the |height| rows of |plane| to |rowViews|, starting at index |count|. Returns
+  // the new number of views. A plane without row padding takes a single view.
+  private int addRowViews(ByteBuffer plane, int stride, int width, int height, int count) {
+    if (stride == width) {
+      rowViews[count++] = view(plane, 0, width * height);
+      return count;
+    }
+    for (int y = 0; y < height; ++y) {
+      rowViews[count++] = view(plane, y * stride, width);
+    }
+    return count;
+  }
+
+  private static ByteBuffer view(ByteBuffer plane, int offset, int length) {
+    final ByteBuffer view = plane.duplicate();
+    view.clear();
+    view.limit(offset + length);
+    view.position(offset);
+    return view;
+  }
+
+  // Writes the first |count| buffers of |rowViews| completely, and drops the references to them.
+  private void gatherWrite(int count) throws IOException {
+    int first = 0;
+    while (first < count) {
+      bytesWritten += channel.write(rowViews, first, count - first);
+      // The channel may write only part of the buffers, e.g. when there are more than IOV_MAX.
+      while (first < count && !rowViews[first].hasRemaining()) {
+        rowViews[first++] = null;
+      }
+    }
+  }
+
+  private void writePacked(@Nullable ByteBuffer header, VideoFrame.I420Buffer buffer)
+      throws IOException {
+    final int size = YuvHelper.getPackedI420Size(buffer.getWidth(), buffer.getHeight());
+    if (packedFrameBuffer == null || packedFrameBuffer.capacity() != size) {
+      packedFrameBuffer = ByteBuffer.allocateDirect(size);
+    }
+    packFrame(buffer, format, packedFrameBuffer);
+
+    packedFrameBuffer.clear();
+    if (rowViews.length < 2) {
+      rowViews = new ByteBuffer[2];
+    }
+    int count = 0;
+    if (header != null) {
+      rowViews[count++] = header;
+    }
+    rowViews[count++] = packedFrameBuffer;
+    gatherWrite(count);
+  }
+
+  /**
+   * Writes |buffer| tightly packed in |format| to index 0 of |dst|, which must have a capacity of
+   * at least YuvHelper.getPackedI420Size() bytes. The position of |dst| is not changed.
+   */
+  static void packFrame(
+      VideoFrame.I420Buffer buffer, ScreenCapturer.OutputFormat format, ByteBuffer dst) {
+    final int width = buffer.getWidth();
+    final int height = buffer.getHeight();
+    if (format == ScreenCapturer.OutputFormat.I420) {
+      YuvHelper.I420Copy(buffer.getDataY(), buffer.getStrideY(), buffer.getDataU(),
+          buffer.getStrideU(), buffer.getDataV(), buffer.getStrideV(), dst, width, height);
+      return;
+    }
+
+    final int sizeY = width * height;
+    final int size = YuvHelper.getPackedI420Size(width, height);
+    final ByteBuffer dstY = view(dst, 0, sizeY).slice();
+    final ByteBuffer dstUV = view(dst, sizeY, size - sizeY).slice();
+    final int strideUV = 2 * ((width + 1) / 2);
+    if (format == ScreenCapturer.OutputFormat.NV12) {
+      YuvHelper.I420ToNV12(buffer.getDataY(), buffer.getStrideY(), buffer.getDataU(),
+          buffer.getStrideU(), buffer.getDataV(), buffer.getStrideV(), dstY, width, dstUV,
+          strideUV, width, height);
+    } else {
+      YuvHelper.I420ToNV21(buffer.getDataY(), buffer.getStrideY(), buffer.getDataU(),
+          buffer.getStrideU(), buffer.getDataV(), buffer.getStrideV(), dstY, width, dstUV,
+          strideUV, width, height);
+    }
+  }
+}
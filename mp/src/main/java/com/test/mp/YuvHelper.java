@@ -0,0 +1,353 @@
+package com.test.mp;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Helper methods for copying and converting YUV planes stored in direct ByteBuffers. The work is
+ * split into row stripes on a PlaneProcessor, so large frames are handled by all cores.
+ */
+public class YuvHelper {
+  // Side of the square tiles planes are transposed in. A 64x64 tile and its transpose fit in the
+  // L1 cache, and reading rows of 64 bytes keeps the number of bulk copies low.
+  private static final int TILE_SIZE = 64;
+
+  // Per-thread tiles used by rotatePlane(), allocated once per worker.
+  private static final ThreadLocal<byte[][]> tiles = new ThreadLocal<byte[][]>() {
+    @Override
+    protected byte[][] initialValue() {
+      return new byte[][] {new byte[TILE_SIZE * TILE_SIZE], new byte[TILE_SIZE * TILE_SIZE]};
+    }
+  };
+
+  private YuvHelper() {}
+
+  /**
+   * Returns the number of bytes a tightly packed |width| x |height| I420 frame takes, i.e. the
+   * size of the destination buffer of I420Copy().
+   */
+  public static int getPackedI420Size(int width, int height) {
+    final int chromaWidth = (width + 1) / 2;
+    final int chromaHeight = (height + 1) / 2;
+    return width * height + 2 * chromaWidth * chromaHeight;
+  }
+
+  /**
+   * Copies an I420 frame to |dst|, tightly packed with the Y plane followed by the U and V planes
+   * and no row padding. |dst| must hold at least getPackedI420Size() bytes.
+   */
+  public static void I420Copy(ByteBuffer srcY, int srcStrideY, ByteBuffer srcU, int srcStrideU,
+      ByteBuffer srcV, int srcStrideV, ByteBuffer dst, int width, int height) {
+    I420Copy(srcY, srcStrideY, srcU, srcStrideU, srcV, srcStrideV, dst, width, height,
+        PlaneProcessor.getDefault());
+  }
+
+  /** Same as above, processing the planes on |processor|. */
+  public static void I420Copy(ByteBuffer srcY, int srcStrideY, ByteBuffer srcU, int srcStrideU,
+      ByteBuffer srcV, int srcStrideV, ByteBuffer dst, int width, int height,
+      PlaneProcessor processor) {
+    final int chromaWidth = (width + 1) / 2;
+    final int chromaHeight = (height + 1) / 2;
+    final int sizeY = width * height;
+    final int sizeUV = chromaWidth * chromaHeight;
+    if (dst.capacity() < sizeY + 2 * sizeUV) {
+      throw new IllegalArgumentException("Expected destination buffer capacity to be at least "
+          + (sizeY + 2 * sizeUV) + " was " + dst.capacity());
+    }
+
+    final ByteBuffer dstY = slice(dst, 0, sizeY);
+    final ByteBuffer dstU = slice(dst, sizeY, sizeUV);
+    final ByteBuffer dstV = slice(dst, sizeY + sizeUV, sizeUV);
+    copyPlane(srcY, srcStrideY, dstY, width, width, height, processor);
+    copyPlane(srcU, srcStrideU, dstU, chromaWidth, chromaWidth, chromaHeight, processor);
+    copyPlane(srcV, srcStrideV, dstV, chromaWidth, chromaWidth, chromaHeight, processor);
+  }
+
+  /** Copies the |width| x |height| plane in |src| to |dst|, changing the stride if needed. */
+  public static void copyPlane(final ByteBuffer src, final int srcStride, final ByteBuffer dst,
+      final int dstStride, final int width, int height, PlaneProcessor processor) {
+    processor.processRows(height, width, (rowStart, rowEnd) -> {
+      // Work on duplicates so that concurrent stripes do not race on the buffer positions.
+      final ByteBuffer srcRows = src.duplicate();
+      final ByteBuffer dstRows = dst.duplicate();
+      srcRows.clear();
+      dstRows.clear();
+      if (srcStride == width && dstStride == width) {
+        // Both planes are contiguous, copy the whole stripe at once.
+        srcRows.position(rowStart * width).limit(rowEnd * width);
+        dstRows.position(rowStart * width);
+        dstRows.put(srcRows);
+        return;
+      }
+      for (int row = rowStart; row < rowEnd; ++row) {
+        srcRows.limit(row * srcStride + width).position(row * srcStride);
+        dstRows.position(row * dstStride);
+        dstRows.put(srcRows);
+      }
+    });
+  }
+
+  /**
+   * Rotates an I420 frame clockwise by |rotation| degrees. The destination planes must be sized for
+   * the rotated frame, i.e. |height| x |width| for rotations of 90 and 270 degrees.
+   */
+  public static void I420Rotate(ByteBuffer srcY, int srcStrideY, ByteBuffer srcU, int srcStrideU,
+      ByteBuffer srcV, int srcStrideV, ByteBuffer dstY, int dstStrideY, ByteBuffer dstU,
+      int dstStrideU, ByteBuffer dstV, int dstStrideV, int srcWidth, int srcHeight,
+      int rotation) {
+    I420Rotate(srcY, srcStrideY, srcU, srcStrideU, srcV, srcStrideV, dstY, dstStrideY, dstU,
+        dstStrideU, dstV, dstStrideV, srcWidth, srcHeight, rotation, PlaneProcessor.getDefault());
+  }
+
+  /** Same as above, processing the planes on |processor|. */
+  public static void I420Rotate(ByteBuffer srcY, int srcStrideY, ByteBuffer srcU, int srcStrideU,
+      ByteBuffer srcV, int srcStrideV, ByteBuffer dstY, int dstStrideY, ByteBuffer dstU,
+      int dstStrideU, ByteBuffer dstV, int dstStrideV, int srcWidth, int srcHeight, int rotation,
+      PlaneProcessor processor) {
+    final int chromaWidth = (srcWidth + 1) / 2;
+    final int chromaHeight = (srcHeight + 1) / 2;
+    rotatePlane(srcY, srcStrideY, dstY, dstStrideY, srcWidth, srcHeight, rotation, processor);
+    rotatePlane(
+        srcU, srcStrideU, dstU, dstStrideU, chromaWidth, chromaHeight, rotation, processor);
+    rotatePlane(
+        srcV, srcStrideV, dstV, dstStrideV, chromaWidth, chromaHeight, rotation, processor);
+  }
+
+  /**
+   * Rotates the |width| x |height| plane in |src| clockwise by |rotation| degrees into |dst|.
+   * Rotations of 90 and 270 degrees transpose the plane in cache sized tiles, so both the reads and
+   * the writes stay local no matter how large the plane is.
+   */
+  public static void rotatePlane(final ByteBuffer src, final int srcStride, final ByteBuffer dst,
+      final int dstStride, final int width, final int height, int rotation,
+      PlaneProcessor processor) {
+    switch (rotation) {
+      case 0:
+        copyPlane(src, srcStride, dst, dstStride, width, height, processor);
+        break;
+      case 90:
+      case 270:
+        final boolean clockwise = rotation == 90;
+        processor.processRows(height, width, (rowStart, rowEnd) -> {
+          transposeRows(src, srcStride, dst, dstStride, width, height, clockwise, rowStart, rowEnd);
+        });
+        break;
+      case 180:
+        processor.processRows(height, width, (rowStart, rowEnd) -> {
+          mirrorRows(src, srcStride, dst, dstStride, width, height, rowStart, rowEnd);
+        });
+        break;
+      default:
+        throw new IllegalArgumentException("Unsupported rotation: " + rotation);
+    }
+  }
+
+  // Rotates source rows [rowStart, rowEnd) by 90 degrees, clockwise or counterclockwise. These rows
+  // end up as a band of destination columns, so stripes never write to the same bytes.
+  private static void transposeRows(ByteBuffer src, int srcStride, ByteBuffer dst, int dstStride,
+      int width, int height, boolean clockwise, int rowStart, int rowEnd) {
+    src = (ByteBuffer) src.duplicate().clear();
+    dst = (ByteBuffer) dst.duplicate().clear();
+    final byte[][] scratch = tiles.get();
+    final byte[] in = scratch[0];
+    final byte[] out = scratch[1];
+    for (int y0 = rowStart; y0 < rowEnd; y0 += TILE_SIZE) {
+      final int tileHeight = Math.min(TILE_SIZE, rowEnd - y0);
+      for (int x0 = 0; x0 < width; x0 += TILE_SIZE) {
+        final int tileWidth = Math.min(TILE_SIZE, width - x0);
+        for (int j = 0; j < tileHeight; ++j) {
+          src.position((y0 + j) * srcStride + x0);
+          src.get(in, j * TILE_SIZE, tileWidth);
+        }
+        if (clockwise) {
+          // Source pixel (x, y) moves to destination row x, column height - 1 - y.
+          for (int i = 0; i < tileWidth; ++i) {
+            final int outRow = i * TILE_SIZE;
+            for (int j = 0, inRow = (tileHeight - 1) * TILE_SIZE; j < tileHeight;
+                 ++j, inRow -= TILE_SIZE) {
+              out[outRow + j] = in[inRow + i];
+            }
+          }
+          final int dstColumn = height - y0 - tileHeight;
+          for (int i = 0; i < tileWidth; ++i) {
+            dst.position((x0 + i) * dstStride + dstColumn);
+            dst.put(out, i * TILE_SIZE, tileHeight);
+          }
+        } else {
+          // Source pixel (x, y) moves to destination row width - 1 - x, column y.
+          for (int k = 0; k < tileWidth; ++k) {
+            final int outRow = k * TILE_SIZE;
+            final int inColumn = tileWidth - 1 - k;
+            for (int j = 0, inRow = 0; j < tileHeight; ++j, inRow += TILE_SIZE) {
+              out[outRow + j] = in[inRow + inColumn];
+            }
+          }
+          final int dstRow = width - x0 - tileWidth;
+          for (int k = 0; k < tileWidth; ++k) {
+            dst.position((dstRow + k) * dstStride + y0);
+            dst.put(out, k * TILE_SIZE, tileHeight);
+          }
+        }
+      }
+    }
+  }
+
+  // Rotates source rows [rowStart, rowEnd) by 180 degrees, i.e. mirrors them both horizontally and
+  // vertically.
+  private static void mirrorRows(ByteBuffer src, int srcStride, ByteBuffer dst, int dstStride,
+      int width, int height, int rowStart, int rowEnd) {
+    src = (ByteBuffer) src.duplicate().clear();
+    dst = (ByteBuffer) dst.duplicate().clear();
+    final byte[][] scratch = tiles.get();
+    final byte[] in = scratch[0];
+    final byte[] out = scratch[1];
+    for (int y = rowStart; y < rowEnd; ++y) {
+      final int dstRowOffset = (height - 1 - y) * dstStride;
+      // Process the row in tile sized chunks, the end of the source row goes to the start of the
+      // destination row.
+      for (int x0 = 0; x0 < width; x0 += in.length) {
+        final int length = Math.min(in.length, width - x0);
+        src.position(y * srcStride + x0);
+        src.get(in, 0, length);
+        for (int i = 0; i < length; ++i) {
+          out[i] = in[length - 1 - i];
+        }
+        dst.position(dstRowOffset + width - x0 - length);
+        dst.put(out, 0, length);
+      }
+    }
+  }
+
+  /**
+   * Converts an I420 frame to NV12, i.e. a Y plane followed by a plane of interleaved U and V
+   * samples. Writing the destination planes of a packed buffer makes this the only copy of the
+   * frame.
+   */
+  public static void I420ToNV12(ByteBuffer srcY, int srcStrideY, ByteBuffer srcU, int srcStrideU,
+      ByteBuffer srcV, int srcStrideV, ByteBuffer dstY, int dstStrideY, ByteBuffer dstUV,
+      int dstStrideUV, int width, int height) {
+    final PlaneProcessor processor = PlaneProcessor.getDefault();
+    final int chromaWidth = (width + 1) / 2;
+    final int chromaHeight = (height + 1) / 2;
+    copyPlane(srcY, srcStrideY, dstY, dstStrideY, width, height, processor);
+    mergeUVPlane(srcU, srcStrideU, srcV, srcStrideV, dstUV, dstStrideUV, chromaWidth, chromaHeight,
+        processor);
+  }
+
+  /** Same as I420ToNV12(), but with V samples before U samples, as in NV21. */
+  public static void I420ToNV21(ByteBuffer srcY, int srcStrideY, ByteBuffer srcU, int srcStrideU,
+      ByteBuffer srcV, int srcStrideV, ByteBuffer dstY, int dstStrideY, ByteBuffer dstVU,
+      int dstStrideVU, int width, int height) {
+    I420ToNV12(srcY, srcStrideY, srcV, srcStrideV, srcU, srcStrideU, dstY, dstStrideY, dstVU,
+        dstStrideVU, width, height);
+  }
+
+  /** Converts an NV12 frame to I420. */
+  public static void NV12ToI420(ByteBuffer srcY, int srcStrideY, ByteBuffer srcUV, int srcStrideUV,
+      ByteBuffer dstY, int dstStrideY, ByteBuffer dstU, int dstStrideU, ByteBuffer dstV,
+      int dstStrideV, int width, int height) {
+    final PlaneProcessor processor = PlaneProcessor.getDefault();
+    final int chromaWidth = (width + 1) / 2;
+    final int chromaHeight = (height + 1) / 2;
+    copyPlane(srcY, srcStrideY, dstY, dstStrideY, width, height, processor);
+    splitUVPlane(srcUV, srcStrideUV, dstU, dstStrideU, dstV, dstStrideV, chromaWidth, chromaHeight,
+        processor);
+  }
+
+  /** Same as NV12ToI420(), but with V samples before U samples, as in NV21. */
+  public static void NV21ToI420(ByteBuffer srcY, int srcStrideY, ByteBuffer srcVU, int srcStrideVU,
+      ByteBuffer dstY, int dstStrideY, ByteBuffer dstU, int dstStrideU, ByteBuffer dstV,
+      int dstStrideV, int width, int height) {
+    NV12ToI420(srcY, srcStrideY, srcVU, srcStrideVU, dstY, dstStrideY, dstV, dstStrideV, dstU,
+        dstStrideU, width, height);
+  }
+
+  /**
+   * Interleaves the |width| x |height| planes |srcU| and |srcV| into |dstUV|, U first. Four sample
+   * pairs are merged into one long word at a time.
+   */
+  public static void mergeUVPlane(final ByteBuffer srcU, final int srcStrideU, final ByteBuffer srcV,
+      final int srcStrideV, final ByteBuffer dstUV, final int dstStrideUV, final int width,
+      int height, PlaneProcessor processor) {
+    processor.processRows(height, 2 * width, (rowStart, rowEnd) -> {
+      final ByteBuffer u = littleEndian(srcU);
+      final ByteBuffer v = littleEndian(srcV);
+      final ByteBuffer uv = littleEndian(dstUV);
+      for (int row = rowStart; row < rowEnd; ++row) {
+        final int uOffset = row * srcStrideU;
+        final int vOffset = row * srcStrideV;
+        final int uvOffset = row * dstStrideUV;
+        int x = 0;
+        for (; x + 4 <= width; x += 4) {
+          uv.putLong(uvOffset + 2 * x,
+              spreadBytes(u.getInt(uOffset + x)) | (spreadBytes(v.getInt(vOffset + x)) << 8));
+        }
+        for (; x < width; ++x) {
+          uv.put(uvOffset + 2 * x, u.get(uOffset + x));
+          uv.put(uvOffset + 2 * x + 1, v.get(vOffset + x));
+        }
+      }
+    });
+  }
+
+  /**
+   * Deinterleaves |srcUV|, U first, into the |width| x |height| planes |dstU| and |dstV|. Four
+   * sample pairs are split from one long word at a time.
+   */
+  public static void splitUVPlane(final ByteBuffer srcUV, final int srcStrideUV,
+      final ByteBuffer dstU, final int dstStrideU, final ByteBuffer dstV, final int dstStrideV,
+      final int width, int height, PlaneProcessor processor) {
+    processor.processRows(height, 2 * width, (rowStart, rowEnd) -> {
+      final ByteBuffer uv = littleEndian(srcUV);
+      final ByteBuffer u = littleEndian(dstU);
+      final ByteBuffer v = littleEndian(dstV);
+      for (int row = rowStart; row < rowEnd; ++row) {
+        final int uvOffset = row * srcStrideUV;
+        final int uOffset = row * dstStrideU;
+        final int vOffset = row * dstStrideV;
+        int x = 0;
+        for (; x + 4 <= width; x += 4) {
+          final long pairs = uv.getLong(uvOffset + 2 * x);
+          u.putInt(uOffset + x, gatherBytes(pairs));
+          v.putInt(vOffset + x, gatherBytes(pairs >>> 8));
+        }
+        for (; x < width; ++x) {
+          u.put(uOffset + x, uv.get(uvOffset + 2 * x));
+          v.put(vOffset + x, uv.get(uvOffset + 2 * x + 1));
+        }
+      }
+    });
+  }
+
+  // Moves the four bytes of |word| to the even bytes of a long, i.e. 0xAABBCCDD becomes
+  // 0x00AA00BB00CC00DD.
+  private static long spreadBytes(int word) {
+    long x = word & 0xFFFFFFFFL;
+    x = (x | (x << 16)) & 0x0000FFFF0000FFFFL;
+    x = (x | (x << 8)) & 0x00FF00FF00FF00FFL;
+    return x;
+  }
+
+  // Inverse of spreadBytes(), collects the even bytes of |word| and ignores the odd ones.
+  private static int gatherBytes(long word) {
+    long x = word & 0x00FF00FF00FF00FFL;
+    x = (x | (x >>> 8)) & 0x0000FFFF0000FFFFL;
+    x = (x | (x >>> 16)) & 0x00000000FFFFFFFFL;
+    return (int) x;
+  }
+
+  // Returns a duplicate with little endian byte order, so that the byte at the lowest address ends
+  // up in the least significant bits of multi-byte reads.
+  private static ByteBuffer littleEndian(ByteBuffer buffer) {
+    final ByteBuffer duplicate = buffer.duplicate();
+    duplicate.clear();
+    return duplicate.order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+    final ByteBuffer duplicate = buffer.duplicate();
+    duplicate.clear();
+    duplicate.position(offset).limit(offset + length);
+    return duplicate.slice();
+  }
+}
@@ -0,0 +1,240 @@
+package com.test.mp;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the overflow policies, draining and error handling of AsyncFrameWriter against a fake
+ * writer that can be stalled.
+ */
+public class AsyncFrameWriterTest {
+  private static class FakeWriter implements FrameWriter {
+    final List<Long> timestamps = Collections.synchronizedList(new ArrayList<>());
+    final CountDownLatch unblock = new CountDownLatch(1);
+    final CountDownLatch firstWriteStarted = new CountDownLatch(1);
+    volatile boolean stalled;
+    volatile IOException failure;
+    volatile RuntimeException runtimeFailure;
+    volatile int flushes;
+    volatile boolean closed;
+
+    @Override
+    public void writeFrame(VideoFrame.I420Buffer buffer, int rotation, long timestampNs)
+        throws IOException {
+      firstWriteStarted.countDown();
+      if (stalled) {
+        try {
+          unblock.await();
+        } catch (InterruptedException e) {
+          throw new IOException(e);
+        }
+      }
+      if (failure != null) {
+        throw failure;
+      }
+      if (runtimeFailure != null) {
+        throw runtimeFailure;
+      }
+      timestamps.add(timestampNs);
+    }
+
+    @Override
+    public void flush() {
+      ++flushes;
+    }
+
+    @Override
+    public void close() {
+      closed = true;
+    }
+  }
+
+  // A frame that counts how often it has been released.
+  private static class CountingFrame {
+    int releases;
+    final JavaI420Buffer buffer =
+        JavaI420Buffer.allocate(/* width= */ 2, /* height= */ 2, /* bufferPool= */ null);
+    final JavaI420Buffer tracked = JavaI420Buffer.wrap(2, 2, buffer.getDataY(), 2,
+        buffer.getDataU(), 1, buffer.getDataV(), 1, () -> ++releases);
+  }
+
+  // Writes frames with timestamps [0, |count|), releasing them like a producer would.
+  private static List<CountingFrame> writeFrames(AsyncFrameWriter writer, int count)
+      throws IOException {
+    final List<CountingFrame> frames = new ArrayList<>();
+    for (int i = 0; i < count; ++i) {
+      final CountingFrame frame = new CountingFrame();
+      writer.writeFrame(frame.tracked, /* rotation= */ 0, /* timestampNs= */ i);
+      frame.tracked.release();
+      frames.add(frame);
+    }
+    return frames;
+  }
+
+  private static void assertAllReleased(List<CountingFrame> frames) {
+    for (CountingFrame frame : frames) {
+      assertEquals(1, frame.releases);
+    }
+  }
+
+  @Test
+  public void writesAllFramesInOrderAndFlushesOnClose() throws Exception {
+    final FakeWriter fake = new FakeWriter();
+    final AsyncFrameWriter writer =
+        new AsyncFrameWriter(fake, /* capacity= */ 2, AsyncFrameWriter.OverflowPolicy.BLOCK);
+    final List<CountingFrame> frames = writeFrames(writer, 20);
+    assertTrue(writer.close(/* timeoutMs= */ 5000));
+
+    assertEquals(20, fake.timestamps.size());
+    for (int i = 0; i < 20; ++i) {
+      assertEquals(i, (long) fake.timestamps.get(i));
+    }
+    assertEquals(20, writer.getWrittenFrames());
+    assertEquals(0, writer.getDroppedFrames());
+    assertTrue(writer.getMaxQueueDepth() <= 2);
+    assertTrue(fake.flushes >= 1);
+    assertTrue(fake.closed);
+    assertAllReleased(frames);
+  }
+
+  @Test
+  public void dropOldestKeepsNewestFrames() throws Exception {
+    final FakeWriter fake = new FakeWriter();
+    fake.stalled = true;
+    final AsyncFrameWriter writer = new AsyncFrameWriter(
+        fake, /* capacity= */ 3, AsyncFrameWriter.OverflowPolicy.DROP_OLDEST);
+    final List<CountingFrame> frames = writeFrames(writer, 1);
+    // Frame 0 is taken by the writer thread, which then stalls.
+    assertTrue(fake.firstWriteStarted.await(5, TimeUnit.SECONDS));
+    frames.addAll(writeFrames(writer, 9));
+    assertEquals(3, writer.getQueueDepth());
+    assertEquals(6, writer.getDroppedFrames());
+
+    fake.unblock.countDown();
+    assertTrue(writer.close(/* timeoutMs= */ 5000));
+    // Timestamps restart at 0 for the second batch of writeFrames().
+    assertEquals(4, fake.timestamps.size());
+    assertEquals(6, (long) fake.timestamps.get(1));
+    assertEquals(8, (long) fake.timestamps.get(3));
+    assertAllReleased(frames);
+  }
+
+  @Test
+  public void dropNewestKeepsQueuedFrames() throws Exception {
+    final FakeWriter fake = new FakeWriter();
+    fake.stalled = true;
+    final AsyncFrameWriter writer = new AsyncFrameWriter(
+        fake, /* capacity= */ 3, AsyncFrameWriter.OverflowPolicy.DROP_NEWEST);
+    final List<CountingFrame> frames = writeFrames(writer, 1);
+    assertTrue(fake.firstWriteStarted.await(5, TimeUnit.SECONDS));
+    frames.addAll(writeFrames(writer, 9));
+    assertEquals(6, writer.getDroppedFrames());
+
+    fake.unblock.countDown();
+    assertTrue(writer.close(/* timeoutMs= */ 5000));
+    assertEquals(4, fake.timestamps.size());
+    assertEquals(2, (long) fake.timestamps.get(3));
+    assertAllReleased(frames);
+  }
+
+  @Test
+  public void closeDropsQueuedFramesAfterTimeout() throws Exception {
+    final FakeWriter fake = new FakeWriter();
+    fake.stalled = true;
+    final AsyncFrameWriter writer = new AsyncFrameWriter(
+        fake, /* capacity= */ 4, AsyncFrameWriter.OverflowPolicy.BLOCK);
+    final List<CountingFrame> frames = writeFrames(writer, 1);
+    assertTrue(fake.firstWriteStarted.await(5, TimeUnit.SECONDS));
+    frames.addAll(writeFrames(writer, 4));
+
+    assertFalse(writer.close(/* timeoutMs= */ 50));
+    assertEquals(4, writer.getDroppedFrames());
+    assertEquals(0, writer.getQueueDepth());
+    for (int i = 1; i < frames.size(); ++i) {
+      assertEquals(1, frames.get(i).releases);
+    }
+
+    // The stalled write completes later, then the wrapped writer is closed.
+    fake.unblock.countDown();
+    writer.awaitTermination();
+    assertTrue(fake.closed);
+    assertAllReleased(frames);
+  }
+
+  @Test
+  public void writeFailureIsReportedToProducer() throws Exception {
+    final FakeWriter fake = new FakeWriter();
+    fake.failure = new IOException("disk full");
+    final AsyncFrameWriter writer =
+        new AsyncFrameWriter(fake, /* capacity= */ 2, AsyncFrameWriter.OverflowPolicy.BLOCK);
+    List<CountingFrame> frames = new ArrayList<>();
+    try {
+      for (int i = 0; i < 100; ++i) {
+        frames.addAll(writeFrames(writer, 1));
+        Thread.sleep(1);
+      }
+      fail("Expected the write failure to be reported");
+    } catch (IOException e) {
+      assertSame(fake.failure, e.getCause());
+    }
+    try {
+      writer.close();
+      fail("Expected the write failure to be reported");
+    } catch (IOException e) {
+      assertSame(fake.failure, e.getCause());
+    }
+    assertTrue(fake.closed);
+    assertAllReleased(frames);
+  }
+
+  @Test
+  public void runtimeFailureReleasesBlockedProducer() throws Exception {
+    final FakeWriter fake = new FakeWriter();
+    fake.stalled = true;
+    final AsyncFrameWriter writer =
+        new AsyncFrameWriter(fake, /* capacity= */ 1, AsyncFrameWriter.OverflowPolicy.BLOCK);
+    final List<CountingFrame> frames = writeFrames(writer, 1);
+    assertTrue(fake.firstWriteStarted.await(5, TimeUnit.SECONDS));
+    // Fills the queue, the next frame blocks until the stalled write fails.
+    frames.addAll(writeFrames(writer, 1));
+    final Thread failer = new Thread(() -> {
+      try {
+        Thread.sleep(50);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      fake.runtimeFailure = new IllegalArgumentException("size mismatch");
+      fake.unblock.countDown();
+    });
+    failer.start();
+
+    final CountingFrame blocked = new CountingFrame();
+    frames.add(blocked);
+    try {
+      writer.writeFrame(blocked.tracked, /* rotation= */ 0, /* timestampNs= */ 2);
+      fail("Expected the write failure to be reported");
+    } catch (IOException e) {
+      assertSame(fake.runtimeFailure, e.getCause());
+    } finally {
+      blocked.tracked.release();
+    }
+    failer.join();
+    try {
+      writer.close();
+      fail("Expected the write failure to be reported");
+    } catch (IOException e) {
+      assertSame(fake.runtimeFailure, e.getCause());
+    }
+    assertTrue(fake.closed);
+    assertEquals(0, writer.getQueueDepth());
+    assertAllReleased(frames);
+  }
+}
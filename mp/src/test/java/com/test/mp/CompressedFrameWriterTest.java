@@ -0,0 +1,115 @@
+package com.test.mp;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Round trips recordings through CompressedFrameWriter and CompressedFrameReader.
+ */
+public class CompressedFrameWriterTest {
+  // Screen-like content: flat bars, with a noisy rectangle that moves with |frame|.
+  static JavaI420Buffer createScreenFrame(int width, int height, int frame) {
+    final JavaI420Buffer buffer = JavaI420Buffer.allocate(width, height);
+    final Random random = new Random(frame);
+    final ByteBuffer dataY = buffer.getDataY();
+    for (int y = 0; y < height; ++y) {
+      for (int x = 0; x < width; ++x) {
+        final boolean inRect = x >= frame && x < frame + 16 && y >= 8 && y < 24;
+        dataY.put(y * width + x, inRect ? (byte) random.nextInt() : (byte) (y / 8 * 30));
+      }
+    }
+    for (ByteBuffer plane : new ByteBuffer[] {buffer.getDataU(), buffer.getDataV()}) {
+      while (plane.hasRemaining()) {
+        plane.put((byte) 128);
+      }
+    }
+    return buffer;
+  }
+
+  private static void assertFrameEquals(
+      VideoFrame.I420Buffer expected, VideoFrame.I420Buffer actual) {
+    assertEquals(expected.getWidth(), actual.getWidth());
+    assertEquals(expected.getHeight(), actual.getHeight());
+    final ByteBuffer[] expectedPlanes =
+        {expected.getDataY(), expected.getDataU(), expected.getDataV()};
+    final ByteBuffer[] actualPlanes = {actual.getDataY(), actual.getDataU(), actual.getDataV()};
+    for (int i = 0; i < 3; ++i) {
+      expectedPlanes[i].clear();
+      actualPlanes[i].clear();
+      assertEquals("plane " + i, expectedPlanes[i], actualPlanes[i]);
+    }
+  }
+
+  private static void checkRoundTrip(boolean usePreviousFrame) throws IOException {
+    final File file = File.createTempFile("recording", ".yuvz");
+    try {
+      final List<JavaI420Buffer> frames = new ArrayList<>();
+      // More than a key frame interval, with a frame size change in the middle.
+      for (int i = 0; i < CompressedFrameWriter.KEY_FRAME_INTERVAL + 10; ++i) {
+        frames.add(i == 20
+            ? createScreenFrame(/* width= */ 64, /* height= */ 48, i)
+            : createScreenFrame(/* width= */ 200, /* height= */ 120, i / 3));
+      }
+      final CompressedFrameWriter writer = new CompressedFrameWriter(file, usePreviousFrame);
+      for (int i = 0; i < frames.size(); ++i) {
+        writer.writeFrame(frames.get(i), /* rotation= */ 90, /* timestampNs= */ 1000L * i);
+      }
+      writer.close();
+      assertEquals(file.length(), 8 + writer.getCompressedBytes());
+      assertTrue(writer.getCompressedBytes() < writer.getRawBytes() / 4);
+
+      try (CompressedFrameReader reader = new CompressedFrameReader(file)) {
+        for (int i = 0; i < frames.size(); ++i) {
+          final VideoFrame frame = reader.readFrame();
+          assertNotNull(frame);
+          assertEquals(90, frame.getRotation());
+          assertEquals(1000L * i, frame.getTimestampNs());
+          assertFrameEquals(frames.get(i), (VideoFrame.I420Buffer) frame.getBuffer());
+          frame.release();
+        }
+        assertNull(reader.readFrame());
+      }
+    } finally {
+      file.delete();
+    }
+  }
+
+  @Test
+  public void keyFramesRoundTrip() throws IOException {
+    checkRoundTrip(/* usePreviousFrame= */ false);
+  }
+
+  @Test
+  public void deltaFramesRoundTrip() throws IOException {
+    checkRoundTrip(/* usePreviousFrame= */ true);
+  }
+
+  @Test
+  public void unchangedFramesAreTiny() throws IOException {
+    final File file = File.createTempFile("recording", ".yuvz");
+    try {
+      final JavaI420Buffer frame = createScreenFrame(/* width= */ 720, /* height= */ 1280, 0);
+      final CompressedFrameWriter writer =
+          new CompressedFrameWriter(file, /* usePreviousFrame= */ true);
+      writer.writeFrame(frame, /* rotation= */ 0, /* timestampNs= */ 0);
+      final long keyFrameBytes = writer.getCompressedBytes();
+      writer.writeFrame(frame, /* rotation= */ 0, /* timestampNs= */ 1);
+      final long deltaFrameBytes = writer.getCompressedBytes() - keyFrameBytes;
+      writer.close();
+      // Header and one length per block.
+      assertEquals(4 + DeflateFrameCodec.RECORD_HEADER_SIZE
+          + 4 * DeflateFrameCodec.getBlockCount(YuvHelper.getPackedI420Size(720, 1280)),
+          deltaFrameBytes);
+    } finally {
+      file.delete();
+    }
+  }
+}
@@ -0,0 +1,157 @@
+package com.test.mp;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the recycling, the byte bound and the least recently used eviction of DirectBufferPool,
+ * and its counters.
+ */
+public class DirectBufferPoolTest {
+  @Test
+  public void recyclesReleasedBuffers() {
+    final DirectBufferPool pool = new DirectBufferPool(1024);
+    final ByteBuffer buffer = pool.acquire(100);
+    assertTrue(buffer.isDirect());
+    assertEquals(100, buffer.capacity());
+    assertEquals(1, pool.getMissCount());
+
+    buffer.position(10).limit(20);
+    pool.release(buffer);
+    assertEquals(100, pool.getPooledBytes());
+
+    final ByteBuffer recycled = pool.acquire(100);
+    assertSame(buffer, recycled);
+    // Handed out cleared.
+    assertEquals(0, recycled.position());
+    assertEquals(100, recycled.limit());
+    assertEquals(1, pool.getHitCount());
+    assertEquals(0, pool.getPooledBytes());
+  }
+
+  @Test
+  public void sizeClassesAreExact() {
+    final DirectBufferPool pool = new DirectBufferPool(1024);
+    pool.release(ByteBuffer.allocateDirect(100));
+    final ByteBuffer buffer = pool.acquire(99);
+    assertEquals(99, buffer.capacity());
+    assertEquals(0, pool.getHitCount());
+    assertEquals(1, pool.getMissCount());
+    assertEquals(100, pool.getPooledBytes());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsHeapBuffers() {
+    new DirectBufferPool(1024).release(ByteBuffer.allocate(100));
+  }
+
+  @Test
+  public void refusesBuffersLargerThanPool() {
+    final DirectBufferPool pool = new DirectBufferPool(100);
+    pool.release(ByteBuffer.allocateDirect(60));
+    pool.release(ByteBuffer.allocateDirect(101));
+    assertEquals(60, pool.getPooledBytes());
+    assertEquals(1, pool.getEvictionCount());
+  }
+
+  @Test
+  public void sameSizeBuffersBeyondLimitAreDropped() {
+    final DirectBufferPool pool = new DirectBufferPool(250);
+    for (int i = 0; i < 3; ++i) {
+      pool.release(ByteBuffer.allocateDirect(100));
+    }
+    // A size class never evicts itself, the third buffer is refused.
+    assertEquals(200, pool.getPooledBytes());
+    assertEquals(1, pool.getEvictionCount());
+  }
+
+  @Test
+  public void evictsLeastRecentlyUsedSizeClassesFirst() {
+    final DirectBufferPool pool = new DirectBufferPool(300);
+    pool.release(ByteBuffer.allocateDirect(100));
+    pool.release(ByteBuffer.allocateDirect(100));
+    pool.release(ByteBuffer.allocateDirect(50));
+    pool.release(ByteBuffer.allocateDirect(40));
+    // Use the 100 byte class, the 50 byte class is now the least recently used.
+    pool.release(pool.acquire(100));
+    assertEquals(290, pool.getPooledBytes());
+
+    pool.release(ByteBuffer.allocateDirect(60));
+    // The 50 byte class alone made room.
+    assertEquals(300, pool.getPooledBytes());
+    assertEquals(1, pool.getEvictionCount());
+    final long misses = pool.getMissCount();
+    pool.acquire(50);
+    assertEquals(misses + 1, pool.getMissCount());
+    pool.acquire(40);
+    pool.acquire(60);
+    pool.acquire(100);
+    assertEquals(misses + 1, pool.getMissCount());
+  }
+
+  @Test
+  public void evictsWholeSizeClassesUntilBufferFits() {
+    final DirectBufferPool pool = new DirectBufferPool(300);
+    pool.release(ByteBuffer.allocateDirect(50));
+    pool.release(ByteBuffer.allocateDirect(50));
+    pool.release(ByteBuffer.allocateDirect(80));
+    pool.release(ByteBuffer.allocateDirect(80));
+
+    pool.release(ByteBuffer.allocateDirect(250));
+    assertEquals(250, pool.getPooledBytes());
+    assertEquals(4, pool.getEvictionCount());
+  }
+
+  @Test
+  public void warmUpFillsUpToCountWithinLimit() {
+    final DirectBufferPool pool = new DirectBufferPool(350);
+    pool.release(pool.acquire(100));
+    pool.warmUp(100, 3);
+    assertEquals(300, pool.getPooledBytes());
+    // Already warm.
+    pool.warmUp(100, 2);
+    assertEquals(300, pool.getPooledBytes());
+    // Only one more fits, and warming up evicts nothing.
+    pool.warmUp(50, 3);
+    assertEquals(350, pool.getPooledBytes());
+    assertEquals(0, pool.getEvictionCount());
+
+    final long misses = pool.getMissCount();
+    for (int i = 0; i < 3; ++i) {
+      pool.acquire(100);
+    }
+    pool.acquire(50);
+    assertEquals(misses, pool.getMissCount());
+    assertEquals(4, pool.getHitCount());
+  }
+
+  @Test
+  public void evictAllExceptKeepsOneSizeClass() {
+    final DirectBufferPool pool = new DirectBufferPool(1024);
+    pool.warmUp(100, 2);
+    pool.warmUp(200, 1);
+    pool.warmUp(300, 1);
+
+    pool.evictAllExcept(200);
+    assertEquals(200, pool.getPooledBytes());
+    assertEquals(3, pool.getEvictionCount());
+    pool.acquire(200);
+    assertEquals(1, pool.getHitCount());
+  }
+
+  @Test
+  public void clearDropsAllBuffers() {
+    final DirectBufferPool pool = new DirectBufferPool(1024);
+    pool.warmUp(100, 2);
+    pool.warmUp(200, 1);
+
+    pool.clear();
+    assertEquals(0, pool.getPooledBytes());
+    assertEquals(3, pool.getEvictionCount());
+    pool.acquire(100);
+    assertEquals(0, pool.getHitCount());
+  }
+}
@@ -0,0 +1,264 @@
+package com.test.mp;
+
+import android.opengl.GLES20;
+
+import java.nio.Buffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * GlApi for JVM tests, without a GPU. Records the calls made, hands out object ids and reports
+ * every shader, program and framebuffer as complete. Draws and reads nothing.
+ */
+class FakeGlApi implements GlApi {
+  private final List<String> calls = new ArrayList<>();
+  private final Map<String, Integer> callCounts = new HashMap<>();
+  private final Map<String, Integer> locations = new HashMap<>();
+  private int nextObject = 1;
+
+  /** Returns the names of the calls made, in order. */
+  List<String> getCalls() {
+    return calls;
+  }
+
+  /** Returns the number of calls of |name|, e.g. "glUseProgram". */
+  int getCallCount(String name) {
+    final Integer count = callCounts.get(name);
+    return count != null ? count : 0;
+  }
+
+  int getTotalCallCount() {
+    return calls.size();
+  }
+
+  void clearCalls() {
+    calls.clear();
+    callCounts.clear();
+  }
+
+  private void record(String name) {
+    calls.add(name);
+    final Integer count = callCounts.get(name);
+    callCounts.put(name, count != null ? count + 1 : 1);
+  }
+
+  private void generate(int n, int[] ids, int offset) {
+    for (int i = 0; i < n; ++i) {
+      ids[offset + i] = nextObject++;
+    }
+  }
+
+  private int getLocation(String name) {
+    Integer location = locations.get(name);
+    if (location == null) {
+      location = locations.size();
+      locations.put(name, location);
+    }
+    return location;
+  }
+
+  @Override
+  public void glActiveTexture(int texture) {
+    record("glActiveTexture");
+  }
+
+  @Override
+  public void glAttachShader(int program, int shader) {
+    record("glAttachShader");
+  }
+
+  @Override
+  public void glBindFramebuffer(int target, int framebuffer) {
+    record("glBindFramebuffer");
+  }
+
+  @Override
+  public void glBindTexture(int target, int texture) {
+    record("glBindTexture");
+  }
+
+  @Override
+  public int glCheckFramebufferStatus(int target) {
+    record("glCheckFramebufferStatus");
+    return GLES20.GL_FRAMEBUFFER_COMPLETE;
+  }
+
+  @Override
+  public void glCompileShader(int shader) {
+    record("glCompileShader");
+  }
+
+  @Override
+  public int glCreateProgram() {
+    record("glCreateProgram");
+    return nextObject++;
+  }
+
+  @Override
+  public int glCreateShader(int type) {
+    record("glCreateShader");
+    return nextObject++;
+  }
+
+  @Override
+  public void glDeleteFramebuffers(int n, int[] framebuffers, int offset) {
+    record("glDeleteFramebuffers");
+  }
+
+  @Override
+  public void glDeleteProgram(int program) {
+    record("glDeleteProgram");
+  }
+
+  @Override
+  public void glDeleteShader(int shader) {
+    record("glDeleteShader");
+  }
+
+  @Override
+  public void glDeleteTextures(int n, int[] textures, int offset) {
+    record("glDeleteTextures");
+  }
+
+  @Override
+  public void glDrawArrays(int mode, int first, int count) {
+    record("glDrawArrays");
+  }
+
+  @Override
+  public void glEnableVertexAttribArray(int index) {
+    record("glEnableVertexAttribArray");
+  }
+
+  @Override
+  public void glFramebufferTexture2D(
+      int target, int attachment, int textarget, int texture, int level) {
+    record("glFramebufferTexture2D");
+  }
+
+  @Override
+  public void glGenFramebuffers(int n, int[] framebuffers, int offset) {
+    record("glGenFramebuffers");
+    generate(n, framebuffers, offset);
+  }
+
+  @Override
+  public void glGenTextures(int n, int[] textures, int offset) {
+    record("glGenTextures");
+    generate(n, textures, offset);
+  }
+
+  @Override
+  public int glGetAttribLocation(int program, String name) {
+    record("glGetAttribLocation");
+    return getLocation(name);
+  }
+
+  @Override
+  public int glGetError() {
+    record("glGetError");
+    return GLES20.GL_NO_ERROR;
+  }
+
+  @Override
+  public void glGetProgramiv(int program, int pname, int[] params, int offset) {
+    record("glGetProgramiv");
+    params[offset] = GLES20.GL_TRUE;
+  }
+
+  @Override
+  public String glGetProgramInfoLog(int program) {
+    record("glGetProgramInfoLog");
+    return "";
+  }
+
+  @Override
+  public void glGetShaderiv(int shader, int pname, int[] params, int offset) {
+    record("glGetShaderiv");
+    params[offset] = GLES20.GL_TRUE;
+  }
+
+  @Override
+  public String glGetShaderInfoLog(int shader) {
+    record("glGetShaderInfoLog");
+    return "";
+  }
+
+  @Override
+  public String glGetString(int name) {
+    record("glGetString");
+    return "OpenGL ES 2.0 fake";
+  }
+
+  @Override
+  public int glGetUniformLocation(int program, String name) {
+    record("glGetUniformLocation");
+    return getLocation(name);
+  }
+
+  @Override
+  public void glLinkProgram(int program) {
+    record("glLinkProgram");
+  }
+
+  @Override
+  public void glReadPixels(
+      int x, int y, int width, int height, int format, int type, Buffer pixels) {
+    record("glReadPixels");
+  }
+
+  @Override
+  public void glShaderSource(int shader, String string) {
+    record("glShaderSource");
+  }
+
+  @Override
+  public void glTexImage2D(int target, int level, int internalformat, int width, int height,
+      int border, int format, int type, Buffer pixels) {
+    record("glTexImage2D");
+  }
+
+  @Override
+  public void glTexParameterf(int target, int pname, float param) {
+    record("glTexParameterf");
+  }
+
+  @Override
+  public void glUniform1i(int location, int x) {
+    record("glUniform1i");
+  }
+
+  @Override
+  public void glUniform2f(int location, float x, float y) {
+    record("glUniform2f");
+  }
+
+  @Override
+  public void glUniform4fv(int location, int count, float[] v, int offset) {
+    record("glUniform4fv");
+  }
+
+  @Override
+  public void glUniformMatrix4fv(
+      int location, int count, boolean transpose, float[] value, int offset) {
+    record("glUniformMatrix4fv");
+  }
+
+  @Override
+  public void glUseProgram(int program) {
+    record("glUseProgram");
+  }
+
+  @Override
+  public void glVertexAttribPointer(
+      int indx, int size, int type, boolean normalized, int stride, Buffer ptr) {
+    record("glVertexAttribPointer");
+  }
+
+  @Override
+  public void glViewport(int x, int y, int width, int height) {
+    record("glViewport");
+  }
+}
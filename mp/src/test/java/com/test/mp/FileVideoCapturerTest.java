@@ -0,0 +1,133 @@
+package com.test.mp;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Replays a small Y4M recording with FileVideoCapturer in both pacing modes.
+ */
+public class FileVideoCapturerTest {
+  private static final int FRAMES = 6;
+  // Recorded 20 ms apart.
+  private static final long FRAME_INTERVAL_NS = 20_000_000L;
+
+  private static class FakeObserver implements CapturerObserver {
+    final List<Long> timestampsNs = new ArrayList<>();
+    final List<Integer> firstLumaValues = new ArrayList<>();
+    final CountDownLatch stopped = new CountDownLatch(1);
+    volatile boolean started;
+
+    @Override
+    public void onCapturerStarted(boolean success) {
+      started = success;
+    }
+
+    @Override
+    public void onCapturerStopped() {
+      stopped.countDown();
+    }
+
+    @Override
+    public synchronized void onFrameCaptured(VideoFrame frame) {
+      timestampsNs.add(frame.getTimestampNs());
+      firstLumaValues.add((int) ((VideoFrame.I420Buffer) frame.getBuffer()).getDataY().get(0));
+    }
+  }
+
+  private File file;
+
+  @Before
+  public void setUp() throws IOException {
+    file = File.createTempFile("replay", ".y4m");
+    final Y4mFileWriter writer = new Y4mFileWriter(file, /* framerate= */ 50);
+    for (int i = 0; i < FRAMES; ++i) {
+      final JavaI420Buffer frame = JavaI420Buffer.allocate(/* width= */ 8, /* height= */ 8);
+      frame.getDataY().put(0, (byte) i);
+      writer.writeFrame(
+          frame, /* rotation= */ 0, /* timestampNs= */ 1_000_000L + i * FRAME_INTERVAL_NS);
+      frame.release();
+    }
+    writer.close();
+  }
+
+  @After
+  public void tearDown() {
+    file.delete();
+    Y4mIndex.getIndexFile(file).delete();
+  }
+
+  private FakeObserver replay(FileVideoCapturer.Mode mode) throws Exception {
+    final FakeObserver observer = new FakeObserver();
+    final FileVideoCapturer capturer = new FileVideoCapturer(
+        MappedRecordingReader.openY4m(file), mode, /* loop= */ false);
+    capturer.initialize(/* surfaceTextureHelper= */ null, /* applicationContext= */ null, observer);
+    capturer.startCapture(/* width= */ 0, /* height= */ 0, /* framerate= */ 30);
+    assertTrue(observer.started);
+    assertTrue(observer.stopped.await(5, TimeUnit.SECONDS));
+    assertEquals(FRAMES, capturer.getDeliveredFrames());
+    capturer.dispose();
+    for (int i = 0; i < FRAMES; ++i) {
+      assertEquals(i, (int) observer.firstLumaValues.get(i));
+    }
+    return observer;
+  }
+
+  @Test
+  public void realTimeKeepsRecordedSpacing() throws Exception {
+    final long startNs = System.nanoTime();
+    final FakeObserver observer = replay(FileVideoCapturer.Mode.REAL_TIME);
+    assertTrue(System.nanoTime() - startNs >= (FRAMES - 1) * FRAME_INTERVAL_NS);
+    for (int i = 1; i < FRAMES; ++i) {
+      assertEquals(FRAME_INTERVAL_NS,
+          observer.timestampsNs.get(i) - observer.timestampsNs.get(i - 1));
+    }
+  }
+
+  @Test
+  public void asFastAsPossibleDeliversAllFrames() throws Exception {
+    final FakeObserver observer = replay(FileVideoCapturer.Mode.AS_FAST_AS_POSSIBLE);
+    for (int i = 1; i < FRAMES; ++i) {
+      assertTrue(observer.timestampsNs.get(i) >= observer.timestampsNs.get(i - 1));
+    }
+  }
+
+  @Test
+  public void startCaptureReplaysAgainAfterEnd() throws Exception {
+    final FileVideoCapturer capturer = new FileVideoCapturer(MappedRecordingReader.openY4m(file),
+        FileVideoCapturer.Mode.AS_FAST_AS_POSSIBLE, /* loop= */ false);
+    for (int replay = 1; replay <= 2; ++replay) {
+      final FakeObserver observer = new FakeObserver();
+      capturer.initialize(
+          /* surfaceTextureHelper= */ null, /* applicationContext= */ null, observer);
+      capturer.startCapture(/* width= */ 0, /* height= */ 0, /* framerate= */ 30);
+      assertTrue(observer.started);
+      assertTrue(observer.stopped.await(5, TimeUnit.SECONDS));
+      assertEquals(replay * FRAMES, capturer.getDeliveredFrames());
+    }
+    capturer.dispose();
+  }
+
+  @Test
+  public void stopCaptureEndsLoopingReplay() throws Exception {
+    final FakeObserver observer = new FakeObserver();
+    final FileVideoCapturer capturer = new FileVideoCapturer(MappedRecordingReader.openY4m(file),
+        FileVideoCapturer.Mode.REAL_TIME, /* loop= */ true);
+    capturer.initialize(/* surfaceTextureHelper= */ null, /* applicationContext= */ null, observer);
+    capturer.startCapture(/* width= */ 0, /* height= */ 0, /* framerate= */ 30);
+    Thread.sleep(3 * FRAMES * FRAME_INTERVAL_NS / 1_000_000L);
+    capturer.stopCapture();
+    assertEquals(0, observer.stopped.getCount());
+    assertTrue(capturer.getDeliveredFrames() > FRAMES);
+    capturer.dispose();
+  }
+}
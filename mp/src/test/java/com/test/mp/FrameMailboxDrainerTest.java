@@ -0,0 +1,101 @@
+package com.test.mp;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Drains a FrameMailbox on a single thread executor, like ScreenCapturer, and checks that other
+ * tasks of the executor run while frames keep arriving.
+ */
+public class FrameMailboxDrainerTest {
+  private final AtomicInteger releasedFrames = new AtomicInteger();
+  private ExecutorService executor;
+
+  @Before
+  public void setUp() {
+    executor = Executors.newSingleThreadExecutor();
+  }
+
+  @After
+  public void tearDown() throws InterruptedException {
+    executor.shutdownNow();
+    executor.awaitTermination(5, TimeUnit.SECONDS);
+  }
+
+  private VideoFrame createFrame(long timestampNs) {
+    final JavaI420Buffer buffer = JavaI420Buffer.allocate(2, 2);
+    final VideoFrame.I420Buffer counted = JavaI420Buffer.wrap(2, 2, buffer.getDataY(),
+        buffer.getStrideY(), buffer.getDataU(), buffer.getStrideU(), buffer.getDataV(),
+        buffer.getStrideV(), releasedFrames::incrementAndGet);
+    return new VideoFrame(counted, /* rotation= */ 0, timestampNs);
+  }
+
+  @Test
+  public void processesOfferedFramesInOrder() throws Exception {
+    final FrameMailbox mailbox = new FrameMailbox(/* capacity= */ 4);
+    final List<Long> timestampsNs = new ArrayList<>();
+    final FrameMailboxDrainer drainer = new FrameMailboxDrainer(mailbox, executor, frame -> {
+      timestampsNs.add(frame.getTimestampNs());
+      frame.release();
+    });
+    for (int i = 0; i < 3; ++i) {
+      mailbox.offer(createFrame(i));
+      drainer.schedule();
+    }
+    executor.submit(() -> {}).get(5, TimeUnit.SECONDS);
+
+    assertEquals(3, timestampsNs.size());
+    for (int i = 0; i < 3; ++i) {
+      assertEquals(i, (long) timestampsNs.get(i));
+    }
+    assertEquals(3, releasedFrames.get());
+  }
+
+  @Test
+  public void stopRunsWhileFramesKeepArriving() throws Exception {
+    final FrameMailbox mailbox = new FrameMailbox(/* capacity= */ 1);
+    // Converting is slower than capturing, a new frame is always waiting.
+    final FrameMailboxDrainer drainer = new FrameMailboxDrainer(mailbox, executor, frame -> {
+      try {
+        Thread.sleep(1);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      frame.release();
+    });
+    final AtomicBoolean capturing = new AtomicBoolean(true);
+    final AtomicInteger offeredFrames = new AtomicInteger();
+    final Thread captureThread = new Thread(() -> {
+      while (capturing.get()) {
+        mailbox.offer(createFrame(offeredFrames.getAndIncrement()));
+        drainer.schedule();
+      }
+    });
+    captureThread.start();
+    Thread.sleep(50);
+
+    // Like ScreenCapturer.stopCapture(), queued behind the drain.
+    final Future<?> stop = executor.submit(() -> capturing.set(false));
+    try {
+      stop.get(5, TimeUnit.SECONDS);
+    } finally {
+      capturing.set(false);
+      captureThread.join();
+    }
+    executor.submit(mailbox::clear).get(5, TimeUnit.SECONDS);
+
+    assertEquals(offeredFrames.get(), releasedFrames.get());
+  }
+}
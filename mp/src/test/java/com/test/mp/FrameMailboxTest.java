@@ -0,0 +1,100 @@
+package com.test.mp;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that FrameMailbox keeps the newest frames in order and releases every superseded frame
+ * exactly once, also with a concurrent consumer.
+ */
+public class FrameMailboxTest {
+  private static VideoFrame createFrame(long timestampNs, AtomicInteger releasedFrames) {
+    final JavaI420Buffer buffer = JavaI420Buffer.allocate(2, 2);
+    final VideoFrame.I420Buffer counted = JavaI420Buffer.wrap(2, 2, buffer.getDataY(),
+        buffer.getStrideY(), buffer.getDataU(), buffer.getStrideU(), buffer.getDataV(),
+        buffer.getStrideV(), releasedFrames::incrementAndGet);
+    return new VideoFrame(counted, /* rotation= */ 0, timestampNs);
+  }
+
+  @Test
+  public void singleSlotKeepsNewestFrame() {
+    final AtomicInteger released = new AtomicInteger();
+    final FrameMailbox mailbox = new FrameMailbox(/* capacity= */ 1);
+    assertNull(mailbox.poll());
+    assertTrue(mailbox.offer(createFrame(1, released)));
+    assertFalse(mailbox.offer(createFrame(2, released)));
+    assertFalse(mailbox.offer(createFrame(3, released)));
+    // The superseded frames were released right away.
+    assertEquals(2, released.get());
+    assertEquals(2, mailbox.getDroppedFrames());
+    assertEquals(1, mailbox.size());
+
+    final VideoFrame frame = mailbox.poll();
+    assertEquals(3, frame.getTimestampNs());
+    frame.release();
+    assertNull(mailbox.poll());
+    assertTrue(mailbox.isEmpty());
+  }
+
+  @Test
+  public void multipleSlotsDropOldestAndKeepOrder() {
+    final AtomicInteger released = new AtomicInteger();
+    final FrameMailbox mailbox = new FrameMailbox(/* capacity= */ 3);
+    for (int i = 1; i <= 5; ++i) {
+      mailbox.offer(createFrame(i, released));
+    }
+    assertEquals(2, mailbox.getDroppedFrames());
+    for (int i = 3; i <= 5; ++i) {
+      final VideoFrame frame = mailbox.poll();
+      assertEquals(i, frame.getTimestampNs());
+      frame.release();
+    }
+    mailbox.offer(createFrame(6, released));
+    mailbox.clear();
+    assertEquals(6, released.get());
+    assertEquals(3, mailbox.getDroppedFrames());
+  }
+
+  @Test
+  public void concurrentConsumerSeesEveryFrameOnceInOrder() throws InterruptedException {
+    final int frames = 200000;
+    final AtomicInteger released = new AtomicInteger();
+    final FrameMailbox mailbox = new FrameMailbox(/* capacity= */ 2);
+    final AtomicInteger consumed = new AtomicInteger();
+    final long[] lastTimestamp = {-1};
+    final boolean[] outOfOrder = {false};
+    final Thread consumer = new Thread(() -> {
+      while (true) {
+        final VideoFrame frame = mailbox.poll();
+        if (frame == null) {
+          if (Thread.currentThread().isInterrupted()) {
+            return;
+          }
+          continue;
+        }
+        if (frame.getTimestampNs() <= lastTimestamp[0]) {
+          outOfOrder[0] = true;
+        }
+        lastTimestamp[0] = frame.getTimestampNs();
+        consumed.incrementAndGet();
+        frame.release();
+      }
+    });
+    consumer.start();
+    for (int i = 0; i < frames; ++i) {
+      mailbox.offer(createFrame(i, released));
+    }
+    while (!mailbox.isEmpty()) {
+      Thread.yield();
+    }
+    consumer.interrupt();
+    consumer.join();
+
+    assertFalse(outOfOrder[0]);
+    assertEquals(frames, released.get());
+    assertEquals(frames, consumed.get() + mailbox.getDroppedFrames());
+  }
+}
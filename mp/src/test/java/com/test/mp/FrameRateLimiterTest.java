@@ -0,0 +1,77 @@
+package com.test.mp;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the frame rates FrameRateLimiter produces from common screen refresh rates, with and
+ * without timestamp jitter.
+ */
+public class FrameRateLimiterTest {
+  private static final long SECOND_NS = 1000000000L;
+
+  // Returns the number of frames kept out of |seconds| of a |sourceFps| source.
+  private static int countKeptFrames(FrameRateLimiter limiter, double sourceFps, int seconds,
+      long jitterNs) {
+    final Random random = new Random(1);
+    final int frames = (int) (sourceFps * seconds);
+    int kept = 0;
+    for (int i = 0; i < frames; ++i) {
+      final long jitter = jitterNs > 0 ? (long) (random.nextGaussian() * jitterNs) : 0;
+      final long timestampNs = (long) (i * SECOND_NS / sourceFps) + jitter;
+      if (!limiter.shouldDropFrame(timestampNs)) {
+        ++kept;
+      }
+    }
+    return kept;
+  }
+
+  @Test
+  public void keepsAllFramesWithoutLimit() {
+    assertEquals(600, countKeptFrames(new FrameRateLimiter(), 60, 10, 0));
+  }
+
+  @Test
+  public void decimatesToTargetRate() {
+    final FrameRateLimiter limiter = new FrameRateLimiter();
+    limiter.setMaxFramerate(10);
+    assertEquals(100, countKeptFrames(limiter, 60, 10, 0), 1);
+    limiter.setMaxFramerate(24);
+    // Not a divisor of the source rate, the grid still averages out to the target.
+    assertEquals(240, countKeptFrames(limiter, 60, 10, 0), 1);
+    limiter.setMaxFramerate(30);
+    assertEquals(300, countKeptFrames(limiter, 90, 10, 0), 1);
+  }
+
+  @Test
+  public void jitterDoesNotLowerRate() {
+    final FrameRateLimiter limiter = new FrameRateLimiter();
+    limiter.setMaxFramerate(30);
+    // 1ms of timestamp jitter on a 60 fps source, which would drop every other kept frame if
+    // early frames were not tolerated.
+    assertEquals(300, countKeptFrames(limiter, 60, 10, 1000000), 3);
+  }
+
+  @Test
+  public void sourceSlowerThanLimitKeepsAllFrames() {
+    final FrameRateLimiter limiter = new FrameRateLimiter();
+    limiter.setMaxFramerate(30);
+    assertEquals(150, countKeptFrames(limiter, 15, 10, 0));
+  }
+
+  @Test
+  public void restartsAfterPauseAndBackwardJump() {
+    final FrameRateLimiter limiter = new FrameRateLimiter();
+    limiter.setMaxFramerate(10);
+    assertFalse(limiter.shouldDropFrame(0));
+    assertTrue(limiter.shouldDropFrame(SECOND_NS / 60));
+    // A static screen produced no frames for a while.
+    assertFalse(limiter.shouldDropFrame(5 * SECOND_NS));
+    assertTrue(limiter.shouldDropFrame(5 * SECOND_NS + SECOND_NS / 60));
+    // The timestamps start over.
+    assertFalse(limiter.shouldDropFrame(SECOND_NS));
+  }
+}
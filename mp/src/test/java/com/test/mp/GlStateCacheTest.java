@@ -0,0 +1,204 @@
+package com.test.mp;
+
+import android.opengl.GLES11Ext;
+import android.opengl.GLES20;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks which GL calls GlStateCache forwards, and counts the calls the GL helper classes make per
+ * frame, against a FakeGlApi.
+ */
+public class GlStateCacheTest {
+  private static final float[] IDENTITY_MATRIX = {
+      1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1};
+
+  private FakeGlApi fakeGl;
+  private GlStateCache cache;
+
+  @Before
+  public void setUp() {
+    fakeGl = new FakeGlApi();
+    cache = new GlStateCache(fakeGl);
+  }
+
+  @Test
+  public void skipsRedundantUseProgram() {
+    cache.glUseProgram(1);
+    cache.glUseProgram(1);
+    cache.glUseProgram(2);
+    cache.glUseProgram(2);
+
+    assertEquals(2, fakeGl.getCallCount("glUseProgram"));
+    assertEquals(2, cache.getSkippedCallCount());
+  }
+
+  @Test
+  public void skipsRedundantBindFramebuffer() {
+    cache.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 3);
+    cache.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 3);
+    cache.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+    cache.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+
+    assertEquals(2, fakeGl.getCallCount("glBindFramebuffer"));
+    assertEquals(2, cache.getSkippedCallCount());
+  }
+
+  @Test
+  public void tracksTextureBindingsPerUnitAndTarget() {
+    cache.glActiveTexture(GLES20.GL_TEXTURE0);
+    cache.glBindTexture(GLES20.GL_TEXTURE_2D, 5);
+    cache.glBindTexture(GLES20.GL_TEXTURE_2D, 5);
+    // Another target on the same unit.
+    cache.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, 5);
+    // The same texture on another unit.
+    cache.glActiveTexture(GLES20.GL_TEXTURE1);
+    cache.glBindTexture(GLES20.GL_TEXTURE_2D, 5);
+    // Back on the first unit, still bound.
+    cache.glActiveTexture(GLES20.GL_TEXTURE0);
+    cache.glBindTexture(GLES20.GL_TEXTURE_2D, 5);
+
+    assertEquals(3, fakeGl.getCallCount("glBindTexture"));
+    // glActiveTexture() is never skipped.
+    assertEquals(3, fakeGl.getCallCount("glActiveTexture"));
+    assertEquals(2, cache.getSkippedCallCount());
+  }
+
+  @Test
+  public void forwardsTextureBindingsWithUnknownActiveUnit() {
+    cache.glBindTexture(GLES20.GL_TEXTURE_2D, 5);
+    cache.glBindTexture(GLES20.GL_TEXTURE_2D, 5);
+
+    assertEquals(2, fakeGl.getCallCount("glBindTexture"));
+    assertEquals(0, cache.getSkippedCallCount());
+  }
+
+  @Test
+  public void forwardsUntrackedTextureTargets() {
+    cache.glActiveTexture(GLES20.GL_TEXTURE0);
+    cache.glBindTexture(GLES20.GL_TEXTURE_CUBE_MAP, 5);
+    cache.glBindTexture(GLES20.GL_TEXTURE_CUBE_MAP, 5);
+
+    assertEquals(2, fakeGl.getCallCount("glBindTexture"));
+  }
+
+  @Test
+  public void deleteForgetsBindings() {
+    cache.glUseProgram(1);
+    cache.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 2);
+    cache.glActiveTexture(GLES20.GL_TEXTURE0);
+    cache.glBindTexture(GLES20.GL_TEXTURE_2D, 3);
+
+    cache.glDeleteProgram(1);
+    cache.glDeleteFramebuffers(1, new int[] {2}, 0);
+    cache.glDeleteTextures(1, new int[] {3}, 0);
+    // Names may be reused by the next objects created.
+    cache.glUseProgram(1);
+    cache.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 2);
+    cache.glBindTexture(GLES20.GL_TEXTURE_2D, 3);
+
+    assertEquals(2, fakeGl.getCallCount("glUseProgram"));
+    assertEquals(2, fakeGl.getCallCount("glBindFramebuffer"));
+    assertEquals(2, fakeGl.getCallCount("glBindTexture"));
+    assertEquals(0, cache.getSkippedCallCount());
+  }
+
+  @Test
+  public void invalidateForwardsNextCalls() {
+    cache.glUseProgram(1);
+    cache.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 2);
+    cache.glActiveTexture(GLES20.GL_TEXTURE0);
+    cache.glBindTexture(GLES20.GL_TEXTURE_2D, 3);
+
+    cache.invalidate();
+    cache.glUseProgram(1);
+    cache.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 2);
+    cache.glActiveTexture(GLES20.GL_TEXTURE0);
+    cache.glBindTexture(GLES20.GL_TEXTURE_2D, 3);
+
+    assertEquals(2, fakeGl.getCallCount("glUseProgram"));
+    assertEquals(2, fakeGl.getCallCount("glBindFramebuffer"));
+    assertEquals(2, fakeGl.getCallCount("glBindTexture"));
+    assertEquals(0, cache.getSkippedCallCount());
+  }
+
+  @Test
+  public void keepsStatePerThread() throws InterruptedException {
+    cache.glUseProgram(1);
+    final Thread thread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        // Another thread has its own context, the program is not current there.
+        cache.glUseProgram(1);
+      }
+    });
+    thread.start();
+    thread.join();
+    cache.glUseProgram(1);
+
+    assertEquals(2, fakeGl.getCallCount("glUseProgram"));
+    assertEquals(1, cache.getSkippedCallCount());
+  }
+
+  @Test
+  public void shaderUseProgramGoesThroughCache() {
+    final GlShader shader = new GlShader(cache, "vertex", "fragment");
+    fakeGl.clearCalls();
+
+    shader.useProgram();
+    shader.useProgram();
+
+    assertEquals(1, fakeGl.getCallCount("glUseProgram"));
+    // Errors are checked by Gles20Api, skipped calls need no glGetError() either.
+    assertEquals(0, fakeGl.getCallCount("glGetError"));
+    shader.release();
+  }
+
+  @Test
+  public void drawerUsesProgramOncePerShader() {
+    final int[] drawerCallCounts = new int[2];
+    final int[] useProgramCounts = new int[2];
+    final GlApi[] apis = {fakeGl, cache};
+    for (int i = 0; i < apis.length; ++i) {
+      fakeGl.clearCalls();
+      final GlGenericDrawer drawer = new GlGenericDrawer(apis[i], "void main() {}\n",
+          new GlGenericDrawer.ShaderCallbacks() {
+            @Override
+            public void onNewShader(GlShader shader) {}
+
+            @Override
+            public void onPrepareShader(GlShader shader, float[] texMatrix, int frameWidth,
+                int frameHeight, int viewportWidth, int viewportHeight) {}
+          });
+      // The first draw creates the shader.
+      drawer.drawRgb(/* textureId= */ 7, IDENTITY_MATRIX, 16, 16, 0, 0, 16, 16);
+      fakeGl.clearCalls();
+      drawer.drawRgb(/* textureId= */ 7, IDENTITY_MATRIX, 16, 16, 0, 0, 16, 16);
+      drawer.drawRgb(/* textureId= */ 7, IDENTITY_MATRIX, 16, 16, 0, 0, 16, 16);
+      drawerCallCounts[i] = fakeGl.getTotalCallCount();
+      useProgramCounts[i] = fakeGl.getCallCount("glUseProgram");
+      drawer.release();
+    }
+
+    assertEquals(2, useProgramCounts[0]);
+    assertEquals(0, useProgramCounts[1]);
+    assertEquals(drawerCallCounts[0] - 2, drawerCallCounts[1]);
+  }
+
+  @Test
+  public void textureFrameBufferReallocatesOnlyOnSizeChange() {
+    final GlTextureFrameBuffer frameBuffer = new GlTextureFrameBuffer(cache, GLES20.GL_RGBA);
+    frameBuffer.setSize(16, 8);
+    frameBuffer.setSize(16, 8);
+    assertEquals(1, fakeGl.getCallCount("glTexImage2D"));
+
+    frameBuffer.setSize(32, 8);
+    assertEquals(2, fakeGl.getCallCount("glTexImage2D"));
+    assertNotEquals(0, frameBuffer.getTextureId());
+    assertNotEquals(0, frameBuffer.getFrameBufferId());
+    frameBuffer.release();
+  }
+}
@@ -0,0 +1,90 @@
+package com.test.mp;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the bucketing and percentiles of LatencyHistogram against exact values.
+ */
+public class LatencyHistogramTest {
+  @Test
+  public void bucketBoundsContainValues() {
+    final Random random = new Random(3);
+    for (int i = 0; i < 10000; ++i) {
+      // Values spread over all orders of magnitude.
+      final long value = random.nextLong() >>> (1 + random.nextInt(63));
+      final int index = LatencyHistogram.getBucketIndex(value);
+      assertTrue(value <= LatencyHistogram.getBucketUpperBoundNs(index));
+      if (index > 0) {
+        assertTrue(value > LatencyHistogram.getBucketUpperBoundNs(index - 1));
+      }
+    }
+    assertEquals(Long.MAX_VALUE, LatencyHistogram.getBucketUpperBoundNs(
+        LatencyHistogram.getBucketIndex(Long.MAX_VALUE)));
+  }
+
+  @Test
+  public void percentilesWithinBucketPrecision() {
+    final LatencyHistogram histogram = new LatencyHistogram();
+    // 1ms to 100ms in steps of 1ms.
+    for (int ms = 1; ms <= 100; ++ms) {
+      histogram.record(TimeUnit.MILLISECONDS.toNanos(ms));
+    }
+    final LatencyHistogram.Snapshot snapshot = histogram.getSnapshot();
+    assertEquals(100, snapshot.getCount());
+    assertEquals(TimeUnit.MILLISECONDS.toNanos(1), snapshot.getMinNs());
+    assertEquals(TimeUnit.MILLISECONDS.toNanos(100), snapshot.getMaxNs());
+    assertEquals(TimeUnit.MICROSECONDS.toNanos(50500), snapshot.getMeanNs());
+    for (int percentile : new int[] {1, 50, 90, 99}) {
+      final long expectedNs = TimeUnit.MILLISECONDS.toNanos(percentile);
+      final long actualNs = snapshot.getPercentileNs(percentile);
+      assertTrue(percentile + ": " + actualNs, actualNs >= expectedNs);
+      assertTrue(percentile + ": " + actualNs, actualNs <= expectedNs + expectedNs / 16);
+    }
+    assertEquals(snapshot.getMaxNs(), snapshot.getPercentileNs(100));
+  }
+
+  @Test
+  public void emptyAndReset() {
+    final LatencyHistogram histogram = new LatencyHistogram();
+    assertEquals(0, histogram.getSnapshot().getPercentileNs(99));
+    assertEquals(0, histogram.getSnapshot().getMaxNs());
+    histogram.record(-5);
+    histogram.record(12345);
+    assertEquals(2, histogram.getSnapshot().getCount());
+    assertEquals(0, histogram.getSnapshot().getMinNs());
+    histogram.reset();
+    assertEquals(0, histogram.getSnapshot().getCount());
+    assertEquals(0, histogram.getSnapshot().getPercentileNs(50));
+  }
+
+  @Test
+  public void asyncFrameWriterRecordsWriteStages() throws Exception {
+    final PipelineLatency latency = new PipelineLatency();
+    final FrameWriter discard = new FrameWriter() {
+      @Override
+      public void writeFrame(VideoFrame.I420Buffer buffer, int rotation, long timestampNs) {}
+
+      @Override
+      public void flush() {}
+
+      @Override
+      public void close() {}
+    };
+    final AsyncFrameWriter writer = new AsyncFrameWriter(discard, /* capacity= */ 4,
+        AsyncFrameWriter.OverflowPolicy.BLOCK, /* flushIntervalMs= */ 1000, latency);
+    final JavaI420Buffer buffer = JavaI420Buffer.allocate(16, 16);
+    for (int i = 0; i < 3; ++i) {
+      writer.writeFrame(buffer, /* rotation= */ 0, System.nanoTime());
+    }
+    assertTrue(writer.close(/* timeoutMs= */ 5000));
+    buffer.release();
+    assertEquals(3, latency.getSnapshot(PipelineLatency.Stage.WRITE).getCount());
+    assertEquals(3, latency.getSnapshot(PipelineLatency.Stage.END_TO_END).getCount());
+    assertEquals(0, latency.getSnapshot(PipelineLatency.Stage.TO_I420).getCount());
+  }
+}
@@ -0,0 +1,96 @@
+package com.test.mp;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Reads recordings of YuvFileWriter and Y4mFileWriter back with MappedRecordingReader.
+ */
+public class MappedRecordingReaderTest {
+  private static final int WIDTH = 30;
+  private static final int HEIGHT = 18;
+  private static final int FRAMES = 12;
+
+  private static List<JavaI420Buffer> record(FrameWriter writer) throws IOException {
+    final List<JavaI420Buffer> frames = new ArrayList<>();
+    for (int i = 0; i < FRAMES; ++i) {
+      final JavaI420Buffer frame = CompressedFrameWriterTest.createScreenFrame(WIDTH, HEIGHT, i);
+      writer.writeFrame(frame, /* rotation= */ 180, /* timestampNs= */ 5000L * i);
+      frames.add(frame);
+    }
+    writer.close();
+    return frames;
+  }
+
+  private static void assertFrameEquals(VideoFrame.I420Buffer expected, VideoFrame frame) {
+    final VideoFrame.I420Buffer actual = (VideoFrame.I420Buffer) frame.getBuffer();
+    assertEquals(WIDTH, actual.getWidth());
+    assertEquals(HEIGHT, actual.getHeight());
+    assertTrue(actual.getDataY().isDirect());
+    assertEquals(expected.getDataY(), actual.getDataY());
+    assertEquals(expected.getDataU(), actual.getDataU());
+    assertEquals(expected.getDataV(), actual.getDataV());
+  }
+
+  // Reads all frames in order, and then a few at random.
+  private static void checkReader(MappedRecordingReader reader, List<JavaI420Buffer> frames,
+      boolean hasIndex) throws IOException {
+    assertEquals(FRAMES, reader.getFrameCount());
+    for (int i = 0; i < FRAMES; ++i) {
+      final VideoFrame frame = reader.getFrame(i);
+      assertFrameEquals(frames.get(i), frame);
+      if (hasIndex) {
+        assertEquals(5000L * i, frame.getTimestampNs());
+        assertEquals(180, frame.getRotation());
+      }
+      frame.release();
+    }
+    for (int i : new int[] {7, 0, FRAMES - 1, 3}) {
+      assertFrameEquals(frames.get(i), reader.getFrame(i));
+    }
+  }
+
+  @Test
+  public void readsRawRecording() throws IOException {
+    final File file = File.createTempFile("recording", ".yuv");
+    try {
+      final List<JavaI420Buffer> frames =
+          record(new YuvFileWriter(file, ScreenCapturer.OutputFormat.I420));
+      try (MappedRecordingReader reader = MappedRecordingReader.openRaw(file, WIDTH, HEIGHT)) {
+        checkReader(reader, frames, /* hasIndex= */ false);
+      }
+    } finally {
+      file.delete();
+    }
+  }
+
+  @Test
+  public void readsY4mRecordingWithAndWithoutIndex() throws IOException {
+    final File file = File.createTempFile("recording", ".y4m");
+    try {
+      final List<JavaI420Buffer> frames = record(new Y4mFileWriter(file, /* framerate= */ 20));
+      try (MappedRecordingReader reader = MappedRecordingReader.openY4m(file)) {
+        assertEquals(WIDTH, reader.getWidth());
+        assertEquals(HEIGHT, reader.getHeight());
+        checkReader(reader, frames, /* hasIndex= */ true);
+      }
+
+      assertTrue(Y4mIndex.getIndexFile(file).delete());
+      try (MappedRecordingReader reader = MappedRecordingReader.openY4m(file)) {
+        reader.setPrefetchFrames(0);
+        checkReader(reader, frames, /* hasIndex= */ false);
+        // Derived from the F20:1 frame rate.
+        assertEquals(150_000_000L, reader.getFrame(3).getTimestampNs());
+      }
+    } finally {
+      file.delete();
+      Y4mIndex.getIndexFile(file).delete();
+    }
+  }
+}
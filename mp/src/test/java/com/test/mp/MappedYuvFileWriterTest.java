@@ -0,0 +1,87 @@
+package com.test.mp;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that MappedYuvFileWriter produces the same file as YuvFileWriter, also when frames do not
+ * fit in the rest of a segment.
+ */
+public class MappedYuvFileWriterTest {
+  private static byte[] record(FrameWriter writer, File file, VideoFrame.I420Buffer[] frames)
+      throws IOException {
+    try (FrameWriter closing = writer) {
+      for (VideoFrame.I420Buffer frame : frames) {
+        closing.writeFrame(frame, /* rotation= */ 0, /* timestampNs= */ 0);
+      }
+      closing.flush();
+    }
+    return Files.readAllBytes(file.toPath());
+  }
+
+  private static void checkSameAsStreamWriter(ScreenCapturer.OutputFormat format,
+      int segmentSizeBytes, VideoFrame.I420Buffer... frames) throws IOException {
+    final File streamFile = File.createTempFile("stream", ".yuv");
+    final File mappedFile = File.createTempFile("mapped", ".yuv");
+    try {
+      final byte[] expected = record(new YuvFileWriter(streamFile, format), streamFile, frames);
+      final MappedYuvFileWriter mappedWriter =
+          new MappedYuvFileWriter(mappedFile, format, segmentSizeBytes);
+      final byte[] actual = record(mappedWriter, mappedFile, frames);
+      assertEquals(frames.length, mappedWriter.getFramesWritten());
+      assertEquals(expected.length, mappedWriter.getBytesWritten());
+      assertArrayEquals(expected, actual);
+    } finally {
+      streamFile.delete();
+      mappedFile.delete();
+    }
+  }
+
+  private static VideoFrame.I420Buffer createFrame(int width, int height, int seed) {
+    final VideoFrame.I420Buffer frame = JavaI420Buffer.allocate(width, height);
+    final java.util.Random random = new Random(seed);
+    for (ByteBuffer plane :
+        new ByteBuffer[] {frame.getDataY(), frame.getDataU(), frame.getDataV()}) {
+      while (plane.hasRemaining()) {
+        plane.put((byte) random.nextInt());
+      }
+    }
+    return frame;
+  }
+
+  @Test
+  public void framesSpanningSegmentsMatchStreamWriter() throws IOException {
+    final VideoFrame.I420Buffer[] frames = new VideoFrame.I420Buffer[7];
+    for (int i = 0; i < frames.length; ++i) {
+      frames[i] = createFrame(/* width= */ 40, /* height= */ 30, /* seed= */ i);
+    }
+    // 1800 byte frames, two fit in a segment and the rest is left unused.
+    checkSameAsStreamWriter(ScreenCapturer.OutputFormat.I420, /* segmentSizeBytes= */ 4000, frames);
+    // Segments smaller than a frame.
+    checkSameAsStreamWriter(ScreenCapturer.OutputFormat.I420, /* segmentSizeBytes= */ 100, frames);
+    checkSameAsStreamWriter(ScreenCapturer.OutputFormat.NV21, /* segmentSizeBytes= */ 4000, frames);
+  }
+
+  @Test
+  public void closeTruncatesToWrittenFrames() throws IOException {
+    final File file = File.createTempFile("mapped", ".yuv");
+    try {
+      final MappedYuvFileWriter writer = new MappedYuvFileWriter(
+          file, ScreenCapturer.OutputFormat.NV12, /* segmentSizeBytes= */ 1 << 20);
+      writer.writeFrame(createFrame(/* width= */ 17, /* height= */ 9, /* seed= */ 1),
+          /* rotation= */ 0, /* timestampNs= */ 0);
+      assertEquals(1 << 20, file.length());
+      writer.close();
+      assertEquals(YuvHelper.getPackedI420Size(17, 9), file.length());
+    } finally {
+      file.delete();
+    }
+  }
+}
@@ -0,0 +1,97 @@
+package com.test.mp;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the snapshots, rates and periodic reports of MetricsRegistry and the JSON lines written
+ * by MetricsFileExporter.
+ */
+public class MetricsRegistryTest {
+  @Test
+  public void snapshotHoldsCountersAndGauges() {
+    final MetricsRegistry registry = new MetricsRegistry();
+    final MetricsRegistry.Counter frames = registry.counter("frames");
+    assertSame(frames, registry.counter("frames"));
+    frames.increment();
+    frames.add(4);
+    final AtomicLong depth = new AtomicLong(3);
+    registry.registerGauge("depth", depth::get);
+    registry.registerCounter("bytes", () -> 1000);
+
+    final MetricsRegistry.Snapshot snapshot = registry.getSnapshot();
+    assertEquals(5, snapshot.getCounter("frames"));
+    assertEquals(1000, snapshot.getCounter("bytes"));
+    assertEquals(3, snapshot.getGauge("depth"));
+    assertTrue(snapshot.getRates().isEmpty());
+
+    registry.unregister("depth");
+    assertFalse(registry.getSnapshot().getGauges().containsKey("depth"));
+  }
+
+  @Test
+  public void ratesSincePreviousSnapshot() throws InterruptedException {
+    final MetricsRegistry registry = new MetricsRegistry();
+    final MetricsRegistry.Counter frames = registry.counter("frames");
+    final MetricsRegistry.Snapshot first = registry.getSnapshot();
+    Thread.sleep(200);
+    frames.add(30);
+    final MetricsRegistry.Snapshot second = registry.getSnapshot(first);
+    final double seconds = (second.getTimeNs() - first.getTimeNs()) / 1e9;
+    assertEquals(30 / seconds, second.getRate("frames"), 0.001);
+  }
+
+  @Test
+  public void periodicReportsEndWithFinalReport() throws InterruptedException {
+    final MetricsRegistry registry = new MetricsRegistry();
+    final MetricsRegistry.Counter frames = registry.counter("frames");
+    final CountDownLatch reports = new CountDownLatch(2);
+    final AtomicLong lastValue = new AtomicLong(-1);
+    registry.addListener(snapshot -> {
+      lastValue.set(snapshot.getCounter("frames"));
+      reports.countDown();
+    });
+    registry.startReporting(/* periodMs= */ 20);
+    assertTrue(reports.await(5, TimeUnit.SECONDS));
+    frames.add(7);
+    registry.stopReporting();
+    assertEquals(7, lastValue.get());
+  }
+
+  @Test
+  public void exporterWritesJsonLines() throws IOException, InterruptedException {
+    final MetricsRegistry registry = new MetricsRegistry();
+    registry.counter("frames.captured").add(12);
+    registry.registerGauge("queue \"depth\"", () -> 2);
+    final File file = File.createTempFile("metrics", ".json");
+    final MetricsRegistry.Snapshot first = registry.getSnapshot();
+    final List<String> lines;
+    try {
+      final MetricsFileExporter exporter = new MetricsFileExporter(file);
+      exporter.onMetrics(first);
+      // Rates need time to pass between the snapshots.
+      Thread.sleep(10);
+      exporter.onMetrics(registry.getSnapshot(first));
+      exporter.close();
+      lines = Files.readAllLines(file.toPath(), Charset.forName("UTF-8"));
+    } finally {
+      file.delete();
+    }
+    assertEquals(2, lines.size());
+    assertEquals("{\"timestampMs\":" + first.getTimestampMs()
+            + ",\"counters\":{\"frames.captured\":12},\"rates\":{},"
+            + "\"gauges\":{\"queue \\\"depth\\\"\":2}}",
+        lines.get(0));
+    assertTrue(lines.get(1), lines.get(1).contains("\"rates\":{\"frames.captured\":"));
+  }
+}
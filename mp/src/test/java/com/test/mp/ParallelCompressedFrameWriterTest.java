@@ -0,0 +1,95 @@
+package com.test.mp;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that ParallelCompressedFrameWriter writes exactly the file of CompressedFrameWriter,
+ * whatever order its workers finish in.
+ */
+public class ParallelCompressedFrameWriterTest {
+  private static List<JavaI420Buffer> createFrames() {
+    final List<JavaI420Buffer> frames = new ArrayList<>();
+    for (int i = 0; i < CompressedFrameWriter.KEY_FRAME_INTERVAL + 30; ++i) {
+      frames.add(i % 25 == 24
+          ? CompressedFrameWriterTest.createScreenFrame(/* width= */ 96, /* height= */ 64, i)
+          : CompressedFrameWriterTest.createScreenFrame(/* width= */ 160, /* height= */ 90, i / 2));
+    }
+    return frames;
+  }
+
+  private static byte[] record(FrameWriter writer, File file, List<JavaI420Buffer> frames)
+      throws IOException {
+    for (int i = 0; i < frames.size(); ++i) {
+      writer.writeFrame(frames.get(i), /* rotation= */ 0, /* timestampNs= */ 100L * i);
+    }
+    writer.close();
+    return Files.readAllBytes(file.toPath());
+  }
+
+  private static void checkSameAsSequential(boolean usePreviousFrame, int threads, int window)
+      throws IOException {
+    final List<JavaI420Buffer> frames = createFrames();
+    final File sequentialFile = File.createTempFile("sequential", ".yuvz");
+    final File parallelFile = File.createTempFile("parallel", ".yuvz");
+    try {
+      final byte[] expected = record(new CompressedFrameWriter(sequentialFile, usePreviousFrame),
+          sequentialFile, frames);
+      final ParallelCompressedFrameWriter writer = new ParallelCompressedFrameWriter(parallelFile,
+          usePreviousFrame, Deflater.BEST_SPEED, threads, window);
+      final byte[] actual = record(writer, parallelFile, frames);
+      assertArrayEquals(expected, actual);
+      assertEquals(frames.size(), writer.getFramesWritten());
+      assertEquals(actual.length, 8 + writer.getCompressedBytes());
+    } finally {
+      sequentialFile.delete();
+      parallelFile.delete();
+    }
+  }
+
+  @Test
+  public void deltaFramesMatchSequentialWriter() throws IOException {
+    checkSameAsSequential(/* usePreviousFrame= */ true, /* threads= */ 4, /* window= */ 6);
+  }
+
+  @Test
+  public void keyFramesMatchSequentialWriter() throws IOException {
+    checkSameAsSequential(/* usePreviousFrame= */ false, /* threads= */ 3, /* window= */ 3);
+  }
+
+  @Test
+  public void windowOfOneMatchesSequentialWriter() throws IOException {
+    checkSameAsSequential(/* usePreviousFrame= */ true, /* threads= */ 2, /* window= */ 1);
+  }
+
+  @Test
+  public void flushWritesReadyRecords() throws IOException {
+    final File file = File.createTempFile("parallel", ".yuvz");
+    try {
+      final ParallelCompressedFrameWriter writer =
+          new ParallelCompressedFrameWriter(file, /* usePreviousFrame= */ true, /* threads= */ 2);
+      final List<JavaI420Buffer> frames = createFrames();
+      for (int i = 0; i < 10; ++i) {
+        writer.writeFrame(frames.get(i), /* rotation= */ 0, /* timestampNs= */ i);
+      }
+      // Frames still in flight may be written after the flush, but none written before it may
+      // be left in the output buffer.
+      final long compressedBytes = writer.getCompressedBytes();
+      writer.flush();
+      assertTrue(file.length() >= 8 + compressedBytes);
+      writer.close();
+      assertEquals(10, writer.getFramesWritten());
+      assertEquals(file.length(), 8 + writer.getCompressedBytes());
+    } finally {
+      file.delete();
+    }
+  }
+}
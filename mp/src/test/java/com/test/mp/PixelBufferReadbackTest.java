@@ -0,0 +1,244 @@
+package com.test.mp;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs the PixelBufferReadback pipeline against a fake GL whose fences the test signals, standing
+ * in for the GPU.
+ */
+public class PixelBufferReadbackTest {
+  private static final int WIDTH = 8;
+  private static final int HEIGHT = 4;
+
+  private static class FakePixelPackGl implements PixelPackGl {
+    final Map<Integer, ByteBuffer> buffers = new HashMap<>();
+    final Set<Long> syncs = new HashSet<>();
+    final Set<Long> signaledSyncs = new HashSet<>();
+    // Value of every byte of the framebuffer the next read sees.
+    byte framebufferValue;
+    int blockingWaits;
+    private int nextBuffer = 1;
+    private long nextSync = 1;
+    private int mappedBuffer;
+
+    // Lets the GPU finish all commands issued so far.
+    void finishGpu() {
+      signaledSyncs.addAll(syncs);
+    }
+
+    @Override
+    public int createBuffer(int sizeBytes) {
+      buffers.put(nextBuffer, ByteBuffer.allocate(sizeBytes));
+      return nextBuffer++;
+    }
+
+    @Override
+    public void resizeBuffer(int buffer, int sizeBytes) {
+      assertNotNull(buffers.put(buffer, ByteBuffer.allocate(sizeBytes)));
+    }
+
+    @Override
+    public void deleteBuffer(int buffer) {
+      assertNotNull(buffers.remove(buffer));
+    }
+
+    @Override
+    public void readPixels(int buffer, int width, int height) {
+      final ByteBuffer pixels = buffers.get(buffer);
+      assertEquals(width * height * 4, pixels.capacity());
+      for (int i = 0; i < pixels.capacity(); ++i) {
+        pixels.put(i, framebufferValue);
+      }
+    }
+
+    @Override
+    public long fenceSync() {
+      syncs.add(nextSync);
+      return nextSync++;
+    }
+
+    @Override
+    public boolean clientWaitSync(long sync, long timeoutNs) {
+      assertTrue(syncs.contains(sync));
+      if (!signaledSyncs.contains(sync) && timeoutNs > 0) {
+        ++blockingWaits;
+        finishGpu();
+      }
+      return signaledSyncs.contains(sync);
+    }
+
+    @Override
+    public void deleteSync(long sync) {
+      assertTrue(syncs.remove(sync));
+      signaledSyncs.remove(sync);
+    }
+
+    @Override
+    public ByteBuffer mapBuffer(int buffer, int sizeBytes) {
+      assertEquals(0, mappedBuffer);
+      mappedBuffer = buffer;
+      final ByteBuffer mapped = buffers.get(buffer).duplicate();
+      mapped.clear();
+      mapped.limit(sizeBytes);
+      return mapped;
+    }
+
+    @Override
+    public void unmapBuffer(int buffer) {
+      assertEquals(mappedBuffer, buffer);
+      mappedBuffer = 0;
+    }
+  }
+
+  private final FakePixelPackGl gl = new FakePixelPackGl();
+  private final DirectBufferPool bufferPool = new DirectBufferPool(1024 * 1024);
+  private final PixelBufferReadback readback =
+      new PixelBufferReadback(gl, bufferPool, /* bufferCount= */ 3);
+  // First byte of the pixels of every completed read, in the order of the callbacks.
+  private final List<Integer> completedReads = new ArrayList<>();
+
+  private void read(int frame) {
+    read(frame, WIDTH, HEIGHT);
+  }
+
+  private void read(int frame, int width, int height) {
+    gl.framebufferValue = (byte) frame;
+    readback.readPixels(width, height, pixels -> {
+      assertEquals(width * height * 4, pixels.remaining());
+      completedReads.add((int) pixels.get(pixels.position()));
+      bufferPool.release(pixels);
+    });
+  }
+
+  @Test
+  public void deliversOneFrameLate() {
+    for (int frame = 0; frame < 10; ++frame) {
+      read(frame);
+      assertEquals(frame, completedReads.size());
+      assertEquals(1, readback.getPendingCount());
+      gl.finishGpu();
+    }
+    readback.flush();
+    assertEquals(10, completedReads.size());
+    for (int frame = 0; frame < 10; ++frame) {
+      assertEquals(frame, (int) completedReads.get(frame));
+    }
+    assertEquals(0, gl.blockingWaits);
+    // All frames went through the same three buffers.
+    assertEquals(3, gl.buffers.size());
+  }
+
+  @Test
+  public void waitsForOldestWhenAllBuffersPending() {
+    read(0);
+    read(1);
+    read(2);
+    assertTrue(completedReads.isEmpty());
+    assertEquals(3, readback.getPendingCount());
+    // No buffer is free: the GPU is waited for, which completes the other reads too.
+    read(3);
+    assertEquals(1, gl.blockingWaits);
+    assertEquals(3, completedReads.size());
+    assertEquals(1, readback.getPendingCount());
+    readback.flush();
+    assertEquals(4, completedReads.size());
+    for (int frame = 0; frame < 4; ++frame) {
+      assertEquals(frame, (int) completedReads.get(frame));
+    }
+  }
+
+  @Test
+  public void completesOnlyFinishedReads() {
+    read(0);
+    read(1);
+    gl.finishGpu();
+    read(2);
+    assertEquals(2, completedReads.size());
+    assertEquals(0, gl.blockingWaits);
+    assertEquals(1, gl.syncs.size());
+  }
+
+  @Test
+  public void resizesBuffersWhenSizeChanges() {
+    read(0);
+    gl.finishGpu();
+    read(1, WIDTH * 2, HEIGHT);
+    gl.finishGpu();
+    read(2, WIDTH * 2, HEIGHT * 3);
+    readback.flush();
+    assertEquals(3, completedReads.size());
+    assertEquals(3, gl.buffers.size());
+  }
+
+  @Test
+  public void releaseDropsPendingReads() {
+    read(0);
+    read(1);
+    readback.release();
+    assertTrue(completedReads.isEmpty());
+    assertTrue(gl.buffers.isEmpty());
+    assertTrue(gl.syncs.isEmpty());
+    readback.flush();
+    assertTrue(completedReads.isEmpty());
+  }
+
+  @Test
+  public void flushWritesPendingFramesInOrderBeforeStop() throws IOException {
+    // Like ScreenCapturer, write every converted frame from its callback, and flush the pending
+    // reads before closing the writer when capture stops.
+    final List<Long> writtenTimestamps = new ArrayList<>();
+    final AsyncFrameWriter writer = new AsyncFrameWriter(new FrameWriter() {
+      @Override
+      public void writeFrame(VideoFrame.I420Buffer buffer, int rotation, long timestampNs) {
+        writtenTimestamps.add(timestampNs);
+      }
+
+      @Override
+      public void flush() {}
+
+      @Override
+      public void close() {}
+    }, /* capacity= */ 4, AsyncFrameWriter.OverflowPolicy.BLOCK);
+    for (int frame = 0; frame < 5; ++frame) {
+      final long timestampNs = frame;
+      readback.readPixels(WIDTH, HEIGHT, pixels -> {
+        final JavaI420Buffer buffer = JavaI420Buffer.allocate(2, 2, /* bufferPool= */ null);
+        bufferPool.release(pixels);
+        try {
+          writer.writeFrame(buffer, /* rotation= */ 0, timestampNs);
+        } catch (IOException e) {
+          throw new AssertionError(e);
+        }
+        buffer.release();
+      });
+      if (frame % 2 == 0) {
+        gl.finishGpu();
+      }
+    }
+
+    readback.flush();
+    writer.close();
+    assertEquals(Arrays.asList(0L, 1L, 2L, 3L, 4L), writtenTimestamps);
+  }
+
+  @Test
+  public void detectsGles3Versions() {
+    assertTrue(Gles30PixelPackGl.isGles3Version("OpenGL ES 3.2 V@415.0 (GIT@663be55)"));
+    assertTrue(Gles30PixelPackGl.isGles3Version("OpenGL ES 3.0"));
+    assertFalse(Gles30PixelPackGl.isGles3Version("OpenGL ES 2.0 build 1.9@2291151"));
+    assertFalse(Gles30PixelPackGl.isGles3Version("OpenGL ES-CM 1.1"));
+    assertFalse(Gles30PixelPackGl.isGles3Version(null));
+  }
+}
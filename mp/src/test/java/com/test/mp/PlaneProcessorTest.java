@@ -0,0 +1,122 @@
+package com.test.mp;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks how PlaneProcessor splits planes around its small-plane threshold, and that the striped
+ * copies of YuvHelper match the sequential ones there.
+ */
+public class PlaneProcessorTest {
+  // Threshold of the striped processor, a 64 x 64 plane.
+  private static final int MIN_PARALLEL_BYTES = 64 * 64;
+  private static final PlaneProcessor SEQUENTIAL = new PlaneProcessor(1, 0);
+  private static final PlaneProcessor STRIPED = new PlaneProcessor(4, MIN_PARALLEL_BYTES);
+
+  // Returns the row ranges |processor| hands out for a plane, sorted.
+  private static List<int[]> getStripes(PlaneProcessor processor, int rows, int bytesPerRow) {
+    final List<int[]> stripes = Collections.synchronizedList(new ArrayList<>());
+    processor.processRows(
+        rows, bytesPerRow, (rowStart, rowEnd) -> stripes.add(new int[] {rowStart, rowEnd}));
+    Collections.sort(stripes, (a, b) -> Integer.compare(a[0], b[0]));
+    return stripes;
+  }
+
+  private static void assertCoversRows(List<int[]> stripes, int rows) {
+    int nextRow = 0;
+    for (int[] stripe : stripes) {
+      assertEquals(nextRow, stripe[0]);
+      assertTrue(stripe[1] > stripe[0]);
+      nextRow = stripe[1];
+    }
+    assertEquals(rows, nextRow);
+  }
+
+  @Test
+  public void smallPlanesAreNotSplit() {
+    // One byte below the threshold.
+    final List<int[]> stripes = getStripes(STRIPED, 64, 64 - 1);
+    assertEquals(1, stripes.size());
+    assertCoversRows(stripes, 64);
+  }
+
+  @Test
+  public void planesAtThresholdAreSplit() {
+    final List<int[]> stripes = getStripes(STRIPED, 64, 64);
+    assertEquals(4, stripes.size());
+    assertCoversRows(stripes, 64);
+  }
+
+  @Test
+  public void planesWithFewRowsAreNotSplit() {
+    // Large enough, but two stripes would be shorter than the minimum stripe height.
+    assertEquals(1, getStripes(STRIPED, 31, 1024).size());
+    final List<int[]> stripes = getStripes(STRIPED, 32, 1024);
+    assertEquals(2, stripes.size());
+    assertCoversRows(stripes, 32);
+  }
+
+  @Test
+  public void disposedProcessorRunsOnCallingThread() {
+    final PlaneProcessor processor = new PlaneProcessor(4, 0);
+    processor.dispose();
+    final Thread caller = Thread.currentThread();
+    processor.processRows(100, 1024, (rowStart, rowEnd) -> {
+      assertSame(caller, Thread.currentThread());
+      assertEquals(0, rowStart);
+      assertEquals(100, rowEnd);
+    });
+  }
+
+  private static void checkCopyPlane(int width, int height, int srcStride, int dstStride) {
+    final ByteBuffer src = YuvHelperTest.createRandomPlane(srcStride, height, width + height);
+    final ByteBuffer expected = ByteBuffer.allocateDirect(dstStride * height);
+    final ByteBuffer actual = ByteBuffer.allocateDirect(dstStride * height);
+
+    YuvHelper.copyPlane(src, srcStride, expected, dstStride, width, height, SEQUENTIAL);
+    YuvHelper.copyPlane(src, srcStride, actual, dstStride, width, height, STRIPED);
+
+    assertEquals(expected, actual);
+    assertEquals(0, src.position());
+  }
+
+  @Test
+  public void stripedCopyPlaneMatchesSequentialAroundThreshold() {
+    for (int height = 62; height <= 66; ++height) {
+      // Contiguous planes are copied a stripe at a time, padded ones a row at a time.
+      checkCopyPlane(/* width= */ 64, height, /* srcStride= */ 64, /* dstStride= */ 64);
+      checkCopyPlane(/* width= */ 64, height, /* srcStride= */ 70, /* dstStride= */ 64);
+      checkCopyPlane(/* width= */ 63, height, /* srcStride= */ 64, /* dstStride= */ 65);
+    }
+  }
+
+  @Test
+  public void stripedI420CopyMatchesSequentialAroundThreshold() {
+    // Luma planes around the threshold, the chroma planes stay below it.
+    for (int size = 126; size <= 130; ++size) {
+      final int chromaWidth = (size + 1) / 2;
+      final int chromaHeight = (size + 1) / 2;
+      final ByteBuffer srcY = YuvHelperTest.createRandomPlane(size + 2, size, /* seed= */ size);
+      final ByteBuffer srcU =
+          YuvHelperTest.createRandomPlane(chromaWidth + 1, chromaHeight, /* seed= */ size + 1);
+      final ByteBuffer srcV =
+          YuvHelperTest.createRandomPlane(chromaWidth + 3, chromaHeight, /* seed= */ size + 2);
+      final int packedSize = YuvHelper.getPackedI420Size(size, size);
+      final ByteBuffer expected = ByteBuffer.allocateDirect(packedSize);
+      final ByteBuffer actual = ByteBuffer.allocateDirect(packedSize);
+
+      YuvHelper.I420Copy(srcY, size + 2, srcU, chromaWidth + 1, srcV, chromaWidth + 3, expected,
+          size, size, SEQUENTIAL);
+      YuvHelper.I420Copy(srcY, size + 2, srcU, chromaWidth + 1, srcV, chromaWidth + 3, actual,
+          size, size, STRIPED);
+
+      assertEquals(expected, actual);
+    }
+  }
+}
@@ -0,0 +1,216 @@
+package com.test.mp;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the filters of PlaneScaler and the crop of JavaI420Buffer.cropAndScaleI420() against
+ * straightforward per-pixel references, on planes with padded rows.
+ */
+public class PlaneScalerTest {
+  private static final PlaneProcessor SEQUENTIAL = new PlaneProcessor(1, 0);
+  private static final PlaneProcessor STRIPED = new PlaneProcessor(4, 0);
+  // Value of the destination row padding, which must not be written.
+  private static final byte PADDING = (byte) 0xA5;
+  // PlaneScaler interpolates with 8-bit weights, off by up to one step on each axis.
+  private static final int BILINEAR_TOLERANCE = 2;
+
+  /** Reference box filter, averaging the source pixels each destination pixel covers. */
+  private static int boxPixel(ByteBuffer src, int srcStride, int srcWidth, int srcHeight,
+      int dstWidth, int dstHeight, int x, int y) {
+    final int sx0 = x * srcWidth / dstWidth;
+    final int sx1 = Math.max(sx0 + 1, (x + 1) * srcWidth / dstWidth);
+    final int sy0 = y * srcHeight / dstHeight;
+    final int sy1 = Math.max(sy0 + 1, (y + 1) * srcHeight / dstHeight);
+    int sum = 0;
+    for (int sy = sy0; sy < sy1; ++sy) {
+      for (int sx = sx0; sx < sx1; ++sx) {
+        sum += src.get(sy * srcStride + sx) & 0xFF;
+      }
+    }
+    final int area = (sx1 - sx0) * (sy1 - sy0);
+    return (sum + area / 2) / area;
+  }
+
+  /** Reference bilinear filter in floating point, sampling at pixel centers. */
+  private static int bilinearPixel(ByteBuffer src, int srcStride, int srcWidth, int srcHeight,
+      int dstWidth, int dstHeight, int x, int y) {
+    final double fx =
+        Math.min(Math.max((x + 0.5) * srcWidth / dstWidth - 0.5, 0), srcWidth - 1);
+    final double fy =
+        Math.min(Math.max((y + 0.5) * srcHeight / dstHeight - 0.5, 0), srcHeight - 1);
+    final int x0 = (int) fx;
+    final int y0 = (int) fy;
+    final int x1 = Math.min(x0 + 1, srcWidth - 1);
+    final int y1 = Math.min(y0 + 1, srcHeight - 1);
+    final double wx = fx - x0;
+    final double wy = fy - y0;
+    final double upper = (src.get(y0 * srcStride + x0) & 0xFF) * (1 - wx)
+        + (src.get(y0 * srcStride + x1) & 0xFF) * wx;
+    final double lower = (src.get(y1 * srcStride + x0) & 0xFF) * (1 - wx)
+        + (src.get(y1 * srcStride + x1) & 0xFF) * wx;
+    return (int) Math.round(upper * (1 - wy) + lower * wy);
+  }
+
+  private static ByteBuffer createPaddedPlane(int stride, int height) {
+    final ByteBuffer plane = ByteBuffer.allocateDirect(stride * height);
+    for (int i = 0; i < plane.capacity(); ++i) {
+      plane.put(i, PADDING);
+    }
+    return plane;
+  }
+
+  private static void assertPaddingUntouched(ByteBuffer plane, int stride, int width, int height) {
+    for (int y = 0; y < height; ++y) {
+      for (int x = width; x < stride; ++x) {
+        assertEquals("Padding at (" + x + ", " + y + ")", PADDING, plane.get(y * stride + x));
+      }
+    }
+  }
+
+  // Scales a random padded plane and compares it against the reference of |filter|, allowing
+  // |tolerance| for the rounding of the fixed point arithmetic.
+  private static void checkScalePlane(int srcWidth, int srcHeight, int dstWidth, int dstHeight,
+      PlaneScaler.Filter filter, int tolerance, PlaneProcessor processor) {
+    final int srcStride = srcWidth + 5;
+    final int dstStride = dstWidth + 3;
+    final ByteBuffer src =
+        YuvHelperTest.createRandomPlane(srcStride, srcHeight, /* seed= */ srcWidth * 31 + dstWidth);
+    final ByteBuffer dst = createPaddedPlane(dstStride, dstHeight);
+
+    PlaneScaler.scalePlane(src, srcStride, srcWidth, srcHeight, dst, dstStride, dstWidth,
+        dstHeight, filter, processor);
+
+    for (int y = 0; y < dstHeight; ++y) {
+      for (int x = 0; x < dstWidth; ++x) {
+        final int expected = filter == PlaneScaler.Filter.BOX
+            ? boxPixel(src, srcStride, srcWidth, srcHeight, dstWidth, dstHeight, x, y)
+            : bilinearPixel(src, srcStride, srcWidth, srcHeight, dstWidth, dstHeight, x, y);
+        final int actual = dst.get(y * dstStride + x) & 0xFF;
+        if (Math.abs(expected - actual) > tolerance) {
+          fail(filter + " " + srcWidth + "x" + srcHeight + " -> " + dstWidth + "x" + dstHeight
+              + " mismatch at (" + x + ", " + y + "): expected " + expected + " but was "
+              + actual);
+        }
+      }
+    }
+    assertPaddingUntouched(dst, dstStride, dstWidth, dstHeight);
+    assertEquals(0, src.position());
+    assertEquals(0, dst.position());
+  }
+
+  @Test
+  public void boxMatchesReference() {
+    checkScalePlane(37, 23, 11, 7, PlaneScaler.Filter.BOX, 0, SEQUENTIAL);
+    checkScalePlane(64, 48, 48, 36, PlaneScaler.Filter.BOX, 0, SEQUENTIAL);
+    // Upscaling in one direction, the box degenerates to single rows.
+    checkScalePlane(20, 9, 13, 17, PlaneScaler.Filter.BOX, 0, SEQUENTIAL);
+  }
+
+  @Test
+  public void bilinearMatchesReference() {
+    checkScalePlane(11, 7, 37, 23, PlaneScaler.Filter.BILINEAR, BILINEAR_TOLERANCE, SEQUENTIAL);
+    checkScalePlane(48, 36, 64, 48, PlaneScaler.Filter.BILINEAR, BILINEAR_TOLERANCE, SEQUENTIAL);
+    checkScalePlane(37, 23, 19, 13, PlaneScaler.Filter.BILINEAR, BILINEAR_TOLERANCE, SEQUENTIAL);
+  }
+
+  @Test
+  public void halvingAveragesBlocksWithEitherFilter() {
+    // An exact 2:1 downscale is a 2x2 box average, whatever the filter.
+    checkScalePlane(38, 22, 19, 11, PlaneScaler.Filter.BOX, 0, SEQUENTIAL);
+    checkScalePlane(38, 22, 19, 11, PlaneScaler.Filter.BILINEAR, 0, SEQUENTIAL);
+  }
+
+  @Test
+  public void sameSizeCopiesPlane() {
+    checkScalePlane(17, 9, 17, 9, PlaneScaler.Filter.BOX, 0, SEQUENTIAL);
+    checkScalePlane(17, 9, 17, 9, PlaneScaler.Filter.BILINEAR, 0, SEQUENTIAL);
+  }
+
+  @Test
+  public void stripedMatchesReference() {
+    checkScalePlane(200, 150, 77, 61, PlaneScaler.Filter.BOX, 0, STRIPED);
+    checkScalePlane(77, 61, 200, 150, PlaneScaler.Filter.BILINEAR, BILINEAR_TOLERANCE, STRIPED);
+    checkScalePlane(200, 150, 100, 75, PlaneScaler.Filter.BOX, 0, STRIPED);
+  }
+
+  @Test
+  public void chooseFilterBoxesOnlyWhenDownscaling() {
+    assertEquals(PlaneScaler.Filter.BOX, PlaneScaler.chooseFilter(100, 100, 50, 100));
+    assertEquals(PlaneScaler.Filter.BILINEAR, PlaneScaler.chooseFilter(100, 100, 50, 101));
+  }
+
+  // A 13x11 frame with padded rows and random content.
+  private static JavaI420Buffer createPaddedFrame(Runnable releaseCallback) {
+    final int width = 13;
+    final int height = 11;
+    return JavaI420Buffer.wrap(width, height,
+        YuvHelperTest.createRandomPlane(/* stride= */ width + 3, height, /* seed= */ 1),
+        width + 3, YuvHelperTest.createRandomPlane(/* stride= */ 9, 6, /* seed= */ 2), 9,
+        YuvHelperTest.createRandomPlane(/* stride= */ 10, 6, /* seed= */ 3), 10,
+        releaseCallback);
+  }
+
+  @Test
+  public void cropRoundsOddOffsetsDownAndSharesMemory() {
+    final int[] releases = new int[1];
+    final JavaI420Buffer frame = createPaddedFrame(() -> ++releases[0]);
+    final VideoFrame.I420Buffer cropped = (VideoFrame.I420Buffer) JavaI420Buffer.cropAndScaleI420(
+        frame, /* cropX= */ 3, /* cropY= */ 5, /* cropWidth= */ 7, /* cropHeight= */ 5,
+        /* scaleWidth= */ 7, /* scaleHeight= */ 5, PlaneScaler.Filter.BOX, null);
+
+    assertEquals(7, cropped.getWidth());
+    assertEquals(5, cropped.getHeight());
+    assertEquals(frame.getStrideY(), cropped.getStrideY());
+    assertEquals(frame.getStrideU(), cropped.getStrideU());
+    assertEquals(frame.getStrideV(), cropped.getStrideV());
+    // The crop starts at (2, 4), the chroma planes at (1, 2).
+    assertEquals(frame.getDataY().get(4 * frame.getStrideY() + 2), cropped.getDataY().get(0));
+    assertEquals(frame.getDataU().get(2 * frame.getStrideU() + 1), cropped.getDataU().get(0));
+    assertEquals(frame.getDataV().get(2 * frame.getStrideV() + 1), cropped.getDataV().get(0));
+    // No copy: writes show through.
+    cropped.getDataY().put(0, (byte) 42);
+    assertEquals(42, frame.getDataY().get(4 * frame.getStrideY() + 2));
+
+    // The crop keeps the frame alive.
+    frame.release();
+    assertEquals(0, releases[0]);
+    cropped.release();
+    assertEquals(1, releases[0]);
+  }
+
+  @Test
+  public void cropAndScaleUsesRoundedUpChromaSizes() {
+    final JavaI420Buffer frame = createPaddedFrame(null);
+    // Crop 9x7 at (2, 2) down to 5x3, chroma 5x4 at (1, 1) down to 3x2.
+    final VideoFrame.I420Buffer scaled = (VideoFrame.I420Buffer) JavaI420Buffer.cropAndScaleI420(
+        frame, /* cropX= */ 3, /* cropY= */ 2, /* cropWidth= */ 9, /* cropHeight= */ 7,
+        /* scaleWidth= */ 5, /* scaleHeight= */ 3, PlaneScaler.Filter.BOX, null);
+
+    final ByteBuffer[] srcPlanes = {frame.getDataY(), frame.getDataU(), frame.getDataV()};
+    final int[] srcStrides = {frame.getStrideY(), frame.getStrideU(), frame.getStrideV()};
+    final ByteBuffer[] dstPlanes = {scaled.getDataY(), scaled.getDataU(), scaled.getDataV()};
+    final int[] dstStrides = {scaled.getStrideY(), scaled.getStrideU(), scaled.getStrideV()};
+    for (int plane = 0; plane < 3; ++plane) {
+      final boolean chroma = plane > 0;
+      final int offset = chroma ? 1 + srcStrides[plane] : 2 + 2 * srcStrides[plane];
+      final ByteBuffer src = ((ByteBuffer) srcPlanes[plane].position(offset)).slice();
+      final int srcWidth = chroma ? 5 : 9;
+      final int srcHeight = chroma ? 4 : 7;
+      final int dstWidth = chroma ? 3 : 5;
+      final int dstHeight = chroma ? 2 : 3;
+      for (int y = 0; y < dstHeight; ++y) {
+        for (int x = 0; x < dstWidth; ++x) {
+          assertEquals("Plane " + plane + " at (" + x + ", " + y + ")",
+              boxPixel(src, srcStrides[plane], srcWidth, srcHeight, dstWidth, dstHeight, x, y),
+              dstPlanes[plane].get(y * dstStrides[plane] + x) & 0xFF);
+        }
+      }
+    }
+    scaled.release();
+    frame.release();
+  }
+}
@@ -0,0 +1,141 @@
+package com.test.mp;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the retain/release contract of RefCountDelegate and of the buffers built on it: the
+ * release callback runs exactly once, when the last reference goes.
+ */
+public class RefCountDelegateTest {
+  @Test
+  public void callbackRunsOnceWhenLastReferenceIsReleased() {
+    final AtomicInteger releases = new AtomicInteger();
+    final RefCountDelegate delegate = new RefCountDelegate(releases::incrementAndGet);
+    delegate.retain();
+    delegate.retain();
+    delegate.release();
+    delegate.release();
+    assertEquals(0, releases.get());
+    delegate.release();
+    assertEquals(1, releases.get());
+  }
+
+  @Test
+  public void releaseWithoutCallback() {
+    final RefCountDelegate delegate = new RefCountDelegate(/* releaseCallback= */ null);
+    delegate.release();
+  }
+
+  @Test
+  public void retainAfterLastReleaseThrows() {
+    final AtomicInteger releases = new AtomicInteger();
+    final RefCountDelegate delegate = new RefCountDelegate(releases::incrementAndGet);
+    delegate.release();
+    try {
+      delegate.retain();
+      fail("retain() of a released object did not throw");
+    } catch (IllegalStateException expected) {
+    }
+    assertEquals(1, releases.get());
+  }
+
+  @Test
+  public void releaseAfterLastReleaseThrows() {
+    final AtomicInteger releases = new AtomicInteger();
+    final RefCountDelegate delegate = new RefCountDelegate(releases::incrementAndGet);
+    delegate.release();
+    try {
+      delegate.release();
+      fail("release() of a released object did not throw");
+    } catch (IllegalStateException expected) {
+    }
+    // The callback is not run again.
+    assertEquals(1, releases.get());
+  }
+
+  @Test
+  public void concurrentReleasesRunCallbackOnce() throws InterruptedException {
+    final int threadCount = 8;
+    final int referencesPerThread = 1000;
+    final AtomicInteger releases = new AtomicInteger();
+    final RefCountDelegate delegate = new RefCountDelegate(releases::incrementAndGet);
+    for (int i = 0; i < threadCount * referencesPerThread; ++i) {
+      delegate.retain();
+    }
+    final CountDownLatch start = new CountDownLatch(1);
+    final Thread[] threads = new Thread[threadCount];
+    for (int i = 0; i < threadCount; ++i) {
+      threads[i] = new Thread(() -> {
+        try {
+          start.await();
+        } catch (InterruptedException e) {
+          throw new RuntimeException(e);
+        }
+        for (int j = 0; j < referencesPerThread; ++j) {
+          delegate.release();
+        }
+      });
+      threads[i].start();
+    }
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertEquals(0, releases.get());
+    delegate.release();
+    assertEquals(1, releases.get());
+  }
+
+  @Test
+  public void wrappedI420BufferRunsCallbackOnLastRelease() {
+    final AtomicInteger releases = new AtomicInteger();
+    final JavaI420Buffer planes = JavaI420Buffer.allocate(/* width= */ 4, /* height= */ 4);
+    final JavaI420Buffer buffer = JavaI420Buffer.wrap(4, 4, planes.getDataY(), 4,
+        planes.getDataU(), 2, planes.getDataV(), 2, releases::incrementAndGet);
+    // toI420() of an I420 buffer hands out another reference to itself.
+    final VideoFrame.I420Buffer i420 = buffer.toI420();
+    assertSame(buffer, i420);
+    final VideoFrame frame = new VideoFrame(buffer, /* rotation= */ 0, /* timestampNs= */ 0);
+    frame.retain();
+
+    frame.release();
+    i420.release();
+    assertEquals(0, releases.get());
+    frame.release();
+    assertEquals(1, releases.get());
+  }
+
+  @Test
+  public void pooledI420BufferReturnsMemoryOnLastRelease() {
+    final DirectBufferPool pool = new DirectBufferPool(1024);
+    final JavaI420Buffer buffer = JavaI420Buffer.allocate(/* width= */ 4, /* height= */ 4, pool);
+    buffer.retain();
+    buffer.release();
+    assertEquals(0, pool.getPooledBytes());
+    buffer.release();
+    assertEquals(YuvHelper.getPackedI420Size(4, 4), pool.getPooledBytes());
+  }
+
+  @Test
+  public void textureBufferRunsCallbackOnLastRelease() {
+    // SurfaceTextureHelper returns the texture from this callback, it must only run once all
+    // listeners that retained the frame have released it.
+    final AtomicInteger releases = new AtomicInteger();
+    final TextureBufferImpl buffer = new TextureBufferImpl(/* width= */ 4, /* height= */ 4,
+        VideoFrame.TextureBuffer.Type.OES, /* id= */ 1, /* transformMatrix= */ null,
+        /* toI420Handler= */ null, /* yuvConverter= */ null, releases::incrementAndGet);
+    final VideoFrame frame = new VideoFrame(buffer, /* rotation= */ 0, /* timestampNs= */ 0);
+    // A listener keeps the frame beyond onFrame().
+    frame.retain();
+    // The helper drops its own reference after delivering the frame.
+    frame.release();
+    assertEquals(0, releases.get());
+    frame.release();
+    assertEquals(1, releases.get());
+  }
+}
@@ -0,0 +1,128 @@
+package com.test.mp;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks segment rotation, truncation and the manifest of SegmentedYuvFileWriter.
+ */
+public class SegmentedYuvFileWriterTest {
+  private static final int WIDTH = 8;
+  private static final int HEIGHT = 4;
+  private static final int FRAME_SIZE = YuvHelper.getPackedI420Size(WIDTH, HEIGHT);
+
+  private static File createDirectory() throws IOException {
+    return Files.createTempDirectory("segments").toFile();
+  }
+
+  private static void deleteDirectory(File directory) {
+    for (File file : directory.listFiles()) {
+      file.delete();
+    }
+    directory.delete();
+  }
+
+  // Writes |count| frames filled with their number, |intervalNs| apart.
+  private static void writeFrames(FrameWriter writer, int count, long intervalNs)
+      throws IOException {
+    for (int i = 0; i < count; ++i) {
+      final JavaI420Buffer frame = JavaI420Buffer.allocate(WIDTH, HEIGHT);
+      for (ByteBuffer plane :
+          new ByteBuffer[] {frame.getDataY(), frame.getDataU(), frame.getDataV()}) {
+        while (plane.hasRemaining()) {
+          plane.put((byte) i);
+        }
+      }
+      writer.writeFrame(frame, /* rotation= */ 0, /* timestampNs= */ i * intervalNs);
+      frame.release();
+    }
+  }
+
+  @Test
+  public void sizeLimitSplitsOnFrameBoundaries() throws IOException {
+    final File directory = createDirectory();
+    try {
+      final File file = new File(directory, "screen_record.yuv");
+      // Room for two and a half frames, so each segment gets two.
+      final SegmentedYuvFileWriter writer = new SegmentedYuvFileWriter(file,
+          ScreenCapturer.OutputFormat.I420, /* maxSegmentBytes= */ FRAME_SIZE * 5 / 2,
+          /* maxSegmentDurationNs= */ 0);
+      writeFrames(writer, /* count= */ 5, /* intervalNs= */ 10);
+      writer.close();
+
+      final List<SegmentedYuvFileWriter.Segment> segments = writer.getSegments();
+      assertEquals(3, segments.size());
+      int frame = 0;
+      for (SegmentedYuvFileWriter.Segment segment : segments) {
+        assertEquals(new File(directory, String.format("screen_record_%04d.yuv", segment.index)),
+            segment.file);
+        final byte[] bytes = Files.readAllBytes(segment.file.toPath());
+        assertEquals(segment.frames * FRAME_SIZE, bytes.length);
+        assertEquals(segment.bytes, bytes.length);
+        for (int i = 0; i < segment.frames; ++i, ++frame) {
+          assertEquals(frame, bytes[i * FRAME_SIZE]);
+        }
+      }
+      assertEquals(5, frame);
+      assertEquals(1, segments.get(2).frames);
+      // Only the segments and the manifest are left, not the preallocated next segment.
+      assertEquals(4, directory.listFiles().length);
+
+      final List<String> manifest =
+          Files.readAllLines(SegmentedYuvFileWriter.getManifestFile(file).toPath());
+      assertEquals(3, manifest.size());
+      assertEquals("1 screen_record_0001.yuv 2 " + 2 * FRAME_SIZE + " 20 30", manifest.get(1));
+    } finally {
+      deleteDirectory(directory);
+    }
+  }
+
+  @Test
+  public void durationLimitUsesCaptureTimestamps() throws IOException {
+    final File directory = createDirectory();
+    try {
+      final SegmentedYuvFileWriter writer = new SegmentedYuvFileWriter(
+          new File(directory, "rec.yuv"), ScreenCapturer.OutputFormat.NV12,
+          /* maxSegmentBytes= */ 0, /* maxSegmentDurationNs= */ 30);
+      writeFrames(writer, /* count= */ 7, /* intervalNs= */ 10);
+      writer.close();
+
+      final List<SegmentedYuvFileWriter.Segment> segments = writer.getSegments();
+      assertEquals(3, segments.size());
+      assertEquals(3, segments.get(0).frames);
+      assertEquals(0, segments.get(0).firstTimestampNs);
+      assertEquals(20, segments.get(0).lastTimestampNs);
+      assertEquals(30, segments.get(1).firstTimestampNs);
+      assertEquals(1, segments.get(2).frames);
+      assertEquals(FRAME_SIZE, segments.get(2).file.length());
+    } finally {
+      deleteDirectory(directory);
+    }
+  }
+
+  @Test
+  public void durationLimitPreallocatesFromCurrentSegment() throws IOException {
+    final File directory = createDirectory();
+    try {
+      final SegmentedYuvFileWriter writer = new SegmentedYuvFileWriter(
+          new File(directory, "rec.yuv"), ScreenCapturer.OutputFormat.I420,
+          /* maxSegmentBytes= */ 0, /* maxSegmentDurationNs= */ 40);
+      // Halfway through the first segment, three frames were written in 20ns.
+      writeFrames(writer, /* count= */ 5, /* intervalNs= */ 10);
+
+      final File secondSegment = new File(directory, "rec_0001.yuv");
+      assertEquals(6 * FRAME_SIZE, secondSegment.length());
+      writer.close();
+      assertEquals(FRAME_SIZE, secondSegment.length());
+    } finally {
+      deleteDirectory(directory);
+    }
+  }
+}
@@ -0,0 +1,112 @@
+package com.test.mp;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the content and buffer reuse of the patterns of SyntheticVideoCapturer.
+ */
+public class SyntheticVideoCapturerTest {
+  private static final int WIDTH = 160;
+  private static final int HEIGHT = 120;
+
+  // Keeps a copy of the luma plane of every frame.
+  private static class CopyingObserver implements CapturerObserver {
+    final List<byte[]> lumaPlanes = new ArrayList<>();
+    final int maxFrames;
+
+    CopyingObserver(int maxFrames) {
+      this.maxFrames = maxFrames;
+    }
+
+    @Override
+    public void onCapturerStarted(boolean success) {}
+
+    @Override
+    public void onCapturerStopped() {}
+
+    @Override
+    public synchronized void onFrameCaptured(VideoFrame frame) {
+      if (lumaPlanes.size() >= maxFrames) {
+        return;
+      }
+      final VideoFrame.I420Buffer buffer = (VideoFrame.I420Buffer) frame.getBuffer();
+      assertEquals(WIDTH, buffer.getWidth());
+      assertEquals(HEIGHT, buffer.getHeight());
+      final ByteBuffer dataY = buffer.getDataY();
+      final byte[] luma = new byte[WIDTH * HEIGHT];
+      for (int y = 0; y < HEIGHT; ++y) {
+        dataY.position(y * buffer.getStrideY());
+        dataY.get(luma, y * WIDTH, WIDTH);
+      }
+      lumaPlanes.add(luma);
+      notifyAll();
+    }
+
+    synchronized void awaitFrames() throws InterruptedException {
+      while (lumaPlanes.size() < maxFrames) {
+        wait();
+      }
+    }
+  }
+
+  private static List<byte[]> generate(SyntheticVideoCapturer.Pattern pattern, int frames)
+      throws InterruptedException {
+    final SyntheticVideoCapturer capturer = new SyntheticVideoCapturer(pattern);
+    final CopyingObserver observer = new CopyingObserver(frames);
+    capturer.initialize(/* surfaceTextureHelper= */ null, /* applicationContext= */ null, observer);
+    capturer.startCapture(WIDTH, HEIGHT, /* framerate= */ 0);
+    observer.awaitFrames();
+    capturer.stopCapture();
+    // Released frames are reused for the next ones.
+    assertTrue(capturer.getBufferPool().getHitCount() > 0);
+    capturer.dispose();
+    return observer.lumaPlanes;
+  }
+
+  private static int countChangedPixels(byte[] a, byte[] b) {
+    int changed = 0;
+    for (int i = 0; i < a.length; ++i) {
+      if (a[i] != b[i]) {
+        ++changed;
+      }
+    }
+    return changed;
+  }
+
+  @Test
+  public void staticFramesAreIdentical() throws InterruptedException {
+    final List<byte[]> frames = generate(SyntheticVideoCapturer.Pattern.STATIC, 3);
+    assertArrayEquals(frames.get(0), frames.get(1));
+    assertArrayEquals(frames.get(0), frames.get(2));
+  }
+
+  @Test
+  public void scrollingTextMovesUp() throws InterruptedException {
+    final List<byte[]> frames = generate(SyntheticVideoCapturer.Pattern.SCROLLING_TEXT, 2);
+    assertTrue(countChangedPixels(frames.get(0), frames.get(1)) > 0);
+    // Row 4 of the first frame is row 0 of the second.
+    for (int x = 0; x < WIDTH; ++x) {
+      assertEquals(frames.get(0)[4 * WIDTH + x], frames.get(1)[x]);
+    }
+  }
+
+  @Test
+  public void noiseChangesEveryPixelRegion() throws InterruptedException {
+    final List<byte[]> frames = generate(SyntheticVideoCapturer.Pattern.NOISE, 2);
+    assertTrue(countChangedPixels(frames.get(0), frames.get(1)) > WIDTH * HEIGHT * 9 / 10);
+  }
+
+  @Test
+  public void partialUpdatesChangeSmallRegions() throws InterruptedException {
+    final List<byte[]> frames = generate(SyntheticVideoCapturer.Pattern.PARTIAL_UPDATES, 2);
+    final int changed = countChangedPixels(frames.get(0), frames.get(1));
+    assertTrue(changed > 0);
+    assertTrue(changed <= 3 * 64 * 64);
+  }
+}
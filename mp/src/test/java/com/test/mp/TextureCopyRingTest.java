@@ -0,0 +1,134 @@
+package com.test.mp;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the texture accounting of TextureCopyRing against a FakeGlApi.
+ */
+public class TextureCopyRingTest {
+  private static final float[] IDENTITY_MATRIX = {
+      1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1};
+
+  private final FakeGlApi gl = new FakeGlApi();
+
+  private static GlTextureFrameBuffer copy(TextureCopyRing ring) {
+    return ring.copy(/* oesTextureId= */ 1, IDENTITY_MATRIX, /* width= */ 16, /* height= */ 8);
+  }
+
+  private int getDeletedTextureCount() {
+    return gl.getCallCount("glDeleteTextures");
+  }
+
+  @Test
+  public void copiesUntilCapacityIsInUse() {
+    final TextureCopyRing ring = new TextureCopyRing(gl, /* capacity= */ 2);
+    assertTrue(ring.hasFreeTexture());
+    assertFalse(ring.hasTexturesInUse());
+
+    final GlTextureFrameBuffer first = copy(ring);
+    final GlTextureFrameBuffer second = copy(ring);
+    assertNotSame(first, second);
+    assertEquals(16, first.getWidth());
+    assertEquals(8, first.getHeight());
+    assertFalse(ring.hasFreeTexture());
+    assertTrue(ring.hasTexturesInUse());
+    assertNull(copy(ring));
+
+    ring.returnTexture(first);
+    assertTrue(ring.hasFreeTexture());
+    // The returned texture is reused rather than a new one allocated.
+    assertSame(first, copy(ring));
+    assertEquals(0, getDeletedTextureCount());
+  }
+
+  @Test
+  public void reusesTexturesAcrossCopies() {
+    final TextureCopyRing ring = new TextureCopyRing(gl, /* capacity= */ 2);
+    final Set<GlTextureFrameBuffer> textures = new HashSet<>();
+    for (int i = 0; i < 10; ++i) {
+      final GlTextureFrameBuffer texture = copy(ring);
+      textures.add(texture);
+      ring.returnTexture(texture);
+    }
+    assertEquals(1, textures.size());
+    // Allocated once, at the first copy.
+    assertEquals(1, gl.getCallCount("glTexImage2D"));
+  }
+
+  @Test
+  public void shrinkingReleasesFreeTexturesRightAway() {
+    final TextureCopyRing ring = new TextureCopyRing(gl, /* capacity= */ 3);
+    final GlTextureFrameBuffer first = copy(ring);
+    final GlTextureFrameBuffer second = copy(ring);
+    ring.returnTexture(first);
+    ring.returnTexture(second);
+
+    ring.setCapacity(1);
+    assertEquals(1, ring.getCapacity());
+    assertEquals(1, getDeletedTextureCount());
+    assertTrue(ring.hasFreeTexture());
+    assertNotNull(copy(ring));
+    assertFalse(ring.hasFreeTexture());
+  }
+
+  @Test
+  public void shrinkingReleasesTexturesInUseWhenReturned() {
+    final TextureCopyRing ring = new TextureCopyRing(gl, /* capacity= */ 3);
+    final GlTextureFrameBuffer first = copy(ring);
+    final GlTextureFrameBuffer second = copy(ring);
+    final GlTextureFrameBuffer third = copy(ring);
+
+    ring.setCapacity(1);
+    // All textures are in flight, none can be released yet.
+    assertEquals(0, getDeletedTextureCount());
+    assertFalse(ring.hasFreeTexture());
+
+    // Textures above the capacity are released when returned.
+    ring.returnTexture(first);
+    assertEquals(1, getDeletedTextureCount());
+    assertFalse(ring.hasFreeTexture());
+    ring.returnTexture(second);
+    assertEquals(2, getDeletedTextureCount());
+    assertFalse(ring.hasFreeTexture());
+    // The last one fits the new capacity and is kept.
+    ring.returnTexture(third);
+    assertEquals(2, getDeletedTextureCount());
+    assertTrue(ring.hasFreeTexture());
+    assertFalse(ring.hasTexturesInUse());
+    assertSame(third, copy(ring));
+  }
+
+  @Test
+  public void zeroCapacityCopiesNothing() {
+    final TextureCopyRing ring = new TextureCopyRing(gl, /* capacity= */ 0);
+    assertFalse(ring.hasFreeTexture());
+    assertNull(copy(ring));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void negativeCapacityThrows() {
+    new TextureCopyRing(gl, /* capacity= */ 1).setCapacity(-1);
+  }
+
+  @Test
+  public void releaseThrowsWhileTexturesInUse() {
+    final TextureCopyRing ring = new TextureCopyRing(gl, /* capacity= */ 2);
+    final GlTextureFrameBuffer texture = copy(ring);
+    try {
+      ring.release();
+      fail("release() with a texture in use did not throw");
+    } catch (IllegalStateException expected) {
+    }
+    assertEquals(0, getDeletedTextureCount());
+
+    ring.returnTexture(texture);
+    ring.release();
+    assertEquals(1, getDeletedTextureCount());
+    assertEquals(1, gl.getCallCount("glDeleteProgram"));
+  }
+}
@@ -0,0 +1,113 @@
+package com.test.mp;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Feeds TimestampAligner capture timestamps with simulated delivery jitter, drift, stalls and
+ * clock jumps, and checks the translated timestamps.
+ */
+public class TimestampAlignerTest {
+  private static final long FRAME_INTERVAL_NS = 16_666_667L;
+  private static final long OFFSET_NS = 5_000_000_000L;
+  private static final long MAX_DELAY_NS = 4_000_000L;
+
+  private final Random random = new Random(1);
+  private final TimestampAligner aligner = new TimestampAligner();
+  private long prevTranslatedNs = Long.MIN_VALUE;
+
+  // Translates the frame captured at |captureTimeNs|, seen |delayNs| after its system time, and
+  // checks the invariants that hold for every frame.
+  private long translate(long captureTimeNs, long offsetNs, long delayNs) {
+    final long systemTimeNs = captureTimeNs + offsetNs + delayNs;
+    final long translatedNs = aligner.translateTimestamp(captureTimeNs, systemTimeNs);
+    assertTrue(translatedNs <= systemTimeNs);
+    assertTrue(translatedNs > prevTranslatedNs);
+    prevTranslatedNs = translatedNs;
+    return translatedNs;
+  }
+
+  private long randomDelayNs() {
+    return (long) (random.nextDouble() * MAX_DELAY_NS);
+  }
+
+  @Test
+  public void filtersJitter() {
+    long maxIntervalErrorNs = 0;
+    long prevNs = 0;
+    for (int i = 0; i < 1000; ++i) {
+      final long translatedNs = translate(i * FRAME_INTERVAL_NS, OFFSET_NS, randomDelayNs());
+      if (i >= 200) {
+        maxIntervalErrorNs =
+            Math.max(maxIntervalErrorNs, Math.abs(translatedNs - prevNs - FRAME_INTERVAL_NS));
+      }
+      prevNs = translatedNs;
+    }
+    // The raw delivery times are up to MAX_DELAY_NS off, the translated intervals much less.
+    assertTrue("Interval error " + maxIntervalErrorNs, maxIntervalErrorNs < MAX_DELAY_NS / 4);
+    assertEquals(0, aligner.getOutlierFrameCount());
+  }
+
+  @Test
+  public void followsDrift() {
+    // The capture clock runs 200 ppm slow.
+    long translatedNs = 0;
+    long systemTimeNs = 0;
+    for (int i = 0; i < 20000; ++i) {
+      final long captureTimeNs = i * FRAME_INTERVAL_NS;
+      final long offsetNs = OFFSET_NS + captureTimeNs / 5000;
+      final long delayNs = randomDelayNs();
+      translatedNs = translate(captureTimeNs, offsetNs, delayNs);
+      systemTimeNs = captureTimeNs + offsetNs + delayNs;
+    }
+    // Without following the drift, the timestamps would be 66ms behind after 333s.
+    assertEquals(systemTimeNs, translatedNs, 2 * MAX_DELAY_NS);
+  }
+
+  @Test
+  public void ignoresStalledFrame() {
+    long expectedNs = 0;
+    for (int i = 0; i < 300; ++i) {
+      final long captureTimeNs = i * FRAME_INTERVAL_NS;
+      // The handler thread was descheduled for 100ms.
+      final long delayNs = i == 250 ? 100_000_000L : MAX_DELAY_NS / 2;
+      final long translatedNs = translate(captureTimeNs, OFFSET_NS, delayNs);
+      if (i == 249) {
+        expectedNs = translatedNs;
+      }
+      if (i > 249) {
+        expectedNs += FRAME_INTERVAL_NS;
+        assertEquals(expectedNs, translatedNs, 1000);
+      }
+    }
+    assertEquals(1, aligner.getOutlierFrameCount());
+  }
+
+  @Test
+  public void staysMonotonicAcrossClockJumps() {
+    long captureTimeNs = 0;
+    long offsetNs = OFFSET_NS;
+    long prevNs = 0;
+    for (int i = 0; i < 600; ++i) {
+      if (i == 200) {
+        // The producer was re-created and its clock starts over.
+        offsetNs += captureTimeNs;
+        captureTimeNs = 0;
+      } else if (i == 400) {
+        // A smaller jump forwards, below the immediate reset threshold.
+        captureTimeNs += 50_000_000L;
+        offsetNs -= 50_000_000L;
+      }
+      final long translatedNs = translate(captureTimeNs, offsetNs, MAX_DELAY_NS / 2);
+      if (i > 220 && i < 400 || i > 420) {
+        // Back to the source interval once the estimate settled again.
+        assertEquals(FRAME_INTERVAL_NS, translatedNs - prevNs, 1000);
+      }
+      prevNs = translatedNs;
+      captureTimeNs += FRAME_INTERVAL_NS;
+    }
+  }
+}
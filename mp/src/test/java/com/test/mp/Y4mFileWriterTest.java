@@ -0,0 +1,122 @@
+package com.test.mp;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the stream layout of Y4mFileWriter and that Y4mIndex finds every frame in it.
+ */
+public class Y4mFileWriterTest {
+  private static final Charset US_ASCII = Charset.forName("US-ASCII");
+
+  private static JavaI420Buffer createFrame(int width, int height, int value) {
+    final JavaI420Buffer frame = JavaI420Buffer.allocate(width, height);
+    for (ByteBuffer plane :
+        new ByteBuffer[] {frame.getDataY(), frame.getDataU(), frame.getDataV()}) {
+      while (plane.hasRemaining()) {
+        plane.put((byte) value);
+      }
+    }
+    return frame;
+  }
+
+  private static void deleteRecording(List<File> files) {
+    for (File file : files) {
+      file.delete();
+      Y4mIndex.getIndexFile(file).delete();
+    }
+  }
+
+  @Test
+  public void indexLocatesEveryFrame() throws IOException {
+    final File file = File.createTempFile("recording", ".y4m");
+    final Y4mFileWriter writer = new Y4mFileWriter(file, /* framerate= */ 30);
+    try {
+      for (int i = 0; i < 5; ++i) {
+        final JavaI420Buffer frame = createFrame(/* width= */ 6, /* height= */ 4, /* value= */ i);
+        writer.writeFrame(frame, /* rotation= */ 90 * i, /* timestampNs= */ 1000L * i);
+        frame.release();
+      }
+      writer.close();
+
+      final byte[] bytes = Files.readAllBytes(file.toPath());
+      final String header = "YUV4MPEG2 W6 H4 F30:1 Ip A1:1 C420jpeg\n";
+      assertEquals(header, new String(bytes, 0, header.length(), US_ASCII));
+      final int frameSize = YuvHelper.getPackedI420Size(6, 4);
+      assertEquals(header.length() + 5 * ("FRAME\n".length() + frameSize), bytes.length);
+
+      try (Y4mIndex index = Y4mIndex.open(file)) {
+        assertEquals(5, index.getFrameCount());
+        for (int i = 0; i < 5; ++i) {
+          final int offset = (int) index.getFrameOffset(i);
+          assertEquals("FRAME\n", new String(bytes, offset - 6, 6, US_ASCII));
+          assertEquals(i, bytes[offset]);
+          assertEquals(i, bytes[offset + frameSize - 1]);
+          assertEquals(1000L * i, index.getTimestampNs(i));
+          assertEquals(90 * i, index.getRotation(i));
+        }
+        assertEquals(-1, index.findFrame(-1));
+        assertEquals(2, index.findFrame(2500));
+        assertEquals(4, index.findFrame(Long.MAX_VALUE));
+      }
+    } finally {
+      deleteRecording(writer.getFiles());
+    }
+  }
+
+  @Test
+  public void unlimitedFramerateWritesNominalRate() throws IOException {
+    for (int framerate : new int[] {0, -1}) {
+      final File file = File.createTempFile("recording", ".y4m");
+      final Y4mFileWriter writer = new Y4mFileWriter(file, framerate);
+      try {
+        final JavaI420Buffer frame = createFrame(/* width= */ 6, /* height= */ 4, /* value= */ 1);
+        writer.writeFrame(frame, /* rotation= */ 0, /* timestampNs= */ 0);
+        frame.release();
+        writer.close();
+
+        final byte[] bytes = Files.readAllBytes(file.toPath());
+        final String header = "YUV4MPEG2 W6 H4 F30:1 Ip A1:1 C420jpeg\n";
+        assertEquals(header, new String(bytes, 0, header.length(), US_ASCII));
+      } finally {
+        deleteRecording(writer.getFiles());
+      }
+    }
+  }
+
+  @Test
+  public void frameSizeChangeStartsNewFile() throws IOException {
+    final File file = File.createTempFile("recording", ".y4m");
+    final Y4mFileWriter writer = new Y4mFileWriter(file, /* framerate= */ 10);
+    try {
+      final JavaI420Buffer small = createFrame(/* width= */ 4, /* height= */ 2, /* value= */ 1);
+      final JavaI420Buffer large = createFrame(/* width= */ 8, /* height= */ 6, /* value= */ 2);
+      writer.writeFrame(small, /* rotation= */ 0, /* timestampNs= */ 1);
+      writer.writeFrame(large, /* rotation= */ 0, /* timestampNs= */ 2);
+      writer.writeFrame(large, /* rotation= */ 0, /* timestampNs= */ 3);
+      writer.close();
+
+      final List<File> files = writer.getFiles();
+      assertEquals(2, files.size());
+      assertEquals(file, files.get(0));
+      assertEquals(Y4mFileWriter.getNumberedFile(file, 1), files.get(1));
+      assertTrue(files.get(1).getName().endsWith("_1.y4m"));
+      final String secondHeader = new String(Files.readAllBytes(files.get(1).toPath()), US_ASCII);
+      assertTrue(secondHeader.startsWith("YUV4MPEG2 W8 H6 "));
+      try (Y4mIndex index = Y4mIndex.open(files.get(1))) {
+        assertEquals(2, index.getFrameCount());
+        assertEquals(3, index.getTimestampNs(1));
+      }
+    } finally {
+      deleteRecording(writer.getFiles());
+    }
+  }
+}
@@ -0,0 +1,102 @@
+package com.test.mp;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that YuvFileWriter writes the same bytes as a repack with YuvHelper, for frames with and
+ * without row padding.
+ */
+public class YuvFileWriterTest {
+  // A frame laid out like the output of YuvConverter: U and V side by side in rows of |stride|.
+  private static VideoFrame.I420Buffer createPaddedFrame(int width, int height, int stride) {
+    final int chromaHeight = (height + 1) / 2;
+    final ByteBuffer data =
+        YuvHelperTest.createRandomPlane(stride, height + chromaHeight, /* seed= */ width);
+    data.limit(stride * height);
+    final ByteBuffer dataY = data.slice();
+    data.clear().position(stride * height);
+    final ByteBuffer dataU = data.slice();
+    data.clear().position(stride * height + stride / 2);
+    final ByteBuffer dataV = data.slice();
+    return JavaI420Buffer.wrap(
+        width, height, dataY, stride, dataU, stride, dataV, stride, /* releaseCallback= */ null);
+  }
+
+  private static byte[] writeFrames(ScreenCapturer.OutputFormat format,
+      VideoFrame.I420Buffer... frames) throws IOException {
+    final File file = File.createTempFile("frames", ".yuv");
+    try {
+      try (YuvFileWriter writer = new YuvFileWriter(file, format)) {
+        for (VideoFrame.I420Buffer frame : frames) {
+          writer.writeFrame(frame, /* rotation= */ 0, /* timestampNs= */ 0);
+        }
+        assertEquals(frames.length, writer.getFramesWritten());
+        assertEquals(file.length(), writer.getBytesWritten());
+      }
+      return Files.readAllBytes(file.toPath());
+    } finally {
+      file.delete();
+    }
+  }
+
+  private static void assertI420Written(VideoFrame.I420Buffer frame) throws IOException {
+    final int width = frame.getWidth();
+    final int height = frame.getHeight();
+    final ByteBuffer expected =
+        ByteBuffer.allocateDirect(YuvHelper.getPackedI420Size(width, height));
+    YuvHelper.I420Copy(frame.getDataY(), frame.getStrideY(), frame.getDataU(), frame.getStrideU(),
+        frame.getDataV(), frame.getStrideV(), expected, width, height);
+    final byte[] expectedBytes = new byte[expected.capacity()];
+    expected.clear();
+    expected.get(expectedBytes);
+
+    assertArrayEquals(expectedBytes, writeFrames(ScreenCapturer.OutputFormat.I420, frame));
+  }
+
+  @Test
+  public void writeI420_paddedRows() throws IOException {
+    assertI420Written(createPaddedFrame(/* width= */ 100, /* height= */ 60, /* stride= */ 104));
+    assertI420Written(createPaddedFrame(/* width= */ 37, /* height= */ 21, /* stride= */ 40));
+  }
+
+  @Test
+  public void writeI420_contiguousPlanes() throws IOException {
+    final JavaI420Buffer frame = JavaI420Buffer.allocate(/* width= */ 64, /* height= */ 48);
+    final ByteBuffer random = YuvHelperTest.createRandomPlane(64, 72, /* seed= */ 3);
+    YuvHelper.copyPlane(random, 64, frame.getDataY(), 64, 64, 48, new PlaneProcessor(1, 0));
+    assertI420Written(frame);
+    frame.release();
+  }
+
+  @Test
+  public void writeI420_moreRowsThanOneGatherWrite() throws IOException {
+    // Far more row views than IOV_MAX, the writer has to continue after partial writes.
+    final VideoFrame.I420Buffer frame =
+        createPaddedFrame(/* width= */ 8, /* height= */ 3000, /* stride= */ 16);
+    assertI420Written(frame);
+    final byte[] twoFrames = writeFrames(ScreenCapturer.OutputFormat.I420, frame, frame);
+    assertEquals(2 * YuvHelper.getPackedI420Size(8, 3000), twoFrames.length);
+  }
+
+  @Test
+  public void writeNV12_interleavesChroma() throws IOException {
+    final VideoFrame.I420Buffer frame =
+        createPaddedFrame(/* width= */ 16, /* height= */ 8, /* stride= */ 24);
+    final byte[] written = writeFrames(ScreenCapturer.OutputFormat.NV12, frame);
+    assertEquals(YuvHelper.getPackedI420Size(16, 8), written.length);
+    for (int y = 0; y < 4; ++y) {
+      for (int x = 0; x < 8; ++x) {
+        final int index = 16 * 8 + y * 16 + 2 * x;
+        assertEquals(frame.getDataU().get(y * 24 + x), written[index]);
+        assertEquals(frame.getDataV().get(y * 24 + x), written[index + 1]);
+      }
+    }
+  }
+}
@@ -0,0 +1,236 @@
+package com.test.mp;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the rotate and NV12 kernels of YuvHelper against straightforward per-pixel references.
+ */
+public class YuvHelperTest {
+  // Processors that force the sequential and the striped code paths.
+  private static final PlaneProcessor SEQUENTIAL = new PlaneProcessor(1, 0);
+  private static final PlaneProcessor STRIPED = new PlaneProcessor(4, 0);
+
+  /** Reference rotation, one pixel at a time. */
+  static void rotatePlaneNaive(ByteBuffer src, int srcStride, ByteBuffer dst, int dstStride,
+      int width, int height, int rotation) {
+    for (int y = 0; y < height; ++y) {
+      for (int x = 0; x < width; ++x) {
+        final byte value = src.get(y * srcStride + x);
+        switch (rotation) {
+          case 0:
+            dst.put(y * dstStride + x, value);
+            break;
+          case 90:
+            dst.put(x * dstStride + (height - 1 - y), value);
+            break;
+          case 180:
+            dst.put((height - 1 - y) * dstStride + (width - 1 - x), value);
+            break;
+          case 270:
+            dst.put((width - 1 - x) * dstStride + y, value);
+            break;
+          default:
+            throw new IllegalArgumentException("Unsupported rotation: " + rotation);
+        }
+      }
+    }
+  }
+
+  static ByteBuffer createRandomPlane(int stride, int height, long seed) {
+    final byte[] bytes = new byte[stride * height];
+    new Random(seed).nextBytes(bytes);
+    final ByteBuffer plane = ByteBuffer.allocateDirect(bytes.length);
+    plane.put(bytes);
+    plane.clear();
+    return plane;
+  }
+
+  private static void assertPlaneEquals(ByteBuffer expected, ByteBuffer actual, int stride,
+      int width, int height) {
+    for (int y = 0; y < height; ++y) {
+      for (int x = 0; x < width; ++x) {
+        final int index = y * stride + x;
+        if (expected.get(index) != actual.get(index)) {
+          fail("Mismatch at (" + x + ", " + y + "): expected " + expected.get(index) + " but was "
+              + actual.get(index));
+        }
+      }
+    }
+  }
+
+  private static void checkRotatePlane(int width, int height, int srcStride, int rotation,
+      PlaneProcessor processor) {
+    final boolean swapSides = rotation % 180 != 0;
+    final int dstWidth = swapSides ? height : width;
+    final int dstHeight = swapSides ? width : height;
+    // Pad the destination rows as well, the padding must not be written.
+    final int dstStride = dstWidth + 3;
+    final ByteBuffer src = createRandomPlane(srcStride, height, /* seed= */ width * 31 + height);
+    final ByteBuffer expected = ByteBuffer.allocateDirect(dstStride * dstHeight);
+    final ByteBuffer actual = ByteBuffer.allocateDirect(dstStride * dstHeight);
+
+    rotatePlaneNaive(src, srcStride, expected, dstStride, width, height, rotation);
+    YuvHelper.rotatePlane(src, srcStride, actual, dstStride, width, height, rotation, processor);
+
+    assertPlaneEquals(expected, actual, dstStride, dstWidth, dstHeight);
+    for (int y = 0; y < dstHeight; ++y) {
+      for (int x = dstWidth; x < dstStride; ++x) {
+        assertEquals("Padding written at (" + x + ", " + y + ")", 0, actual.get(y * dstStride + x));
+      }
+    }
+  }
+
+  @Test
+  public void rotatePlane_allRotationsMatchReference() {
+    for (int rotation = 0; rotation < 360; rotation += 90) {
+      checkRotatePlane(/* width= */ 128, /* height= */ 192, /* srcStride= */ 128, rotation,
+          SEQUENTIAL);
+    }
+  }
+
+  @Test
+  public void rotatePlane_partialTilesAndPaddedStride() {
+    // Sizes that are not a multiple of the tile size leave partial tiles at the right and bottom.
+    for (int rotation = 0; rotation < 360; rotation += 90) {
+      checkRotatePlane(/* width= */ 67, /* height= */ 131, /* srcStride= */ 72, rotation,
+          SEQUENTIAL);
+      checkRotatePlane(/* width= */ 1, /* height= */ 5, /* srcStride= */ 8, rotation, SEQUENTIAL);
+    }
+  }
+
+  @Test
+  public void rotatePlane_stripedMatchesReference() {
+    // Stripe boundaries do not fall on tile boundaries.
+    for (int rotation = 0; rotation < 360; rotation += 90) {
+      checkRotatePlane(/* width= */ 270, /* height= */ 601, /* srcStride= */ 272, rotation,
+          STRIPED);
+    }
+  }
+
+  @Test
+  public void rotateI420_fourQuarterTurnsRestoreFrame() {
+    final int width = 90;
+    final int height = 160;
+    final JavaI420Buffer original = JavaI420Buffer.allocate(width, height);
+    final Random random = new Random(42);
+    for (ByteBuffer plane :
+        new ByteBuffer[] {original.getDataY(), original.getDataU(), original.getDataV()}) {
+      while (plane.hasRemaining()) {
+        plane.put((byte) random.nextInt());
+      }
+    }
+
+    VideoFrame.I420Buffer rotated = original;
+    rotated.retain();
+    for (int i = 0; i < 4; ++i) {
+      final VideoFrame.I420Buffer next =
+          JavaI420Buffer.rotateI420(rotated, 90, /* bufferPool= */ null);
+      rotated.release();
+      rotated = next;
+      assertEquals(i % 2 == 0 ? height : width, rotated.getWidth());
+      assertEquals(i % 2 == 0 ? width : height, rotated.getHeight());
+    }
+
+    assertPlaneEquals(original.getDataY(), rotated.getDataY(), width, width, height);
+    assertPlaneEquals(original.getDataU(), rotated.getDataU(), width / 2, width / 2, height / 2);
+    assertPlaneEquals(original.getDataV(), rotated.getDataV(), width / 2, width / 2, height / 2);
+    rotated.release();
+    original.release();
+  }
+
+  @Test
+  public void rotateI420_zeroRotationReturnsSameBuffer() {
+    final JavaI420Buffer buffer = JavaI420Buffer.allocate(16, 16);
+    final VideoFrame.I420Buffer rotated =
+        JavaI420Buffer.rotateI420(buffer, 360, /* bufferPool= */ null);
+    assertSame(buffer, rotated);
+    rotated.release();
+    buffer.release();
+  }
+
+  @Test
+  public void rotateI420_oddSizeUsesRoundedUpChroma() {
+    final JavaI420Buffer buffer = JavaI420Buffer.allocate(/* width= */ 5, /* height= */ 3);
+    final VideoFrame.I420Buffer rotated =
+        JavaI420Buffer.rotateI420(buffer, 270, /* bufferPool= */ null);
+    assertEquals(3, rotated.getWidth());
+    assertEquals(5, rotated.getHeight());
+    assertEquals(2, rotated.getStrideU());
+    rotated.release();
+    buffer.release();
+  }
+
+  @Test
+  public void nv12_roundTripRestoresChromaPlanes() {
+    // Odd width and a chroma width that is not a multiple of the word size of the kernels.
+    final int width = 37;
+    final int height = 21;
+    final int chromaWidth = (width + 1) / 2;
+    final int chromaHeight = (height + 1) / 2;
+    final ByteBuffer srcU = createRandomPlane(chromaWidth + 3, chromaHeight, /* seed= */ 1);
+    final ByteBuffer srcV = createRandomPlane(chromaWidth + 5, chromaHeight, /* seed= */ 2);
+    final int strideUV = 2 * chromaWidth + 2;
+    final ByteBuffer uv = ByteBuffer.allocateDirect(strideUV * chromaHeight);
+    YuvHelper.mergeUVPlane(srcU, chromaWidth + 3, srcV, chromaWidth + 5, uv, strideUV,
+        chromaWidth, chromaHeight, STRIPED);
+    for (int y = 0; y < chromaHeight; ++y) {
+      for (int x = 0; x < chromaWidth; ++x) {
+        assertEquals(srcU.get(y * (chromaWidth + 3) + x), uv.get(y * strideUV + 2 * x));
+        assertEquals(srcV.get(y * (chromaWidth + 5) + x), uv.get(y * strideUV + 2 * x + 1));
+      }
+    }
+
+    final ByteBuffer dstU = ByteBuffer.allocateDirect(chromaWidth * chromaHeight);
+    final ByteBuffer dstV = ByteBuffer.allocateDirect(chromaWidth * chromaHeight);
+    YuvHelper.splitUVPlane(uv, strideUV, dstU, chromaWidth, dstV, chromaWidth, chromaWidth,
+        chromaHeight, SEQUENTIAL);
+    for (int y = 0; y < chromaHeight; ++y) {
+      for (int x = 0; x < chromaWidth; ++x) {
+        assertEquals(srcU.get(y * (chromaWidth + 3) + x), dstU.get(y * chromaWidth + x));
+        assertEquals(srcV.get(y * (chromaWidth + 5) + x), dstV.get(y * chromaWidth + x));
+      }
+    }
+  }
+
+  @Test
+  public void i420ToNV12_roundTripRestoresFrame() {
+    final JavaI420Buffer original = JavaI420Buffer.allocate(/* width= */ 66, /* height= */ 34);
+    final Random random = new Random(7);
+    for (ByteBuffer plane :
+        new ByteBuffer[] {original.getDataY(), original.getDataU(), original.getDataV()}) {
+      while (plane.hasRemaining()) {
+        plane.put((byte) random.nextInt());
+      }
+    }
+    final ByteBuffer nvY = ByteBuffer.allocateDirect(66 * 34);
+    final ByteBuffer nvUV = ByteBuffer.allocateDirect(66 * 17);
+    final JavaI420Buffer restored = JavaI420Buffer.allocate(/* width= */ 66, /* height= */ 34);
+    for (boolean nv21 : new boolean[] {false, true}) {
+      if (nv21) {
+        YuvHelper.I420ToNV21(original.getDataY(), original.getStrideY(), original.getDataU(),
+            original.getStrideU(), original.getDataV(), original.getStrideV(), nvY, 66, nvUV, 66,
+            66, 34);
+        YuvHelper.NV21ToI420(nvY, 66, nvUV, 66, restored.getDataY(), restored.getStrideY(),
+            restored.getDataU(), restored.getStrideU(), restored.getDataV(),
+            restored.getStrideV(), 66, 34);
+      } else {
+        YuvHelper.I420ToNV12(original.getDataY(), original.getStrideY(), original.getDataU(),
+            original.getStrideU(), original.getDataV(), original.getStrideV(), nvY, 66, nvUV, 66,
+            66, 34);
+        YuvHelper.NV12ToI420(nvY, 66, nvUV, 66, restored.getDataY(), restored.getStrideY(),
+            restored.getDataU(), restored.getStrideU(), restored.getDataV(),
+            restored.getStrideV(), 66, 34);
+      }
+      assertPlaneEquals(original.getDataY(), restored.getDataY(), 66, 66, 34);
+      assertPlaneEquals(original.getDataU(), restored.getDataU(), 33, 33, 17);
+      assertPlaneEquals(original.getDataV(), restored.getDataV(), 33, 33, 17);
+    }
+    restored.release();
+    original.release();
+  }
+}